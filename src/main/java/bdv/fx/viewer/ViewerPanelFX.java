@@ -215,7 +215,9 @@ public class ViewerPanelFX
 		transformListeners.add(tf -> getDisplay().drawOverlays());
 
 		this.state = new ViewerState(axisOrder, numTimepoints);
-		state.addListener(obs -> requestRepaint());
+		// changes of the viewer transform, the sources, or the timepoint are detected by the renderer, which may re-use
+		// pixels of the previous frame for in-plane translations
+		state.addListener(obs -> renderUnit.requestRepaint());
 
 		setAllSources(sources);
 	}
@@ -322,11 +324,12 @@ public class ViewerPanelFX
 	}
 
 	/**
-	 * Repaint as soon as possible.
+	 * Repaint as soon as possible without re-using previously rendered pixels.
 	 */
 	@Override
 	public void requestRepaint()
 	{
+		renderUnit.invalidateRenderedFrames();
 		renderUnit.requestRepaint();
 	}
 
@@ -341,6 +344,7 @@ public class ViewerPanelFX
 	{
 		assert min.length == 2;
 		assert max.length == 2;
+		renderUnit.invalidateRenderedFrames();
 		renderUnit.requestRepaint(min, max);
 	}
 
@@ -503,6 +507,29 @@ public class ViewerPanelFX
 		this.renderUnit.setScreenScales(screenScales.clone());
 	}
 
+	/**
+	 * @param isAdaptive if {@code true}, start rendering at the finest screen scale that is expected to render
+	 *                   within {@code targetRenderNanos}, otherwise at the coarsest screen scale
+	 * @param targetRenderNanos target render time for a frame in nanoseconds
+	 */
+	public void setScreenScaleAdaptation(final boolean isAdaptive, final long targetRenderNanos)
+	{
+		LOG.debug("Setting screen scale adaptation to {} with target render time {}ns", isAdaptive, targetRenderNanos);
+		this.renderUnit.setScreenScaleAdaptation(isAdaptive, targetRenderNanos);
+	}
+
+	/**
+	 * @param isEnabled if {@code true}, prefetch cells for frames that are expected next if the viewer keeps moving
+	 *                  in its current direction
+	 * @param numPredictedFrames number of frames to look ahead
+	 * @param maxCellsPerFrame maximum number of cells requested for predictions per rendered frame
+	 */
+	public void setPredictivePrefetching(final boolean isEnabled, final int numPredictedFrames, final int maxCellsPerFrame)
+	{
+		LOG.debug("Setting predictive prefetching to {} with {} frames and at most {} cells per frame", isEnabled, numPredictedFrames, maxCellsPerFrame);
+		this.renderUnit.setPredictivePrefetching(isEnabled, numPredictedFrames, maxCellsPerFrame);
+	}
+
 	/**
 	 *
 	 * @return {@link OverlayPane} used for drawing overlays without re-rendering 2D cross-sections
@@ -0,0 +1,19 @@
+package bdv.fx.viewer.project;
+
+/**
+ * Statistics of the last frame rendered by a projector.
+ */
+public interface HasFrameStatistics
+{
+
+	/**
+	 * @return time spent waiting for I/O during the last frame, in nanoseconds
+	 */
+	long getLastFrameIoNanoTime();
+
+	/**
+	 * @return number of pixels that were still invalid after rendering from each mipmap level during the last frame
+	 */
+	long[] getLastFrameInvalidPixelsPerLevel();
+
+}
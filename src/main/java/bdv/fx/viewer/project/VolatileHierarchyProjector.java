@@ -30,6 +30,7 @@
 package bdv.fx.viewer.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -64,7 +65,7 @@ import net.imglib2.view.Views;
  * @author Stephan Saalfeld &lt;saalfeld@mpi-cbg.de&gt;
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
-public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends NumericType< B > > extends AbstractInterruptibleProjector< A, B > implements VolatileProjector
+public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends NumericType< B > > extends AbstractInterruptibleProjector< A, B > implements VolatileProjector, HasFrameStatistics
 {
 	protected final ArrayList< RandomAccessible< A > > sources = new ArrayList<>();
 
@@ -124,6 +125,12 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	 */
 	protected final AtomicInteger numInvalidPixels = new AtomicInteger();
 
+	/**
+	 * Number of pixels that were still invalid after rendering from each mipmap
+	 * level in the last frame. Zero for levels that were not rendered.
+	 */
+	protected final long[] lastFrameInvalidPixelsPerLevel;
+
 	/**
 	 * Flag to indicate that someone is trying to interrupt rendering.
 	 */
@@ -151,6 +158,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 
 		this.sources.addAll( sources );
 		numInvalidLevels = sources.size();
+		lastFrameInvalidPixelsPerLevel = new long[ sources.size() ];
 
 		this.mask = mask;
 
@@ -183,11 +191,18 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		return lastFrameRenderNanoTime;
 	}
 
+	@Override
 	public long getLastFrameIoNanoTime()
 	{
 		return lastFrameIoNanoTime;
 	}
 
+	@Override
+	public long[] getLastFrameInvalidPixelsPerLevel()
+	{
+		return lastFrameInvalidPixelsPerLevel.clone();
+	}
+
 	@Override
 	public boolean isValid()
 	{
@@ -246,6 +261,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		int i;
 
 		valid = false;
+		Arrays.fill( lastFrameInvalidPixelsPerLevel, 0 );
 
 		final boolean createExecutor = ( executorService == null );
 		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
@@ -337,6 +353,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 					ex.shutdown();
 				return false;
 			}
+			lastFrameInvalidPixelsPerLevel[ i ] = numInvalidPixels.get();
 //			System.out.println( "numInvalidPixels(" + i + ") = " + numInvalidPixels );
 		}
 		if ( createExecutor )
@@ -40,7 +40,7 @@ import net.imglib2.view.Views;
  */
 @SuppressWarnings("restriction")
 public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
-		extends AbstractInterruptibleProjector<A, ARGBType> implements VolatileProjector
+		extends AbstractInterruptibleProjector<A, ARGBType> implements VolatileProjector, HasFrameStatistics
 {
 	protected final ArrayList<RandomAccessible<A>> sources = new ArrayList<>();
 
@@ -98,6 +98,12 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 	 */
 	protected final AtomicInteger numInvalidPixels = new AtomicInteger();
 
+	/**
+	 * Number of pixels that were still invalid after rendering from each mipmap level in the last frame. Zero for
+	 * levels that were not rendered.
+	 */
+	protected final long[] lastFrameInvalidPixelsPerLevel;
+
 	/**
 	 * Flag to indicate that someone is trying to interrupt rendering.
 	 */
@@ -132,6 +138,7 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 
 		this.sources.addAll(sources);
 		numInvalidLevels = sources.size();
+		lastFrameInvalidPixelsPerLevel = new long[sources.size()];
 
 		this.mask = mask;
 
@@ -164,11 +171,18 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 		return lastFrameRenderNanoTime;
 	}
 
+	@Override
 	public long getLastFrameIoNanoTime()
 	{
 		return lastFrameIoNanoTime;
 	}
 
+	@Override
+	public long[] getLastFrameInvalidPixelsPerLevel()
+	{
+		return lastFrameInvalidPixelsPerLevel.clone();
+	}
+
 	@Override
 	public boolean isValid()
 	{
@@ -226,6 +240,7 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 		int i;
 
 		valid = false;
+		Arrays.fill(lastFrameInvalidPixelsPerLevel, 0);
 
 		final boolean         createExecutor = executorService == null;
 		final ExecutorService ex             = createExecutor
@@ -317,6 +332,7 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 					ex.shutdown();
 				return false;
 			}
+			lastFrameInvalidPixelsPerLevel[i] = numInvalidPixels.get();
 			//			System.out.println( "numInvalidPixels(" + i + ") = " + numInvalidPixels );
 		}
 		if (createExecutor)
@@ -0,0 +1,177 @@
+package bdv.fx.viewer.render;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Measurements for a single call to {@link MultiResolutionRendererGeneric#paint}.
+ */
+public class FrameMetrics
+{
+
+	static final String CSV_HEADER = String.join(
+			",",
+			"timestampMillis",
+			"frameNanos",
+			"renderNanos",
+			"ioNanos",
+			"screenScaleIndex",
+			"success",
+			"valid",
+			"cacheHits",
+			"cacheMisses",
+			"invalidPixelsPerLevel");
+
+	private final long timestampMillis;
+
+	private final long frameNanos;
+
+	private final long renderNanos;
+
+	private final long ioNanos;
+
+	private final int screenScaleIndex;
+
+	private final boolean success;
+
+	private final boolean valid;
+
+	private final long cacheHits;
+
+	private final long cacheMisses;
+
+	private final long[] invalidPixelsPerLevel;
+
+	/**
+	 * @param timestampMillis
+	 * 		wall clock time at the end of the frame
+	 * @param frameNanos
+	 * 		wall clock time spent rendering the frame, including I/O
+	 * @param renderNanos
+	 * 		render time as reported by the projector, excluding I/O
+	 * @param ioNanos
+	 * 		time spent waiting for I/O
+	 * @param screenScaleIndex
+	 * 		index of the screen scale that was rendered
+	 * @param success
+	 * 		{@code false} if rendering was cancelled
+	 * @param valid
+	 * 		{@code true} if all pixels were rendered from the best mipmap level
+	 * @param cacheHits
+	 * 		number of cache requests that found valid data since the previous frame
+	 * @param cacheMisses
+	 * 		number of cache requests that did not find valid data since the previous frame
+	 * @param invalidPixelsPerLevel
+	 * 		number of pixels that were still invalid after rendering from each mipmap level
+	 */
+	public FrameMetrics(
+			final long timestampMillis,
+			final long frameNanos,
+			final long renderNanos,
+			final long ioNanos,
+			final int screenScaleIndex,
+			final boolean success,
+			final boolean valid,
+			final long cacheHits,
+			final long cacheMisses,
+			final long[] invalidPixelsPerLevel)
+	{
+		this.timestampMillis = timestampMillis;
+		this.frameNanos = frameNanos;
+		this.renderNanos = renderNanos;
+		this.ioNanos = ioNanos;
+		this.screenScaleIndex = screenScaleIndex;
+		this.success = success;
+		this.valid = valid;
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.invalidPixelsPerLevel = invalidPixelsPerLevel.clone();
+	}
+
+	public long getTimestampMillis()
+	{
+		return timestampMillis;
+	}
+
+	public long getFrameNanos()
+	{
+		return frameNanos;
+	}
+
+	public long getRenderNanos()
+	{
+		return renderNanos;
+	}
+
+	public long getIoNanos()
+	{
+		return ioNanos;
+	}
+
+	public int getScreenScaleIndex()
+	{
+		return screenScaleIndex;
+	}
+
+	public boolean isSuccess()
+	{
+		return success;
+	}
+
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	public long getCacheHits()
+	{
+		return cacheHits;
+	}
+
+	public long getCacheMisses()
+	{
+		return cacheMisses;
+	}
+
+	public long[] getInvalidPixelsPerLevel()
+	{
+		return invalidPixelsPerLevel.clone();
+	}
+
+	/**
+	 * @return comma-separated values in the order of {@link #CSV_HEADER}. Invalid pixels per level are separated by
+	 * {@code ;} to keep the number of columns fixed.
+	 */
+	String toCsvRow()
+	{
+		return String.join(
+				",",
+				Long.toString(timestampMillis),
+				Long.toString(frameNanos),
+				Long.toString(renderNanos),
+				Long.toString(ioNanos),
+				Integer.toString(screenScaleIndex),
+				Boolean.toString(success),
+				Boolean.toString(valid),
+				Long.toString(cacheHits),
+				Long.toString(cacheMisses),
+				Arrays.stream(invalidPixelsPerLevel).mapToObj(Long::toString).collect(Collectors.joining(";")));
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"{frame=%.2fms, render=%.2fms, io=%.2fms, screenScale=%d, success=%s, valid=%s, cache=%d/%d, invalid=%s}",
+				frameNanos * 1e-6,
+				renderNanos * 1e-6,
+				ioNanos * 1e-6,
+				screenScaleIndex,
+				success,
+				valid,
+				cacheHits,
+				cacheHits + cacheMisses,
+				Arrays.toString(invalidPixelsPerLevel));
+	}
+
+}
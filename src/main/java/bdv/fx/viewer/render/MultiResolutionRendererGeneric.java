@@ -30,6 +30,7 @@
 package bdv.fx.viewer.render;
 
 import bdv.cache.CacheControl;
+import bdv.fx.viewer.project.HasFrameStatistics;
 import bdv.fx.viewer.project.SimpleInterruptibleProjectorPreMultiply;
 import bdv.fx.viewer.project.VolatileHierarchyProjector;
 import bdv.fx.viewer.project.VolatileHierarchyProjectorPreMultiply;
@@ -70,6 +71,7 @@ import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -195,21 +197,24 @@ public class MultiResolutionRendererGeneric<T>
 	private RealInterval lastRenderTargetRealInterval;
 
 	/**
-	 * If the rendering time (in nanoseconds) for the (currently) highest scaled screen image is above this threshold,
-	 * increase the {@link #maxScreenScaleIndex index} of the highest screen scale to use. Similarly, if the rendering
-	 * time for the (currently) second-highest scaled screen image is below this threshold, decrease the {@link
-	 * #maxScreenScaleIndex index} of the highest screen scale to use.
+	 * Selects the {@link #maxScreenScaleIndex index} of the screen scale with which to start rendering a new frame
+	 * from the render times of previous frames.
 	 */
-	private final long targetRenderNanos;
+	private final ScreenScaleController screenScaleController;
 
 	/**
 	 * The index of the (coarsest) screen scale with which to start rendering. Once this level is painted, rendering
-	 * proceeds to lower screen scales until index 0 (full resolution) has been reached. While rendering, the
-	 * maxScreenScaleIndex is adapted such that it is the highest index for which rendering in {@link
-	 * #targetRenderNanos} nanoseconds is still possible.
+	 * proceeds to lower screen scales until index 0 (full resolution) has been reached. Updated by the {@link
+	 * #screenScaleController} for each new frame.
 	 */
 	private int maxScreenScaleIndex;
 
+	/**
+	 * Interaction that triggered the most recent new frame: Repaint requests for the entire screen are considered
+	 * navigation, repaint requests for parts of the screen are considered painting.
+	 */
+	private ScreenScaleController.Interaction interaction = ScreenScaleController.Interaction.NAVIGATE;
+
 	/**
 	 * The index of the screen scale which should be rendered next.
 	 */
@@ -261,6 +266,18 @@ public class MultiResolutionRendererGeneric<T>
 
 	private boolean prefetchCells = true;
 
+	/**
+	 * Requests cells for frames that are expected next if the viewer keeps moving in its current direction, if not
+	 * {@code null}.
+	 */
+	private PredictivePrefetcher predictivePrefetcher;
+
+	/**
+	 * Whether the projectors that are currently created are the first projectors of a new frame, i.e. predictive
+	 * prefetching is requested only once per frame and not again for finer screen scales.
+	 */
+	private boolean prefetchPredictions = false;
+
 	private final Function<T, ArrayImg<ARGBType, ? extends IntAccess>> wrapAsArrayImg;
 
 	private final ToIntFunction<T> width;
@@ -271,6 +288,36 @@ public class MultiResolutionRendererGeneric<T>
 
 	private final AffineTransform3D currentProjectorTransform = new AffineTransform3D();
 
+	/**
+	 * The most recently displayed frame if it is valid and covers the entire screen. New frames that differ only by
+	 * an in-plane translation copy the overlapping region from this frame, see {@link ScrollBlit}.
+	 */
+	private RenderedFrame<T> lastCompleteFrame;
+
+	/**
+	 * Image, transform, and content generation of the frame that the {@link #projector current projector} renders.
+	 */
+	private RenderedFrame<T> currentFrame;
+
+	/**
+	 * Incremented by {@link #invalidateRenderedFrames()}. Frames rendered for an older generation are not re-used.
+	 */
+	private long contentGeneration;
+
+	/**
+	 * Per-source projectors of the current frame, queried for I/O time and invalid pixels after each frame.
+	 */
+	private final List<VolatileProjector> currentSourceProjectors = new ArrayList<>();
+
+	/**
+	 * Receives {@link FrameMetrics} for each frame if not {@code null}.
+	 */
+	private RenderMetrics renderMetrics;
+
+	private long previousCacheHits = WeakRefVolatileCache.getNumHits();
+
+	private long previousCacheMisses = WeakRefVolatileCache.getNumMisses();
+
 	/**
 	 * @param display
 	 * 		The canvas that will display the images we render.
@@ -332,7 +379,8 @@ public class MultiResolutionRendererGeneric<T>
 
 		this.wrapAsArrayImg = wrapAsArrayImg;
 
-		this.targetRenderNanos = targetRenderNanos;
+		this.screenScaleController = new ScreenScaleController(targetRenderNanos);
+		this.screenScaleController.setScreenScales(this.screenScales);
 
 		renderingMayBeCancelled = true;
 		this.numRenderingThreads = numRenderingThreads;
@@ -361,6 +409,8 @@ public class MultiResolutionRendererGeneric<T>
 			renderIdQueue.clear();
 			renderIdQueue.addAll(Arrays.asList(0, 1, 2));
 			bufferedImageToRenderId.clear();
+			lastCompleteFrame = null;
+			currentFrame = null;
 			for (int i = 0; i < screenScales.length; ++i)
 			{
 				final double screenToViewerScale = screenScales[i];
@@ -482,6 +532,11 @@ public class MultiResolutionRendererGeneric<T>
 
 		final Interval repaintScreenInterval;
 
+		final ScreenScaleController.Interaction frameInteraction;
+
+		// the complete frame on display before this frame, restored if rendering of a new frame is cancelled
+		RenderedFrame<T> previousCompleteFrame = null;
+
 		synchronized (this)
 		{
 			// FIXME: there is a race condition that sometimes may cause an ArrayIndexOutOfBounds exception:
@@ -502,9 +557,15 @@ public class MultiResolutionRendererGeneric<T>
 			// Rendering may be cancelled unless we are rendering at coarsest screen scale and coarsest mipmap level.
 			renderingMayBeCancelled = requestedScreenScaleIndex < maxScreenScaleIndex;
 
+			frameInteraction = interaction;
 			clearQueue = newFrameRequest;
 			if (clearQueue)
+			{
 				cacheControl.prepareNextFrame();
+				if (predictivePrefetcher != null)
+					predictivePrefetcher.newFrame(viewerTransform);
+			}
+			prefetchPredictions = clearQueue && prefetchCells && predictivePrefetcher != null;
 			createProjector = newFrameRequest || resized || requestedScreenScaleIndex != currentScreenScaleIndex || !sameAsLastRenderedInterval;
 			newFrameRequest = false;
 
@@ -512,10 +573,21 @@ public class MultiResolutionRendererGeneric<T>
 
 			if (createProjector)
 			{
+				currentSourceProjectors.clear();
+				previousCompleteFrame = lastCompleteFrame;
+				lastCompleteFrame = null;
+
+				// pure in-plane translation of the previous frame: copy the overlap and render only the exposed strips
+				// at the screen scale of the previous frame
+				final long[] scrollBlitShift = clearQueue && doubleBuffered
+						? getScrollBlitShift(previousCompleteFrame, repaintScreenInterval, sacs, timepoint, viewerTransform)
+						: null;
+
 				final int renderId = renderIdQueue.peek();
-				currentScreenScaleIndex = requestedScreenScaleIndex;
+				currentScreenScaleIndex = scrollBlitShift == null ? requestedScreenScaleIndex : previousCompleteFrame.screenScaleIndex;
 				bufferedImage = bufferedImages.get(currentScreenScaleIndex).get(renderId);
 				final T renderTarget = screenImages.get(currentScreenScaleIndex).get(renderId);
+				final AffineTransform3D frameTransform = viewerTransform.copy();
 				synchronized (Optional.ofNullable(synchronizationLock).orElse(this))
 				{
 					final int numSources = sacs.size();
@@ -532,35 +604,61 @@ public class MultiResolutionRendererGeneric<T>
 					Arrays.setAll(renderTargetRealIntervalMax, d -> repaintScreenInterval.max(d) * renderTargetToScreenPixelRatio[d]);
 					final RealInterval renderTargetRealInterval = new FinalRealInterval(renderTargetRealIntervalMin, renderTargetRealIntervalMax);
 
-					// apply 1px padding on each side of the render target repaint interval to avoid interpolation artifacts
-					final Interval renderTargetPaddedInterval = padInterval(
-						Intervals.smallestContainingInterval(renderTargetRealInterval),
-						new int[] {1, 1},
-						getImageSize(renderTarget)
-					);
-
-					viewerTransform.translate(
-						-renderTargetPaddedInterval.min(0) / renderTargetToScreenPixelRatio[0],
-						-renderTargetPaddedInterval.min(1) / renderTargetToScreenPixelRatio[1],
-						0
-					);
-
-					final RandomAccessibleInterval<ARGBType> renderTargetRoi = Views.interval(wrapAsArrayImg.apply(renderTarget), renderTargetPaddedInterval);
-
-					p = createProjector(
-						sacs,
-						axisOrders,
-						timepoint,
-						viewerTransform,
-						currentScreenScaleIndex,
-						renderTargetRoi,
-						interpolationForSource
-					);
+					if (scrollBlitShift != null)
+					{
+						p = createScrollBlitProjector(
+							previousCompleteFrame.image,
+							renderTarget,
+							scrollBlitShift,
+							sacs,
+							axisOrders,
+							timepoint,
+							viewerTransform,
+							renderTargetToScreenPixelRatio,
+							interpolationForSource
+						);
+					}
+					else
+					{
+						// apply 1px padding on each side of the render target repaint interval to avoid interpolation artifacts
+						final Interval renderTargetPaddedInterval = padInterval(
+							Intervals.smallestContainingInterval(renderTargetRealInterval),
+							new int[] {1, 1},
+							getImageSize(renderTarget)
+						);
+
+						viewerTransform.translate(
+							-renderTargetPaddedInterval.min(0) / renderTargetToScreenPixelRatio[0],
+							-renderTargetPaddedInterval.min(1) / renderTargetToScreenPixelRatio[1],
+							0
+						);
+
+						final RandomAccessibleInterval<ARGBType> renderTargetRoi = Views.interval(wrapAsArrayImg.apply(renderTarget), renderTargetPaddedInterval);
+
+						p = createProjector(
+							sacs,
+							axisOrders,
+							timepoint,
+							viewerTransform,
+							currentScreenScaleIndex,
+							renderTargetRoi,
+							interpolationForSource
+						);
+					}
 
 					lastRenderedScreenInterval = repaintScreenInterval;
 					lastRenderTargetRealInterval = renderTargetRealInterval;
 				}
 				projector = p;
+				currentFrame = new RenderedFrame<>(
+						bufferedImage,
+						currentScreenScaleIndex,
+						frameTransform,
+						timepoint,
+						sacs,
+						contentGeneration,
+						coversScreen(repaintScreenInterval),
+						scrollBlitShift != null);
 			}
 			else
 			{
@@ -572,8 +670,10 @@ public class MultiResolutionRendererGeneric<T>
 		}
 
 		// try rendering
+		final long frameStartNanos = System.nanoTime();
 		final boolean success = p.map(createProjector);
-//		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long frameNanos = System.nanoTime() - frameStartNanos;
+		final long rendertime = p.getLastFrameRenderNanoTime();
 
 		synchronized (this)
 		{
@@ -591,34 +691,16 @@ public class MultiResolutionRendererGeneric<T>
 							renderIdQueue.add(id);
 					}
 
-					/**
-					 * TODO: design a better algorithm for adjusting maxScreenScaleIndex or remove and always use all screen scales.
-					 *
-					 * The current heuristic does not work well in the following cases:
-					 *
-					 * 1) With vastly different screen scale values such as [1.0, 0.1], it will switch between the two scales every frame.
-					 * At screen scale 0.1 rendering is fast, and after a frame is rendered, it switches maxScreenScaleIndex to 0.
-					 * However, at screen scale 1.0 rendering is slower than targetRenderNanos, so when the next frame is rendered, it switches maxScreenScaleIndex back to 1.
-					 * This causes annoying delays because when maxScreenScaleIndex is switched to 0, renderingMayBeCancelled is in turn set to false, and the algorithm has to wait
-					 * until the current high-res frame is fully rendered.
-					 *
-					 * 2) When the user starts painting, it re-renders only the affected interval which is usually very small compared to the size of the screen.
-					 * Usually rendering is very fast in this case, and maxScreenScaleIndex is quickly changed to 0.
-					 * When the user finishes painting and starts navigating again, there may be a delay in rendering the first few frames because
-					 * it starts from the highest available resolution and then gradually decreases the resolution until the rendertime is within the targetRenderNanos threshold.
-					 */
-//					if (currentScreenScaleIndex == maxScreenScaleIndex)
-//					{
-//						if (rendertime > targetRenderNanos && maxScreenScaleIndex < screenScales.length - 1)
-//							maxScreenScaleIndex++;
-//						else if (rendertime < targetRenderNanos / 3 && maxScreenScaleIndex > 0)
-//							maxScreenScaleIndex--;
-//					}
-//					else if (currentScreenScaleIndex == maxScreenScaleIndex - 1)
-//						if (rendertime < targetRenderNanos && maxScreenScaleIndex > 0)
-//							maxScreenScaleIndex--;
+					// Render times are tracked per screen scale and interaction, which avoids oscillation between
+					// screen scales with very different render times and between painting and navigation.
+					// Scroll-blit frames render only a fraction of the screen and are not representative.
+					if (!currentFrame.isScrollBlit)
+						screenScaleController.update(frameInteraction, currentScreenScaleIndex, rendertime);
 				}
 
+				if (p.isValid() && currentFrame != null && currentFrame.coversScreen)
+					lastCompleteFrame = currentFrame;
+
 				if (currentScreenScaleIndex > 0)
 					requestRepaint(lastRenderedScreenInterval, currentScreenScaleIndex - 1);
 				else if (!p.isValid())
@@ -636,6 +718,10 @@ public class MultiResolutionRendererGeneric<T>
 			}
 			else
 			{
+				// nothing new was displayed
+				if (createProjector)
+					lastCompleteFrame = previousCompleteFrame;
+
 				// Add the requested interval back into the queue if it was not rendered
 				if (pendingRepaintRequests[currentScreenScaleIndex] == null)
 					pendingRepaintRequests[currentScreenScaleIndex] = repaintScreenInterval;
@@ -643,10 +729,70 @@ public class MultiResolutionRendererGeneric<T>
 					pendingRepaintRequests[currentScreenScaleIndex] = Intervals.union(pendingRepaintRequests[currentScreenScaleIndex], repaintScreenInterval);
 			}
 
+			recordFrameMetrics(frameNanos, rendertime, success, p.isValid());
+
 			return success ? currentScreenScaleIndex : -1;
 		}
 	}
 
+	/**
+	 * @param renderMetrics receives {@link FrameMetrics} for each frame, or {@code null} to disable metrics
+	 */
+	public synchronized void setRenderMetrics(final RenderMetrics renderMetrics)
+	{
+		this.renderMetrics = renderMetrics;
+	}
+
+	/**
+	 * @param predictivePrefetcher requests cells for predicted frames, or {@code null} to disable predictive prefetching
+	 */
+	public synchronized void setPredictivePrefetcher(final PredictivePrefetcher predictivePrefetcher)
+	{
+		this.predictivePrefetcher = predictivePrefetcher;
+	}
+
+	private void recordFrameMetrics(final long frameNanos, final long renderNanos, final boolean success, final boolean isValid)
+	{
+		// cache statistics are shared between all caches and viewers
+		final long cacheHits = WeakRefVolatileCache.getNumHits();
+		final long cacheMisses = WeakRefVolatileCache.getNumMisses();
+		final long frameCacheHits = cacheHits - previousCacheHits;
+		final long frameCacheMisses = cacheMisses - previousCacheMisses;
+		previousCacheHits = cacheHits;
+		previousCacheMisses = cacheMisses;
+
+		if (renderMetrics == null)
+			return;
+
+		long ioNanos = 0;
+		long[] invalidPixelsPerLevel = new long[0];
+		for (final VolatileProjector sourceProjector : currentSourceProjectors)
+		{
+			if (sourceProjector instanceof HasFrameStatistics)
+			{
+				final HasFrameStatistics statistics = (HasFrameStatistics) sourceProjector;
+				ioNanos += statistics.getLastFrameIoNanoTime();
+				final long[] invalidPixels = statistics.getLastFrameInvalidPixelsPerLevel();
+				if (invalidPixels.length > invalidPixelsPerLevel.length)
+					invalidPixelsPerLevel = Arrays.copyOf(invalidPixelsPerLevel, invalidPixels.length);
+				for (int level = 0; level < invalidPixels.length; ++level)
+					invalidPixelsPerLevel[level] += invalidPixels[level];
+			}
+		}
+
+		renderMetrics.record(new FrameMetrics(
+				System.currentTimeMillis(),
+				frameNanos,
+				renderNanos,
+				ioNanos,
+				currentScreenScaleIndex,
+				success,
+				isValid,
+				frameCacheHits,
+				frameCacheMisses,
+				invalidPixelsPerLevel));
+	}
+
 	public synchronized Interval getLastRenderedScreenInterval()
 	{
 		return lastRenderedScreenInterval;
@@ -657,12 +803,26 @@ public class MultiResolutionRendererGeneric<T>
 		return lastRenderTargetRealInterval;
 	}
 
+	/**
+	 * Do not re-use pixels of frames that have been rendered so far, e.g. because the contents of sources or the
+	 * converters have changed. This needs to be called before the corresponding {@link #requestRepaint(Interval)}.
+	 */
+	public synchronized void invalidateRenderedFrames()
+	{
+		++contentGeneration;
+		lastCompleteFrame = null;
+	}
+
 	/**
 	 * Request a repaint of the given display interval from the painter thread, with maximum screen scale index and mipmap level.
 	 */
 	public synchronized void requestRepaint(final Interval interval)
 	{
 		newFrameRequest = true;
+		interaction = interval.dimension(0) >= display.getWidth() && interval.dimension(1) >= display.getHeight()
+				? ScreenScaleController.Interaction.NAVIGATE
+				: ScreenScaleController.Interaction.PAINT;
+		maxScreenScaleIndex = Math.min(screenScaleController.getStartScreenScaleIndex(interaction), screenScales.length - 1);
 		requestRepaint(interval, maxScreenScaleIndex);
 	}
 
@@ -731,6 +891,7 @@ public class MultiResolutionRendererGeneric<T>
 					interpolation,
 					true
 			                                       );
+			currentSourceProjectors.add(projector);
 		}
 		else
 		{
@@ -759,6 +920,7 @@ public class MultiResolutionRendererGeneric<T>
 						false
 				                                                       );
 				sourceProjectors.add(p);
+				currentSourceProjectors.add(p);
 				sources.add(sac.getSpimSource());
 				sourceImages.add(renderImage);
 			}
@@ -777,6 +939,202 @@ public class MultiResolutionRendererGeneric<T>
 		return projector;
 	}
 
+	private boolean coversScreen(final Interval screenInterval)
+	{
+		return screenInterval.min(0) <= 0
+				&& screenInterval.min(1) <= 0
+				&& screenInterval.max(0) >= display.getWidth() - 1
+				&& screenInterval.max(1) >= display.getHeight() - 1;
+	}
+
+	/**
+	 * @return shift in render target pixels if the frame for {@code viewerTransform} can be created from {@code
+	 * frame} by copying the overlapping region and rendering the exposed strips, {@code null} otherwise.
+	 */
+	private long[] getScrollBlitShift(
+			final RenderedFrame<T> frame,
+			final Interval screenInterval,
+			final List<SourceAndConverter<?>> sacs,
+			final int timepoint,
+			final AffineTransform3D viewerTransform)
+	{
+		if (frame == null
+				|| frame.contentGeneration != contentGeneration
+				|| frame.timepoint != timepoint
+				|| !frame.sources.equals(sacs)
+				|| !coversScreen(screenInterval))
+			return null;
+
+		final long[] shift = ScrollBlit.shift(
+				frame.viewerTransform,
+				viewerTransform,
+				screenScales[frame.screenScaleIndex],
+				width.applyAsInt(frame.image),
+				height.applyAsInt(frame.image));
+		if (shift != null)
+			LOG.trace("Re-using pixels of previous frame shifted by {}", shift);
+		return shift;
+	}
+
+	private VolatileProjector createScrollBlitProjector(
+			final T source,
+			final T renderTarget,
+			final long[] shift,
+			final List<SourceAndConverter<?>> sacs,
+			final Function<Source<?>, AxisOrder> axisOrders,
+			final int timepoint,
+			final AffineTransform3D viewerTransform,
+			final double[] renderTargetToScreenPixelRatio,
+			final Function<Source<?>, Interpolation> interpolationForSource)
+	{
+		final int w = width.applyAsInt(renderTarget);
+		final int h = height.applyAsInt(renderTarget);
+		final ArrayImg<ARGBType, ? extends IntAccess> renderTargetImg = wrapAsArrayImg.apply(renderTarget);
+		final IntAccess sourceAccess = wrapAsArrayImg.apply(source).update(null);
+		final IntAccess targetAccess = renderTargetImg.update(null);
+
+		final List<VolatileProjector> stripProjectors = new ArrayList<>();
+		for (final Interval strip : ScrollBlit.exposedIntervals(w, h, shift[0], shift[1]))
+		{
+			final AffineTransform3D stripTransform = viewerTransform.copy();
+			stripTransform.translate(
+				-strip.min(0) / renderTargetToScreenPixelRatio[0],
+				-strip.min(1) / renderTargetToScreenPixelRatio[1],
+				0
+			);
+			stripProjectors.add(createProjector(
+				sacs,
+				axisOrders,
+				timepoint,
+				stripTransform,
+				currentScreenScaleIndex,
+				Views.interval(renderTargetImg, strip),
+				interpolationForSource
+			));
+		}
+
+		// createProjector sets the transform of the strip
+		currentProjectorTransform.set(viewerTransform);
+		return new ScrollBlitProjector(
+				() -> ScrollBlit.copy(sourceAccess, targetAccess, w, h, shift[0], shift[1]),
+				stripProjectors);
+	}
+
+	/**
+	 * Copy the overlap with the previous frame once, then render the exposed strips one after another.
+	 */
+	private static class ScrollBlitProjector implements VolatileProjector
+	{
+		private final Runnable blit;
+
+		private final List<VolatileProjector> stripProjectors;
+
+		private boolean isBlitted = false;
+
+		private volatile boolean canceled = false;
+
+		private long lastFrameRenderNanoTime = -1;
+
+		ScrollBlitProjector(final Runnable blit, final List<VolatileProjector> stripProjectors)
+		{
+			this.blit = blit;
+			this.stripProjectors = stripProjectors;
+		}
+
+		@Override
+		public boolean map()
+		{
+			return map(true);
+		}
+
+		@Override
+		public boolean map(final boolean clearUntouchedTargetPixels)
+		{
+			canceled = false;
+			final long startTime = System.nanoTime();
+			if (!isBlitted)
+			{
+				blit.run();
+				isBlitted = true;
+			}
+
+			boolean success = true;
+			for (final VolatileProjector stripProjector : stripProjectors)
+			{
+				if (canceled)
+				{
+					success = false;
+					break;
+				}
+				if (!stripProjector.isValid() && !stripProjector.map(clearUntouchedTargetPixels))
+				{
+					success = false;
+					break;
+				}
+			}
+			lastFrameRenderNanoTime = System.nanoTime() - startTime;
+			return success;
+		}
+
+		@Override
+		public void cancel()
+		{
+			canceled = true;
+			stripProjectors.forEach(VolatileProjector::cancel);
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return lastFrameRenderNanoTime;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return stripProjectors.stream().allMatch(VolatileProjector::isValid);
+		}
+	}
+
+	private static class RenderedFrame<T>
+	{
+		final T image;
+
+		final int screenScaleIndex;
+
+		final AffineTransform3D viewerTransform;
+
+		final int timepoint;
+
+		final List<SourceAndConverter<?>> sources;
+
+		final long contentGeneration;
+
+		final boolean coversScreen;
+
+		final boolean isScrollBlit;
+
+		RenderedFrame(
+				final T image,
+				final int screenScaleIndex,
+				final AffineTransform3D viewerTransform,
+				final int timepoint,
+				final List<SourceAndConverter<?>> sources,
+				final long contentGeneration,
+				final boolean coversScreen,
+				final boolean isScrollBlit)
+		{
+			this.image = image;
+			this.screenScaleIndex = screenScaleIndex;
+			this.viewerTransform = viewerTransform;
+			this.timepoint = timepoint;
+			this.sources = new ArrayList<>(sources);
+			this.contentGeneration = contentGeneration;
+			this.coversScreen = coversScreen;
+			this.isScrollBlit = isScrollBlit;
+		}
+	}
+
 	private static class SimpleVolatileProjector<A> extends SimpleInterruptibleProjectorPreMultiply<A>
 			implements VolatileProjector
 	{
@@ -930,6 +1288,18 @@ public class MultiResolutionRendererGeneric<T>
 			}
 		}
 
+		// after all cells of the current frame have been requested
+		if (prefetchPredictions)
+			predictivePrefetcher.prefetch(
+					spimSource,
+					axisOrder,
+					t,
+					viewerTransform,
+					screenScaleTransform,
+					screenScaleTransforms[0],
+					screenImage
+			                             );
+
 		Collections.sort(levels, MipmapOrdering.renderOrderComparator);
 		for (final Level l : levels)
 			renderList.add(getTransformedSource(
@@ -1056,9 +1426,21 @@ public class MultiResolutionRendererGeneric<T>
 	public synchronized void setScreenScales(final double[] screenScales)
 	{
 		this.screenScales = screenScales.clone();
+		this.screenScaleController.setScreenScales(this.screenScales);
 		createVariables();
 	}
 
+	/**
+	 * @param isAdaptive if {@code true}, start rendering new frames at the finest screen scale that is expected to
+	 *                   render within {@code targetRenderNanos}. Otherwise, always start at the coarsest screen scale.
+	 * @param targetRenderNanos target render time for a frame in nanoseconds
+	 */
+	public synchronized void setScreenScaleAdaptation(final boolean isAdaptive, final long targetRenderNanos)
+	{
+		this.screenScaleController.setAdaptive(isAdaptive);
+		this.screenScaleController.setTargetRenderNanos(targetRenderNanos);
+	}
+
 	/**
 	 * Set {@code screenScaleTransform} to a screen scale transform at a given {@code screenScaleIndex}.
 	 *
@@ -1087,6 +1469,8 @@ public class MultiResolutionRendererGeneric<T>
 		}
 		screenScaleTransforms = new AffineTransform3D[screenScales.length];
 		pendingRepaintRequests = new Interval[screenScales.length];
+		lastCompleteFrame = null;
+		currentFrame = null;
 		maxScreenScaleIndex = screenScales.length - 1;
 		requestedScreenScaleIndex = maxScreenScaleIndex;
 	}
@@ -0,0 +1,169 @@
+package bdv.fx.viewer.render;
+
+import java.util.Arrays;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Estimate the velocity of the viewer from consecutive viewer transforms. Only translations in viewer space (panning
+ * in-plane and scrolling through planes) are tracked: any change of rotation or zoom resets the estimate.
+ *
+ * The velocity is an exponential moving average of the translation per frame. A translation that deviates from the
+ * current velocity by more than {@link #getMaxDirectionChangeDegrees()} starts a new estimate.
+ */
+public class NavigationPredictor
+{
+
+	public enum Motion
+	{
+		/**
+		 * The viewer did not move, the velocity estimate is unchanged.
+		 */
+		STATIONARY,
+		/**
+		 * The viewer moved in the direction of the current velocity estimate.
+		 */
+		CONTINUED,
+		/**
+		 * First transform, change of rotation or zoom, or change of direction. Predictions for the previous velocity
+		 * are obsolete.
+		 */
+		CHANGED
+	}
+
+	public static final double DEFAULT_MAX_DIRECTION_CHANGE_DEGREES = 60.0;
+
+	private static final double SMOOTHING = 0.5;
+
+	private static final double EPSILON = 1e-6;
+
+	private final AffineTransform3D last = new AffineTransform3D();
+
+	private boolean hasLast = false;
+
+	private final double[] velocity = new double[3];
+
+	private boolean hasVelocity = false;
+
+	private double maxDirectionChangeDegrees;
+
+	private double minCosine;
+
+	public NavigationPredictor()
+	{
+		this(DEFAULT_MAX_DIRECTION_CHANGE_DEGREES);
+	}
+
+	public NavigationPredictor(final double maxDirectionChangeDegrees)
+	{
+		setMaxDirectionChangeDegrees(maxDirectionChangeDegrees);
+	}
+
+	public double getMaxDirectionChangeDegrees()
+	{
+		return this.maxDirectionChangeDegrees;
+	}
+
+	public void setMaxDirectionChangeDegrees(final double maxDirectionChangeDegrees)
+	{
+		this.maxDirectionChangeDegrees = maxDirectionChangeDegrees;
+		this.minCosine = Math.cos(Math.toRadians(maxDirectionChangeDegrees));
+	}
+
+	/**
+	 * Update the velocity estimate with the transform of a new frame.
+	 *
+	 * @param viewerTransform global to viewer transform of the new frame
+	 * @return how the viewer moved with respect to the previous frame
+	 */
+	public Motion update(final AffineTransform3D viewerTransform)
+	{
+		if (!hasLast || !sameLinearPart(last, viewerTransform))
+		{
+			last.set(viewerTransform);
+			hasLast = true;
+			reset();
+			return Motion.CHANGED;
+		}
+
+		final double[] delta = new double[3];
+		Arrays.setAll(delta, d -> viewerTransform.get(d, 3) - last.get(d, 3));
+		last.set(viewerTransform);
+
+		final double deltaNorm = norm(delta);
+		if (deltaNorm < EPSILON)
+			return Motion.STATIONARY;
+
+		if (!hasVelocity)
+		{
+			System.arraycopy(delta, 0, velocity, 0, 3);
+			hasVelocity = true;
+			return Motion.CHANGED;
+		}
+
+		final double cosine = dot(delta, velocity) / (deltaNorm * norm(velocity));
+		if (cosine < minCosine)
+		{
+			System.arraycopy(delta, 0, velocity, 0, 3);
+			return Motion.CHANGED;
+		}
+
+		for (int d = 0; d < 3; ++d)
+			velocity[d] = SMOOTHING * velocity[d] + (1 - SMOOTHING) * delta[d];
+		return Motion.CONTINUED;
+	}
+
+	/**
+	 * Forget the current velocity estimate.
+	 */
+	public void reset()
+	{
+		Arrays.fill(velocity, 0.0);
+		hasVelocity = false;
+	}
+
+	public boolean hasVelocity()
+	{
+		return this.hasVelocity;
+	}
+
+	/**
+	 * @return estimated translation per frame in viewer coordinates, all zeros if not {@link #hasVelocity() available}
+	 */
+	public double[] getVelocity()
+	{
+		return velocity.clone();
+	}
+
+	/**
+	 * @param viewerTransform transform of the current frame
+	 * @param steps number of frames to look ahead
+	 * @return {@code viewerTransform} translated by {@code steps} times the estimated velocity
+	 */
+	public AffineTransform3D predict(final AffineTransform3D viewerTransform, final int steps)
+	{
+		final AffineTransform3D predicted = viewerTransform.copy();
+		predicted.translate(steps * velocity[0], steps * velocity[1], steps * velocity[2]);
+		return predicted;
+	}
+
+	private static boolean sameLinearPart(final AffineTransform3D t1, final AffineTransform3D t2)
+	{
+		for (int r = 0; r < 3; ++r)
+			for (int c = 0; c < 3; ++c)
+				if (Math.abs(t1.get(r, c) - t2.get(r, c)) > EPSILON)
+					return false;
+		return true;
+	}
+
+	private static double dot(final double[] v1, final double[] v2)
+	{
+		return v1[0] * v2[0] + v1[1] * v2[1] + v1[2] * v2[2];
+	}
+
+	private static double norm(final double[] v)
+	{
+		return Math.sqrt(dot(v, v));
+	}
+
+}
@@ -0,0 +1,476 @@
+package bdv.fx.viewer.render;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.util.MipmapTransforms;
+import bdv.viewer.Source;
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.Dimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request cells that will be visible in upcoming frames if the viewer keeps moving in its current direction, as
+ * estimated by a {@link NavigationPredictor}. Cells are requested with {@link LoadingStrategy#VOLATILE volatile}
+ * hints at a lower queue priority than any mipmap level of the current frame, after the current frame has been
+ * prefetched, so predictions never delay cells that are visible now.
+ *
+ * Requests cannot be removed from the fetcher queue, so a change of direction cancels predictions by no longer
+ * issuing requests for the old direction and by no longer tracking them. Requests that are still queued are
+ * demoted together with all other requests of previous frames by {@link bdv.cache.CacheControl#prepareNextFrame()}.
+ *
+ * Whether prediction pays off is measured when the viewer reaches a predicted transform: a predicted cell is a hit
+ * if it has been loaded by then, and a miss otherwise.
+ */
+public class PredictivePrefetcher
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_NUM_PREDICTED_FRAMES = 3;
+
+	public static final int DEFAULT_MAX_CELLS_PER_FRAME = 256;
+
+	private static final int MAX_PENDING_PREDICTIONS = 256;
+
+	/**
+	 * Tolerance (in viewer coordinates) for matching a new frame with a predicted transform.
+	 */
+	private static final double ARRIVAL_TOLERANCE = 0.5;
+
+	private final NavigationPredictor predictor = new NavigationPredictor();
+
+	private final ArrayDeque<Prediction> pending = new ArrayDeque<>();
+
+	private boolean isEnabled = true;
+
+	private int numPredictedFrames = DEFAULT_NUM_PREDICTED_FRAMES;
+
+	private int maxCellsPerFrame = DEFAULT_MAX_CELLS_PER_FRAME;
+
+	private final AffineTransform3D frameTransform = new AffineTransform3D();
+
+	private boolean predictForFrame = false;
+
+	private int remainingCellsInFrame = 0;
+
+	private long numRequestedCells = 0;
+
+	private long numAlreadyCachedCells = 0;
+
+	private long numHits = 0;
+
+	private long numMisses = 0;
+
+	private long numCancelledCells = 0;
+
+	private long numExpiredCells = 0;
+
+	private long numDirectionChanges = 0;
+
+	public synchronized boolean isEnabled()
+	{
+		return this.isEnabled;
+	}
+
+	/**
+	 * @param isEnabled if {@code false}, do not request any cells for predicted frames and discard pending predictions
+	 */
+	public synchronized void setEnabled(final boolean isEnabled)
+	{
+		this.isEnabled = isEnabled;
+		if (!isEnabled)
+		{
+			cancelPending();
+			predictor.reset();
+			predictForFrame = false;
+		}
+	}
+
+	public synchronized int getNumPredictedFrames()
+	{
+		return this.numPredictedFrames;
+	}
+
+	/**
+	 * @param numPredictedFrames look ahead this many frames (planes when scrolling, pan steps when panning)
+	 */
+	public synchronized void setNumPredictedFrames(final int numPredictedFrames)
+	{
+		this.numPredictedFrames = Math.max(numPredictedFrames, 0);
+	}
+
+	public synchronized int getMaxCellsPerFrame()
+	{
+		return this.maxCellsPerFrame;
+	}
+
+	/**
+	 * @param maxCellsPerFrame upper bound for the number of cells requested for predictions per rendered frame, shared
+	 *                         by all sources and predicted frames
+	 */
+	public synchronized void setMaxCellsPerFrame(final int maxCellsPerFrame)
+	{
+		this.maxCellsPerFrame = Math.max(maxCellsPerFrame, 0);
+	}
+
+	/**
+	 * Update the velocity estimate and evaluate pending predictions. Call once for each new frame, before
+	 * {@link #prefetch prefetching}.
+	 *
+	 * @param viewerTransform global to viewer transform of the new frame
+	 */
+	public synchronized void newFrame(final AffineTransform3D viewerTransform)
+	{
+		predictForFrame = false;
+		if (!isEnabled)
+			return;
+
+		final NavigationPredictor.Motion motion = predictor.update(viewerTransform);
+		if (motion == NavigationPredictor.Motion.STATIONARY)
+			return;
+
+		if (motion == NavigationPredictor.Motion.CHANGED)
+		{
+			if (!pending.isEmpty())
+				++numDirectionChanges;
+			cancelPending();
+		}
+		else
+			evaluatePending(viewerTransform);
+
+		frameTransform.set(viewerTransform);
+		remainingCellsInFrame = maxCellsPerFrame;
+		predictForFrame = predictor.hasVelocity() && numPredictedFrames > 0 && maxCellsPerFrame > 0;
+	}
+
+	/**
+	 * Request cells of {@code source} that will be visible in {@code screenInterval} during the next
+	 * {@link #getNumPredictedFrames() predicted frames}.
+	 *
+	 * @param viewerTransform transform of the current frame, possibly translated to the repainted region of the screen
+	 * @param screenScaleTransform transform from viewer to screen image coordinates
+	 * @param finestScreenScaleTransform transform from viewer to screen image coordinates at the finest screen scale,
+	 *                                   used to select the mipmap level that will eventually be displayed
+	 * @param screenInterval dimensions of the repainted region of the screen image
+	 */
+	public synchronized <T> void prefetch(
+			final Source<T> source,
+			final AxisOrder axisOrder,
+			final int timepoint,
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D screenScaleTransform,
+			final AffineTransform3D finestScreenScaleTransform,
+			final Dimensions screenInterval)
+	{
+		if (!predictForFrame || remainingCellsInFrame <= 0)
+			return;
+
+		final AffineTransform3D finestScreenTransform = viewerTransform.copy();
+		finestScreenTransform.preConcatenate(finestScreenScaleTransform);
+		final int level = MipmapTransforms.getBestMipMapLevel(finestScreenTransform, source, timepoint);
+
+		final RandomAccessibleInterval<T> img = source.getSource(timepoint, level);
+		if (!(img instanceof VolatileCachedCellImg))
+			return;
+		final VolatileCachedCellImg<?, ?> cellImg = (VolatileCachedCellImg<?, ?>) img;
+
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform(timepoint, level, sourceTransform);
+
+		// lower priority than any level of the current frame, at the back of its queue
+		final CacheHints hints = new CacheHints(LoadingStrategy.VOLATILE, source.getNumMipmapLevels(), false);
+		final RandomAccess<? extends Cell<?>> cells = cellsWithHints(cellImg, hints);
+		try
+		{
+			prefetch(cells, cellImg, axisOrder, viewerTransform, sourceTransform, screenScaleTransform, screenInterval);
+		} finally
+		{
+			cellImg.setCacheHints(cellImg.getDefaultCacheHints());
+		}
+		LOG.trace("Remaining prediction budget after source {}: {} cells", source.getName(), remainingCellsInFrame);
+	}
+
+	private void prefetch(
+			final RandomAccess<? extends Cell<?>> cells,
+			final VolatileCachedCellImg<?, ?> cellImg,
+			final AxisOrder axisOrder,
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D sourceTransform,
+			final AffineTransform3D screenScaleTransform,
+			final Dimensions screenInterval)
+	{
+		for (int step = 1; step <= numPredictedFrames && remainingCellsInFrame > 0; ++step)
+		{
+			final AffineTransform3D predicted = predictor.predict(viewerTransform, step);
+			final AffineTransform3D sourceToScreen = predicted.copy();
+			sourceToScreen.concatenate(axisOrder.asAffineTransform().inverse());
+			sourceToScreen.concatenate(sourceTransform);
+			sourceToScreen.preConcatenate(screenScaleTransform);
+
+			final long[][] cellRange = visibleCells(sourceToScreen.inverse(), screenInterval, cellImg);
+			if (cellRange == null)
+				continue;
+
+			final TLongArrayList requested = new TLongArrayList();
+			final long[] position = cellRange[0].clone();
+			while (remainingCellsInFrame > 0)
+			{
+				cells.setPosition(position);
+				--remainingCellsInFrame;
+				if (isValid(cells.get()))
+					++numAlreadyCachedCells;
+				else
+				{
+					requested.add(position);
+					++numRequestedCells;
+				}
+				if (!next(position, cellRange[0], cellRange[1]))
+					break;
+			}
+
+			if (!requested.isEmpty())
+				addPending(new Prediction(predictor.predict(frameTransform, step), cellImg, requested.toArray(), step));
+		}
+	}
+
+	public synchronized long getNumRequestedCells()
+	{
+		return this.numRequestedCells;
+	}
+
+	public synchronized long getNumAlreadyCachedCells()
+	{
+		return this.numAlreadyCachedCells;
+	}
+
+	/**
+	 * @return number of requested cells that were loaded when the viewer reached the predicted transform
+	 */
+	public synchronized long getNumHits()
+	{
+		return this.numHits;
+	}
+
+	/**
+	 * @return number of requested cells that were not yet loaded when the viewer reached the predicted transform
+	 */
+	public synchronized long getNumMisses()
+	{
+		return this.numMisses;
+	}
+
+	/**
+	 * @return number of requested cells of predictions that were cancelled due to a change of direction
+	 */
+	public synchronized long getNumCancelledCells()
+	{
+		return this.numCancelledCells;
+	}
+
+	/**
+	 * @return number of requested cells of predictions that the viewer never reached without a change of direction
+	 */
+	public synchronized long getNumExpiredCells()
+	{
+		return this.numExpiredCells;
+	}
+
+	public synchronized long getNumDirectionChanges()
+	{
+		return this.numDirectionChanges;
+	}
+
+	/**
+	 * @return fraction of reached predicted cells that were loaded on arrival, {@link Double#NaN} if no predicted
+	 * transform was reached yet
+	 */
+	public synchronized double getHitRatio()
+	{
+		return numHits + numMisses == 0 ? Double.NaN : numHits / (double) (numHits + numMisses);
+	}
+
+	public synchronized void resetStatistics()
+	{
+		numRequestedCells = 0;
+		numAlreadyCachedCells = 0;
+		numHits = 0;
+		numMisses = 0;
+		numCancelledCells = 0;
+		numExpiredCells = 0;
+		numDirectionChanges = 0;
+	}
+
+	private void evaluatePending(final AffineTransform3D viewerTransform)
+	{
+		final CacheHints dontLoad = new CacheHints(LoadingStrategy.DONTLOAD, 0, false);
+		for (final Iterator<Prediction> it = pending.iterator(); it.hasNext(); )
+		{
+			final Prediction prediction = it.next();
+			if (prediction.isReachedBy(viewerTransform))
+			{
+				it.remove();
+				final RandomAccess<? extends Cell<?>> cells = cellsWithHints(prediction.img, dontLoad);
+				try
+				{
+					final long[] position = new long[3];
+					for (int i = 0; i < prediction.cellPositions.length; i += 3)
+					{
+						System.arraycopy(prediction.cellPositions, i, position, 0, 3);
+						cells.setPosition(position);
+						if (isValid(cells.get()))
+							++numHits;
+						else
+							++numMisses;
+					}
+				} finally
+				{
+					prediction.img.setCacheHints(prediction.img.getDefaultCacheHints());
+				}
+			}
+			else if (--prediction.remainingFrames < 0)
+			{
+				it.remove();
+				numExpiredCells += prediction.numCells();
+			}
+		}
+	}
+
+	private void cancelPending()
+	{
+		pending.forEach(p -> numCancelledCells += p.numCells());
+		pending.clear();
+	}
+
+	private void addPending(final Prediction prediction)
+	{
+		pending.add(prediction);
+		while (pending.size() > MAX_PENDING_PREDICTIONS)
+			numExpiredCells += pending.poll().numCells();
+	}
+
+	/**
+	 * The cache hints of {@code img} are shared with the renderers of all viewers and anybody else who reads
+	 * {@code img}: Callers must restore the default hints of {@code img} when they are done with the returned cells.
+	 */
+	private static RandomAccess<? extends Cell<?>> cellsWithHints(final VolatileCachedCellImg<?, ?> img, final CacheHints hints)
+	{
+		img.setCacheHints(hints);
+		return img.getCells().randomAccess();
+	}
+
+	private static boolean isValid(final Cell<?> cell)
+	{
+		final Object data = cell.getData();
+		return !(data instanceof VolatileAccess) || ((VolatileAccess) data).isValid();
+	}
+
+	/**
+	 * @return min and max (inclusive) grid positions of all cells that intersect the screen plane, or {@code null}
+	 * if the screen plane does not intersect {@code img}
+	 */
+	private static long[][] visibleCells(
+			final AffineTransform3D screenToSource,
+			final Dimensions screenInterval,
+			final VolatileCachedCellImg<?, ?> img)
+	{
+		final double[] min = new double[3];
+		final double[] max = new double[3];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		final double[] corner = new double[3];
+		final double[] sourceCorner = new double[3];
+		for (int c = 0; c < 4; ++c)
+		{
+			corner[0] = (c & 1) == 0 ? 0 : screenInterval.dimension(0);
+			corner[1] = (c & 2) == 0 ? 0 : screenInterval.dimension(1);
+			screenToSource.apply(corner, sourceCorner);
+			for (int d = 0; d < 3; ++d)
+			{
+				min[d] = Math.min(min[d], sourceCorner[d]);
+				max[d] = Math.max(max[d], sourceCorner[d]);
+			}
+		}
+
+		final int[] cellDimensions = new int[3];
+		img.getCellGrid().cellDimensions(cellDimensions);
+		final long[][] cellRange = new long[2][3];
+		for (int d = 0; d < 3; ++d)
+		{
+			// one voxel of padding for interpolation
+			final long lo = Math.max((long) Math.floor(min[d]) - 1, 0);
+			final long hi = Math.min((long) Math.ceil(max[d]) + 1, img.dimension(d) - 1);
+			if (lo > hi)
+				return null;
+			cellRange[0][d] = lo / cellDimensions[d];
+			cellRange[1][d] = hi / cellDimensions[d];
+		}
+		return cellRange;
+	}
+
+	private static boolean next(final long[] position, final long[] min, final long[] max)
+	{
+		for (int d = 0; d < position.length; ++d)
+		{
+			if (position[d] < max[d])
+			{
+				++position[d];
+				return true;
+			}
+			position[d] = min[d];
+		}
+		return false;
+	}
+
+	private static final class Prediction
+	{
+
+		private final double[] translation = new double[3];
+
+		private final VolatileCachedCellImg<?, ?> img;
+
+		private final long[] cellPositions;
+
+		private int remainingFrames;
+
+		private Prediction(
+				final AffineTransform3D predictedTransform,
+				final VolatileCachedCellImg<?, ?> img,
+				final long[] cellPositions,
+				final int step)
+		{
+			Arrays.setAll(translation, d -> predictedTransform.get(d, 3));
+			this.img = img;
+			this.cellPositions = cellPositions;
+			// allow some slack for frames that are skipped or moved slower than predicted
+			this.remainingFrames = 2 * step;
+		}
+
+		private boolean isReachedBy(final AffineTransform3D viewerTransform)
+		{
+			for (int d = 0; d < 3; ++d)
+				if (Math.abs(viewerTransform.get(d, 3) - translation[d]) > ARRIVAL_TOLERANCE)
+					return false;
+			return true;
+		}
+
+		private int numCells()
+		{
+			return cellPositions.length / 3;
+		}
+
+	}
+
+}
@@ -0,0 +1,322 @@
+package bdv.fx.viewer.render;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ring buffer of the {@link FrameMetrics} of the most recent frames of a {@link RenderUnit}. Metrics can be inspected
+ * through JMX after {@link #register(String) registration}, and exported as CSV to compare sessions and hardware.
+ */
+public class RenderMetrics implements RenderMetricsMXBean
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public static final String JMX_DOMAIN = "org.janelia.saalfeldlab.paintera";
+
+	private final FrameMetrics[] frames;
+
+	private int next = 0;
+
+	private int size = 0;
+
+	private long numRecordedFrames = 0;
+
+	private final List<Consumer<FrameMetrics>> listeners = new CopyOnWriteArrayList<>();
+
+	private ObjectName objectName = null;
+
+	private PredictivePrefetcher predictivePrefetcher = null;
+
+	public RenderMetrics()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RenderMetrics(final int capacity)
+	{
+		this.frames = new FrameMetrics[Math.max(capacity, 1)];
+	}
+
+	public void record(final FrameMetrics metrics)
+	{
+		synchronized (this)
+		{
+			frames[next] = metrics;
+			next = (next + 1) % frames.length;
+			size = Math.min(size + 1, frames.length);
+			++numRecordedFrames;
+		}
+		listeners.forEach(l -> l.accept(metrics));
+	}
+
+	/**
+	 * @param predictivePrefetcher source of the prediction statistics, or {@code null} if not available
+	 */
+	public void setPredictivePrefetcher(final PredictivePrefetcher predictivePrefetcher)
+	{
+		this.predictivePrefetcher = predictivePrefetcher;
+	}
+
+	/**
+	 * @param listener is notified on the rendering thread after each recorded frame
+	 */
+	public void addListener(final Consumer<FrameMetrics> listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(final Consumer<FrameMetrics> listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return buffered frames, oldest first
+	 */
+	public synchronized List<FrameMetrics> getFrames()
+	{
+		final List<FrameMetrics> list = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i)
+			list.add(frames[(next - size + i + frames.length) % frames.length]);
+		return list;
+	}
+
+	/**
+	 * @return most recent frame or {@code null} if no frame was recorded
+	 */
+	public synchronized FrameMetrics getLastFrame()
+	{
+		return size == 0 ? null : frames[(next - 1 + frames.length) % frames.length];
+	}
+
+	@Override
+	public int getCapacity()
+	{
+		return frames.length;
+	}
+
+	@Override
+	public synchronized int getNumBufferedFrames()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized long getNumRecordedFrames()
+	{
+		return numRecordedFrames;
+	}
+
+	@Override
+	public double getLastFrameMillis()
+	{
+		final FrameMetrics last = getLastFrame();
+		return last == null ? Double.NaN : last.getFrameNanos() * 1e-6;
+	}
+
+	@Override
+	public double getMeanFrameMillis()
+	{
+		return mean(m -> m.getFrameNanos() * 1e-6);
+	}
+
+	@Override
+	public double getMaxFrameMillis()
+	{
+		return getFrames().stream().mapToDouble(m -> m.getFrameNanos() * 1e-6).max().orElse(Double.NaN);
+	}
+
+	@Override
+	public double getMeanRenderMillis()
+	{
+		return mean(m -> m.getRenderNanos() * 1e-6);
+	}
+
+	@Override
+	public double getMeanIoMillis()
+	{
+		return mean(m -> m.getIoNanos() * 1e-6);
+	}
+
+	@Override
+	public int getLastScreenScaleIndex()
+	{
+		final FrameMetrics last = getLastFrame();
+		return last == null ? -1 : last.getScreenScaleIndex();
+	}
+
+	@Override
+	public double getFractionValidFrames()
+	{
+		return mean(m -> m.isValid() ? 1.0 : 0.0);
+	}
+
+	@Override
+	public long[] getLastInvalidPixelsPerLevel()
+	{
+		final FrameMetrics last = getLastFrame();
+		return last == null ? new long[0] : last.getInvalidPixelsPerLevel();
+	}
+
+	@Override
+	public long getCacheHits()
+	{
+		return getFrames().stream().mapToLong(FrameMetrics::getCacheHits).sum();
+	}
+
+	@Override
+	public long getCacheMisses()
+	{
+		return getFrames().stream().mapToLong(FrameMetrics::getCacheMisses).sum();
+	}
+
+	@Override
+	public double getCacheHitRatio()
+	{
+		final List<FrameMetrics> buffered = getFrames();
+		final long hits = buffered.stream().mapToLong(FrameMetrics::getCacheHits).sum();
+		final long misses = buffered.stream().mapToLong(FrameMetrics::getCacheMisses).sum();
+		return hits + misses == 0 ? Double.NaN : hits / (double) (hits + misses);
+	}
+
+	@Override
+	public long getPredictedCellsRequested()
+	{
+		return predictivePrefetcher == null ? 0 : predictivePrefetcher.getNumRequestedCells();
+	}
+
+	@Override
+	public long getPredictionHits()
+	{
+		return predictivePrefetcher == null ? 0 : predictivePrefetcher.getNumHits();
+	}
+
+	@Override
+	public long getPredictionMisses()
+	{
+		return predictivePrefetcher == null ? 0 : predictivePrefetcher.getNumMisses();
+	}
+
+	@Override
+	public long getPredictionsCancelled()
+	{
+		return predictivePrefetcher == null ? 0 : predictivePrefetcher.getNumCancelledCells();
+	}
+
+	@Override
+	public double getPredictionHitRatio()
+	{
+		return predictivePrefetcher == null ? Double.NaN : predictivePrefetcher.getHitRatio();
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		Arrays.fill(frames, null);
+		next = 0;
+		size = 0;
+		numRecordedFrames = 0;
+		if (predictivePrefetcher != null)
+			predictivePrefetcher.resetStatistics();
+	}
+
+	@Override
+	public void exportCsv(final String path) throws IOException
+	{
+		exportCsv(Paths.get(path));
+	}
+
+	public void exportCsv(final Path path) throws IOException
+	{
+		LOG.info("Exporting render metrics to {}", path);
+		if (path.getParent() != null)
+			Files.createDirectories(path.getParent());
+		try (final BufferedWriter writer = Files.newBufferedWriter(path))
+		{
+			writeCsv(writer);
+		}
+	}
+
+	/**
+	 * Write header and buffered frames, oldest first.
+	 */
+	public void writeCsv(final Writer writer) throws IOException
+	{
+		writer.write(FrameMetrics.CSV_HEADER);
+		writer.write("\n");
+		for (final FrameMetrics frame : getFrames())
+		{
+			writer.write(frame.toCsvRow());
+			writer.write("\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Register with the platform {@link MBeanServer} as {@code org.janelia.saalfeldlab.paintera:type=RenderMetrics,name=<name>}.
+	 * Registration failures are logged and otherwise ignored.
+	 *
+	 * @return {@code true} if registration was successful
+	 */
+	public synchronized boolean register(final String name)
+	{
+		unregister();
+		try
+		{
+			final ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=RenderMetrics,name=" + ObjectName.quote(name));
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(this, objectName);
+			this.objectName = objectName;
+			LOG.debug("Registered render metrics as {}", objectName);
+			return true;
+		} catch (final JMException e)
+		{
+			LOG.warn("Unable to register render metrics `{}' with JMX: {}", name, e.getMessage());
+			return false;
+		}
+	}
+
+	public synchronized void unregister()
+	{
+		if (objectName == null)
+			return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (final JMException e)
+		{
+			LOG.debug("Unable to unregister render metrics {}: {}", objectName, e.getMessage());
+		}
+		objectName = null;
+	}
+
+	private double mean(final ToDoubleFunction<FrameMetrics> value)
+	{
+		return getFrames().stream().mapToDouble(value).average().orElse(Double.NaN);
+	}
+
+}
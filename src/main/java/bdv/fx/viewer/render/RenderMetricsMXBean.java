@@ -0,0 +1,54 @@
+package bdv.fx.viewer.render;
+
+import java.io.IOException;
+
+/**
+ * JMX view of {@link RenderMetrics}. Aggregates are computed over the frames currently held in the ring buffer.
+ * Prediction statistics of the {@link PredictivePrefetcher} accumulate until {@link #reset()}.
+ */
+public interface RenderMetricsMXBean
+{
+
+	int getCapacity();
+
+	int getNumBufferedFrames();
+
+	long getNumRecordedFrames();
+
+	double getLastFrameMillis();
+
+	double getMeanFrameMillis();
+
+	double getMaxFrameMillis();
+
+	double getMeanRenderMillis();
+
+	double getMeanIoMillis();
+
+	int getLastScreenScaleIndex();
+
+	double getFractionValidFrames();
+
+	long[] getLastInvalidPixelsPerLevel();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRatio();
+
+	long getPredictedCellsRequested();
+
+	long getPredictionHits();
+
+	long getPredictionMisses();
+
+	long getPredictionsCancelled();
+
+	double getPredictionHitRatio();
+
+	void reset();
+
+	void exportCsv(String path) throws IOException;
+
+}
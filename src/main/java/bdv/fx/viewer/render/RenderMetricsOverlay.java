@@ -0,0 +1,71 @@
+package bdv.fx.viewer.render;
+
+import java.util.Arrays;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * Draw a summary of {@link RenderMetrics} into the top left corner of a viewer.
+ */
+public class RenderMetricsOverlay implements OverlayRendererGeneric<GraphicsContext>
+{
+
+	private static final Color BACKGROUND_COLOR = Color.rgb(0, 0, 0, 0.5);
+
+	private static final Color FOREGROUND_COLOR = Color.WHITE;
+
+	private static final Font FONT = Font.font("Monospaced", 11);
+
+	private static final double LINE_HEIGHT = 14;
+
+	private final RenderMetrics metrics;
+
+	private final BooleanProperty isVisible = new SimpleBooleanProperty(false);
+
+	public RenderMetricsOverlay(final RenderMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	public BooleanProperty isVisibleProperty()
+	{
+		return this.isVisible;
+	}
+
+	@Override
+	public void drawOverlays(final GraphicsContext g)
+	{
+		if (!isVisible.get())
+			return;
+
+		final FrameMetrics last = metrics.getLastFrame();
+		final String[] lines = {
+				String.format("frame  %7.1fms (mean %.1fms, max %.1fms)", last == null ? Double.NaN : last.getFrameNanos() * 1e-6, metrics.getMeanFrameMillis(), metrics.getMaxFrameMillis()),
+				String.format("io     %7.1fms (mean %.1fms)", last == null ? Double.NaN : last.getIoNanos() * 1e-6, metrics.getMeanIoMillis()),
+				String.format("scale  %d, valid %.0f%%", metrics.getLastScreenScaleIndex(), 100 * metrics.getFractionValidFrames()),
+				String.format("invalid %s", Arrays.toString(metrics.getLastInvalidPixelsPerLevel())),
+				String.format("cache  %.1f%% hits", 100 * metrics.getCacheHitRatio()),
+				String.format("predict %.1f%% hits (%d cells, %d cancelled)", 100 * metrics.getPredictionHitRatio(), metrics.getPredictedCellsRequested(), metrics.getPredictionsCancelled())
+		};
+
+		final double x = 10;
+		final double y = 10;
+		final double width = Arrays.stream(lines).mapToInt(String::length).max().orElse(0) * 7.0 + 10;
+		g.setFill(BACKGROUND_COLOR);
+		g.fillRect(x, y, width, lines.length * LINE_HEIGHT + 8);
+		g.setFill(FOREGROUND_COLOR);
+		g.setFont(FONT);
+		for (int i = 0; i < lines.length; ++i)
+			g.fillText(lines[i], x + 5, y + (i + 1) * LINE_HEIGHT);
+	}
+
+	@Override
+	public void setCanvasSize(final int width, final int height)
+	{
+	}
+
+}
@@ -61,7 +61,9 @@ public class RenderUnit implements PainterThread.Paintable {
 
 	private final CacheControl cacheControl;
 
-	private final long targetRenderNanos;
+	private long targetRenderNanos;
+
+	private boolean isScreenScaleAdaptive = true;
 
 	private final int numRenderingThreads;
 
@@ -69,6 +71,10 @@ public class RenderUnit implements PainterThread.Paintable {
 
 	private final List<Runnable> updateListeners = new ArrayList<>();
 
+	private final RenderMetrics renderMetrics = new RenderMetrics();
+
+	private final PredictivePrefetcher predictivePrefetcher = new PredictivePrefetcher();
+
 	public RenderUnit(
 			final ThreadGroup threadGroup,
 			final Supplier<ViewerState> viewerState,
@@ -88,6 +94,7 @@ public class RenderUnit implements PainterThread.Paintable {
 		this.targetRenderNanos = targetRenderNanos;
 		this.numRenderingThreads = numRenderingThreads;
 		this.renderingExecutorService = renderingExecutorService;
+		this.renderMetrics.setPredictivePrefetcher(predictivePrefetcher);
 		update();
 	}
 
@@ -122,6 +129,15 @@ public class RenderUnit implements PainterThread.Paintable {
 		renderer.requestRepaint(new FinalInterval(dimensions));
 	}
 
+	/**
+	 * Do not re-use previously rendered pixels for the next repaint, e.g. because the contents of the sources changed.
+	 */
+	public synchronized void invalidateRenderedFrames()
+	{
+		if (renderer != null)
+			renderer.invalidateRenderedFrames();
+	}
+
 	/**
 	 * Request repaint of specified interval
 	 *
@@ -164,6 +180,36 @@ public class RenderUnit implements PainterThread.Paintable {
 			renderer.setScreenScales(screenScales);
 	}
 
+	/**
+	 * Configure selection of the screen scale at which rendering of a new frame starts.
+	 *
+	 * @param isAdaptive if {@code true}, start at the finest screen scale that is expected to render within
+	 *                   {@code targetRenderNanos}, otherwise at the coarsest screen scale
+	 * @param targetRenderNanos target render time for a frame in nanoseconds
+	 */
+	public synchronized void setScreenScaleAdaptation(final boolean isAdaptive, final long targetRenderNanos)
+	{
+		this.isScreenScaleAdaptive = isAdaptive;
+		this.targetRenderNanos = targetRenderNanos;
+		if (renderer != null)
+			renderer.setScreenScaleAdaptation(isAdaptive, targetRenderNanos);
+	}
+
+	/**
+	 * Configure prefetching of cells for frames that are expected next if the viewer keeps moving in its current
+	 * direction.
+	 *
+	 * @param isEnabled enable or disable predictive prefetching
+	 * @param numPredictedFrames number of frames to look ahead
+	 * @param maxCellsPerFrame maximum number of cells requested for predictions per rendered frame
+	 */
+	public void setPredictivePrefetching(final boolean isEnabled, final int numPredictedFrames, final int maxCellsPerFrame)
+	{
+		predictivePrefetcher.setEnabled(isEnabled);
+		predictivePrefetcher.setNumPredictedFrames(numPredictedFrames);
+		predictivePrefetcher.setMaxCellsPerFrame(maxCellsPerFrame);
+	}
+
 	private synchronized void update()
 	{
 		LOG.debug("Updating render unit");
@@ -192,10 +238,29 @@ public class RenderUnit implements PainterThread.Paintable {
 				accumulateProjectorFactory,
 				cacheControl
 		);
+		renderer.setScreenScaleAdaptation(isScreenScaleAdaptive, targetRenderNanos);
+		renderer.setRenderMetrics(renderMetrics);
+		renderer.setPredictivePrefetcher(predictivePrefetcher);
 
 		notifyUpdated();
 	}
 
+	/**
+	 * @return metrics of the most recent frames, kept across updates of the renderer
+	 */
+	public RenderMetrics getRenderMetrics()
+	{
+		return renderMetrics;
+	}
+
+	/**
+	 * @return predictive prefetcher for configuration and statistics, kept across updates of the renderer
+	 */
+	public PredictivePrefetcher getPredictivePrefetcher()
+	{
+		return predictivePrefetcher;
+	}
+
 	public synchronized ReadOnlyObjectProperty<RenderResult> getRenderedImageProperty()
 	{
 		return renderResultProperty;
@@ -0,0 +1,172 @@
+package bdv.fx.viewer.render;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Select the (coarsest) screen scale at which {@link MultiResolutionRendererGeneric} starts rendering a new frame.
+ * Render times are tracked per screen scale and per {@link Interaction} as exponential moving averages. A new frame
+ * starts at the finest screen scale that is expected to render within {@link #getTargetRenderNanos() the target
+ * render time}. Render times for screen scales that have not been rendered yet are extrapolated from the closest
+ * coarser screen scale with known render time, assuming that render time is proportional to the number of pixels.
+ * <p>
+ * To avoid oscillation between two screen scales, the start index only moves to a finer screen scale if the expected
+ * render time is below {@code (1 - hysteresis) * targetRenderNanos}.
+ */
+public class ScreenScaleController
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	/**
+	 * Render times differ substantially between navigation, which renders the entire screen, and painting, which
+	 * only re-renders small parts of the screen, and are tracked separately.
+	 */
+	public enum Interaction
+	{
+		NAVIGATE,
+		PAINT
+	}
+
+	public static final double DEFAULT_SMOOTHING = 0.25;
+
+	public static final double DEFAULT_HYSTERESIS = 0.25;
+
+	private final double smoothing;
+
+	private final double hysteresis;
+
+	private long targetRenderNanos;
+
+	private boolean isAdaptive = true;
+
+	private double[] screenScales = new double[0];
+
+	/**
+	 * Smoothed render times, first index is {@link Interaction#ordinal()}, second index is screen scale index.
+	 * {@link Double#NaN} if not rendered yet.
+	 */
+	private double[][] smoothedRenderNanos = new double[Interaction.values().length][0];
+
+	private final int[] startScreenScaleIndex = new int[Interaction.values().length];
+
+	/**
+	 * @param targetRenderNanos target render time for a frame in nanoseconds
+	 * @param smoothing weight of the most recent render time in the moving average, in {@code (0, 1]}
+	 * @param hysteresis relative margin below {@code targetRenderNanos} required to switch to a finer screen scale
+	 */
+	public ScreenScaleController(final long targetRenderNanos, final double smoothing, final double hysteresis)
+	{
+		this.targetRenderNanos = targetRenderNanos;
+		this.smoothing = smoothing;
+		this.hysteresis = hysteresis;
+	}
+
+	public ScreenScaleController(final long targetRenderNanos)
+	{
+		this(targetRenderNanos, DEFAULT_SMOOTHING, DEFAULT_HYSTERESIS);
+	}
+
+	/**
+	 * Reset history for new {@code screenScales}.
+	 */
+	public synchronized void setScreenScales(final double[] screenScales)
+	{
+		this.screenScales = screenScales.clone();
+		for (int i = 0; i < smoothedRenderNanos.length; ++i)
+		{
+			smoothedRenderNanos[i] = new double[screenScales.length];
+			Arrays.fill(smoothedRenderNanos[i], Double.NaN);
+		}
+		Arrays.fill(startScreenScaleIndex, screenScales.length - 1);
+	}
+
+	public synchronized long getTargetRenderNanos()
+	{
+		return this.targetRenderNanos;
+	}
+
+	public synchronized void setTargetRenderNanos(final long targetRenderNanos)
+	{
+		this.targetRenderNanos = targetRenderNanos;
+		for (final Interaction interaction : Interaction.values())
+			updateStartScreenScaleIndex(interaction);
+	}
+
+	/**
+	 * @param isAdaptive if {@code false}, always start at the coarsest screen scale.
+	 */
+	public synchronized void setAdaptive(final boolean isAdaptive)
+	{
+		this.isAdaptive = isAdaptive;
+	}
+
+	public synchronized boolean isAdaptive()
+	{
+		return this.isAdaptive;
+	}
+
+	/**
+	 * Record render time of a completed frame.
+	 */
+	public synchronized void update(final Interaction interaction, final int screenScaleIndex, final long renderNanos)
+	{
+		final double[] history = smoothedRenderNanos[interaction.ordinal()];
+		if (screenScaleIndex < 0 || screenScaleIndex >= history.length || renderNanos <= 0)
+			return;
+		final double previous = history[screenScaleIndex];
+		history[screenScaleIndex] = Double.isNaN(previous)
+				? renderNanos
+				: smoothing * renderNanos + (1.0 - smoothing) * previous;
+		updateStartScreenScaleIndex(interaction);
+	}
+
+	/**
+	 * @return index of the screen scale at which to start rendering a new frame for {@code interaction}
+	 */
+	public synchronized int getStartScreenScaleIndex(final Interaction interaction)
+	{
+		return isAdaptive ? startScreenScaleIndex[interaction.ordinal()] : screenScales.length - 1;
+	}
+
+	/**
+	 * @return expected render time at {@code screenScaleIndex} for {@code interaction}, or {@link Double#NaN} if
+	 * no coarser or equal screen scale has been rendered yet.
+	 */
+	public synchronized double getExpectedRenderNanos(final Interaction interaction, final int screenScaleIndex)
+	{
+		final double[] history = smoothedRenderNanos[interaction.ordinal()];
+		for (int index = screenScaleIndex; index < history.length; ++index)
+		{
+			if (!Double.isNaN(history[index]))
+			{
+				final double ratio = screenScales[screenScaleIndex] / screenScales[index];
+				return history[index] * ratio * ratio;
+			}
+		}
+		return Double.NaN;
+	}
+
+	private void updateStartScreenScaleIndex(final Interaction interaction)
+	{
+		final int current = startScreenScaleIndex[interaction.ordinal()];
+		int start = screenScales.length - 1;
+		for (int index = screenScales.length - 1; index >= 0; --index)
+		{
+			final double expected = getExpectedRenderNanos(interaction, index);
+			if (Double.isNaN(expected))
+				break;
+			final double threshold = index < current ? (1.0 - hysteresis) * targetRenderNanos : targetRenderNanos;
+			if (expected > threshold)
+				break;
+			start = index;
+		}
+		if (start != current)
+			LOG.debug("Changing start screen scale index for {} from {} to {}", interaction, current, start);
+		startScreenScaleIndex[interaction.ordinal()] = Math.max(start, 0);
+	}
+
+}
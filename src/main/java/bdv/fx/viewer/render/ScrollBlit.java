@@ -0,0 +1,152 @@
+package bdv.fx.viewer.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Helpers for re-using a previously rendered frame when the viewer is panned in-plane: If two viewer transforms differ
+ * only by an in-plane translation that is an integer number of render target pixels, the overlapping region can be
+ * copied from the previous frame and only the newly exposed strips at the borders need to be rendered.
+ */
+public class ScrollBlit
+{
+
+	/**
+	 * Tolerance for the comparison of the linear part and the out-of-plane translation of viewer transforms.
+	 */
+	private static final double TRANSFORM_EPSILON = 1e-9;
+
+	/**
+	 * Maximum deviation of the in-plane shift from an integer number of render target pixels.
+	 */
+	private static final double PIXEL_EPSILON = 1e-3;
+
+	private ScrollBlit()
+	{
+	}
+
+	/**
+	 * @param from
+	 * 		viewer transform of the previous frame
+	 * @param to
+	 * 		viewer transform of the new frame
+	 * @param screenScale
+	 * 		ratio between render target pixels and screen pixels
+	 * @param width
+	 * 		width of the render target
+	 * @param height
+	 * 		height of the render target
+	 *
+	 * @return shift {@code (dx, dy)} in render target pixels such that pixel {@code (x - dx, y - dy)} of the previous
+	 * frame is pixel {@code (x, y)} of the new frame, or {@code null} if {@code to} is not a non-trivial in-plane
+	 * translation of {@code from} by an integer number of pixels with a non-empty overlap.
+	 */
+	public static long[] shift(
+			final AffineTransform3D from,
+			final AffineTransform3D to,
+			final double screenScale,
+			final int width,
+			final int height)
+	{
+		for (int r = 0; r < 3; ++r)
+			for (int c = 0; c < 3; ++c)
+				if (!isClose(from.get(r, c), to.get(r, c)))
+					return null;
+
+		if (!isClose(from.get(2, 3), to.get(2, 3)))
+			return null;
+
+		final double dx = (to.get(0, 3) - from.get(0, 3)) * screenScale;
+		final double dy = (to.get(1, 3) - from.get(1, 3)) * screenScale;
+		final long roundedDx = Math.round(dx);
+		final long roundedDy = Math.round(dy);
+		if (Math.abs(dx - roundedDx) > PIXEL_EPSILON || Math.abs(dy - roundedDy) > PIXEL_EPSILON)
+			return null;
+
+		// no shift means the frame is re-rendered because its contents changed
+		if (roundedDx == 0 && roundedDy == 0)
+			return null;
+
+		if (Math.abs(roundedDx) >= width || Math.abs(roundedDy) >= height)
+			return null;
+
+		return new long[] {roundedDx, roundedDy};
+	}
+
+	/**
+	 * Copy the region of {@code source} that is still visible after shifting by {@code (dx, dy)} into {@code target}.
+	 * Both images are {@code width x height} and stored in flat row-major order.
+	 */
+	public static void copy(
+			final IntAccess source,
+			final IntAccess target,
+			final int width,
+			final int height,
+			final long dx,
+			final long dy)
+	{
+		final int shiftX = (int) dx;
+		final int shiftY = (int) dy;
+		final int xMin = Math.max(0, shiftX);
+		final int xMax = Math.min(width, width + shiftX);
+		final int yMin = Math.max(0, shiftY);
+		final int yMax = Math.min(height, height + shiftY);
+		final int rowLength = xMax - xMin;
+		if (rowLength <= 0)
+			return;
+
+		final boolean isArray = source instanceof IntArray && target instanceof IntArray;
+		final int[] sourceData = isArray ? ((IntArray) source).getCurrentStorageArray() : null;
+		final int[] targetData = isArray ? ((IntArray) target).getCurrentStorageArray() : null;
+
+		for (int y = yMin; y < yMax; ++y)
+		{
+			final int targetOffset = y * width + xMin;
+			final int sourceOffset = (y - shiftY) * width + xMin - shiftX;
+			if (isArray)
+				System.arraycopy(sourceData, sourceOffset, targetData, targetOffset, rowLength);
+			else
+				for (int x = 0; x < rowLength; ++x)
+					target.setValue(targetOffset + x, source.getValue(sourceOffset + x));
+		}
+	}
+
+	/**
+	 * @return the (at most two) intervals of a {@code width x height} render target that are not covered by the
+	 * previous frame after shifting by {@code (dx, dy)}: a strip of full width for vertical shifts and a strip of the
+	 * remaining height for horizontal shifts.
+	 */
+	public static List<Interval> exposedIntervals(final int width, final int height, final long dx, final long dy)
+	{
+		final List<Interval> intervals = new ArrayList<>();
+
+		if (dy > 0)
+			intervals.add(new FinalInterval(new long[] {0, 0}, new long[] {width - 1, dy - 1}));
+		else if (dy < 0)
+			intervals.add(new FinalInterval(new long[] {0, height + dy}, new long[] {width - 1, height - 1}));
+
+		final long yMin = Math.max(0, dy);
+		final long yMax = Math.min(height, height + dy) - 1;
+		if (yMax >= yMin)
+		{
+			if (dx > 0)
+				intervals.add(new FinalInterval(new long[] {0, yMin}, new long[] {dx - 1, yMax}));
+			else if (dx < 0)
+				intervals.add(new FinalInterval(new long[] {width + dx, yMin}, new long[] {width - 1, yMax}));
+		}
+
+		return intervals;
+	}
+
+	private static boolean isClose(final double a, final double b)
+	{
+		return Math.abs(a - b) <= TRANSFORM_EPSILON * Math.max(1.0, Math.max(Math.abs(a), Math.abs(b)));
+	}
+
+}
@@ -73,6 +73,16 @@ public class AccessedBlocksRandomAccessible<T> extends AbstractWrappedInterval<R
 		this.visitedBlocks.add(id);
 	}
 
+	/**
+	 * Mark blocks as accessed that were written without a {@link TrackingRandomAccess}, e.g. concurrently.
+	 *
+	 * @param ids block indices
+	 */
+	public void addBlockIds(final long... ids)
+	{
+		this.visitedBlocks.addAll(ids);
+	}
+
 	public long[] listBlocks()
 	{
 		return visitedBlocks.toArray();
@@ -1,6 +1,8 @@
 package org.janelia.saalfeldlab.fx.ortho;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -14,10 +16,14 @@ import org.slf4j.LoggerFactory;
 
 import bdv.cache.CacheControl;
 import bdv.fx.viewer.ViewerPanelFX;
+import bdv.fx.viewer.render.RenderMetrics;
+import bdv.fx.viewer.render.RenderMetricsOverlay;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerOptions;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.event.EventType;
@@ -107,6 +113,12 @@ public class OrthogonalViews<BR extends Node>
 		}
 	}
 
+	private static final String TOP_LEFT = "top-left";
+
+	private static final String TOP_RIGHT = "top-right";
+
+	private static final String BOTTOM_LEFT = "bottom-left";
+
 	private final ResizableGridPane2x2<ViewerPanelFX, ViewerPanelFX, ViewerPanelFX, BR> grid;
 
 	private final GlobalTransformManager manager;
@@ -119,6 +131,8 @@ public class OrthogonalViews<BR extends Node>
 
 	private final CacheControl queue;
 
+	private final BooleanProperty showRenderMetrics = new SimpleBooleanProperty(false);
+
 	/**
 	 *
 	 * @param manager manages the transform from world coordinates to shared viewer space and is shared by all {@link ViewerPanelFX viewers}.
@@ -142,6 +156,9 @@ public class OrthogonalViews<BR extends Node>
 		this.bottomLeft = create(this.manager, cacheControl, optional, ViewerAxis.Y, interpolation, axisOrder);
 		this.grid = new ResizableGridPane2x2<>(topLeft.viewer, topRight.viewer, bottomLeft.viewer, bottomRight);
 		this.queue = cacheControl;
+		installRenderMetrics(topLeft.viewer, TOP_LEFT);
+		installRenderMetrics(topRight.viewer, TOP_RIGHT);
+		installRenderMetrics(bottomLeft.viewer, BOTTOM_LEFT);
 	}
 
 	/**
@@ -268,6 +285,60 @@ public class OrthogonalViews<BR extends Node>
 			requestRepaint();
 	}
 
+	/**
+	 * {@link ViewerPanelFX#setScreenScaleAdaptation(boolean, long)} for all {@link ViewerPanelFX viewer children}
+	 * (top left, top right, bottom left)
+	 */
+	public void setScreenScaleAdaptation(final boolean isAdaptive, final long targetRenderNanos)
+	{
+		LOG.debug("Setting screen scale adaptation to {} with target render time {}ns for all panels.", isAdaptive, targetRenderNanos);
+		applyToAll(vp -> vp.setScreenScaleAdaptation(isAdaptive, targetRenderNanos));
+	}
+
+	/**
+	 * {@link ViewerPanelFX#setPredictivePrefetching(boolean, int, int)} for all {@link ViewerPanelFX viewer children}
+	 * (top left, top right, bottom left)
+	 */
+	public void setPredictivePrefetching(final boolean isEnabled, final int numPredictedFrames, final int maxCellsPerFrame)
+	{
+		applyToAll(vp -> vp.setPredictivePrefetching(isEnabled, numPredictedFrames, maxCellsPerFrame));
+	}
+
+	/**
+	 *
+	 * @return if {@code true}, show a summary of the {@link RenderMetrics} of each {@link ViewerPanelFX viewer child}
+	 * (top left, top right, bottom left) as overlay
+	 */
+	public BooleanProperty showRenderMetricsProperty()
+	{
+		return this.showRenderMetrics;
+	}
+
+	/**
+	 * Write the {@link RenderMetrics} of all {@link ViewerPanelFX viewer children} (top left, top right, bottom left)
+	 * into {@code directory} as {@code top-left.csv}, {@code top-right.csv}, and {@code bottom-left.csv}.
+	 */
+	public void exportRenderMetrics(final Path directory) throws IOException
+	{
+		topLeft.viewer.getRenderUnit().getRenderMetrics().exportCsv(directory.resolve(TOP_LEFT + ".csv"));
+		topRight.viewer.getRenderUnit().getRenderMetrics().exportCsv(directory.resolve(TOP_RIGHT + ".csv"));
+		bottomLeft.viewer.getRenderUnit().getRenderMetrics().exportCsv(directory.resolve(BOTTOM_LEFT + ".csv"));
+	}
+
+	private void installRenderMetrics(final ViewerPanelFX viewer, final String name)
+	{
+		final RenderMetrics metrics = viewer.getRenderUnit().getRenderMetrics();
+		metrics.register(name);
+		final RenderMetricsOverlay overlay = new RenderMetricsOverlay(metrics);
+		overlay.isVisibleProperty().bind(showRenderMetrics);
+		overlay.isVisibleProperty().addListener(obs -> viewer.getDisplay().drawOverlays());
+		viewer.getDisplay().addOverlayRenderer(overlay);
+		metrics.addListener(frame -> {
+			if (overlay.isVisibleProperty().get())
+				viewer.getDisplay().drawOverlays();
+		});
+	}
+
 	private static ViewerAndTransforms create(
 			final GlobalTransformManager manager,
 			final CacheControl cacheControl,
@@ -4,6 +4,7 @@ import bdv.fx.viewer.ViewerPanelFX
 import de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon
 import javafx.animation.KeyFrame
 import javafx.animation.Timeline
+import javafx.beans.InvalidationListener
 import javafx.beans.binding.Bindings
 import javafx.beans.property.SimpleObjectProperty
 import javafx.beans.value.ObservableObjectValue
@@ -145,7 +146,15 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
 			.also { it.onAction = EventHandler { paintera.namedActions[PainteraMainWindow.BindingKeys.SHOW_REPL_TABS]!!.action.run() } }
 			.also { it.acceleratorProperty().bind(namedKeyCombinations[PainteraMainWindow.BindingKeys.SHOW_REPL_TABS]!!.primaryCombinationProperty()) }
 
-	private val viewMenu = Menu("_View", null, menuBarMenu, sideBarMenu, statusBarMenu, fullScreenItem, replItem)
+	private val toggleRenderMetricsItem = MenuItem("Toggle _Visibility")
+			.also { it.onAction = EventHandler { paintera.namedActions[PainteraMainWindow.BindingKeys.TOGGLE_RENDER_METRICS]!!.action.run() } }
+			.also { it.acceleratorProperty().bind(namedKeyCombinations[PainteraMainWindow.BindingKeys.TOGGLE_RENDER_METRICS]!!.primaryCombinationProperty()) }
+	private val exportRenderMetricsItem = MenuItem("_Export As CSV...")
+			.also { it.onAction = EventHandler { paintera.namedActions[PainteraMainWindow.BindingKeys.EXPORT_RENDER_METRICS]!!.action.run() } }
+			.also { it.acceleratorProperty().bind(namedKeyCombinations[PainteraMainWindow.BindingKeys.EXPORT_RENDER_METRICS]!!.primaryCombinationProperty()) }
+	private val renderMetricsMenu = Menu("Render _Metrics", null, toggleRenderMetricsItem, exportRenderMetricsItem)
+
+	private val viewMenu = Menu("_View", null, menuBarMenu, sideBarMenu, statusBarMenu, fullScreenItem, replItem, renderMetricsMenu)
 
 	private val showVersion = MenuItem("Show _Version").also { it.onAction = EventHandler { PainteraAlerts.versionDialog().show() } }
 	private val showReadme = MenuItem("Show _Readme")
@@ -216,6 +225,10 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
 
     private val screenScaleConfigNode = ScreenScalesConfigNode(properties.screenScalesConfig)
 
+    private val cacheBudgetsConfigNode = CacheBudgetsConfigNode(properties.cacheBudgetsConfig)
+
+    private val prefetchConfigNode = PrefetchConfigNode(properties.prefetchConfig)
+
     private val scaleBarConfigNode = ScaleBarOverlayConfigNode(properties.scaleBarOverlayConfig)
 
     private val bookmarkConfigNode = BookmarkConfigNode(
@@ -269,6 +282,24 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
         LOG.debug("Construction {}", BorderPaneWithStatusBars2::class.java.name)
 		this.currentFocusHolderWithState = currentFocusHolder(center.orthogonalViews())
 		properties.screenScalesConfig.screenScalesProperty().addListener { _, _, newv -> center.orthogonalViews().setScreenScales(newv.scalesCopy) }
+		properties.screenScalesConfig.let { config ->
+			val screenScaleAdaptationListener = InvalidationListener {
+				center.orthogonalViews().setScreenScaleAdaptation(config.adaptiveProperty().get(), config.targetRenderNanos)
+			}
+			config.adaptiveProperty().addListener(screenScaleAdaptationListener)
+			config.targetFrameTimeMillisProperty().addListener(screenScaleAdaptationListener)
+			screenScaleAdaptationListener.invalidated(null)
+		}
+		properties.cacheBudgetsConfig.bindBudgetsToConfig()
+		properties.prefetchConfig.let { config ->
+			val prefetchListener = InvalidationListener {
+				center.orthogonalViews().setPredictivePrefetching(config.isEnabled, config.numPredictedFrames, config.maxCellsPerFrame)
+			}
+			config.isEnabledProperty().addListener(prefetchListener)
+			config.numPredictedFramesProperty().addListener(prefetchListener)
+			config.maxCellsPerFrameProperty().addListener(prefetchListener)
+			prefetchListener.invalidated(null)
+		}
 
 		this.currentSourceStatus = Label()
         this.viewerCoordinateStatus = Label()
@@ -354,7 +385,9 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
                 this.scaleBarConfigNode,
                 this.bookmarkConfigNode,
                 this.arbitraryMeshConfigNode,
-                this.screenScaleConfigNode.contents)
+                this.screenScaleConfigNode.contents,
+                this.cacheBudgetsConfigNode,
+                this.prefetchConfigNode)
         val settings = TitledPane("Settings", settingsContents)
         settings.isExpanded = false
 
@@ -7,6 +7,7 @@ import com.pivovarit.function.ThrowingFunction;
 import com.pivovarit.function.ThrowingSupplier;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.collections.ListChangeListener;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
@@ -47,9 +48,9 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @deprecated in favor of {@link Paintera2}, which will eventually be renamed to and replace {@link Paintera}
@@ -191,7 +192,7 @@ public class Paintera extends Application
 
 		// TODO this can probably be hidden in
 		// Properties.fromSerializedProperties
-		final Map<Integer, SourceState<?, ?>> indexToState = new HashMap<>();
+		final Map<Integer, SourceState<?, ?>> indexToState = new ConcurrentHashMap<>();
 
 		final Properties properties = loadedProperties
 				.map(ThrowingFunction.unchecked(lp -> Properties.fromSerializedProperties(
@@ -223,6 +224,12 @@ public class Paintera extends Application
 		paneWithStatus.screenScalesConfigNode().bind(properties.screenScalesConfig);
 		properties.screenScalesConfig.screenScalesProperty().addListener((obs, oldv, newv) -> baseView.orthogonalViews().setScreenScales(newv.getScalesCopy()));
 		baseView.orthogonalViews().setScreenScales(properties.screenScalesConfig.screenScalesProperty().get().getScalesCopy());
+		final InvalidationListener screenScaleAdaptationListener = obs -> baseView.orthogonalViews().setScreenScaleAdaptation(
+				properties.screenScalesConfig.adaptiveProperty().get(),
+				properties.screenScalesConfig.getTargetRenderNanos());
+		properties.screenScalesConfig.adaptiveProperty().addListener(screenScaleAdaptationListener);
+		properties.screenScalesConfig.targetFrameTimeMillisProperty().addListener(screenScaleAdaptationListener);
+		screenScaleAdaptationListener.invalidated(null);
 		if (painteraArgs.wereScreenScalesProvided())
 			properties.screenScalesConfig.screenScalesProperty().set(new ScreenScalesConfig.ScreenScales(painteraArgs.screenScales()));
 
@@ -253,6 +260,7 @@ public class Paintera extends Application
 		paneWithStatus.saveProjectButtonOnActionProperty().set(event -> {
 			try
 			{
+				SaveProject.saveAssignmentActionLogs(projectDir, baseView.sourceInfo());
 				SaveProject.persistProperties(
 						projectDir,
 						properties,
@@ -319,6 +327,7 @@ public class Paintera extends Application
 
 					try
 					{
+						SaveProject.saveAssignmentActionLogs(projectDir, baseView.sourceInfo());
 						SaveProject.persistProperties(
 								projectDir,
 								properties,
@@ -369,6 +378,8 @@ public class Paintera extends Application
 
 	public static void main(final String[] args)
 	{
+		if (PainteraCommandLineArgs.isHeadless(args))
+			System.exit(PainteraCommandLineArgs.runHeadless(args));
 		launch(args);
 	}
 
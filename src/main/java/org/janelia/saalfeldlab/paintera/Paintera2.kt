@@ -55,6 +55,8 @@ class Paintera2 : Application() {
 
 			painteraArgs.addToViewer(mainWindow.baseView) { mainWindow.projectDirectory.actualDirectory?.absolutePath }
 
+			painteraArgs.cacheBudgets().forEach { (tier, bytes) -> mainWindow.properties.cacheBudgetsConfig.setMaxBytes(tier, bytes) }
+
 			if (painteraArgs.wereScreenScalesProvided())
 				mainWindow.properties.screenScalesConfig.screenScalesProperty().set(ScreenScalesConfig.ScreenScales(*painteraArgs.screenScales()))
 
@@ -91,7 +93,11 @@ class Paintera2 : Application() {
 		private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
 
 		@JvmStatic
-		fun main(args: Array<String>) = launch(Paintera2::class.java, *args)
+		fun main(args: Array<String>) {
+			if (PainteraCommandLineArgs.isHeadless(args))
+				exitProcess(PainteraCommandLineArgs.runHeadless(args))
+			launch(Paintera2::class.java, *args)
+		}
 	}
 
 }
@@ -112,7 +112,9 @@ public class PainteraBaseView
 
 	private final ExecutorService paintQueue = Executors.newFixedThreadPool(1);
 
-	private final ExecutorService propagationQueue = Executors.newFixedThreadPool(1);
+	private final ExecutorService propagationQueue = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors()),
+			new NamedThreadFactory("paintera-propagation-%d", true));
 
 	private final SharedQueue sharedQueue;
 
@@ -460,7 +462,7 @@ public class PainteraBaseView
 
 	/**
 	 *
-	 * @return {@link ExecutorService} for down-/upsampling painted labels
+	 * @return {@link ExecutorService} for down-/upsampling blocks of painted labels in parallel
 	 */
 	public ExecutorService getPropagationQueue()
 	{
@@ -1,34 +1,29 @@
 package org.janelia.saalfeldlab.paintera;
 
+import bdv.util.volatiles.SharedQueue;
 import com.google.gson.JsonObject;
 import com.pivovarit.function.ThrowingConsumer;
-import com.pivovarit.function.ThrowingFunction;
 import com.pivovarit.function.ThrowingSupplier;
+import gnu.trove.iterator.TLongIterator;
 import gnu.trove.set.hash.TLongHashSet;
-import net.imglib2.Dimensions;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
-import net.imglib2.algorithm.util.Grids;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.converter.ARGBColorConverter;
 import net.imglib2.converter.ARGBCompositeColorConverter;
-import net.imglib2.img.cell.AbstractCellImg;
-import net.imglib2.img.cell.CellGrid;
+import net.imglib2.converter.Converter;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
+import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.AbstractVolatileRealType;
-import net.imglib2.util.Intervals;
-import net.imglib2.util.Pair;
-import net.imglib2.view.Views;
-import org.janelia.saalfeldlab.labels.Label;
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudgets;
+import org.janelia.saalfeldlab.paintera.cache.CacheTier;
 import org.janelia.saalfeldlab.paintera.composition.ARGBCompositeAlphaAdd;
 import org.janelia.saalfeldlab.paintera.composition.ARGBCompositeAlphaYCbCr;
 import org.janelia.saalfeldlab.paintera.composition.CompositeCopy;
@@ -47,8 +42,15 @@ import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
+import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunctionAndCache;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporter;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterBinary;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterObj;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerWithAssignmentForSegments;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMaskGenerators;
 import org.janelia.saalfeldlab.paintera.state.ChannelSourceState;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.state.RawSourceState;
@@ -60,6 +62,7 @@ import org.janelia.saalfeldlab.util.MakeUnchecked;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
+import org.janelia.saalfeldlab.util.n5.MaxIdFinder;
 import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.janelia.saalfeldlab.util.n5.N5Types;
@@ -72,16 +75,18 @@ import picocli.CommandLine.Parameters;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 import java.util.function.Predicate;
@@ -89,9 +94,10 @@ import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
-@Command(name = "Paintera", showDefaultValues = true)
+@Command(name = "Paintera", showDefaultValues = true, subcommands = PainteraCommandLineArgs.ExportMeshes.class)
 public class PainteraCommandLineArgs implements Callable<Boolean>
 {
 
@@ -259,7 +265,9 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 					description = "" +
 					"Set a fallback id service for scenarios in which an id service is not provided by the data backend, " +
 					"e.g. when no `maxId' attribute is specified in an N5 dataset. Valid options are (case insensitive): " +
-					"from-data — infer the max id and id service from the dataset (may take a long time for large datasets), " +
+					"from-data — infer the max id and id service from the dataset: from the label block lookup or unique labels of Paintera datasets, " +
+					"from the coarsest mipmap level of label multisets that keeps all ids, or from all voxels " +
+					"(the latter may take a long time for large datasets), " +
 					"none — do not use an id service (requesting new ids will not be possible), " +
 					"and ask — show a dialog to choose between those two options")
 			IdServiceFallback idServiceFallback = null;
@@ -440,6 +448,12 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 			"all other screen scale options. If no scale option is specified, scales default to [1.0, 0.5, 0.25, 0.125, 0.0625].", arity = "1..*", split = ",")
 	private double[] screenScales;
 
+	@Option(names = "--cache-budget", paramLabel = "CACHE_BUDGET", required = false, arity = "1..*", split = ",", description = "" +
+			"Memory budget per cache tier as <tier>=<size>, e.g. `labels=2g,meshes=512m'. Valid tiers are raw, labels, " +
+			"meshes, and canvas. Sizes accept the suffixes k, m, g, t. Overrides budgets stored in the project. " +
+			"Unspecified tiers default to a fraction of the maximum heap size.")
+	private String[] cacheBudgets;
+
 	@Parameters(index = "0", paramLabel = "PROJECT", arity = "0..1", description = "Optional project N5 root (N5 or " +
 			"FileSystem).")
 	private String project;
@@ -461,6 +475,8 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 
 	private boolean screenScalesProvided = false;
 
+	private Map<CacheTier, Long> parsedCacheBudgets = Collections.emptyMap();
+
 	@Override
 	public Boolean call() throws Exception
 	{
@@ -481,6 +497,10 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 			checkScreenScales(screenScales);
 		}
 
+		parsedCacheBudgets = cacheBudgets == null
+		                     ? Collections.emptyMap()
+		                     : CacheBudgets.parse(String.join(",", cacheBudgets));
+
 		printErrorCodes = printErrorCodes == null ? false : printErrorCodes;
 		if (printErrorCodes)
 		{
@@ -539,6 +559,14 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 		return this.screenScalesProvided;
 	}
 
+	/**
+	 * @return cache budgets in bytes for all tiers that were specified on the command line
+	 */
+	public Map<CacheTier, Long> cacheBudgets()
+	{
+		return Collections.unmodifiableMap(this.parsedCacheBudgets);
+	}
+
 	public void addToViewer(final PainteraBaseView viewer, final Supplier<String> projectDirectory) {
 		if (this.n5datasets == null)
 			return;
@@ -601,6 +629,150 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 		}
 	}
 
+	/**
+	 * @return {@code true} if {@code args} select a sub-command that runs without JavaFX. The sub-command has to be
+	 * the first argument.
+	 */
+	public static boolean isHeadless(final String[] args) {
+		return args.length > 0 && ExportMeshes.NAME.equals(args[0]);
+	}
+
+	/**
+	 * Run a sub-command for which {@link #isHeadless(String[])} is {@code true}.
+	 *
+	 * @return exit code
+	 */
+	public static int runHeadless(final String[] args) {
+		return new CommandLine(new PainteraCommandLineArgs()).execute(args);
+	}
+
+	@Command(name = ExportMeshes.NAME, showDefaultValues = true, description = "" +
+			"Export meshes of label segments without starting the Paintera UI. Segment ids are resolved into fragments " +
+			"through the fragment-segment assignment that is stored in the container.")
+	static class ExportMeshes implements Callable<Integer> {
+
+		static final String NAME = "export-meshes";
+
+		@Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message.")
+		private boolean helpRequested;
+
+		@Option(names = "--container", paramLabel = "CONTAINER", required = true, description = "" +
+				"N5 file system or HDF5 container of the label dataset.")
+		private File container;
+
+		@Option(names = {"-d", "--dataset"}, paramLabel = "DATASET", required = true, description = "Label dataset.")
+		private String dataset;
+
+		@Option(names = {"-o", "--output-directory"}, paramLabel = "OUTPUT_DIRECTORY", required = true, description = "" +
+				"Directory for the exported meshes. One mesh per segment is written to `neuron<id>' with the extension " +
+				"of the format.")
+		private File outputDirectory;
+
+		@Option(names = "--ids", paramLabel = "IDS", required = true, arity = "1..*", split = ",", description = "Segment ids.")
+		private long[] ids;
+
+		@Option(names = "--scale-level", paramLabel = "SCALE_LEVEL", defaultValue = "0", description = "Mipmap level of the meshes.")
+		private int scaleLevel;
+
+		@Option(names = "--format", paramLabel = "FORMAT", defaultValue = "obj", description = "" +
+				"Mesh format: `obj' (Wavefront .obj with shared vertices) or `binary' (.vertices and .normals with " +
+				"three big-endian floats per triangle corner).")
+		private String format;
+
+		@Option(names = "--num-threads", paramLabel = "NUM_THREADS", description = "" +
+				"Number of threads for mesh generation. Defaults to the number of available processors.")
+		private int numThreads = Runtime.getRuntime().availableProcessors();
+
+		@Override
+		public Integer call() throws Exception {
+			final MeshExporter<TLongHashSet> exporter;
+			switch (format.toLowerCase()) {
+				case "obj":
+					exporter = new MeshExporterObj<>();
+					break;
+				case "binary":
+					exporter = new MeshExporterBinary<>();
+					break;
+				default:
+					LOG.error("Unknown mesh format `{}', expected `obj' or `binary'.", format);
+					return 1;
+			}
+			exporter.setNumThreads(numThreads);
+
+			if (!container.exists()) {
+				LOG.error("Container `{}' does not exist.", container);
+				return 1;
+			}
+
+			if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+				LOG.error("Unable to create output directory `{}'.", outputDirectory);
+				return 1;
+			}
+
+			return exportMeshes(N5Helpers.n5Writer(container.getAbsolutePath()), exporter) ? 0 : 1;
+		}
+
+		private <D extends NativeType<D> & IntegerType<D>, T extends NativeType<T>> boolean exportMeshes(
+				final N5Writer n5,
+				final MeshExporter<TLongHashSet> exporter) throws IOException, ReflectionException, N5Helpers.NotAPainteraDataset {
+
+			final SharedQueue queue = new SharedQueue(Math.max(numThreads, 1), 1);
+			final DataSource<D, T> source = N5Data.openAsLabelSource(n5, dataset, N5Helpers.getTransform(n5, dataset), queue, 0, dataset);
+			final int numMipmapLevels = source.getNumMipmapLevels();
+			if (scaleLevel < 0 || scaleLevel >= numMipmapLevels) {
+				LOG.error("Scale level {} not in range [0, {}) for dataset `{}'.", scaleLevel, numMipmapLevels, dataset);
+				return false;
+			}
+
+			final FragmentSegmentAssignmentState assignment = N5Helpers.assignments(n5, dataset);
+			final LabelBlockLookup lookup = N5Helpers.getLabelBlockLookupWithFallback(n5, dataset, (c, g) -> LabelBlockLookupAllBlocks.fromSource(source));
+
+			@SuppressWarnings("unchecked") final Function<TLongHashSet, Interval[]>[] blockLists = IntStream
+					.range(0, numMipmapLevels)
+					.mapToObj(level -> (Function<TLongHashSet, Interval[]>) fragments -> blocksForFragments(lookup, level, fragments))
+					.toArray(Function[]::new);
+
+			final Function<TLongHashSet, Converter<D, BoolType>> segmentMaskGenerator = SegmentMaskGenerators.forType(source.getDataType());
+			final InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] meshCaches = CacheUtils.segmentMeshCacheLoaders(
+					source,
+					segmentMaskGenerator,
+					CacheUtils.meshCacheFactory());
+
+			@SuppressWarnings("unchecked") final Function<TLongHashSet, Interval[]>[][] blockListCaches = Stream
+					.generate(() -> blockLists)
+					.limit(ids.length)
+					.toArray(Function[][]::new);
+
+			@SuppressWarnings("unchecked") final Function<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[][] segmentMeshCaches = Stream
+					.generate(() -> meshCaches)
+					.limit(ids.length)
+					.toArray(Function[][]::new);
+
+			LOG.info("Exporting {} meshes of dataset `{}' at scale level {} to {}", ids.length, dataset, scaleLevel, outputDirectory);
+			exporter.exportMesh(
+					blockListCaches,
+					segmentMeshCaches,
+					LongStream.of(ids).mapToObj(assignment::getFragments).toArray(TLongHashSet[]::new),
+					scaleLevel,
+					LongStream.of(ids).mapToObj(id -> new File(outputDirectory, "neuron" + id).getAbsolutePath()).toArray(String[]::new));
+			return true;
+		}
+
+		private static Interval[] blocksForFragments(final LabelBlockLookup lookup, final int level, final TLongHashSet fragments) {
+			final List<Interval> blocks = new ArrayList<>();
+			for (final TLongIterator fragmentIt = fragments.iterator(); fragmentIt.hasNext(); ) {
+				try {
+					final Interval[] intervals = lookup.read(level, fragmentIt.next());
+					if (intervals != null)
+						blocks.addAll(Arrays.asList(intervals));
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return blocks.toArray(new Interval[0]);
+		}
+	}
+
 	private static <T> T getIfInRange(T[] array, final int index) {
 		return index < array.length ? array[index] : null;
 	}
@@ -609,68 +781,13 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 			final N5Writer n5,
 			final String dataset,
 			final DataSource<? extends IntegerType<?>, ?> source) throws IOException {
-		final long maxId = Math.max(findMaxId(source), 0);
+		final MaxIdFinder.Result result = MaxIdFinder.findMaxId(n5, dataset, source);
+		LOG.info("Found max id {} for dataset {}", result, dataset);
+		final long maxId = Math.max(result.getMaxId(), 0);
 		n5.setAttribute(dataset, N5Helpers.MAX_ID_KEY, maxId);
 		return new N5IdService(n5, dataset, maxId + 1);
 	}
 
-	private static long findMaxId(final DataSource<? extends IntegerType<?>, ?> source) {
-		final RandomAccessibleInterval<? extends IntegerType<?>> rai = source.getDataSource(0, 0);
-
-		final int[] blockSize = blockSizeFromRai(rai);
-		final List<Interval> intervals = Grids.collectAllContainedIntervals(Intervals.minAsLongArray(rai), Intervals.maxAsLongArray(rai), blockSize);
-
-		final ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-		final List<Future<Long>> futures = new ArrayList<>();
-		for (final Interval interval : intervals)
-			futures.add(es.submit(() -> findMaxId(Views.interval(rai, interval))));
-		es.shutdown();
-		final long maxId = futures
-				.stream()
-				.map(ThrowingFunction.unchecked(Future::get))
-				.mapToLong(Long::longValue)
-				.max()
-				.orElse(Label.getINVALID());
-		LOG.debug("Found max id {}", maxId);
-		return maxId;
-	}
-
-	private static long findMaxId(final RandomAccessibleInterval<? extends IntegerType<?>> rai) {
-		long maxId = org.janelia.saalfeldlab.labels.Label.getINVALID();
-		for (final IntegerType<?> t : Views.iterable(rai)) {
-			final long id = t.getIntegerLong();
-			if (id > maxId)
-				maxId = id;
-		}
-		return maxId;
-	}
-
-	private static int[] blockSizeFromRai(final RandomAccessibleInterval<?> rai) {
-		if (rai instanceof AbstractCellImg<?, ?, ?, ?>) {
-			final CellGrid cellGrid = ((AbstractCellImg<?, ?, ?, ?>) rai).getCellGrid();
-			final int[] blockSize = new int[cellGrid.numDimensions()];
-			cellGrid.cellDimensions(blockSize);
-			LOG.debug("{} is a cell img with block size {}", rai, blockSize);
-			return blockSize;
-		}
-		int argMaxDim = argMaxDim(rai);
-		final int[] blockSize = Intervals.dimensionsAsIntArray(rai);
-		blockSize[argMaxDim] = 1;
-		return blockSize;
-	}
-
-	private static int argMaxDim(final Dimensions dims) {
-		long max = -1;
-		int argMax = -1;
-		for (int d = 0; d < dims.numDimensions(); ++d) {
-			if (dims.dimension(d) > max) {
-				max = dims.dimension(d);
-				argMax = d;
-			}
-		}
-		return argMax;
-	}
-
 	private static void addToViewer(
 			final PainteraBaseView viewer,
 			final Supplier<String> projectDirectory,
@@ -784,7 +901,7 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 					stream,
 					viewer.viewer3D().meshesGroup(),
 					blockLoaders,
-					loader -> new SoftRefLoaderCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>().withLoader(loader),
+					CacheUtils.meshCacheFactory(),
 					viewer.getMeshManagerExecutorService(),
 					viewer.getMeshWorkerExecutorService());
 
@@ -9,8 +9,10 @@ import javafx.beans.binding.Bindings
 import javafx.beans.property.SimpleObjectProperty
 import javafx.event.ActionEvent
 import javafx.event.EventHandler
+import javafx.geometry.Insets
 import javafx.geometry.Pos
 import javafx.scene.Parent
+import javafx.scene.Scene
 import javafx.scene.control.*
 import javafx.scene.image.Image
 import javafx.scene.input.KeyCode
@@ -24,12 +26,14 @@ import javafx.scene.web.WebView
 import javafx.stage.DirectoryChooser
 import javafx.stage.Modality
 import javafx.stage.Stage
+import javafx.stage.StageStyle
 import javafx.stage.Window
 import javafx.util.StringConverter
 import net.imglib2.realtransform.AffineTransform3D
 import org.janelia.saalfeldlab.fx.Buttons
 import org.janelia.saalfeldlab.fx.event.KeyTracker
 import org.janelia.saalfeldlab.fx.event.MouseTracker
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
 import org.janelia.saalfeldlab.n5.N5FSReader
 import org.janelia.saalfeldlab.n5.N5FSWriter
 import org.janelia.saalfeldlab.paintera.config.ScreenScalesConfig
@@ -46,9 +50,11 @@ import org.scijava.plugin.Plugin
 import org.scijava.scripting.fx.SciJavaReplFXDialog
 import org.slf4j.LoggerFactory
 import java.io.File
+import java.io.IOException
 import java.lang.invoke.MethodHandles
 import java.lang.reflect.Type
 import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
 
 class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 
@@ -72,6 +78,8 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 			NamedAction(BindingKeys.CREATE_NEW_LABEL_DATASET, Runnable { CreateDatasetHandler.createAndAddNewLabelDataset(baseView) { projectDirectory.actualDirectory.absolutePath } }),
 			NamedAction(BindingKeys.SHOW_REPL_TABS, Runnable { replDialog.show() }),
 			NamedAction(BindingKeys.TOGGLE_FULL_SCREEN, Runnable { properties.windowProperties.isFullScreen.let { it.value = !it.value } }),
+			NamedAction(BindingKeys.TOGGLE_RENDER_METRICS, Runnable { baseView.orthogonalViews().showRenderMetricsProperty().let { it.value = !it.value } }),
+			NamedAction(BindingKeys.EXPORT_RENDER_METRICS, Runnable { exportRenderMetrics() }),
 			NamedAction("open help", Runnable {
 				val readmeButton = Buttons.withTooltip("_README", "Open README.md") {
 					// TODO make render when loaded from jar
@@ -153,7 +161,7 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 	}
 
 	fun deserialize() {
-		val indexToState = mutableMapOf<Int, SourceState<*, *>>()
+		val indexToState = ConcurrentHashMap<Int, SourceState<*, *>>()
 		val builder = GsonHelpers
 				.builderWithAllRequiredDeserializers(
 						gateway.context,
@@ -173,9 +181,24 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 		val builder = GsonHelpers
 				.builderWithAllRequiredSerializers(gateway.context, baseView) { projectDirectory.actualDirectory.absolutePath }
 				.setPrettyPrinting()
+		SaveProject.saveAssignmentActionLogs(projectDirectory.actualDirectory.absolutePath, baseView.sourceInfo())
 		N5FSWriter(projectDirectory.actualDirectory.absolutePath, builder).setAttribute("/", PAINTERA_KEY, this)
 	}
 
+	private fun exportRenderMetrics() {
+		val directoryChooser = DirectoryChooser().also { it.title = "Export render metrics" }
+		val directory = directoryChooser.showDialog(pane.scene.window) ?: return
+		try {
+			baseView.orthogonalViews().exportRenderMetrics(directory.toPath())
+		} catch (e: IOException) {
+			LOG.error("Unable to export render metrics to {}", directory, e)
+			PainteraAlerts.alert(Alert.AlertType.ERROR, true)
+					.also { it.headerText = "Unable to export render metrics" }
+					.also { it.contentText = "Unable to export render metrics to `$directory': ${e.message}" }
+					.show()
+		}
+	}
+
 	fun saveAs(): Boolean {
 		val dialog = PainteraAlerts.confirmation("_Save", "_Cancel", true)
 		dialog.headerText = "Save project directory at location"
@@ -248,20 +271,63 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 		with(GsonExtensions) {
 			json
 					?.getJsonObject(SOURCES_KEY)
-					?.let {
-						SourceInfoSerializer.populate(
-								{ baseView.addState(it) },
-								{ baseView.sourceInfo().currentSourceIndexProperty().set(it) },
-								it.asJsonObject,
-								{ k, v -> indexToState.put(k, v) },
-								gson)
-					}
+					?.let { populateSources(it, gson, indexToState) }
 			json
 					?.getJsonArray(GLOBAL_TRANSFORM_KEY)
 					?.let { baseView.manager().setTransform(gson.fromJson(it, AffineTransform3D::class.java)) }
 		}
 	}
 
+	/**
+	 * Load sources concurrently in a background thread and add them in their serialized order as they become
+	 * available. Blocks (with a nested event loop) until all sources are loaded and shows progress in the meantime.
+	 */
+	private fun populateSources(serializedSourceInfo: JsonObject, gson: Gson, indexToState: MutableMap<Int, SourceState<*, *>>) {
+		val numSources = SourceInfoSerializer.numSources(serializedSourceInfo)
+		if (numSources == 0) {
+			SourceInfoSerializer.populate(
+					{ baseView.addState(it) },
+					{ baseView.sourceInfo().currentSourceIndexProperty().set(it) },
+					serializedSourceInfo,
+					{ k, v -> indexToState[k] = v },
+					gson)
+			return
+		}
+
+		val progressBar = ProgressBar(0.0).also { it.maxWidth = Double.POSITIVE_INFINITY }
+		val progressLabel = Label("Loaded 0/$numSources sources")
+		val stage = Stage(StageStyle.UTILITY)
+				.also { it.title = "Opening Paintera project" }
+				.also { it.initModality(Modality.APPLICATION_MODAL) }
+				.also { it.scene = Scene(VBox(5.0, progressLabel, progressBar).also { box -> box.padding = Insets(10.0); box.prefWidth = 300.0 }) }
+				.also { it.onCloseRequest = EventHandler { event -> event.consume() } }
+		var error: Exception? = null
+		Thread {
+			try {
+				SourceInfoSerializer.populate(
+						{ state -> InvokeOnJavaFXApplicationThread.invoke { baseView.addState(state) } },
+						{ index -> InvokeOnJavaFXApplicationThread.invoke { baseView.sourceInfo().currentSourceIndexProperty().set(index) } },
+						serializedSourceInfo,
+						{ k, v -> indexToState[k] = v },
+						gson,
+						{ numLoaded, total -> InvokeOnJavaFXApplicationThread.invoke {
+							progressBar.progress = numLoaded.toDouble() / total
+							progressLabel.text = "Loaded $numLoaded/$total sources"
+						} })
+			} catch (e: Exception) {
+				error = e
+			} finally {
+				InvokeOnJavaFXApplicationThread.invoke { stage.close() }
+			}
+		}
+				.also { it.name = "paintera-load-project" }
+				.also { it.isDaemon = true }
+				.start()
+		// runnables posted by the loader thread, including stage.close(), run only once showAndWait enters its event loop
+		stage.showAndWait()
+		error?.let { throw it }
+	}
+
 	fun setupStage(stage: Stage) {
 		keyTracker.installInto(stage)
 		projectDirectory.addListener { pd -> stage.title = if (pd.directory == null) NAME else "$NAME ${pd.directory.absolutePath.homeToTilde()}" }
@@ -329,6 +395,8 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 		const val CREATE_NEW_LABEL_DATASET = "create new label dataset"
 		const val SHOW_REPL_TABS = "open repl"
 		const val TOGGLE_FULL_SCREEN = "toggle full screen"
+		const val TOGGLE_RENDER_METRICS = "toggle render metrics"
+		const val EXPORT_RENDER_METRICS = "export render metrics"
 	}
 
 
@@ -375,7 +443,9 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 				NamedKeyCombination(BindingKeys.MAXIMIZE_VIEWER_AND_3D, KeyCodeCombination(KeyCode.M, KeyCombination.SHIFT_DOWN)),
 				NamedKeyCombination(BindingKeys.CREATE_NEW_LABEL_DATASET, KeyCodeCombination(KeyCode.N, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN)),
 				NamedKeyCombination(BindingKeys.SHOW_REPL_TABS, KeyCodeCombination(KeyCode.T, KeyCombination.SHORTCUT_DOWN, KeyCombination.ALT_DOWN)),
-				NamedKeyCombination(BindingKeys.TOGGLE_FULL_SCREEN, KeyCodeCombination(KeyCode.F11)))
+				NamedKeyCombination(BindingKeys.TOGGLE_FULL_SCREEN, KeyCodeCombination(KeyCode.F11)),
+				NamedKeyCombination(BindingKeys.TOGGLE_RENDER_METRICS, KeyCodeCombination(KeyCode.F4)),
+				NamedKeyCombination(BindingKeys.EXPORT_RENDER_METRICS, KeyCodeCombination(KeyCode.F4, KeyCombination.SHIFT_DOWN)))
 
 
 		@JvmStatic
@@ -70,6 +70,7 @@ public class SaveOnExitDialog implements EventHandler<WindowEvent>
 				LOG.debug("Saving project before exit");
 				try
 				{
+					SaveProject.saveAssignmentActionLogs(project, baseView.sourceInfo());
 					SaveProject.persistProperties(
 							project,
 							properties,
@@ -3,8 +3,15 @@ package org.janelia.saalfeldlab.paintera;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 
+import bdv.viewer.Source;
 import com.google.gson.GsonBuilder;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 import org.janelia.saalfeldlab.paintera.serialization.Properties;
+import org.janelia.saalfeldlab.paintera.serialization.assignments.FragmentSegmentAssignmentOnlyLocalSerializer;
+import org.janelia.saalfeldlab.paintera.state.HasFragmentSegmentAssignments;
+import org.janelia.saalfeldlab.paintera.state.SourceInfo;
+import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +29,32 @@ public class SaveProject
 		N5Helpers.n5Writer(root, builder, 64, 64, 64).setAttribute("", Paintera.PAINTERA_KEY, properties);
 	}
 
+	/**
+	 * Write the assignment action logs of all sources into {@code root}. Call this before persisting the properties
+	 * so that the project references the logs instead of storing all actions as JSON.
+	 */
+	public static void saveAssignmentActionLogs(final String root, final SourceInfo sourceInfo)
+	{
+		if (root == null)
+			return;
+		for (final Source<?> source : sourceInfo.trackSources())
+		{
+			final SourceState<?, ?> state = sourceInfo.getState(source);
+			if (!(state instanceof HasFragmentSegmentAssignments))
+				continue;
+			final FragmentSegmentAssignmentState assignment = ((HasFragmentSegmentAssignments) state).assignment();
+			if (!(assignment instanceof FragmentSegmentAssignmentOnlyLocal))
+				continue;
+			try
+			{
+				FragmentSegmentAssignmentOnlyLocalSerializer.saveActionLog((FragmentSegmentAssignmentOnlyLocal) assignment, root);
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to write assignment action log to {}. Storing actions as JSON instead.", root, e);
+			}
+		}
+	}
+
 	public static class ProjectUndefined extends Exception
 	{
 
@@ -0,0 +1,126 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Global {@link MemoryBudget} per {@link CacheTier}. Budgets can be changed at any time, e.g. from the command line
+ * or the project config, and apply to all caches of a tier, including caches that were created before.
+ */
+public class CacheBudgets
+{
+
+	private static final Map<CacheTier, MemoryBudget> BUDGETS;
+
+	static
+	{
+		final EnumMap<CacheTier, MemoryBudget> budgets = new EnumMap<>(CacheTier.class);
+		for (final CacheTier tier : CacheTier.values())
+			budgets.put(tier, new MemoryBudget(tier.getDisplayName(), tier.defaultMaxBytes()));
+		BUDGETS = Collections.unmodifiableMap(budgets);
+	}
+
+	private CacheBudgets()
+	{
+	}
+
+	public static MemoryBudget get(final CacheTier tier)
+	{
+		return BUDGETS.get(tier);
+	}
+
+	public static void setMaxBytes(final CacheTier tier, final long maxBytes)
+	{
+		get(tier).setMaxBytes(maxBytes);
+	}
+
+	public static long getTotalUsedBytes()
+	{
+		return BUDGETS.values().stream().mapToLong(MemoryBudget::getUsedBytes).sum();
+	}
+
+	/**
+	 * @param budgets
+	 * 		comma separated list of {@code <tier>=<size>}, e.g. {@code labels=2g,meshes=512m}
+	 *
+	 * @return budgets per tier
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if {@code budgets} cannot be parsed
+	 */
+	public static Map<CacheTier, Long> parse(final String budgets)
+	{
+		final EnumMap<CacheTier, Long> parsed = new EnumMap<>(CacheTier.class);
+		for (final String budget : budgets.split(","))
+		{
+			if (budget.trim().isEmpty())
+				continue;
+			final String[] tierAndSize = budget.split("=");
+			if (tierAndSize.length != 2)
+				throw new IllegalArgumentException("Expected <tier>=<size> but got `" + budget + "'");
+			parsed.put(CacheTier.fromKey(tierAndSize[0].trim()), parseBytes(tierAndSize[1]));
+		}
+		return parsed;
+	}
+
+	/**
+	 * @param size
+	 * 		number of bytes, optionally with suffix {@code k}, {@code m}, {@code g}, or {@code t} (case insensitive,
+	 * 		binary multiples)
+	 */
+	public static long parseBytes(final String size)
+	{
+		final String trimmed = size.trim().toLowerCase(Locale.ROOT).replaceAll("b$", "");
+		if (trimmed.isEmpty())
+			throw new IllegalArgumentException("Empty size");
+		final char suffix = trimmed.charAt(trimmed.length() - 1);
+		final int  shift;
+		switch (suffix)
+		{
+			case 'k':
+				shift = 10;
+				break;
+			case 'm':
+				shift = 20;
+				break;
+			case 'g':
+				shift = 30;
+				break;
+			case 't':
+				shift = 40;
+				break;
+			default:
+				shift = 0;
+		}
+		final String number = shift == 0 ? trimmed : trimmed.substring(0, trimmed.length() - 1);
+		try
+		{
+			final double value = Double.parseDouble(number.trim());
+			if (value < 0)
+				throw new IllegalArgumentException("Negative size `" + size + "'");
+			return (long) (value * (1L << shift));
+		} catch (final NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Unable to parse size `" + size + "'", e);
+		}
+	}
+
+	/**
+	 * @return human readable binary size, e.g. {@code 1.5 GiB}
+	 */
+	public static String toHumanReadable(final long bytes)
+	{
+		final String[] units = {"B", "KiB", "MiB", "GiB", "TiB"};
+		double value = bytes;
+		int    unit  = 0;
+		while (value >= 1024 && unit < units.length - 1)
+		{
+			value /= 1024;
+			++unit;
+		}
+		return unit == 0 ? String.format("%d %s", bytes, units[unit]) : String.format("%.1f %s", value, units[unit]);
+	}
+
+}
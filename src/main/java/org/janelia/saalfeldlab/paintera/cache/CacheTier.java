@@ -0,0 +1,56 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Kinds of cached data that share a {@link MemoryBudget}. Default budgets are fractions of the maximum heap size.
+ */
+public enum CacheTier
+{
+
+	RAW_CELLS("raw", "Raw cells", 0.25),
+	LABEL_CELLS("labels", "Label cells", 0.25),
+	MESHES("meshes", "Meshes", 0.10),
+	CANVAS("canvas", "Canvas (compressed)", 0.05);
+
+	private final String key;
+
+	private final String displayName;
+
+	private final double defaultHeapFraction;
+
+	CacheTier(final String key, final String displayName, final double defaultHeapFraction)
+	{
+		this.key = key;
+		this.displayName = displayName;
+		this.defaultHeapFraction = defaultHeapFraction;
+	}
+
+	/**
+	 * @return identifier used on the command line and in the project config
+	 */
+	public String getKey()
+	{
+		return key;
+	}
+
+	public String getDisplayName()
+	{
+		return displayName;
+	}
+
+	public long defaultMaxBytes()
+	{
+		return (long) (defaultHeapFraction * Runtime.getRuntime().maxMemory());
+	}
+
+	public static CacheTier fromKey(final String key)
+	{
+		for (final CacheTier tier : values())
+			if (tier.key.equalsIgnoreCase(key) || tier.name().equalsIgnoreCase(key))
+				return tier;
+		throw new IllegalArgumentException("No cache tier for key `" + key + "'. Valid keys are " + Arrays.stream(values()).map(CacheTier::getKey).collect(Collectors.joining(", ")) + ".");
+	}
+
+}
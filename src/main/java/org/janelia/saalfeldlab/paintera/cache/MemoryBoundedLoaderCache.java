@@ -0,0 +1,118 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+
+/**
+ * {@link LoaderCache} that holds strong references to its values and accounts their size against a
+ * {@link MemoryBudget}. Drop-in replacement for {@link net.imglib2.cache.ref.SoftRefLoaderCache} with explicit,
+ * predictable eviction. Concurrent requests for the same key are loaded only once.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class MemoryBoundedLoaderCache<K, V> implements LoaderCache<K, V>
+{
+
+	private final MemoryBudget budget;
+
+	private final ToLongFunction<? super V> sizeInBytes;
+
+	private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<>();
+
+	/**
+	 * @param budget
+	 * 		shared with other caches of the same tier
+	 * @param sizeInBytes
+	 * 		estimate the memory footprint of a value
+	 */
+	public MemoryBoundedLoaderCache(final MemoryBudget budget, final ToLongFunction<? super V> sizeInBytes)
+	{
+		this.budget = budget;
+		this.sizeInBytes = sizeInBytes;
+	}
+
+	/**
+	 * Create cache that accounts against the global budget of {@code tier}, as configured in {@link CacheBudgets}.
+	 */
+	public static <K, V> MemoryBoundedLoaderCache<K, V> forTier(
+			final CacheTier tier,
+			final ToLongFunction<? super V> sizeInBytes)
+	{
+		return new MemoryBoundedLoaderCache<>(CacheBudgets.get(tier), sizeInBytes);
+	}
+
+	public MemoryBudget getBudget()
+	{
+		return budget;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V getIfPresent(final K key)
+	{
+		return (V) budget.get(this, key);
+	}
+
+	@Override
+	public V get(final K key, final CacheLoader<? super K, ? extends V> loader) throws ExecutionException
+	{
+		final V cached = getIfPresent(key);
+		if (cached != null)
+			return cached;
+
+		final FutureTask<V> task     = new FutureTask<>(() -> loader.get(key));
+		final FutureTask<V> existing = loading.putIfAbsent(key, task);
+		if (existing != null)
+			return waitFor(existing);
+
+		try
+		{
+			task.run();
+			final V value = waitFor(task);
+			budget.put(this, key, value, sizeInBytes.applyAsLong(value));
+			return value;
+		} finally
+		{
+			loading.remove(key, task);
+		}
+	}
+
+	@Override
+	public void invalidate(final K key)
+	{
+		budget.remove(this, key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void invalidateIf(final long parallelismThreshold, final Predicate<K> condition)
+	{
+		budget.removeIf(this, key -> condition.test((K) key));
+	}
+
+	@Override
+	public void invalidateAll(final long parallelismThreshold)
+	{
+		budget.removeIf(this, key -> true);
+	}
+
+	private static <V> V waitFor(final FutureTask<V> task) throws ExecutionException
+	{
+		try
+		{
+			return task.get();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+	}
+
+}
@@ -0,0 +1,358 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte budget shared by all {@link MemoryBoundedLoaderCache caches} of a {@link CacheTier}. Entries of all caches are
+ * kept in a single least-recently-used order and the least recently used entries are evicted as soon as the sum of
+ * their sizes exceeds the budget. Eviction is explicit and does not depend on garbage collector heuristics.
+ * <p>
+ * Lookups do not take the lock of the budget: accesses are buffered and replayed into the least-recently-used order
+ * by the next modification. If the buffer is full, further accesses are dropped until it is drained, which makes the
+ * order approximate under heavy concurrent reads.
+ */
+public class MemoryBudget
+{
+
+	/**
+	 * Notified after an entry was evicted to free budget, outside of the lock of the {@link MemoryBudget}.
+	 */
+	public interface EvictionListener
+	{
+		void evicted(Object key, Object value);
+	}
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	/**
+	 * Bookkeeping overhead added to every entry, so that empty values cannot accumulate without bound.
+	 */
+	static final long ENTRY_OVERHEAD_BYTES = 64;
+
+	/**
+	 * Maximum number of accesses that are buffered between two modifications of the budget.
+	 */
+	static final int MAX_BUFFERED_ACCESSES = 1024;
+
+	private final String name;
+
+	private final LinkedHashMap<OwnerAndKey, SizedValue> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	// same content as entries for lookups without the lock, only modified together with entries
+	private final ConcurrentHashMap<OwnerAndKey, SizedValue> values = new ConcurrentHashMap<>();
+
+	private final ConcurrentLinkedQueue<OwnerAndKey> accesses = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger numBufferedAccesses = new AtomicInteger();
+
+	private long maxBytes;
+
+	private long usedBytes = 0;
+
+	private final LongAdder numHits = new LongAdder();
+
+	private final LongAdder numMisses = new LongAdder();
+
+	private long numEvictions = 0;
+
+	public MemoryBudget(final String name, final long maxBytes)
+	{
+		this.name = name;
+		this.maxBytes = Math.max(maxBytes, 0);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Set the budget and evict least recently used entries if necessary.
+	 */
+	public void setMaxBytes(final long maxBytes)
+	{
+		final List<SizedValue> evicted;
+		synchronized (this)
+		{
+			LOG.debug("Setting budget of {} to {} bytes", name, maxBytes);
+			this.maxBytes = Math.max(maxBytes, 0);
+			evicted = evict();
+		}
+		notifyEvicted(evicted);
+	}
+
+	public synchronized long getUsedBytes()
+	{
+		return usedBytes;
+	}
+
+	public synchronized int getNumEntries()
+	{
+		return entries.size();
+	}
+
+	public long getNumHits()
+	{
+		return numHits.sum();
+	}
+
+	public long getNumMisses()
+	{
+		return numMisses.sum();
+	}
+
+	public synchronized long getNumEvictions()
+	{
+		return numEvictions;
+	}
+
+	/**
+	 * Evict all entries of all caches.
+	 */
+	public synchronized void clear()
+	{
+		drainAccesses();
+		entries.clear();
+		values.clear();
+		usedBytes = 0;
+	}
+
+	Object get(final Object owner, final Object key)
+	{
+		final OwnerAndKey ownerAndKey = new OwnerAndKey(owner, key);
+		final SizedValue  value       = values.get(ownerAndKey);
+		if (value == null)
+		{
+			numMisses.increment();
+			return null;
+		}
+		numHits.increment();
+		recordAccess(ownerAndKey);
+		return value.value;
+	}
+
+	/**
+	 * Values larger than the entire budget are not stored.
+	 */
+	void put(final Object owner, final Object key, final Object value, final long valueSizeInBytes)
+	{
+		put(owner, key, value, valueSizeInBytes, null);
+	}
+
+	/**
+	 * Account {@code value} against this budget. Values larger than the entire budget are not stored and passed to
+	 * {@code evictionListener} immediately.
+	 *
+	 * @param evictionListener notified when {@code value} is evicted, but not when it is {@link #remove removed}
+	 *                         explicitly. May be {@code null}.
+	 */
+	public void put(
+			final Object owner,
+			final Object key,
+			final Object value,
+			final long valueSizeInBytes,
+			final EvictionListener evictionListener)
+	{
+		final long        sizeInBytes = valueSizeInBytes + ENTRY_OVERHEAD_BYTES;
+		final OwnerAndKey ownerAndKey = new OwnerAndKey(owner, key);
+		final SizedValue  sizedValue  = new SizedValue(ownerAndKey, value, sizeInBytes, evictionListener);
+		final List<SizedValue> evicted;
+		synchronized (this)
+		{
+			drainAccesses();
+			final SizedValue previous = sizeInBytes > maxBytes
+			                            ? removeEntry(ownerAndKey)
+			                            : putEntry(ownerAndKey, sizedValue);
+			if (previous != null)
+				usedBytes -= previous.sizeInBytes;
+			if (sizeInBytes <= maxBytes)
+			{
+				usedBytes += sizeInBytes;
+				evicted = evict();
+			}
+			else
+			{
+				++numEvictions;
+				evicted = Collections.singletonList(sizedValue);
+			}
+		}
+		notifyEvicted(evicted);
+	}
+
+	/**
+	 * Mark the entry for {@code key} as most recently used without counting a hit or miss.
+	 */
+	public void touch(final Object owner, final Object key)
+	{
+		recordAccess(new OwnerAndKey(owner, key));
+	}
+
+	public synchronized void remove(final Object owner, final Object key)
+	{
+		drainAccesses();
+		final SizedValue previous = removeEntry(new OwnerAndKey(owner, key));
+		if (previous != null)
+			usedBytes -= previous.sizeInBytes;
+	}
+
+	synchronized void removeIf(final Object owner, final Predicate<Object> keyCondition)
+	{
+		drainAccesses();
+		final Iterator<Map.Entry<OwnerAndKey, SizedValue>> it = entries.entrySet().iterator();
+		while (it.hasNext())
+		{
+			final Map.Entry<OwnerAndKey, SizedValue> entry = it.next();
+			if (entry.getKey().owner == owner && keyCondition.test(entry.getKey().key))
+			{
+				usedBytes -= entry.getValue().sizeInBytes;
+				values.remove(entry.getKey());
+				it.remove();
+			}
+		}
+	}
+
+	private void recordAccess(final OwnerAndKey ownerAndKey)
+	{
+		if (numBufferedAccesses.incrementAndGet() > MAX_BUFFERED_ACCESSES)
+			numBufferedAccesses.decrementAndGet();
+		else
+			accesses.add(ownerAndKey);
+	}
+
+	/**
+	 * Replay buffered accesses into the least-recently-used order. Must be called while holding the lock.
+	 */
+	private void drainAccesses()
+	{
+		for (OwnerAndKey ownerAndKey; (ownerAndKey = accesses.poll()) != null; )
+		{
+			numBufferedAccesses.decrementAndGet();
+			entries.get(ownerAndKey);
+		}
+	}
+
+	private SizedValue putEntry(final OwnerAndKey ownerAndKey, final SizedValue value)
+	{
+		values.put(ownerAndKey, value);
+		return entries.put(ownerAndKey, value);
+	}
+
+	private SizedValue removeEntry(final OwnerAndKey ownerAndKey)
+	{
+		values.remove(ownerAndKey);
+		return entries.remove(ownerAndKey);
+	}
+
+	private List<SizedValue> evict()
+	{
+		drainAccesses();
+		List<SizedValue> evicted = Collections.emptyList();
+		final Iterator<SizedValue> it = entries.values().iterator();
+		while (usedBytes > maxBytes && it.hasNext())
+		{
+			final SizedValue value = it.next();
+			usedBytes -= value.sizeInBytes;
+			values.remove(value.ownerAndKey);
+			it.remove();
+			++numEvictions;
+			if (value.evictionListener != null)
+			{
+				if (evicted.isEmpty())
+					evicted = new ArrayList<>();
+				evicted.add(value);
+			}
+		}
+		return evicted;
+	}
+
+	private static void notifyEvicted(final List<SizedValue> evicted)
+	{
+		for (final SizedValue value : evicted)
+			if (value.evictionListener != null)
+				value.evictionListener.evicted(value.ownerAndKey.key, value.value);
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("{%s: %d/%d bytes in %d entries}", name, usedBytes, maxBytes, entries.size());
+	}
+
+	private static final class OwnerAndKey
+	{
+
+		private final Object owner;
+
+		private final Object key;
+
+		private final int hashCode;
+
+		private OwnerAndKey(final Object owner, final Object key)
+		{
+			this.owner = owner;
+			this.key = key;
+			this.hashCode = 31 * System.identityHashCode(owner) + key.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			if (!(other instanceof OwnerAndKey))
+				return false;
+			final OwnerAndKey that = (OwnerAndKey) other;
+			return this.owner == that.owner && this.key.equals(that.key);
+		}
+
+	}
+
+	private static final class SizedValue
+	{
+
+		private final OwnerAndKey ownerAndKey;
+
+		private final Object value;
+
+		private final long sizeInBytes;
+
+		private final EvictionListener evictionListener;
+
+		private SizedValue(
+				final OwnerAndKey ownerAndKey,
+				final Object value,
+				final long sizeInBytes,
+				final EvictionListener evictionListener)
+		{
+			this.ownerAndKey = ownerAndKey;
+			this.value = value;
+			this.sizeInBytes = sizeInBytes;
+			this.evictionListener = evictionListener;
+		}
+
+	}
+
+}
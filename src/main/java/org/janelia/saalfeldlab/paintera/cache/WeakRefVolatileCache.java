@@ -18,11 +18,19 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>
 {
+	/*
+	 * Number of requests that found a valid entry (hits) or not (misses), across all instances
+	 */
+	private static final LongAdder NUM_HITS = new LongAdder();
+
+	private static final LongAdder NUM_MISSES = new LongAdder();
+
 	final ConcurrentHashMap<K, Entry> map = new ConcurrentHashMap<>();
 
 	final ReferenceQueue<V> queue = new ReferenceQueue<>();
@@ -159,8 +167,12 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>
 		final CacheWeakReference ref = entry.ref;
 		final V                  v   = ref.get();
 		if (v != null && ref.loaded == VALID)
+		{
+			NUM_HITS.increment();
 			return v;
+		}
 
+		NUM_MISSES.increment();
 		cleanUp();
 		switch (hints.getLoadingStrategy())
 		{
@@ -189,8 +201,12 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>
 		final CacheWeakReference ref = entry.ref;
 		V                        v   = ref.get();
 		if (v != null && ref.loaded == VALID)
+		{
+			NUM_HITS.increment();
 			return v;
+		}
 
+		NUM_MISSES.increment();
 		cleanUp();
 		switch (hints.getLoadingStrategy())
 		{
@@ -214,6 +230,24 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>
 			return v;
 	}
 
+	/**
+	 * @return number of {@link #get} and {@link #getIfPresent} requests that found a valid entry, summed over all
+	 * instances
+	 */
+	public static long getNumHits()
+	{
+		return NUM_HITS.sum();
+	}
+
+	/**
+	 * @return number of {@link #get} and {@link #getIfPresent} requests that did not find a valid entry, summed over
+	 * all instances
+	 */
+	public static long getNumMisses()
+	{
+		return NUM_MISSES.sum();
+	}
+
 	/**
 	 * Remove entries from the cache whose references have been garbage-collected.
 	 */
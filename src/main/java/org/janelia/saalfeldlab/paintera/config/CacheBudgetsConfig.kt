@@ -0,0 +1,34 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.beans.property.LongProperty
+import javafx.beans.property.SimpleLongProperty
+import org.janelia.saalfeldlab.paintera.cache.CacheBudgets
+import org.janelia.saalfeldlab.paintera.cache.CacheTier
+import java.util.EnumMap
+
+/**
+ * Byte budget per [CacheTier]. Use [bindBudgetsToConfig] to apply the budgets to the global [CacheBudgets].
+ */
+class CacheBudgetsConfig {
+
+	private val maxBytes = EnumMap<CacheTier, LongProperty>(CacheTier::class.java)
+			.also { map -> CacheTier.values().forEach { map[it] = SimpleLongProperty(it.defaultMaxBytes()) } }
+
+	fun maxBytesProperty(tier: CacheTier): LongProperty = maxBytes[tier]!!
+
+	fun getMaxBytes(tier: CacheTier) = maxBytesProperty(tier).get()
+
+	fun setMaxBytes(tier: CacheTier, bytes: Long) = maxBytesProperty(tier).set(bytes)
+
+	fun isDefault(tier: CacheTier) = getMaxBytes(tier) == tier.defaultMaxBytes()
+
+	fun set(that: CacheBudgetsConfig) = CacheTier.values().forEach { setMaxBytes(it, that.getMaxBytes(it)) }
+
+	fun bindBudgetsToConfig() = CacheTier.values().forEach { tier ->
+		maxBytesProperty(tier).addListener { _, _, newv -> CacheBudgets.setMaxBytes(tier, newv.toLong()) }
+		CacheBudgets.setMaxBytes(tier, getMaxBytes(tier))
+	}
+
+	override fun toString() = "{CacheBudgetsConfig: ${CacheTier.values().joinToString { "${it.key}=${getMaxBytes(it)}" }}}"
+
+}
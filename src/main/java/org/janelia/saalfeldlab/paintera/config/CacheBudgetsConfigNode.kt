@@ -0,0 +1,76 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.animation.Animation
+import javafx.animation.KeyFrame
+import javafx.animation.Timeline
+import javafx.event.EventHandler
+import javafx.scene.control.Label
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import javafx.util.Duration
+import javafx.util.StringConverter
+import org.janelia.saalfeldlab.fx.ui.ObjectField
+import org.janelia.saalfeldlab.paintera.cache.CacheBudgets
+import org.janelia.saalfeldlab.paintera.cache.CacheTier
+
+/**
+ * Edit the byte budget of each [CacheTier] and show current usage. Usage is refreshed once per second while the
+ * pane is expanded.
+ */
+class CacheBudgetsConfigNode(config: CacheBudgetsConfig) : TitledPane("Cache Budgets", null) {
+
+	private val usageLabels = CacheTier.values().associate { it to Label() }
+
+	private val totalLabel = Label()
+
+	private val refresh = Timeline(KeyFrame(Duration.seconds(1.0), EventHandler { updateUsage() }))
+			.also { it.cycleCount = Animation.INDEFINITE }
+
+	init {
+		val grid = GridPane()
+		content = grid
+		isExpanded = false
+		grid.hgap = 5.0
+		CacheTier.values().forEachIndexed { row, tier ->
+			val budgetField = ObjectField(
+					config.maxBytesProperty(tier).asObject(),
+					BytesConverter(),
+					ObjectField.SubmitOn.ENTER_PRESSED,
+					ObjectField.SubmitOn.FOCUS_LOST)
+			budgetField.textField().tooltip = Tooltip("Budget for ${tier.displayName.toLowerCase()}, e.g. 512m or 2g")
+			grid.add(Label(tier.displayName), 0, row)
+			grid.add(budgetField.textField(), 1, row)
+			grid.add(usageLabels[tier], 2, row)
+			GridPane.setHgrow(budgetField.textField(), Priority.ALWAYS)
+		}
+		grid.add(Label("Total"), 0, CacheTier.values().size)
+		grid.add(totalLabel, 2, CacheTier.values().size)
+		expandedProperty().addListener { _, _, isExpanded -> if (isExpanded) refresh.play() else refresh.stop() }
+		updateUsage()
+	}
+
+	private fun updateUsage() {
+		CacheTier.values().forEach { tier ->
+			val budget = CacheBudgets.get(tier)
+			usageLabels[tier]?.text = "${CacheBudgets.toHumanReadable(budget.usedBytes)} (${budget.numEntries})"
+			usageLabels[tier]?.tooltip = Tooltip("hits=${budget.numHits} misses=${budget.numMisses} evictions=${budget.numEvictions}")
+		}
+		totalLabel.text = CacheBudgets.toHumanReadable(CacheBudgets.getTotalUsedBytes())
+	}
+
+	private class BytesConverter : StringConverter<Long>() {
+
+		override fun toString(bytes: Long?) = bytes?.let { CacheBudgets.toHumanReadable(it) }
+
+		override fun fromString(string: String?): Long {
+			try {
+				return CacheBudgets.parseBytes(string?.replace("i", "")?.replace(" ", "") ?: "")
+			} catch (e: IllegalArgumentException) {
+				throw ObjectField.InvalidUserInput("Invalid size `$string'", e)
+			}
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import bdv.fx.viewer.render.PredictivePrefetcher
+import javafx.beans.property.BooleanProperty
+import javafx.beans.property.IntegerProperty
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleIntegerProperty
+
+/**
+ * Configuration of the [PredictivePrefetcher] of each viewer: request cells for the next [numPredictedFrames] frames
+ * in the direction of navigation, up to [maxCellsPerFrame] cells per rendered frame.
+ */
+class PrefetchConfig {
+
+	private val _isEnabled = SimpleBooleanProperty(DEFAULT_IS_ENABLED)
+
+	private val _numPredictedFrames = SimpleIntegerProperty(PredictivePrefetcher.DEFAULT_NUM_PREDICTED_FRAMES)
+
+	private val _maxCellsPerFrame = SimpleIntegerProperty(PredictivePrefetcher.DEFAULT_MAX_CELLS_PER_FRAME)
+
+	var isEnabled: Boolean
+		get() = _isEnabled.get()
+		set(isEnabled) = _isEnabled.set(isEnabled)
+
+	var numPredictedFrames: Int
+		get() = _numPredictedFrames.get()
+		set(numPredictedFrames) = _numPredictedFrames.set(numPredictedFrames)
+
+	var maxCellsPerFrame: Int
+		get() = _maxCellsPerFrame.get()
+		set(maxCellsPerFrame) = _maxCellsPerFrame.set(maxCellsPerFrame)
+
+	fun isEnabledProperty(): BooleanProperty = _isEnabled
+
+	fun numPredictedFramesProperty(): IntegerProperty = _numPredictedFrames
+
+	fun maxCellsPerFrameProperty(): IntegerProperty = _maxCellsPerFrame
+
+	fun set(that: PrefetchConfig) {
+		this.isEnabled = that.isEnabled
+		this.numPredictedFrames = that.numPredictedFrames
+		this.maxCellsPerFrame = that.maxCellsPerFrame
+	}
+
+	override fun toString() = "{PrefetchConfig: isEnabled=$isEnabled, numPredictedFrames=$numPredictedFrames, maxCellsPerFrame=$maxCellsPerFrame}"
+
+	companion object {
+		const val DEFAULT_IS_ENABLED = true
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.scene.control.CheckBox
+import javafx.scene.control.Label
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import org.janelia.saalfeldlab.fx.ui.NumberField
+import org.janelia.saalfeldlab.fx.ui.ObjectField
+import java.util.function.IntPredicate
+
+class PrefetchConfigNode(config: PrefetchConfig) : TitledPane("Prefetching", null) {
+
+	private val enabledCheckBox = CheckBox()
+			.also { it.tooltip = Tooltip("Request data for the next frames in the direction of navigation.") }
+
+	private val numPredictedFramesField = NumberField.intField(
+			config.numPredictedFrames,
+			IntPredicate { it >= 0 },
+			ObjectField.SubmitOn.ENTER_PRESSED,
+			ObjectField.SubmitOn.FOCUS_LOST)
+
+	private val maxCellsPerFrameField = NumberField.intField(
+			config.maxCellsPerFrame,
+			IntPredicate { it >= 0 },
+			ObjectField.SubmitOn.ENTER_PRESSED,
+			ObjectField.SubmitOn.FOCUS_LOST)
+
+	init {
+		enabledCheckBox.selectedProperty().bindBidirectional(config.isEnabledProperty())
+		numPredictedFramesField.valueProperty().bindBidirectional(config.numPredictedFramesProperty())
+		maxCellsPerFrameField.valueProperty().bindBidirectional(config.maxCellsPerFrameProperty())
+		numPredictedFramesField.textField().tooltip = Tooltip("Number of planes (scrolling) or steps (panning) to look ahead.")
+		maxCellsPerFrameField.textField().tooltip = Tooltip("Maximum number of blocks requested for predictions per rendered frame.")
+
+		val grid = GridPane()
+		Label("Predicted frames")
+				.also { GridPane.setHgrow(it, Priority.ALWAYS) }
+				.also { grid.add(it, 0, 0) }
+		grid.add(numPredictedFramesField.textField(), 1, 0)
+		Label("Max blocks per frame")
+				.also { GridPane.setHgrow(it, Priority.ALWAYS) }
+				.also { grid.add(it, 0, 1) }
+		grid.add(maxCellsPerFrameField.textField(), 1, 1)
+		grid.disableProperty().bind(enabledCheckBox.selectedProperty().not())
+
+		graphic = enabledCheckBox
+		content = grid
+		isExpanded = false
+	}
+
+}
@@ -1,6 +1,10 @@
 package org.janelia.saalfeldlab.paintera.config
 
+import javafx.beans.property.BooleanProperty
+import javafx.beans.property.DoubleProperty
 import javafx.beans.property.ObjectProperty
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleDoubleProperty
 import javafx.beans.property.SimpleObjectProperty
 import java.util.*
 
@@ -8,6 +12,13 @@ class ScreenScalesConfig @JvmOverloads constructor(vararg initialScales: Double
 
     private val screenScales = SimpleObjectProperty<ScreenScales>()
 
+    private val adaptive = SimpleBooleanProperty(DEFAULT_ADAPTIVE)
+
+    private val targetFrameTimeMillis = SimpleDoubleProperty(DEFAULT_TARGET_FRAME_TIME_MILLIS)
+
+    val targetRenderNanos: Long
+        get() = (targetFrameTimeMillis.get() * 1e6).toLong()
+
     class ScreenScales(vararg scales: Double) {
 
         private val scales: DoubleArray
@@ -42,14 +53,30 @@ class ScreenScalesConfig @JvmOverloads constructor(vararg initialScales: Double
         return this.screenScales
     }
 
+    /**
+     * If `true`, start rendering at the finest screen scale that is expected to render within the target frame
+     * time, based on render times of previous frames. Otherwise, always start at the coarsest screen scale.
+     */
+    fun adaptiveProperty(): BooleanProperty {
+        return this.adaptive
+    }
+
+    fun targetFrameTimeMillisProperty(): DoubleProperty {
+        return this.targetFrameTimeMillis
+    }
+
     fun set(that: ScreenScalesConfig) {
         this.screenScales.set(that.screenScales.get())
+        this.adaptive.set(that.adaptive.get())
+        this.targetFrameTimeMillis.set(that.targetFrameTimeMillis.get())
     }
 
     override fun toString(): String {
         return String.format(
-                "{ScreenScalesConfig: %s}",
-                if (this.screenScales.get() == null) null else this.screenScales.get().toString()
+                "{ScreenScalesConfig: %s, adaptive=%s, targetFrameTimeMillis=%s}",
+                if (this.screenScales.get() == null) null else this.screenScales.get().toString(),
+                this.adaptive.get(),
+                this.targetFrameTimeMillis.get()
         )
     }
 
@@ -57,6 +84,10 @@ class ScreenScalesConfig @JvmOverloads constructor(vararg initialScales: Double
 
         private val DEFAULT_SCREEN_SCALES = doubleArrayOf(1.0, 0.5, 0.25, 0.125, 0.0625)
 
+        const val DEFAULT_ADAPTIVE = true
+
+        const val DEFAULT_TARGET_FRAME_TIME_MILLIS = 1000.0 / 30.0
+
         @JvmStatic
         fun defaultScreenScalesCopy(): DoubleArray {
             return DEFAULT_SCREEN_SCALES.clone()
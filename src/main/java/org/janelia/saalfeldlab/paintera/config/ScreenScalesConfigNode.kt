@@ -1,11 +1,14 @@
 package org.janelia.saalfeldlab.paintera.config
 
 import javafx.beans.property.ObjectProperty
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleDoubleProperty
 import javafx.beans.property.SimpleObjectProperty
 import javafx.scene.Node
 import javafx.scene.control.*
 import javafx.scene.layout.GridPane
 import javafx.scene.layout.HBox
+import javafx.scene.layout.VBox
 import javafx.util.StringConverter
 import org.janelia.saalfeldlab.fx.TitledPanes
 import org.janelia.saalfeldlab.fx.ui.NumberField
@@ -26,6 +29,10 @@ class ScreenScalesConfigNode() {
 
     private val screenScales = SimpleObjectProperty(ScreenScalesConfig.ScreenScales(1.0, 0.5))
 
+    private val adaptive = SimpleBooleanProperty(ScreenScalesConfig.DEFAULT_ADAPTIVE)
+
+    private val targetFrameTimeMillis = SimpleDoubleProperty(ScreenScalesConfig.DEFAULT_TARGET_FRAME_TIME_MILLIS)
+
     val contents: Node
 
     init {
@@ -34,6 +41,8 @@ class ScreenScalesConfigNode() {
 
     fun bind(config: ScreenScalesConfig) {
         this.screenScales.bindBidirectional(config.screenScalesProperty())
+        this.adaptive.bindBidirectional(config.adaptiveProperty())
+        this.targetFrameTimeMillis.bindBidirectional(config.targetFrameTimeMillisProperty())
     }
 
     private fun createContents(): Node {
@@ -49,7 +58,28 @@ class ScreenScalesConfigNode() {
         geometricSequenceButton.setOnAction { fromGeometricSequence().showAndWait().ifPresent { screenScales.set(it) } }
         val setButton = MenuButton("Set", null, geometricSequenceButton)
 
-        return TitledPanes.createCollapsed("Screen Scales", HBox(screenScalesField.textField(), setButton))
+        val adaptiveCheckBox = CheckBox("Adaptive")
+        adaptiveCheckBox.selectedProperty().bindBidirectional(adaptive)
+        adaptiveCheckBox.tooltip = Tooltip(
+                "Start rendering at the finest screen scale that is expected to render within the target frame time. " +
+                        "Otherwise, always start at the coarsest screen scale."
+        )
+        val targetFrameTimeField = NumberField.doubleField(
+                targetFrameTimeMillis.get(),
+                DoublePredicate { it > 0.0 },
+                ObjectField.SubmitOn.ENTER_PRESSED,
+                ObjectField.SubmitOn.FOCUS_LOST
+        )
+        targetFrameTimeField.valueProperty().bindBidirectional(targetFrameTimeMillis)
+        targetFrameTimeField.textField().tooltip = Tooltip("Target frame time in milliseconds")
+        targetFrameTimeField.textField().disableProperty().bind(adaptive.not())
+        val targetFrameTimeLabel = Label("Target frame time (ms)")
+
+        return TitledPanes.createCollapsed(
+                "Screen Scales",
+                VBox(
+                        HBox(screenScalesField.textField(), setButton),
+                        HBox(adaptiveCheckBox, targetFrameTimeLabel, targetFrameTimeField.textField())))
     }
 
     private class ScreenScalesStringConverter : StringConverter<ScreenScalesConfig.ScreenScales>() {
@@ -0,0 +1,289 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.morphology.distance.DistanceTransform;
+import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
+import net.imglib2.converter.logical.Logical;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Shape interpolation between any number of parallel 2D sections. The signed Euclidean distance transform of each
+ * section is computed once (concurrently for all sections). The distance at a point between two consecutive sections
+ * is the bilinear interpolation within each section, blended linearly along the section normal. A point is inside the
+ * interpolated shape if its distance is not positive. Points outside of the sections or beyond the first and last
+ * section are outside.
+ *
+ * {@link #materialize} writes the interpolated shape into an image block by block, instead of evaluating it lazily
+ * for every access.
+ */
+public class SectionInterpolation
+{
+
+	// tolerance for points that lie on the first or last section up to numerical errors of the transform
+	private static final double DEPTH_TOLERANCE = 1e-6;
+
+	private final long width;
+
+	private final long height;
+
+	private final double[] depths;
+
+	private final float[][] distances;
+
+	private SectionInterpolation(final long width, final long height, final double[] depths, final float[][] distances)
+	{
+		this.width = width;
+		this.height = height;
+		this.depths = depths;
+		this.distances = distances;
+	}
+
+	/**
+	 * @param sections binary 2D sections of identical size, foreground is {@code true}. Pixel {@code (x, y)} of each
+	 *                 section is at position {@code (x - min(0), y - min(1), depth)}.
+	 * @param depths position of each section along the section normal, strictly increasing
+	 * @param es distance transforms of all sections are computed in parallel on {@code es}
+	 */
+	public static <B extends BooleanType<B>> SectionInterpolation fromSections(
+			final List<? extends RandomAccessibleInterval<B>> sections,
+			final double[] depths,
+			final ExecutorService es) throws InterruptedException, ExecutionException
+	{
+		if (sections.size() < 2 || sections.size() != depths.length)
+			throw new IllegalArgumentException(String.format("Need at least two sections and one depth per section but got %d and %d", sections.size(), depths.length));
+		for (int i = 1; i < depths.length; ++i)
+			if (depths[i] <= depths[i - 1])
+				throw new IllegalArgumentException(String.format("Depths not strictly increasing: %f <= %f", depths[i], depths[i - 1]));
+
+		final long width = sections.get(0).dimension(0);
+		final long height = sections.get(0).dimension(1);
+		for (final RandomAccessibleInterval<B> section : sections)
+			if (section.numDimensions() != 2 || section.dimension(0) != width || section.dimension(1) != height)
+				throw new IllegalArgumentException("All sections must be 2D and of identical size: " + Intervals.dimensionsAsLongArray(section));
+
+		final List<Future<float[]>> futures = new ArrayList<>();
+		for (final RandomAccessibleInterval<B> section : sections)
+			futures.add(es.submit(() -> signedDistanceTransform(Views.zeroMin(section))));
+
+		final float[][] distances = new float[sections.size()][];
+		try
+		{
+			for (int i = 0; i < distances.length; ++i)
+				distances[i] = futures.get(i).get();
+		} finally
+		{
+			futures.forEach(f -> f.cancel(true));
+		}
+		return new SectionInterpolation(width, height, depths.clone(), distances);
+	}
+
+	public int numSections()
+	{
+		return depths.length;
+	}
+
+	/**
+	 * @return interpolated signed distance at {@code (x, y, depth)}, negative inside the shape, or
+	 * {@link Double#POSITIVE_INFINITY} outside of the sections
+	 */
+	public double distance(final double x, final double y, final double depth)
+	{
+		if (x < 0 || y < 0 || x > width - 1 || y > height - 1)
+			return Double.POSITIVE_INFINITY;
+
+		final int last = depths.length - 1;
+		if (depth < depths[0] - DEPTH_TOLERANCE || depth > depths[last] + DEPTH_TOLERANCE)
+			return Double.POSITIVE_INFINITY;
+
+		// consecutive sections k and k + 1 that enclose depth
+		final int index = Arrays.binarySearch(depths, depth);
+		final int k = Math.min(Math.max(index < 0 ? -index - 2 : index, 0), last - 1);
+		final double t = Math.min(Math.max((depth - depths[k]) / (depths[k + 1] - depths[k]), 0.0), 1.0);
+
+		final int x0 = (int) x;
+		final int y0 = (int) y;
+		final int x1 = Math.min(x0 + 1, (int) width - 1);
+		final int y1 = Math.min(y0 + 1, (int) height - 1);
+		final double fx = x - x0;
+		final double fy = y - y0;
+		final int i00 = y0 * (int) width + x0;
+		final int i01 = y0 * (int) width + x1;
+		final int i10 = y1 * (int) width + x0;
+		final int i11 = y1 * (int) width + x1;
+		return (1 - t) * bilinear(distances[k], i00, i01, i10, i11, fx, fy) + t * bilinear(distances[k + 1], i00, i01, i10, i11, fx, fy);
+	}
+
+	public boolean isInside(final double x, final double y, final double depth)
+	{
+		return distance(x, y, depth) <= 0;
+	}
+
+	/**
+	 * Set all voxels of {@code target} within {@code interval} that are inside the interpolated shape to
+	 * {@code value}. Voxels outside of the shape are not modified. The cells of {@code grid} that intersect with
+	 * {@code interval} are processed in parallel on {@code es}. {@code target} must support concurrent writes into
+	 * different cells of {@code grid}.
+	 *
+	 * @param toSections maps voxel positions of {@code target} into the coordinate system of the sections
+	 *                   ({@code x, y, depth})
+	 * @return indices of the cells of {@code grid} that contain at least one voxel inside the shape, in flat iteration
+	 * order of the cell grid
+	 */
+	public <T extends Type<T>> long[] materialize(
+			final RandomAccessible<T> target,
+			final Interval interval,
+			final CellGrid grid,
+			final AffineTransform3D toSections,
+			final T value,
+			final ExecutorService es) throws InterruptedException, ExecutionException
+	{
+		assert interval.numDimensions() == 3 && grid.numDimensions() == 3;
+
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] imgDimensions = grid.getImgDimensions();
+		final int[] cellSize = new int[3];
+		grid.cellDimensions(cellSize);
+		final long[] cellMin = new long[3];
+		final long[] cellMax = new long[3];
+		for (int d = 0; d < 3; ++d)
+		{
+			cellMin[d] = Math.max(interval.min(d), 0) / cellSize[d];
+			cellMax[d] = Math.min(interval.max(d) / cellSize[d], gridDimensions[d] - 1);
+		}
+
+		final List<Future<Long>> futures = new ArrayList<>();
+		final long[] cellPosition = new long[3];
+		for (cellPosition[2] = cellMin[2]; cellPosition[2] <= cellMax[2]; ++cellPosition[2])
+		{
+			for (cellPosition[1] = cellMin[1]; cellPosition[1] <= cellMax[1]; ++cellPosition[1])
+			{
+				for (cellPosition[0] = cellMin[0]; cellPosition[0] <= cellMax[0]; ++cellPosition[0])
+				{
+					final long[] min = new long[3];
+					final long[] max = new long[3];
+					for (int d = 0; d < 3; ++d)
+					{
+						min[d] = Math.max(cellPosition[d] * cellSize[d], interval.min(d));
+						max[d] = Math.min(Math.min((cellPosition[d] + 1) * cellSize[d], imgDimensions[d]) - 1, interval.max(d));
+					}
+					final long index = IntervalIndexer.positionToIndex(cellPosition, gridDimensions);
+					final Interval cell = new FinalInterval(min, max);
+					futures.add(es.submit(() -> materializeCell(target, cell, toSections.copy(), value) ? index : -1L));
+				}
+			}
+		}
+
+		final TLongArrayList cells = new TLongArrayList();
+		try
+		{
+			for (final Future<Long> future : futures)
+			{
+				final long index = future.get();
+				if (index >= 0)
+					cells.add(index);
+			}
+		} finally
+		{
+			futures.forEach(f -> f.cancel(true));
+		}
+		return cells.toArray();
+	}
+
+	private <T extends Type<T>> boolean materializeCell(
+			final RandomAccessible<T> target,
+			final Interval cell,
+			final AffineTransform3D toSections,
+			final T value)
+	{
+		if (Thread.currentThread().isInterrupted())
+			return false;
+
+		final RandomAccess<T> access = target.randomAccess(cell);
+		final double[] position = new double[3];
+		final double[] transformed = new double[3];
+		// increment of the transformed position along the first dimension
+		final double dx = toSections.get(0, 0);
+		final double dy = toSections.get(1, 0);
+		final double dz = toSections.get(2, 0);
+		boolean isModified = false;
+		for (long z = cell.min(2); z <= cell.max(2); ++z)
+		{
+			for (long y = cell.min(1); y <= cell.max(1); ++y)
+			{
+				position[0] = cell.min(0);
+				position[1] = y;
+				position[2] = z;
+				toSections.apply(position, transformed);
+				access.setPosition(y, 1);
+				access.setPosition(z, 2);
+				for (long x = cell.min(0); x <= cell.max(0); ++x)
+				{
+					if (isInside(transformed[0], transformed[1], transformed[2]))
+					{
+						access.setPosition(x, 0);
+						access.get().set(value);
+						isModified = true;
+					}
+					transformed[0] += dx;
+					transformed[1] += dy;
+					transformed[2] += dz;
+				}
+			}
+		}
+		return isModified;
+	}
+
+	private static double bilinear(
+			final float[] distances,
+			final int i00,
+			final int i01,
+			final int i10,
+			final int i11,
+			final double fx,
+			final double fy)
+	{
+		final double d0 = distances[i00] + fx * (distances[i01] - distances[i00]);
+		final double d1 = distances[i10] + fx * (distances[i11] - distances[i10]);
+		return d0 + fy * (d1 - d0);
+	}
+
+	/**
+	 * @return signed Euclidean distance of each pixel (flat, first dimension fastest) to the boundary of the
+	 * foreground, negative inside
+	 */
+	private static <B extends BooleanType<B>> float[] signedDistanceTransform(final RandomAccessibleInterval<B> mask)
+	{
+		final long[] dimensions = Intervals.dimensionsAsLongArray(mask);
+		final ArrayImg<FloatType, FloatArray> distanceOutside = ArrayImgs.floats(dimensions);
+		final ArrayImg<FloatType, FloatArray> distanceInside = ArrayImgs.floats(dimensions);
+		DistanceTransform.binaryTransform(mask, distanceOutside, DISTANCE_TYPE.EUCLIDIAN);
+		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, DISTANCE_TYPE.EUCLIDIAN);
+		LoopBuilder.setImages(distanceOutside, distanceInside).forEachPixel((outside, inside) ->
+				outside.setReal(Math.sqrt(outside.getRealDouble()) - Math.sqrt(inside.getRealDouble())));
+		return distanceOutside.update(null).getCurrentStorageArray();
+	}
+
+}
@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.paintera.control;
 import bdv.fx.viewer.ViewerPanelFX;
 import bdv.util.Affine3DHelpers;
 import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import javafx.beans.InvalidationListener;
@@ -11,6 +12,7 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.event.Event;
 import javafx.event.EventHandler;
+import javafx.scene.control.Alert;
 import javafx.scene.effect.ColorAdjust;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -18,33 +20,25 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.RealRandomAccessible;
-import net.imglib2.algorithm.morphology.distance.DistanceTransform;
-import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
 import net.imglib2.converter.Converters;
-import net.imglib2.converter.logical.Logical;
-import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
-import net.imglib2.loops.LoopBuilder;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.realtransform.Scale3D;
 import net.imglib2.realtransform.Translation3D;
-import net.imglib2.type.BooleanType;
-import net.imglib2.type.NativeType;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
@@ -54,8 +48,10 @@ import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
 import org.janelia.saalfeldlab.fx.event.EventFX;
 import org.janelia.saalfeldlab.fx.event.KeyTracker;
 import org.janelia.saalfeldlab.fx.event.MouseClickFX;
+import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.NamedKeyCombination;
+import org.janelia.saalfeldlab.paintera.Paintera;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.config.input.KeyAndMouseBindings;
 import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions;
@@ -75,11 +71,19 @@ import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
+import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 
 import static org.janelia.saalfeldlab.paintera.state.LabelSourceState.BindingKeys.ENTER_SHAPE_INTERPOLATION_MODE;
@@ -99,25 +103,6 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		Preview
 	}
 
-	public static enum ActiveSection
-	{
-		First("1"),
-		Second("2");
-
-		private final String s;
-
-		private ActiveSection(final String s)
-		{
-			this.s = s;
-		}
-
-		@Override
-		public String toString()
-		{
-			return s;
-		}
-	}
-
 	private static final class SelectedObjectInfo
 	{
 		final RealPoint sourceClickPosition;
@@ -159,6 +144,9 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private static final double FILL_DEPTH_ORTHOGONAL = 1.0;
 
+	// sections closer than this along the viewer normal are considered to be in the same plane
+	private static final double SECTION_DEPTH_TOLERANCE = 1e-3;
+
 	private static final int MASK_SCALE_LEVEL = 0;
 
 	private static final int SHAPE_INTERPOLATION_SCALE_LEVEL = MASK_SCALE_LEVEL;
@@ -187,15 +175,19 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private final TLongObjectMap<SelectedObjectInfo> selectedObjects = new TLongObjectHashMap<>();
 
-	private final ObjectProperty<SectionInfo> sectionInfo1 = new SimpleObjectProperty<>();
-	private final ObjectProperty<SectionInfo> sectionInfo2 = new SimpleObjectProperty<>();
+	// fixed sections in the order in which they were added, not necessarily ordered by depth
+	private final List<SectionInfo> sections = new ArrayList<>();
 
 	private final ObjectProperty<ModeState> modeState = new SimpleObjectProperty<>();
-	private final ObjectProperty<ActiveSection> activeSection = new SimpleObjectProperty<>();
+	// number of the section that is currently selected, starting at 1
+	private final ObjectProperty<Integer> activeSection = new SimpleObjectProperty<>();
 
 	private Thread workerThread;
 	private Runnable onInterpolationFinished;
-	private Pair<RealRandomAccessible<UnsignedLongType>, RealRandomAccessible<VolatileUnsignedLongType>> interpolatedMaskImgs;
+	// set by the worker thread before it finishes, null if the interpolation succeeded
+	private volatile String interpolationFailure;
+	private volatile Exception interpolationFailureCause;
+	private Interval interpolatedSourceInterval;
 
 	public ShapeInterpolationMode(
 			final MaskedSource<D, ?> source,
@@ -223,7 +215,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return modeState;
 	}
 
-	public ObjectProperty<ActiveSection> activeSectionProperty()
+	public ObjectProperty<Integer> activeSectionProperty()
 	{
 		return activeSection;
 	}
@@ -261,24 +253,25 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 				KeyEvent.KEY_PRESSED,
 				EventFX.KEY_PRESSED(
 						SHAPE_INTERPOLATION_EDIT_SELECTION_1,
-						e -> {e.consume(); editSelection(paintera, ActiveSection.First);},
+						e -> {e.consume(); editSelection(paintera, 1);},
 						e -> keyCombinations.matches(SHAPE_INTERPOLATION_EDIT_SELECTION_1, e)));
 		filter.addEventHandler(
 				KeyEvent.KEY_PRESSED,
 				EventFX.KEY_PRESSED(
 						SHAPE_INTERPOLATION_EDIT_SELECTION_2,
-						e -> {e.consume(); editSelection(paintera, ActiveSection.Second);},
+						e -> {e.consume(); editSelection(paintera, 2);},
 						e -> keyCombinations.matches(SHAPE_INTERPOLATION_EDIT_SELECTION_2, e)));
 
+		// clicking in preview mode adds another section at the current viewer plane
 		filter.addEventHandler(MouseEvent.ANY, new MouseClickFX(
 				"select object in current section",
 				e -> {e.consume(); selectObject(paintera, e.getX(), e.getY(), true);},
-				e -> modeState.get() == ModeState.Select && e.isPrimaryButtonDown() && keyTracker.noKeysActive())
+				e -> isSelectOrPreview() && e.isPrimaryButtonDown() && keyTracker.noKeysActive())
 			.handler());
 		filter.addEventHandler(MouseEvent.ANY, new MouseClickFX(
 				"toggle object in current section",
 				e -> {e.consume(); selectObject(paintera, e.getX(), e.getY(), false);},
-				e -> modeState.get() == ModeState.Select &&
+				e -> isSelectOrPreview() &&
 					((e.isSecondaryButtonDown() && keyTracker.noKeysActive()) ||
 					(e.isPrimaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.CONTROL))))
 			.handler());
@@ -322,7 +315,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		converter.setColor(newLabelId, MASK_COLOR);
 		selectedIds.activate(newLabelId);
 
-		activeSection.set(ActiveSection.First);
+		activeSection.set(1);
 		modeState.set(ModeState.Select);
 	}
 
@@ -356,15 +349,15 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 		currentFillValue = 0;
 		selectedObjects.clear();
-		sectionInfo1.set(null);
-		sectionInfo2.set(null);
+		sections.forEach(section -> shutdown(section.mask));
+		sections.clear();
 		modeState.set(null);
 		activeSection.set(null);
 		mask = null;
 
 		workerThread = null;
 		onInterpolationFinished = null;
-		interpolatedMaskImgs = null;
+		interpolatedSourceInterval = null;
 		lastSelectedId = Label.INVALID;
 		lastActiveIds = null;
 
@@ -377,6 +370,11 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return modeState.get() != null;
 	}
 
+	private boolean isSelectOrPreview()
+	{
+		return modeState.get() == ModeState.Select || modeState.get() == ModeState.Preview;
+	}
+
 	private void createMask() throws MaskInUse
 	{
 		final int time = activeViewer.getState().getTimepoint();
@@ -385,16 +383,28 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		mask = source.generateMask(maskInfo, FOREGROUND_CHECK);
 	}
 
+	/**
+	 * Remove the current mask from the source. The mask is shut down unless it belongs to a section and may be set
+	 * again when the section is edited.
+	 */
 	private void resetMask()
 	{
 		try {
-			source.resetMasks();
+			source.resetMasks(false);
 		} catch (final MaskInUse e) {
 			e.printStackTrace();
 		}
+		if (sections.stream().noneMatch(section -> section.mask == mask))
+			shutdown(mask);
 		mask = null;
 	}
 
+	private static void shutdown(final Mask<?> mask)
+	{
+		if (mask != null && mask.shutdown != null)
+			mask.shutdown.run();
+	}
+
 	private void setDisableOtherViewers(final PainteraBaseView paintera, final boolean disable)
 	{
 		final ViewerPanelFX[] viewers = {
@@ -425,53 +435,89 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private void fixSelection(final PainteraBaseView paintera)
 	{
-		final ObjectProperty<SectionInfo> sectionInfoPropertyToSet = activeSection.get() == ActiveSection.First ? sectionInfo1 : sectionInfo2;
-		LOG.debug("Fix selection");
-		sectionInfoPropertyToSet.set(createSectionInfo(paintera));
+		final int index = activeSection.get() - 1;
+		LOG.debug("Fix selection of section {}", index + 1);
+		final SectionInfo sectionInfo = createSectionInfo(paintera);
+		if (index < sections.size())
+		{
+			final SectionInfo previous = sections.set(index, sectionInfo);
+			if (previous.mask != sectionInfo.mask)
+				shutdown(previous.mask);
+		}
+		else
+			sections.add(sectionInfo);
 		selectedObjects.clear();
 	}
 
 	private void advanceMode(final PainteraBaseView paintera)
 	{
-		if (sectionInfo1.get() == null || sectionInfo2.get() == null)
+		if (sections.size() < 2)
 		{
-			// let the user now select the second section
-			activeSection.set(ActiveSection.Second);
+			// let the user now select the next section
+			activeSection.set(sections.size() + 1);
 			resetMask();
 			paintera.orthogonalViews().requestRepaint();
 		}
 		else
 		{
-			// both sections are ready, run interpolation
+			// enough sections are ready, run interpolation
 			activeSection.set(null);
 			modeState.set(ModeState.Interpolate);
-			onInterpolationFinished = () -> modeState.set(ModeState.Preview);
+			onInterpolationFinished = () ->
+			{
+				if (interpolationFailure == null)
+				{
+					modeState.set(ModeState.Preview);
+					return;
+				}
+				// let the user add or edit sections instead
+				showInterpolationFailure();
+				resetMask();
+				activeSection.set(sections.size() + 1);
+				modeState.set(ModeState.Select);
+				paintera.orthogonalViews().requestRepaint();
+			};
 			interpolateBetweenSections(paintera);
 		}
 	}
 
-	private void editSelection(final PainteraBaseView paintera, final ActiveSection section)
+	/**
+	 * Discard the preview and select objects for an additional section in the current viewer plane.
+	 */
+	private void addSection(final PainteraBaseView paintera)
+	{
+		interruptInterpolation();
+		resetMask();
+		selectedObjects.clear();
+		activeSection.set(sections.size() + 1);
+		modeState.set(ModeState.Select);
+		paintera.orthogonalViews().requestRepaint();
+	}
+
+	/**
+	 * @param section number of the section, starting at 1
+	 */
+	private void editSelection(final PainteraBaseView paintera, final int section)
 	{
 		interruptInterpolation();
 
-		if (activeSection.get() == section)
+		final Integer active = activeSection.get();
+		if (active != null && active == section)
 			return;
 
-		if (activeSection.get() != null)
+		if (active != null)
 		{
 			if (selectedObjects.isEmpty())
 				return;
 			fixSelection(paintera);
 		}
 
-		final ObjectProperty<SectionInfo> sectionInfoPropertyToEdit = section == ActiveSection.First ? sectionInfo1 : sectionInfo2;
-		final SectionInfo sectionInfo = sectionInfoPropertyToEdit.get();
-
-		if (sectionInfo == null)
+		if (section > sections.size())
 		{
 			advanceMode(paintera);
 			return;
 		}
+		final SectionInfo sectionInfo = sections.get(section - 1);
 
 		resetMask();
 		try {
@@ -486,7 +532,6 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		selectedObjects.clear();
 		selectedObjects.putAll(sectionInfo.selectedObjects);
 
-		sectionInfoPropertyToEdit.set(null);
 		activeSection.set(section);
 
 		modeState.set(ModeState.Select);
@@ -496,12 +541,17 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	{
 		if (modeState.get() == ModeState.Select)
 		{
-			final boolean firstSectionReady  = sectionInfo1.get() != null || (activeSection.get() == ActiveSection.First  && !selectedObjects.isEmpty());
-			final boolean secondSectionReady = sectionInfo2.get() != null || (activeSection.get() == ActiveSection.Second && !selectedObjects.isEmpty());
-			if (!firstSectionReady || !secondSectionReady)
+			final Integer active = activeSection.get();
+			final boolean isNewSection = active != null && active > sections.size();
+			// a section that is being edited must not be empty
+			if (!isNewSection && selectedObjects.isEmpty())
+				return;
+			final int numSections = sections.size() + (isNewSection && !selectedObjects.isEmpty() ? 1 : 0);
+			if (numSections < 2)
 				return;
 
-			fixSelection(paintera);
+			if (!selectedObjects.isEmpty())
+				fixSelection(paintera);
 			advanceMode(paintera);
 		}
 
@@ -516,24 +566,42 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			runOnInterpolationFinished();
 		}
 
-		assert modeState.get() == ModeState.Preview;
+		if (modeState.get() != ModeState.Preview)
+			return;
 
-		final Interval sectionsUnionSourceInterval = Intervals.union(
-				sectionInfo1.get().sourceBoundingBox,
-				sectionInfo2.get().sourceBoundingBox
-			);
-		LOG.info("Applying interpolated mask using bounding box of size {}", Intervals.dimensionsAsLongArray(sectionsUnionSourceInterval));
+		final Mask<UnsignedLongType> interpolatedMask = source.getCurrentMask();
+		if (interpolatedMask == null || interpolatedSourceInterval == null)
+		{
+			LOG.warn("No interpolated shape available, nothing to apply");
+			return;
+		}
+		final Interval paintedInterval = interpolatedSourceInterval;
+		LOG.info("Applying interpolated mask using bounding box of size {}", Intervals.dimensionsAsLongArray(paintedInterval));
 
 		if (Label.regular(lastSelectedId))
 		{
+			// re-use the materialized store but paint with the last selected id
 			final MaskInfo<UnsignedLongType> maskInfoWithLastSelectedLabelId = new MaskInfo<>(
-					source.getCurrentMask().info.t,
-					source.getCurrentMask().info.level,
+					interpolatedMask.info.t,
+					interpolatedMask.info.level,
 					new UnsignedLongType(lastSelectedId)
 				);
-			resetMask();
+			// hand the materialized store over to the new mask, it is shut down once the mask was applied
+			try {
+				source.resetMasks(false);
+			} catch (final MaskInUse e) {
+				e.printStackTrace();
+			}
+			mask = null;
 			try {
-				source.setMask(maskInfoWithLastSelectedLabelId, interpolatedMaskImgs.getA(), interpolatedMaskImgs.getB(), null, null, null, FOREGROUND_CHECK);
+				source.setMask(
+						new Mask<>(
+								maskInfoWithLastSelectedLabelId,
+								interpolatedMask.mask,
+								interpolatedMask.invalidate,
+								interpolatedMask.invalidateVolatile,
+								interpolatedMask.shutdown),
+						FOREGROUND_CHECK);
 			} catch (final MaskInUse e) {
 				e.printStackTrace();
 			}
@@ -544,7 +612,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		}
 
 		source.isApplyingMaskProperty().addListener(doneApplyingMaskListener);
-		source.applyMask(source.getCurrentMask(), sectionsUnionSourceInterval, FOREGROUND_CHECK);
+		source.applyMask(source.getCurrentMask(), paintedInterval, FOREGROUND_CHECK);
 
 		exitMode(paintera, true);
 	}
@@ -583,126 +651,216 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	@SuppressWarnings("unchecked")
 	private void interpolateBetweenSections(final PainteraBaseView paintera)
 	{
+		final List<SectionInfo> sectionInfos = new ArrayList<>(sections);
+		interpolatedSourceInterval = null;
+		// the distance transforms use one thread per section but the materialization uses one thread per block
+		final int numThreads = Runtime.getRuntime().availableProcessors();
 		workerThread = new Thread(() ->
 		{
-			final SectionInfo[] sectionInfoPair = {sectionInfo1.get(), sectionInfo2.get()};
-
-			final Interval affectedUnionSourceInterval = Intervals.union(
-					sectionInfoPair[0].sourceBoundingBox,
-					sectionInfoPair[1].sourceBoundingBox
-				);
-
-			// get the two sections as 2D images
-			final Interval[] displaySectionIntervalPair = new Interval[2];
-			final RandomAccessibleInterval<UnsignedLongType>[] sectionPair = new RandomAccessibleInterval[2];
-			for (int i = 0; i < 2; ++i)
-			{
-				final SectionInfo newSectionInfo = new SectionInfo(
-						sectionInfoPair[i].mask,
-						sectionInfoPair[i].globalTransform,
-						sectionInfoPair[i].sourceToDisplayTransform,
-						affectedUnionSourceInterval,
-						sectionInfoPair[i].selectedObjects
-					);
-				final RandomAccessibleInterval<UnsignedLongType> section = getTransformedMaskSection(newSectionInfo);
-				displaySectionIntervalPair[i] = new FinalInterval(section);
-				sectionPair[i] = Views.zeroMin(section);
-			}
-
-			// Narrow the bounding box of the two sections in the display space.
-			// The initial bounding box may be larger because of transforming the source bounding box into the display space and then taking the bounding box of that.
-			final Interval[] boundingBoxPair = new Interval[2];
-			for (int i = 0; i < 2; ++i)
+			// interrupted unless the interpolation succeeded or failed for another reason
+			String failure = "Shape interpolation was interrupted.";
+			Exception cause = null;
+			try
 			{
-				if (Thread.currentThread().isInterrupted())
+				// Order the sections along the viewer normal. If two sections are in the same plane, keep the one that was added last.
+				final SectionInfo firstSection = sectionInfos.get(0);
+				final List<SectionInfo> sortedSections = new ArrayList<>();
+				final TDoubleArrayList sortedDepths = new TDoubleArrayList();
+				final Integer[] order = new Integer[sectionInfos.size()];
+				final double[] relativeDepths = new double[sectionInfos.size()];
+				for (int i = 0; i < order.length; ++i)
+				{
+					order[i] = i;
+					// the display transform maps a section further along the viewer normal to a smaller depth
+					relativeDepths[i] = -computeDistanceBetweenSections(firstSection, sectionInfos.get(i));
+				}
+				Arrays.sort(order, Comparator.comparingDouble(i -> relativeDepths[i]));
+				for (final int i : order)
+				{
+					if (!sortedSections.isEmpty() && Math.abs(relativeDepths[i] - sortedDepths.get(sortedDepths.size() - 1)) < SECTION_DEPTH_TOLERANCE)
+					{
+						// the sort is stable, so the section that was added later replaces the earlier one
+						sortedSections.remove(sortedSections.size() - 1);
+						sortedDepths.removeAt(sortedDepths.size() - 1);
+					}
+					sortedSections.add(sectionInfos.get(i));
+					sortedDepths.add(relativeDepths[i]);
+				}
+				if (sortedSections.size() < 2)
+				{
+					failure = "All sections are in the same plane, cannot interpolate.";
+					LOG.warn(failure);
 					return;
+				}
+				// the first section along the viewer normal is the reference frame for the interpolation
+				final SectionInfo referenceSection = sortedSections.get(0);
+				final double[] depths = new double[sortedSections.size()];
+				for (int i = 0; i < depths.length; ++i)
+					depths[i] = sortedDepths.get(i) - sortedDepths.get(0);
+
+				Interval affectedUnionSourceInterval = referenceSection.sourceBoundingBox;
+				for (final SectionInfo sectionInfo : sortedSections)
+					affectedUnionSourceInterval = Intervals.union(affectedUnionSourceInterval, sectionInfo.sourceBoundingBox);
+
+				// get all sections as 2D images
+				Interval referenceDisplayInterval = null;
+				final List<RandomAccessibleInterval<UnsignedLongType>> sectionImgs = new ArrayList<>();
+				for (final SectionInfo sectionInfo : sortedSections)
+				{
+					final SectionInfo newSectionInfo = new SectionInfo(
+							sectionInfo.mask,
+							sectionInfo.globalTransform,
+							sectionInfo.sourceToDisplayTransform,
+							affectedUnionSourceInterval,
+							sectionInfo.selectedObjects
+						);
+					final RandomAccessibleInterval<UnsignedLongType> section = getTransformedMaskSection(newSectionInfo);
+					if (referenceDisplayInterval == null)
+						referenceDisplayInterval = new FinalInterval(section);
+					sectionImgs.add(Views.zeroMin(section));
+				}
 
-				final long[] min = new long[2], max = new long[2], position = new long[2];
-				Arrays.fill(min, Long.MAX_VALUE);
-				Arrays.fill(max, Long.MIN_VALUE);
-				final Cursor<UnsignedLongType> cursor = Views.iterable(sectionPair[i]).localizingCursor();
-				while (cursor.hasNext())
+				// Narrow the bounding box of the sections in the display space.
+				// The initial bounding box may be larger because of transforming the source bounding box into the display space and then taking the bounding box of that.
+				Interval boundingBox = null;
+				for (final RandomAccessibleInterval<UnsignedLongType> section : sectionImgs)
 				{
-					if (FOREGROUND_CHECK.test(cursor.next()))
+					if (Thread.currentThread().isInterrupted())
+						return;
+
+					final long[] min = new long[2], max = new long[2], position = new long[2];
+					Arrays.fill(min, Long.MAX_VALUE);
+					Arrays.fill(max, Long.MIN_VALUE);
+					boolean isEmpty = true;
+					final Cursor<UnsignedLongType> cursor = Views.iterable(section).localizingCursor();
+					while (cursor.hasNext())
 					{
-						cursor.localize(position);
-						for (int d = 0; d < position.length; ++d)
+						if (FOREGROUND_CHECK.test(cursor.next()))
 						{
-							min[d] = Math.min(min[d], position[d]);
-							max[d] = Math.max(max[d], position[d]);
+							isEmpty = false;
+							cursor.localize(position);
+							for (int d = 0; d < position.length; ++d)
+							{
+								min[d] = Math.min(min[d], position[d]);
+								max[d] = Math.max(max[d], position[d]);
+							}
 						}
 					}
+					if (isEmpty)
+						continue;
+					final Interval sectionBoundingBox = new FinalInterval(min, max);
+					boundingBox = boundingBox == null ? sectionBoundingBox : Intervals.union(boundingBox, sectionBoundingBox);
 				}
-				boundingBoxPair[i] = new FinalInterval(min, max);
-			}
-			final Interval boundingBox = Intervals.union(boundingBoxPair[0], boundingBoxPair[1]);
-			LOG.debug("Narrowed the bounding box of the selected shape in both sections from {} to {}", Intervals.dimensionsAsLongArray(sectionPair[0]), Intervals.dimensionsAsLongArray(boundingBox));
-			for (int i = 0; i < 2; ++i)
-				sectionPair[i] = Views.offsetInterval(sectionPair[i], boundingBox);
-
-			// compute distance transform on both sections
-			final RandomAccessibleInterval<FloatType>[] distanceTransformPair = new RandomAccessibleInterval[2];
-			for (int i = 0; i < 2; ++i)
-			{
-				if (Thread.currentThread().isInterrupted())
+				if (boundingBox == null)
+				{
+					failure = "All sections are empty, nothing to interpolate.";
+					LOG.warn(failure);
 					return;
+				}
+				LOG.debug("Narrowed the bounding box of the selected shape in all sections from {} to {}", Intervals.dimensionsAsLongArray(sectionImgs.get(0)), Intervals.dimensionsAsLongArray(boundingBox));
+				final List<RandomAccessibleInterval<BoolType>> binarySections = new ArrayList<>();
+				for (final RandomAccessibleInterval<UnsignedLongType> section : sectionImgs)
+					binarySections.add(Converters.convert(Views.offsetInterval(section, boundingBox), new PredicateConverter<>(FOREGROUND_CHECK), new BoolType()));
+
+				final AffineTransform3D transformToSource = new AffineTransform3D();
+				transformToSource
+					.preConcatenate(new Translation3D(boundingBox.min(0), boundingBox.min(1), 0))
+					.preConcatenate(new Translation3D(referenceDisplayInterval.min(0), referenceDisplayInterval.min(1), 0))
+					.preConcatenate(referenceSection.sourceToDisplayTransform.inverse());
+
+				// source interval that contains the slab between the first and the last section
+				final RealInterval slabBounds = transformToSource.estimateBounds(new FinalRealInterval(
+						new double[] {0, 0, 0},
+						new double[] {boundingBox.dimension(0) - 1, boundingBox.dimension(1) - 1, depths[depths.length - 1]}
+					));
+
+				final ExecutorService es = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("paintera-shape-interpolation-%d", true));
+				try
+				{
+					// compute the distance transforms of all sections in parallel
+					final SectionInterpolation interpolation = SectionInterpolation.fromSections(binarySections, depths, es);
 
-				distanceTransformPair[i] = new ArrayImgFactory<>(new FloatType()).create(sectionPair[i]);
-				final RandomAccessibleInterval<BoolType> binarySection = Converters.convert(sectionPair[i], new PredicateConverter<>(FOREGROUND_CHECK), new BoolType());
-				computeSignedDistanceTransform(binarySection, distanceTransformPair[i], DISTANCE_TYPE.EUCLIDIAN);
-			}
-
-			final double distanceBetweenSections = computeDistanceBetweenSections(sectionInfoPair[0], sectionInfoPair[1]);
-			final AffineTransform3D transformToSource = new AffineTransform3D();
-			transformToSource
-				.preConcatenate(new Translation3D(boundingBox.min(0), boundingBox.min(1), 0))
-				.preConcatenate(new Translation3D(displaySectionIntervalPair[0].min(0), displaySectionIntervalPair[0].min(1), 0))
-				.preConcatenate(sectionInfoPair[0].sourceToDisplayTransform.inverse());
-
-			final RealRandomAccessible<UnsignedLongType> interpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new UnsignedLongType(1),
-					transformToSource
-				);
-
-			final RealRandomAccessible<VolatileUnsignedLongType> volatileInterpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new VolatileUnsignedLongType(1),
-					transformToSource
-				);
+					if (Thread.currentThread().isInterrupted())
+						return;
 
-			if (Thread.currentThread().isInterrupted())
-				return;
+					synchronized (source)
+					{
+						resetMask();
+						createMask();
+
+						// write the interpolated shape directly into the mask store, block by block
+						final RandomAccessibleInterval<UnsignedLongType> maskImg = mask.mask;
+						final Interval interval = Intervals.intersect(Intervals.smallestContainingInterval(slabBounds), maskImg);
+						final RandomAccessibleInterval<UnsignedLongType> store;
+						final CellGrid grid;
+						if (maskImg instanceof AccessedBlocksRandomAccessible<?>)
+						{
+							store = ((AccessedBlocksRandomAccessible<UnsignedLongType>) maskImg).getSource();
+							grid = ((AccessedBlocksRandomAccessible<UnsignedLongType>) maskImg).getGrid();
+						}
+						else
+						{
+							store = maskImg;
+							grid = source.getCellGrid(mask.info.t, mask.info.level);
+						}
+						final long[] modifiedBlocks = interpolation.materialize(
+								store,
+								interval,
+								grid,
+								transformToSource.inverse(),
+								new UnsignedLongType(1),
+								es);
+						if (maskImg instanceof AccessedBlocksRandomAccessible<?>)
+							((AccessedBlocksRandomAccessible<UnsignedLongType>) maskImg).addBlockIds(modifiedBlocks);
+						LOG.debug("Materialized interpolated shape between {} sections into {} blocks", depths.length, modifiedBlocks.length);
+						interpolatedSourceInterval = interval;
+					}
 
-			try
-			{
-				synchronized (source)
+					paintera.orthogonalViews().requestRepaint();
+				}
+				catch (final InterruptedException e)
 				{
-					final MaskInfo<UnsignedLongType> maskInfo = mask.info;
-					resetMask();
-					source.setMask(
-							maskInfo,
-							interpolatedShapeMask,
-							volatileInterpolatedShapeMask,
-							null,
-							null,
-							null,
-							FOREGROUND_CHECK);
-					interpolatedMaskImgs = new ValuePair<>(interpolatedShapeMask, volatileInterpolatedShapeMask);
+					LOG.debug(failure);
+					return;
 				}
-
-				paintera.orthogonalViews().requestRepaint();
+				catch (final ExecutionException e)
+				{
+					failure = "Shape interpolation failed.";
+					cause = e;
+					LOG.error(failure, e);
+					return;
+				}
+				catch (final MaskInUse e)
+				{
+					failure = "Label source already has an active mask.";
+					cause = e;
+					LOG.error(failure);
+					return;
+				}
+				finally
+				{
+					es.shutdownNow();
+				}
+				failure = null;
 			}
-			catch (final MaskInUse e)
+			catch (final RuntimeException e)
 			{
-				LOG.error("Label source already has an active mask");
+				failure = "Shape interpolation failed.";
+				cause = e;
+				LOG.error(failure, e);
+			}
+			finally
+			{
+				interpolationFailure = failure;
+				interpolationFailureCause = cause;
+				// ignore if the mode was exited or another interpolation was started in the meantime
+				final Thread self = Thread.currentThread();
+				InvokeOnJavaFXApplicationThread.invoke(() ->
+				{
+					if (workerThread == self)
+						runOnInterpolationFinished();
+				});
 			}
-
-			InvokeOnJavaFXApplicationThread.invoke(this::runOnInterpolationFinished);
 		});
 		workerThread.start();
 	}
@@ -711,11 +869,26 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	{
 		if (onInterpolationFinished != null)
 		{
+			final Runnable onInterpolationFinished = this.onInterpolationFinished;
+			this.onInterpolationFinished = null;
 			onInterpolationFinished.run();
-			onInterpolationFinished = null;
 		}
 	}
 
+	private void showInterpolationFailure()
+	{
+		final String failure = interpolationFailure;
+		final Exception cause = interpolationFailureCause;
+		if (cause != null)
+		{
+			Exceptions.exceptionAlert(Paintera.NAME, failure, cause).show();
+			return;
+		}
+		final Alert alert = PainteraAlerts.alert(Alert.AlertType.WARNING);
+		alert.setHeaderText(failure);
+		alert.show();
+	}
+
 	private void interruptInterpolation()
 	{
 		if (workerThread != null)
@@ -730,60 +903,6 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		onInterpolationFinished = null;
 	}
 
-	private static <R extends RealType<R> & NativeType<R>, B extends BooleanType<B>> void computeSignedDistanceTransform(
-			final RandomAccessibleInterval<B> mask,
-			final RandomAccessibleInterval<R> target,
-			final DISTANCE_TYPE distanceType,
-			final double... weights)
-	{
-		final RandomAccessibleInterval<R> distanceOutside = target;
-		final RandomAccessibleInterval<R> distanceInside = new ArrayImgFactory<>(Util.getTypeFromInterval(target)).create(target);
-		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, weights);
-		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, weights);
-		LoopBuilder.setImages(distanceOutside, distanceInside, target).forEachPixel((outside, inside, result) -> {
-			switch (distanceType)
-			{
-			case EUCLIDIAN:
-				result.setReal(Math.sqrt(outside.getRealDouble()) - Math.sqrt(inside.getRealDouble()));
-				break;
-			case L1:
-				result.setReal(outside.getRealDouble() - inside.getRealDouble());
-				break;
-			}
-		});
-	}
-
-	private static <R extends RealType<R>, T extends NativeType<T> & RealType<T>> RealRandomAccessible<T> getInterpolatedDistanceTransformMask(
-			final RandomAccessibleInterval<R> dt1,
-			final RandomAccessibleInterval<R> dt2,
-			final double distance,
-			final T targetValue,
-			final AffineTransform3D transformToSource)
-	{
-		final RandomAccessibleInterval<R> distanceTransformStack = Views.stack(dt1, dt2);
-
-		final R extendValue = Util.getTypeFromInterval(distanceTransformStack).createVariable();
-		extendValue.setReal(extendValue.getMaxValue());
-		final RealRandomAccessible<R> interpolatedDistanceTransform = Views.interpolate(
-				Views.extendValue(distanceTransformStack, extendValue),
-				new NLinearInterpolatorFactory<>()
-			);
-
-		final RealRandomAccessible<R> scaledInterpolatedDistanceTransform = RealViews.affineReal(
-				interpolatedDistanceTransform,
-				new Scale3D(1, 1, -distance)
-			);
-
-		final T emptyValue = targetValue.createVariable();
-		final RealRandomAccessible<T> interpolatedShape = Converters.convert(
-				scaledInterpolatedDistanceTransform,
-				(in, out) -> out.set(in.getRealDouble() <= 0 ? targetValue : emptyValue),
-				emptyValue.createVariable()
-			);
-
-		return RealViews.affineReal(interpolatedShape, transformToSource);
-	}
-
 	private RandomAccessibleInterval<UnsignedLongType> getTransformedMaskSection(final SectionInfo sectionInfo)
 	{
 		final RealInterval sectionBounds = sectionInfo.sourceToDisplayTransform.estimateBounds(sectionInfo.sourceBoundingBox);
@@ -812,6 +931,10 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private void selectObject(final PainteraBaseView paintera, final double x, final double y, final boolean deactivateOthers)
 	{
+		// start a new section if the interpolated shape is currently shown
+		if (modeState.get() == ModeState.Preview)
+			addSection(paintera);
+
 		// create the mask if needed
 		if (mask == null)
 		{
@@ -2,17 +2,22 @@ package org.janelia.saalfeldlab.paintera.control.assignment;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import com.google.gson.annotations.Expose;
 import gnu.trove.impl.Constants;
 import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TLongLongMap;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.hash.TLongHashSet;
+import javafx.beans.property.BooleanProperty;
 import javafx.util.Pair;
 import net.imglib2.type.label.Label;
 import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
@@ -27,6 +32,20 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	public interface Persister
 	{
 		public void persist(long[] keys, long[] values) throws UnableToPersist;
+
+		/**
+		 * Persist the assignments that changed since the last commit. Persisters that cannot store changes
+		 * incrementally persist all of {@code lut} instead.
+		 *
+		 * @param fragments fragments whose segment changed since the last commit
+		 * @param segments new segment of each of {@code fragments}, or {@link Label#TRANSPARENT} if the fragment is
+		 *                 not assigned to a segment anymore
+		 * @param lut all current assignments, including {@code fragments}
+		 */
+		public default void persistChanges(long[] fragments, long[] segments, TLongLongMap lut) throws UnableToPersist
+		{
+			persist(lut.keys(), lut.values());
+		}
 	}
 
 	public static class DoesNotPersist implements Persister
@@ -80,10 +99,40 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			Label.TRANSPARENT
 	);
 
+	/**
+	 * Snapshot of {@link #fragmentToSegmentMap} for lock-free reads in {@link #getSegment(long)}. Every modification
+	 * of {@link #fragmentToSegmentMap} must be followed by a call to {@link #publishLookup()}.
+	 */
+	private volatile FragmentSegmentLookup fragmentToSegmentLookup = FragmentSegmentLookup.empty();
+
+	/**
+	 * Fragments that were modified through {@link #assign} or {@link #unassign} since the last
+	 * {@link #publishLookup()}.
+	 */
+	private final TLongHashSet changedFragments = new TLongHashSet();
+
+	/**
+	 * Persisted segment of each fragment that was modified since the last commit, recorded when the fragment is
+	 * modified first. {@link Label#TRANSPARENT} for fragments that were not assigned to a segment. {@code null} if the
+	 * modifications since the last commit are not known, e.g. after restoring from a checkpoint, in which case
+	 * {@link #persist()} persists the full assignment.
+	 */
+	private TLongLongHashMap uncommitted = null;
+
 	private final Persister persister;
 
 	private final Supplier<TLongLongMap> initialLut;
 
+	private long initialLutFingerprint;
+
+	/**
+	 * Assignment after applying {@link #checkpointActions} on top of {@link #initialLut}. As long as these are the
+	 * first enabled actions, {@link #resetLut()} starts from the checkpoint instead of replaying them.
+	 */
+	private FragmentSegmentLookup checkpoint = null;
+
+	private List<Pair<AssignmentAction, BooleanProperty>> checkpointActions = Collections.emptyList();
+
 	public FragmentSegmentAssignmentOnlyLocal(final Persister persister)
 	{
 		this(NO_INITIAL_LUT_AVAILABLE, persister);
@@ -126,8 +175,36 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			// TODO changes were loaded?
 			LOG.debug("Persisting assignment {}", this.fragmentToSegmentMap);
 			LOG.debug("Committing actions {}", this.actions);
-			this.persister.persist(this.fragmentToSegmentMap.keys(), this.fragmentToSegmentMap.values());
+			if (this.uncommitted == null)
+			{
+				this.persister.persist(this.fragmentToSegmentMap.keys(), this.fragmentToSegmentMap.values());
+				this.initialLutFingerprint = fingerprint(this.fragmentToSegmentMap);
+			}
+			else
+			{
+				final TLongArrayList fragments = new TLongArrayList();
+				final TLongArrayList segments = new TLongArrayList();
+				long fingerprint = this.initialLutFingerprint;
+				for (final TLongLongIterator it = this.uncommitted.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					final long fragment = it.key();
+					final long previousSegment = it.value();
+					final long segment = this.fragmentToSegmentMap.get(fragment);
+					if (segment == previousSegment)
+						continue;
+					fragments.add(fragment);
+					segments.add(segment);
+					fingerprint += fingerprintContribution(fragment, segment) - fingerprintContribution(fragment, previousSegment);
+				}
+				LOG.debug("Persisting {} changed fragments", fragments.size());
+				this.persister.persistChanges(fragments.toArray(), segments.toArray(), this.fragmentToSegmentMap);
+				this.initialLutFingerprint = fingerprint;
+			}
+			this.uncommitted = newUncommitted();
 			this.actions.clear();
+			this.checkpoint = null;
+			this.checkpointActions = Collections.emptyList();
 		} catch (final Exception e)
 		{
 			throw e instanceof UnableToPersist ? (UnableToPersist) e : new UnableToPersist(e);
@@ -135,18 +212,9 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	}
 
 	@Override
-	public synchronized long getSegment(final long fragmentId)
+	public long getSegment(final long fragmentId)
 	{
-		final long id;
-		final long segmentId = fragmentToSegmentMap.get(fragmentId);
-		if (segmentId == fragmentToSegmentMap.getNoEntryValue())
-		{
-			id = fragmentId;
-		}
-		else
-		{
-			id = segmentId;
-		}
+		final long id = fragmentToSegmentLookup.getSegment(fragmentId);
 		LOG.trace("Returning {} for fragment {}: ", id, fragmentId);
 		return id;
 	}
@@ -171,7 +239,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		final long fragmentId   = detach.fragmentId;
 		final long fragmentFrom = detach.fragmentFrom;
 
-		this.fragmentToSegmentMap.remove(fragmentId);
+		unassign(fragmentId);
 		LOG.debug("Removed {} from {}", fragmentId, this.fragmentToSegmentMap);
 
 		LOG.debug("Removing fragment={} from segment={}", fragmentId, segmentFrom);
@@ -182,7 +250,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			LOG.debug("Removed {} from {}", fragmentId, fragments);
 			if (fragments.size() == 1)
 			{
-				this.fragmentToSegmentMap.remove(fragmentFrom);
+				unassign(fragmentFrom);
 				this.segmentToFragmentsMap.remove(segmentFrom);
 			}
 		}
@@ -219,7 +287,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		if (!fragmentToSegmentMap.contains(into))
 		{
 			LOG.debug("Adding segment {} to framgent {}", segmentInto, into);
-			fragmentToSegmentMap.put(into, segmentInto);
+			assign(into, segmentInto);
 		}
 
 		if (!segmentToFragmentsMap.contains(segmentInto))
@@ -236,27 +304,198 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			final TLongHashSet fragmentsInto = segmentToFragmentsMap.get(segmentInto);
 			LOG.debug("Fragments into {}", fragmentsInto);
 			fragmentsInto.addAll(fragmentsFrom);
-			Arrays.stream(fragmentsFrom.toArray()).forEach(id -> fragmentToSegmentMap.put(id, segmentInto));
+			Arrays.stream(fragmentsFrom.toArray()).forEach(id -> assign(id, segmentInto));
 		}
 		else
 		{
 			segmentToFragmentsMap.get(segmentInto).add(from);
-			fragmentToSegmentMap.put(from, segmentInto);
+			assign(from, segmentInto);
 		}
 	}
 
+	private void assign(final long fragment, final long segment)
+	{
+		recordUncommitted(fragment);
+		fragmentToSegmentMap.put(fragment, segment);
+		changedFragments.add(fragment);
+	}
+
+	private void unassign(final long fragment)
+	{
+		recordUncommitted(fragment);
+		fragmentToSegmentMap.remove(fragment);
+		changedFragments.add(fragment);
+	}
+
+	private void recordUncommitted(final long fragment)
+	{
+		if (uncommitted != null && !uncommitted.containsKey(fragment))
+			uncommitted.put(fragment, fragmentToSegmentMap.get(fragment));
+	}
+
+	private static TLongLongHashMap newUncommitted()
+	{
+		return new TLongLongHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT, Label.TRANSPARENT);
+	}
+
 	private void resetLut()
 	{
+		final List<Pair<AssignmentAction, BooleanProperty>> enabledActions = enabledActions();
+		final int numCheckpointedActions = numCheckpointedActions(enabledActions);
 		fragmentToSegmentMap.clear();
-		fragmentToSegmentMap.putAll(initialLut.get());
+		if (numCheckpointedActions > 0)
+		{
+			LOG.debug("Resetting lut from checkpoint after {} actions", numCheckpointedActions);
+			checkpoint.forEach((fragment, segment) -> {
+				fragmentToSegmentMap.put(fragment, segment);
+				return true;
+			});
+		}
+		else
+		{
+			final TLongLongMap lut = initialLut.get();
+			initialLutFingerprint = fingerprint(lut);
+			fragmentToSegmentMap.putAll(lut);
+			// the initial lut is the persisted assignment
+			uncommitted = newUncommitted();
+		}
 		syncILut();
 
-		this.actions.stream().filter(p -> p.getValue().get()).map(Pair::getKey).forEach(this::applyImpl);
+		enabledActions
+				.subList(numCheckpointedActions, enabledActions.size())
+				.stream()
+				.map(Pair::getKey)
+				.forEach(this::applyImplNoPublish);
+		this.fragmentToSegmentLookup = FragmentSegmentLookup.of(this.fragmentToSegmentMap);
+		this.changedFragments.clear();
+
+	}
+
+	private List<Pair<AssignmentAction, BooleanProperty>> enabledActions()
+	{
+		return this.actions.stream().filter(p -> p.getValue().get()).collect(Collectors.toList());
+	}
+
+	private int numCheckpointedActions(final List<Pair<AssignmentAction, BooleanProperty>> enabledActions)
+	{
+		if (checkpoint == null || checkpointActions.size() > enabledActions.size())
+			return 0;
+		for (int i = 0; i < checkpointActions.size(); ++i)
+			if (enabledActions.get(i) != checkpointActions.get(i))
+				return 0;
+		return checkpointActions.size();
+	}
+
+	/**
+	 *
+	 * @return number of leading enabled actions that are part of {@link #getCheckpoint() the checkpoint}, or
+	 * {@code 0} if there is no checkpoint or any of these actions was undone.
+	 */
+	public synchronized int numCheckpointedActions()
+	{
+		return numCheckpointedActions(enabledActions());
+	}
+
+	/**
+	 *
+	 * @return most recent checkpoint, only valid if {@link #numCheckpointedActions()} is positive
+	 */
+	public synchronized FragmentSegmentLookup getCheckpoint()
+	{
+		return checkpoint;
+	}
 
+	/**
+	 * Checkpoint the current assignment: Reapplying actions, e.g. after undo, will not replay any of the currently
+	 * enabled actions as long as they remain enabled.
+	 *
+	 * @return the current assignment
+	 */
+	public synchronized FragmentSegmentLookup checkpoint()
+	{
+		this.checkpointActions = enabledActions();
+		this.checkpoint = this.fragmentToSegmentLookup;
+		return this.checkpoint;
+	}
+
+	/**
+	 * Add {@code actions} to the history and apply them. The first {@code numCheckpointedActions} actions are
+	 * already part of {@code checkpoint} and are not replayed.
+	 *
+	 * @param checkpoint assignment after applying the first {@code numCheckpointedActions} of {@code actions} on top
+	 *                   of the initial lut
+	 */
+	public synchronized void restore(
+			final List<? extends AssignmentAction> actions,
+			final FragmentSegmentLookup checkpoint,
+			final int numCheckpointedActions)
+	{
+		LOG.debug("Restoring {} actions from checkpoint after {} actions", actions.size(), numCheckpointedActions);
+		this.checkpointActions = track(actions.subList(0, numCheckpointedActions));
+		this.checkpoint = checkpoint;
+		// the changes between the initial lut and the checkpoint are not known
+		if (numCheckpointedActions > 0)
+			this.uncommitted = null;
+		resetLut();
+		apply(actions.subList(numCheckpointedActions, actions.size()));
+	}
+
+	/**
+	 *
+	 * @return {@link #fingerprint(TLongLongMap) fingerprint} of the initial lut that the actions are applied to
+	 */
+	public long getInitialLutFingerprint()
+	{
+		return this.initialLutFingerprint;
+	}
+
+	/**
+	 * Order-independent hash of all entries of {@code lut}, to check that a checkpoint was created on top of the
+	 * same initial lut.
+	 */
+	public static long fingerprint(final TLongLongMap lut)
+	{
+		final long[] fingerprint = {lut.size()};
+		lut.forEachEntry((fragment, segment) -> {
+			fingerprint[0] += mix(mix(fragment) ^ segment);
+			return true;
+		});
+		return fingerprint[0];
+	}
+
+	/**
+	 * @return contribution of a single entry to the {@link #fingerprint(TLongLongMap) fingerprint}, or {@code 0} if
+	 * {@code segment} is {@link Label#TRANSPARENT}, i.e. {@code fragment} is not in the lut
+	 */
+	private static long fingerprintContribution(final long fragment, final long segment)
+	{
+		return segment == Label.TRANSPARENT ? 0 : 1 + mix(mix(fragment) ^ segment);
+	}
+
+	private static long mix(long value)
+	{
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	private void publishLookup()
+	{
+		this.fragmentToSegmentLookup = this.fragmentToSegmentLookup.with(this.fragmentToSegmentMap, this.changedFragments);
+		this.changedFragments.clear();
 	}
 
 	@Override
 	protected void applyImpl(final AssignmentAction action)
+	{
+		applyImplNoPublish(action);
+		publishLookup();
+	}
+
+	private void applyImplNoPublish(final AssignmentAction action)
 	{
 		LOG.debug("Applying action {}", action);
 		switch (action.getType())
@@ -339,7 +578,8 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		// care of it instead.
 		if (getSegment(into) == into)
 		{
-			fragmentToSegmentMap.put(into, newSegmentId.getAsLong());
+			assign(into, newSegmentId.getAsLong());
+			publishLookup();
 		}
 
 		final Merge merge = new Merge(from, into, fragmentToSegmentMap.get(into));
@@ -12,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -58,6 +59,26 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 		this.actions.add(toggleableAction);
 	}
 
+	/**
+	 * Add {@code actions} to the history without applying them, e.g. because their effect is already part of a
+	 * restored assignment. Does not notify listeners.
+	 *
+	 * @return toggleable entries for {@code actions}, in the same order
+	 */
+	protected List<Pair<AssignmentAction, BooleanProperty>> track(final Collection<? extends AssignmentAction> actions)
+	{
+		removeDisabledActions();
+		final List<Pair<AssignmentAction, BooleanProperty>> tracked = new ArrayList<>();
+		for (final AssignmentAction action : actions)
+		{
+			final Pair<AssignmentAction, BooleanProperty> toggleableAction = new Pair<>(action, new SimpleBooleanProperty(true));
+			toggleableAction.getValue().addListener(obs -> reapplyActionsAndNoitfy());
+			tracked.add(toggleableAction);
+		}
+		this.actions.addAll(tracked);
+		return tracked;
+	}
+
 	@Override
 	public void apply(final AssignmentAction action)
 	{
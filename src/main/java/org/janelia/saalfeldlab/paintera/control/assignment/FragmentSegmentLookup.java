@@ -0,0 +1,320 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.procedure.TLongLongProcedure;
+import gnu.trove.set.TLongSet;
+import net.imglib2.type.label.Label;
+
+import java.util.Arrays;
+
+/**
+ * Immutable fragment-to-segment lookup backed by a primitive open-addressing hash table with linear probing.
+ * Instances can be queried from any number of threads without locking. Writers create a new instance whenever the
+ * assignment changes and publish it through a {@code volatile} reference.
+ *
+ * A lookup that is derived from another lookup {@link #with with few changes} shares the table of the other lookup and
+ * stores the changes in a small overlay table, so that publishing a change does not copy the entire assignment.
+ */
+public final class FragmentSegmentLookup
+{
+
+	private static final long EMPTY_KEY = Label.TRANSPARENT;
+
+	/**
+	 * Overlay value of fragments that were removed from the table.
+	 */
+	private static final long REMOVED = Label.TRANSPARENT;
+
+	/**
+	 * Overlays of at most this size are never merged into the table.
+	 */
+	private static final int MIN_MAX_OVERLAY_SIZE = 1024;
+
+	private static final long[] EMPTY_TABLE = {EMPTY_KEY};
+
+	private static final FragmentSegmentLookup EMPTY = new FragmentSegmentLookup(EMPTY_TABLE, EMPTY_TABLE);
+
+	private final long[] keys;
+
+	private final long[] values;
+
+	private final int mask;
+
+	private final int tableSize;
+
+	private final long[] overlayKeys;
+
+	private final long[] overlayValues;
+
+	private final int overlayMask;
+
+	private final int overlaySize;
+
+	private final int size;
+
+	private FragmentSegmentLookup(final long[] keys, final long[] values)
+	{
+		this(keys, values, count(keys), EMPTY_TABLE, EMPTY_TABLE, 0, count(keys));
+	}
+
+	private FragmentSegmentLookup(
+			final long[] keys,
+			final long[] values,
+			final int tableSize,
+			final long[] overlayKeys,
+			final long[] overlayValues,
+			final int overlaySize,
+			final int size)
+	{
+		this.keys = keys;
+		this.values = values;
+		this.mask = keys.length - 1;
+		this.tableSize = tableSize;
+		this.overlayKeys = overlayKeys;
+		this.overlayValues = overlayValues;
+		this.overlayMask = overlayKeys.length - 1;
+		this.overlaySize = overlaySize;
+		this.size = size;
+	}
+
+	/**
+	 *
+	 * @return lookup that maps every fragment onto itself
+	 */
+	public static FragmentSegmentLookup empty()
+	{
+		return EMPTY;
+	}
+
+	/**
+	 * Create a snapshot of {@code fragmentToSegmentMap}. Entries with key or value {@link Label#TRANSPARENT} are
+	 * ignored, consistent with {@link FragmentSegmentAssignmentOnlyLocal}, which uses {@link Label#TRANSPARENT}
+	 * as no-entry key and value.
+	 *
+	 * @param fragmentToSegmentMap fragment-to-segment assignments
+	 * @return immutable copy of {@code fragmentToSegmentMap}
+	 */
+	public static FragmentSegmentLookup of(final TLongLongMap fragmentToSegmentMap)
+	{
+		if (fragmentToSegmentMap.isEmpty())
+			return EMPTY;
+
+		final int capacity = capacityFor(fragmentToSegmentMap.size());
+		final long[] keys = new long[capacity];
+		final long[] values = new long[capacity];
+		final int mask = capacity - 1;
+		Arrays.fill(keys, EMPTY_KEY);
+
+		for (final TLongLongIterator it = fragmentToSegmentMap.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final long key = it.key();
+			final long value = it.value();
+			if (key == EMPTY_KEY || value == EMPTY_KEY)
+				continue;
+			int index = hash(key) & mask;
+			while (keys[index] != EMPTY_KEY)
+				index = (index + 1) & mask;
+			keys[index] = key;
+			values[index] = value;
+		}
+		return new FragmentSegmentLookup(keys, values);
+	}
+
+	/**
+	 * Create a lookup from parallel arrays of fragments and segments, e.g. as written by {@link #forEach}.
+	 *
+	 * @param fragments fragment ids
+	 * @param segments segment ids, {@code segments[i]} is the segment of {@code fragments[i]}
+	 * @return immutable lookup for {@code fragments} and {@code segments}
+	 */
+	public static FragmentSegmentLookup of(final long[] fragments, final long[] segments)
+	{
+		assert fragments.length == segments.length;
+		if (fragments.length == 0)
+			return EMPTY;
+
+		final int capacity = capacityFor(fragments.length);
+		final long[] keys = new long[capacity];
+		final long[] values = new long[capacity];
+		final int mask = capacity - 1;
+		Arrays.fill(keys, EMPTY_KEY);
+
+		for (int i = 0; i < fragments.length; ++i)
+		{
+			final long key = fragments[i];
+			final long value = segments[i];
+			if (key == EMPTY_KEY || value == EMPTY_KEY)
+				continue;
+			final int index = indexOf(keys, mask, key);
+			keys[index] = key;
+			values[index] = value;
+		}
+		return new FragmentSegmentLookup(keys, values);
+	}
+
+	/**
+	 * Create a lookup that differs from this lookup only for {@code changedFragments}, which are looked up in
+	 * {@code fragmentToSegmentMap}. The cost depends on the number of changes since the table was last rebuilt, not on
+	 * the size of the assignment. Once there are too many changes, the table is rebuilt from
+	 * {@code fragmentToSegmentMap}.
+	 *
+	 * @param fragmentToSegmentMap all current fragment-to-segment assignments, as in {@link #of(TLongLongMap)}
+	 * @param changedFragments fragments whose assignment may have changed since this lookup was created
+	 * @return immutable lookup for {@code fragmentToSegmentMap}
+	 */
+	public FragmentSegmentLookup with(final TLongLongMap fragmentToSegmentMap, final TLongSet changedFragments)
+	{
+		if (changedFragments.isEmpty())
+			return this;
+
+		final TLongLongHashMap overlay = new TLongLongHashMap(overlaySize + changedFragments.size());
+		for (int index = 0; index < overlayKeys.length; ++index)
+			if (overlayKeys[index] != EMPTY_KEY)
+				overlay.put(overlayKeys[index], overlayValues[index]);
+
+		int size = this.size;
+		for (final TLongIterator it = changedFragments.iterator(); it.hasNext(); )
+		{
+			final long fragment = it.next();
+			if (fragment == EMPTY_KEY)
+				continue;
+			final long segment = fragmentToSegmentMap.containsKey(fragment) ? fragmentToSegmentMap.get(fragment) : REMOVED;
+			final long previousSegment = getSegmentOrRemoved(fragment);
+			size += (segment == REMOVED ? 0 : 1) - (previousSegment == REMOVED ? 0 : 1);
+			if (segment == getFromTable(keys, values, mask, fragment))
+				overlay.remove(fragment);
+			else
+				overlay.put(fragment, segment);
+		}
+
+		if (overlay.size() > Math.max(MIN_MAX_OVERLAY_SIZE, 8 * (int) Math.sqrt(tableSize)))
+			return of(fragmentToSegmentMap);
+
+		final int capacity = capacityFor(overlay.size());
+		final long[] overlayKeys = new long[capacity];
+		final long[] overlayValues = new long[capacity];
+		Arrays.fill(overlayKeys, EMPTY_KEY);
+		for (final TLongLongIterator it = overlay.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final int index = indexOf(overlayKeys, capacity - 1, it.key());
+			overlayKeys[index] = it.key();
+			overlayValues[index] = it.value();
+		}
+		return new FragmentSegmentLookup(keys, values, tableSize, overlayKeys, overlayValues, overlay.size(), size);
+	}
+
+	/**
+	 *
+	 * @param fragmentId fragment
+	 * @return segment that {@code fragmentId} is assigned to, or {@code fragmentId} if it is not part of a segment.
+	 */
+	public long getSegment(final long fragmentId)
+	{
+		if (fragmentId == EMPTY_KEY)
+			return fragmentId;
+		final long segment = getSegmentOrRemoved(fragmentId);
+		return segment == REMOVED ? fragmentId : segment;
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Call {@code procedure} for each fragment and its segment, in no particular order.
+	 *
+	 * @param procedure stop iteration when returning {@code false}
+	 */
+	public void forEach(final TLongLongProcedure procedure)
+	{
+		for (int index = 0; index < overlayKeys.length; ++index)
+			if (overlayKeys[index] != EMPTY_KEY && overlayValues[index] != REMOVED && !procedure.execute(overlayKeys[index], overlayValues[index]))
+				return;
+		for (int index = 0; index < keys.length; ++index)
+		{
+			final long key = keys[index];
+			if (key == EMPTY_KEY || overlaySize > 0 && overlayKeys[indexOf(overlayKeys, overlayMask, key)] == key)
+				continue;
+			if (!procedure.execute(key, values[index]))
+				return;
+		}
+	}
+
+	/**
+	 * @return segment of {@code fragmentId}, or {@link #REMOVED} if it is not part of a segment
+	 */
+	private long getSegmentOrRemoved(final long fragmentId)
+	{
+		if (overlaySize > 0)
+		{
+			final int index = indexOf(overlayKeys, overlayMask, fragmentId);
+			if (overlayKeys[index] == fragmentId)
+				return overlayValues[index];
+		}
+		return getFromTable(keys, values, mask, fragmentId);
+	}
+
+	private static long getFromTable(final long[] keys, final long[] values, final int mask, final long key)
+	{
+		for (int index = hash(key) & mask; ; index = (index + 1) & mask)
+		{
+			final long k = keys[index];
+			if (k == key)
+				return values[index];
+			if (k == EMPTY_KEY)
+				return REMOVED;
+		}
+	}
+
+	/**
+	 * @return index of {@code key} in {@code keys}, or index of the empty slot that terminates its probe sequence
+	 */
+	private static int indexOf(final long[] keys, final int mask, final long key)
+	{
+		int index = hash(key) & mask;
+		while (keys[index] != EMPTY_KEY && keys[index] != key)
+			index = (index + 1) & mask;
+		return index;
+	}
+
+	private static int count(final long[] keys)
+	{
+		int size = 0;
+		for (final long key : keys)
+			if (key != EMPTY_KEY)
+				++size;
+		return size;
+	}
+
+	/**
+	 * Keep load factor at or below 0.5 so that probe sequences stay short. The table always has at least one
+	 * empty slot, which terminates all probe sequences.
+	 */
+	private static int capacityFor(final int size)
+	{
+		final long minCapacity = 2L * size + 1;
+		if (minCapacity > 1 << 30)
+			throw new IllegalArgumentException("Too many entries for fragment-segment lookup: " + size);
+		return Integer.highestOneBit((int) minCapacity - 1) << 1;
+	}
+
+	/**
+	 * Finalizer of MurmurHash3, to spread consecutive fragment ids across the table.
+	 */
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
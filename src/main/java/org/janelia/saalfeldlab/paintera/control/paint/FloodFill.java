@@ -1,15 +1,21 @@
 package org.janelia.saalfeldlab.paintera.control.paint;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.function.BiPredicate;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignment;
 import org.janelia.saalfeldlab.paintera.data.mask.Mask;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
@@ -18,35 +24,37 @@ import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.state.HasFloodFillState;
 import org.janelia.saalfeldlab.paintera.state.HasFloodFillState.FloodFillState;
 import org.janelia.saalfeldlab.paintera.state.HasFragmentSegmentAssignments;
+import org.janelia.saalfeldlab.paintera.state.HasLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.state.HasMaskForLabel;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import bdv.fx.viewer.ViewerPanelFX;
 import bdv.fx.viewer.ViewerState;
 import bdv.viewer.Source;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
-import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
 import net.imglib2.RealPositionable;
-import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.Type;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.util.AccessBoxRandomAccessible;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
-import net.imglib2.util.Util;
-import net.imglib2.view.Views;
 
 public class FloodFill
 {
@@ -74,6 +82,8 @@ public class FloodFill
 
 	private static final ForegroundCheck FOREGROUND_CHECK = new ForegroundCheck();
 
+	private static ExecutorService floodFillExecutors = null;
+
 	public FloodFill(final ViewerPanelFX viewer, final SourceInfo sourceInfo, final Runnable requestRepaint)
 	{
 		super();
@@ -150,6 +160,10 @@ public class FloodFill
 			assignment = null;
 		}
 
+		final LabelBlockLookup labelBlockLookup = currentSourceState instanceof HasLabelBlockLookup
+				? ((HasLabelBlockLookup) currentSourceState).labelBlockLookup()
+				: null;
+
 		final MaskedSource<?, ?> source = (MaskedSource<?, ?>) currentSource;
 
 		final Type<?> t = source.getDataType();
@@ -181,7 +195,8 @@ public class FloodFill
 				level,
 				fill,
 				p,
-				assignment
+				assignment,
+				labelBlockLookup
 			);
 		} catch (final MaskInUse e)
 		{
@@ -223,7 +238,8 @@ public class FloodFill
 			final int level,
 			final long fill,
 			final Localizable seed,
-			final FragmentSegmentAssignment assignment) throws MaskInUse
+			final FragmentSegmentAssignment assignment,
+			final LabelBlockLookup labelBlockLookup) throws MaskInUse
 	{
 		final RandomAccessibleInterval<T> data = source.getDataSource(time, level);
 		final RandomAccess<T> dataAccess = data.randomAccess();
@@ -236,27 +252,43 @@ public class FloodFill
 			return;
 		}
 
+		// look up fragments once instead of mapping every visited voxel to its segment
+		final TLongHashSet fragments = assignment != null
+				? assignment.getFragments(seedLabel)
+				: new TLongHashSet(new long[] {seedLabel});
+
 		final MaskInfo<UnsignedLongType>                  maskInfo      = new MaskInfo<>(
 				time,
 				level,
 				new UnsignedLongType(fill)
 		);
 		final Mask<UnsignedLongType>  mask = source.generateMask(maskInfo, FOREGROUND_CHECK);
-		final AccessBoxRandomAccessible<UnsignedLongType> accessTracker = new AccessBoxRandomAccessible<>(Views
-				.extendValue(mask.mask, new UnsignedLongType(1)));
 
+		// write into the mask store directly: the block tracker is not thread safe and is updated once the fill is done
 		@SuppressWarnings("unchecked")
+		final AccessedBlocksRandomAccessible<UnsignedLongType> tracker = mask.mask instanceof AccessedBlocksRandomAccessible<?>
+				? (AccessedBlocksRandomAccessible<UnsignedLongType>) mask.mask
+				: null;
+		final RandomAccessibleInterval<UnsignedLongType> store = tracker != null ? tracker.getSource() : mask.mask;
+		final CellGrid grid = tracker != null ? tracker.getGrid() : source.getCellGrid(time, level);
+
+		final ParallelFloodFill<T> floodFill = new ParallelFloodFill<>(
+				data,
+				store,
+				grid,
+				t -> fragments.contains(t.getIntegerLong()),
+				candidateBlocks(source, labelBlockLookup, level, fragments, grid, seed),
+				floodFillExecutors());
+
 		final Thread floodFillThread = new Thread(() -> {
 			try {
-				if (seedValue instanceof LabelMultisetType) {
-					fillMultisetType((RandomAccessibleInterval<LabelMultisetType>) data, accessTracker, seed, seedLabel, assignment);
-				} else {
-					fillPrimitiveType(data, accessTracker, seed, seedLabel, assignment);
-				}
-			} catch (final Exception e) {
+				floodFill.fill(seed);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e) {
 				// got an exception, ignore it if the operation has been canceled, or re-throw otherwise
 				if (!Thread.currentThread().isInterrupted())
-					throw e;
+					throw new RuntimeException(e.getCause());
 			}
 			LOG.debug(Thread.currentThread().isInterrupted() ? "FloodFill has been interrupted" : "FloodFill has been completed");
 		});
@@ -277,12 +309,14 @@ public class FloodFill
 					break;
 
 				LOG.debug("Updating current view!");
+				updateFloodFillProgress(source, floodFill.numProcessedBlocks(), floodFill.numDiscoveredBlocks());
 				requestRepaint.run();
 			}
 
 			resetFloodFillState(source);
 
-			if (Thread.interrupted())
+			final Interval interval = floodFill.filledInterval();
+			if (Thread.interrupted() || interval == null)
 			{
 				floodFillThread.interrupt();
 				try {
@@ -293,7 +327,8 @@ public class FloodFill
 			}
 			else
 			{
-				final Interval interval = accessTracker.createAccessInterval();
+				if (tracker != null)
+					tracker.addBlockIds(floodFill.filledBlocks());
 				LOG.debug(
 						"Applying mask for interval {} {}",
 						Arrays.toString(Intervals.minAsLongArray(interval)),
@@ -311,41 +346,64 @@ public class FloodFill
 		floodFillResultCheckerThread.start();
 	}
 
-	private static void fillMultisetType(
-			final RandomAccessibleInterval<LabelMultisetType> input,
-			final RandomAccessible<UnsignedLongType> output,
-			final Localizable seed,
-			final long seedLabel,
-			final FragmentSegmentAssignment assignment)
+	/**
+	 * Restrict flood fill to blocks of {@code grid} that contain any of {@code fragments} according to the
+	 * {@link LabelBlockLookup}, or that have been painted into the canvas. Consider all blocks if no lookup is
+	 * available or if it does not list the block of the seed, e.g. because it was not generated for this dataset.
+	 */
+	private static LongPredicate candidateBlocks(
+			final MaskedSource<?, ?> source,
+			final LabelBlockLookup labelBlockLookup,
+			final int level,
+			final TLongHashSet fragments,
+			final CellGrid grid,
+			final Localizable seed)
 	{
-		net.imglib2.algorithm.fill.FloodFill.fill(
-				Views.extendValue(input, new LabelMultisetType()),
-				output,
-				seed,
-				new UnsignedLongType(1),
-				new DiamondShape(1),
-				makePredicate(seedLabel, assignment)
-			);
+		if (labelBlockLookup == null)
+			return index -> true;
+
+		final long[] gridDimensions = grid.getGridDimensions();
+		final int[] blockSize = new int[grid.numDimensions()];
+		grid.cellDimensions(blockSize);
+		final TLongHashSet blocks = new TLongHashSet();
+		try
+		{
+			for (final TLongIterator fragmentIt = fragments.iterator(); fragmentIt.hasNext(); )
+			{
+				final Interval[] intervals = labelBlockLookup.read(level, fragmentIt.next());
+				if (intervals != null && intervals.length > 0)
+					blocks.addAll(MaskedSource.affectedBlocks(gridDimensions, blockSize, intervals));
+			}
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to read label-block lookup -- will consider all blocks for flood fill: {}", e.getMessage());
+			return index -> true;
+		}
+
+		final long[] seedPosition = new long[seed.numDimensions()];
+		final long[] seedBlockPosition = new long[seed.numDimensions()];
+		seed.localize(seedPosition);
+		grid.getCellPosition(seedPosition, seedBlockPosition);
+		if (!blocks.contains(IntervalIndexer.positionToIndex(seedBlockPosition, gridDimensions)))
+		{
+			LOG.debug("Label-block lookup does not list block of seed -- will consider all blocks for flood fill");
+			return index -> true;
+		}
+
+		// canvas blocks are stored at the highest resolution, in the same grid as the mask
+		if (level == 0)
+			blocks.addAll(source.getAffectedBlocks());
+		LOG.debug("Restricting flood fill to {} of {} blocks", blocks.size(), Intervals.numElements(gridDimensions));
+		return blocks::contains;
 	}
 
-	private static <T extends IntegerType<T>> void fillPrimitiveType(
-			final RandomAccessibleInterval<T> input,
-			final RandomAccessible<UnsignedLongType> output,
-			final Localizable seed,
-			final long seedLabel,
-			final FragmentSegmentAssignment assignment)
+	private static synchronized ExecutorService floodFillExecutors()
 	{
-		final T extension = Util.getTypeFromInterval(input).createVariable();
-		extension.setInteger(Label.OUTSIDE);
-
-		net.imglib2.algorithm.fill.FloodFill.fill(
-				Views.extendValue(input, extension),
-				output,
-				seed,
-				new UnsignedLongType(1),
-				new DiamondShape(1),
-				makePredicate(seedLabel, assignment)
-			);
+		if (floodFillExecutors == null)
+			floodFillExecutors = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					new NamedThreadFactory("flood-fill-%d", true));
+		return floodFillExecutors;
 	}
 
 	private void setFloodFillState(final Source<?> source, final FloodFillState state)
@@ -360,9 +418,18 @@ public class FloodFill
 		setFloodFillState(source, null);
 	}
 
-	private static <T extends IntegerType<T>> BiPredicate<T, UnsignedLongType> makePredicate(final long id, final FragmentSegmentAssignment assignment)
+	private void updateFloodFillProgress(final Source<?> source, final int numProcessedBlocks, final int numDiscoveredBlocks)
 	{
-		return (t, u) -> !Thread.currentThread().isInterrupted() && u.getInteger() == 0 && (assignment != null ? assignment.getSegment(t.getIntegerLong()) : t.getIntegerLong()) == id;
+		final SourceState<?, ?> sourceState = this.sourceInfo.getState(source);
+		if (sourceState instanceof HasFloodFillState)
+			InvokeOnJavaFXApplicationThread.invoke(() -> {
+				final FloodFillState state = ((HasFloodFillState) sourceState).floodFillState().get();
+				if (state != null)
+				{
+					state.numProcessedBlocks.set(numProcessedBlocks);
+					state.numDiscoveredBlocks.set(numDiscoveredBlocks);
+				}
+			});
 	}
 
 	public static class RunAll implements Runnable
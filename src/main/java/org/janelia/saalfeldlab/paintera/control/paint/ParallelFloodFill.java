@@ -0,0 +1,367 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flood fill (6-neighborhood in 3D) that processes the blocks of a {@link CellGrid} concurrently. Each block is
+ * filled breadth-first by at most one task at a time. Voxels that are reached across a block face are handed to the
+ * neighboring block as seeds for its next pass. Only blocks accepted by {@code isCandidateBlock}, e.g. the blocks
+ * that contain a segment according to a label-block lookup, are visited.
+ *
+ * Filled voxels are set to {@code 1} in {@code output}. Voxels that are not {@code 0} in {@code output} are
+ * considered visited and will not be filled. {@code isFill} may be called from multiple threads concurrently.
+ *
+ * @param <T> input type
+ */
+public class ParallelFloodFill<T>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static class BlockState
+	{
+		private List<long[]> pendingSeeds = new ArrayList<>();
+
+		private boolean isScheduled = false;
+	}
+
+	private final RandomAccessibleInterval<T> input;
+
+	private final RandomAccessibleInterval<UnsignedLongType> output;
+
+	private final CellGrid grid;
+
+	private final Predicate<T> isFill;
+
+	private final LongPredicate isCandidateBlock;
+
+	private final ExecutorService executors;
+
+	private final ConcurrentHashMap<Long, BlockState> blocks = new ConcurrentHashMap<>();
+
+	private final TLongHashSet filledBlocks = new TLongHashSet();
+
+	private final AtomicInteger numScheduledTasks = new AtomicInteger();
+
+	private final AtomicInteger numProcessedBlocks = new AtomicInteger();
+
+	private final AtomicBoolean isCanceled = new AtomicBoolean(false);
+
+	private final CompletableFuture<Void> isDone = new CompletableFuture<>();
+
+	/**
+	 * @param input data
+	 * @param output fill mask, must have the same dimensions as {@code input}. Written concurrently for different
+	 *               blocks of {@code grid}.
+	 * @param grid blocks that are processed in parallel, typically the cell grid of {@code output}
+	 * @param isFill {@code true} for voxels in {@code input} that should be filled
+	 * @param isCandidateBlock {@code true} for indices of blocks in {@code grid} that may contain voxels to be filled
+	 * @param executors process blocks on these executors
+	 */
+	public ParallelFloodFill(
+			final RandomAccessibleInterval<T> input,
+			final RandomAccessibleInterval<UnsignedLongType> output,
+			final CellGrid grid,
+			final Predicate<T> isFill,
+			final LongPredicate isCandidateBlock,
+			final ExecutorService executors)
+	{
+		this.input = input;
+		this.output = output;
+		this.grid = grid;
+		this.isFill = isFill;
+		this.isCandidateBlock = isCandidateBlock;
+		this.executors = executors;
+	}
+
+	/**
+	 * Fill from {@code seed} and block until done. Remaining blocks are skipped if the calling thread is interrupted.
+	 *
+	 * @throws InterruptedException if the calling thread was interrupted while waiting
+	 * @throws ExecutionException if processing any of the blocks failed
+	 */
+	public void fill(final Localizable seed) throws InterruptedException, ExecutionException
+	{
+		final long[] position = new long[seed.numDimensions()];
+		seed.localize(position);
+		if (!Intervals.contains(input, seed))
+		{
+			LOG.debug("Seed {} outside of data -- will not fill", position);
+			return;
+		}
+
+		numScheduledTasks.incrementAndGet();
+		addSeed(blockIndex(position), position);
+		taskDone();
+
+		try
+		{
+			isDone.get();
+		} catch (final InterruptedException e)
+		{
+			cancel();
+			throw e;
+		} finally
+		{
+			LOG.debug("Processed {} blocks, filled {} blocks", numProcessedBlocks.get(), filledBlocks().length);
+		}
+	}
+
+	/**
+	 * Stop processing, skip all blocks that have not been filled yet.
+	 */
+	public void cancel()
+	{
+		isCanceled.set(true);
+		isDone.cancel(false);
+	}
+
+	/**
+	 * @return number of blocks that have been processed at least once
+	 */
+	public int numProcessedBlocks()
+	{
+		return numProcessedBlocks.get();
+	}
+
+	/**
+	 * @return number of blocks that have been reached by the fill so far
+	 */
+	public int numDiscoveredBlocks()
+	{
+		return blocks.size();
+	}
+
+	/**
+	 * @return indices of all blocks in {@code grid} that contain at least one filled voxel
+	 */
+	public long[] filledBlocks()
+	{
+		synchronized (filledBlocks)
+		{
+			return filledBlocks.toArray();
+		}
+	}
+
+	/**
+	 * @return bounding box of all blocks that contain at least one filled voxel, {@code null} if nothing was filled
+	 */
+	public Interval filledInterval()
+	{
+		final long[] filledBlocks = filledBlocks();
+		if (filledBlocks.length == 0)
+			return null;
+		final int n = grid.numDimensions();
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+		final long[] cellMin = new long[n];
+		final int[] cellDims = new int[n];
+		for (final long index : filledBlocks)
+		{
+			grid.getCellDimensions(index, cellMin, cellDims);
+			for (int d = 0; d < n; ++d)
+			{
+				min[d] = Math.min(min[d], cellMin[d]);
+				max[d] = Math.max(max[d], cellMin[d] + cellDims[d] - 1);
+			}
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private long blockIndex(final long[] position)
+	{
+		final long[] gridPosition = new long[position.length];
+		grid.getCellPosition(position, gridPosition);
+		return IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions());
+	}
+
+	private void addSeed(final long blockIndex, final long[] seed)
+	{
+		final BlockState state = blocks.computeIfAbsent(blockIndex, index -> new BlockState());
+		synchronized (state)
+		{
+			state.pendingSeeds.add(seed);
+			if (state.isScheduled)
+				return;
+			state.isScheduled = true;
+		}
+		numScheduledTasks.incrementAndGet();
+		executors.submit(() -> {
+			try
+			{
+				processBlock(blockIndex, state);
+			} catch (final Throwable e)
+			{
+				isCanceled.set(true);
+				isDone.completeExceptionally(e);
+			} finally
+			{
+				taskDone();
+			}
+		});
+	}
+
+	private void taskDone()
+	{
+		if (numScheduledTasks.decrementAndGet() == 0)
+			isDone.complete(null);
+	}
+
+	private void processBlock(final long blockIndex, final BlockState state)
+	{
+		final int n = grid.numDimensions();
+		final long[] min = new long[n];
+		final int[] size = new int[n];
+		grid.getCellDimensions(blockIndex, min, size);
+		final long[] max = new long[n];
+		Arrays.setAll(max, d -> min[d] + size[d] - 1);
+
+		final RandomAccess<T> inputAccess = input.randomAccess();
+		final RandomAccess<UnsignedLongType> outputAccess = output.randomAccess();
+		final long[] position = new long[n];
+		final TIntArrayList queue = new TIntArrayList();
+		final TLongObjectHashMap<List<long[]>> outgoing = new TLongObjectHashMap<>();
+		boolean isProcessed = false;
+		boolean hasFilled = false;
+
+		while (!isCanceled.get())
+		{
+			final List<long[]> seeds;
+			synchronized (state)
+			{
+				if (state.pendingSeeds.isEmpty())
+				{
+					state.isScheduled = false;
+					break;
+				}
+				seeds = state.pendingSeeds;
+				state.pendingSeeds = new ArrayList<>();
+			}
+
+			queue.resetQuick();
+			for (final long[] seed : seeds)
+			{
+				if (fillIfAccepted(seed, inputAccess, outputAccess))
+				{
+					queue.add(localIndex(seed, min, size));
+					hasFilled = true;
+				}
+			}
+
+			for (int head = 0; head < queue.size() && !isCanceled.get(); ++head)
+			{
+				localPosition(queue.getQuick(head), min, size, position);
+				for (int d = 0; d < n; ++d)
+				{
+					for (int step = -1; step <= 1; step += 2)
+					{
+						position[d] += step;
+						if (position[d] < min[d] || position[d] > max[d])
+						{
+							if (position[d] >= input.min(d) && position[d] <= input.max(d))
+							{
+								final long neighborIndex = blockIndex(position);
+								if (isCandidateBlock.test(neighborIndex))
+								{
+									List<long[]> neighborSeeds = outgoing.get(neighborIndex);
+									if (neighborSeeds == null)
+									{
+										neighborSeeds = new ArrayList<>();
+										outgoing.put(neighborIndex, neighborSeeds);
+									}
+									neighborSeeds.add(position.clone());
+								}
+							}
+						}
+						else if (fillIfAccepted(position, inputAccess, outputAccess))
+							queue.add(localIndex(position, min, size));
+						position[d] -= step;
+					}
+				}
+			}
+
+			// hand over frontier after each pass so that neighboring blocks can start while this one continues
+			outgoing.forEachEntry((index, neighborSeeds) -> {
+				neighborSeeds.forEach(seed -> addSeed(index, seed));
+				return true;
+			});
+			outgoing.clear();
+
+			if (!isProcessed)
+			{
+				isProcessed = true;
+				numProcessedBlocks.incrementAndGet();
+			}
+		}
+
+		if (hasFilled)
+		{
+			synchronized (filledBlocks)
+			{
+				filledBlocks.add(blockIndex);
+			}
+		}
+	}
+
+	private boolean fillIfAccepted(
+			final long[] position,
+			final RandomAccess<T> inputAccess,
+			final RandomAccess<UnsignedLongType> outputAccess)
+	{
+		outputAccess.setPosition(position);
+		final UnsignedLongType visited = outputAccess.get();
+		if (visited.getIntegerLong() != 0)
+			return false;
+		inputAccess.setPosition(position);
+		if (!isFill.test(inputAccess.get()))
+			return false;
+		visited.setInteger(1);
+		return true;
+	}
+
+	private static int localIndex(final long[] position, final long[] min, final int[] size)
+	{
+		int index = 0;
+		for (int d = size.length - 1; d >= 0; --d)
+			index = index * size[d] + (int) (position[d] - min[d]);
+		return index;
+	}
+
+	private static void localPosition(int index, final long[] min, final int[] size, final long[] position)
+	{
+		for (int d = 0; d < size.length; ++d)
+		{
+			position[d] = min[d] + index % size[d];
+			index /= size[d];
+		}
+	}
+
+}
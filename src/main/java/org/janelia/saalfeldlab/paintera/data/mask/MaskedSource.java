@@ -7,6 +7,7 @@ import gnu.trove.iterator.TLongIterator;
 import gnu.trove.iterator.TLongLongIterator;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.beans.property.BooleanProperty;
@@ -40,10 +41,6 @@ import net.imglib2.RealRandomAccessibleRealInterval;
 import net.imglib2.algorithm.util.Grids;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.cache.img.CachedCellImg;
-import net.imglib2.cache.img.CellLoader;
-import net.imglib2.cache.img.DiskCachedCellImg;
-import net.imglib2.cache.img.DiskCachedCellImgFactory;
-import net.imglib2.cache.img.DiskCachedCellImgOptions;
 import net.imglib2.cache.img.DiskCellCache;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
@@ -52,6 +49,7 @@ import net.imglib2.converter.TypeIdentity;
 import net.imglib2.img.basictypeaccess.LongAccess;
 import net.imglib2.img.cell.AbstractCellImg;
 import net.imglib2.img.cell.CellGrid;
+import net.imglib2.iterator.IntervalIterator;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.outofbounds.RealOutOfBoundsConstantValueFactory;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -88,7 +86,10 @@ import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -98,7 +99,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.DoubleStream;
@@ -146,13 +149,18 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private static final int NUM_DIMENSIONS = 3;
 
+	/**
+	 * Windows with at most this many voxels are downsampled by sorting instead of counting in a hash map.
+	 */
+	private static final int MAX_SORTED_WINDOW_SIZE = 64;
+
 	private final UnsignedLongType INVALID = new UnsignedLongType(Label.INVALID);
 
 	private final DataSource<D, T> source;
 
 	private final SharedQueue queue;
 
-	private final DiskCachedCellImg<UnsignedLongType, LongAccess>[] dataCanvases;
+	private final SparseCanvas[] dataCanvases;
 
 	private final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>[] canvases;
 
@@ -195,6 +203,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private final List<Runnable> canvasClearedListeners = new ArrayList<>();
 
+	private final List<Consumer<Interval[][]>> canvasPersistedListeners = new ArrayList<>();
+
 	private final BooleanProperty showCanvasOverBackground = new SimpleBooleanProperty(this, "show canvas", true);
 
 	public MaskedSource(
@@ -246,7 +256,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				.mapToObj(level -> Intervals.dimensionsAsLongArray(this.source.getSource(0, level)))
 				.toArray(long[][]::new);
 		this.blockSizes = blockSizes;
-		this.dataCanvases = new DiskCachedCellImg[source.getNumMipmapLevels()];
+		this.dataCanvases = new SparseCanvas[source.getNumMipmapLevels()];
 		this.canvases = new TmpVolatileHelpers.RaiWithInvalidate[source.getNumMipmapLevels()];
 		this.dMasks = new RealRandomAccessible[this.canvases.length];
 		this.tMasks = new RealRandomAccessible[this.canvases.length];
@@ -311,9 +321,9 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 		LOG.debug("Generating mask: {}", maskInfo);
 
-		final Pair<DiskCachedCellImg<UnsignedLongType, ?>, TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>>
+		final Pair<SparseCanvas, TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>>
 				storeWithVolatile = createMaskStoreWithVolatile(maskInfo.level);
-		final DiskCachedCellImg<UnsignedLongType, ?> store = storeWithVolatile.getKey();
+		final SparseCanvas store = storeWithVolatile.getKey();
 		final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType> vstore  = storeWithVolatile.getValue();
 		setMasks(store, vstore.getRai(), maskInfo.level, maskInfo.value, isPaintedForeground);
 		final AccessedBlocksRandomAccessible<UnsignedLongType> trackingStore = new AccessedBlocksRandomAccessible<>(
@@ -462,32 +472,31 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			LOG.debug("Added affected block: {}", affectedBlocksByLabel[maskInfo.level]);
 			this.affectedBlocks.addAll(paintedBlocksAtHighestResolution);
 
-			propagationExecutor.submit(() -> {
-				try {
-					propagateMask(
-							mask.mask,
-							affectedBlocks,
-							maskInfo.level,
-							maskInfo.value,
-							paintedInterval,
-							acceptAsPainted);
-					setMasksConstant();
-					synchronized (this) {
-						LOG.debug("Done applying mask!");
-						this.isApplyingMask.set(false);
-					}
-				} finally {
-					// free resources
-					if (currentMaskBeforePropagation != null) {
-						if (currentMaskBeforePropagation.shutdown != null)
-							currentMaskBeforePropagation.shutdown.run();
-						if (currentMaskBeforePropagation.invalidate != null)
-							currentMaskBeforePropagation.invalidate.invalidateAll();
-						if (currentMaskBeforePropagation.invalidateVolatile != null)
-							currentMaskBeforePropagation.invalidateVolatile.invalidateAll();
-					}
+			// blocks are propagated in parallel on the propagation executor, this thread only waits for completion
+			try {
+				propagateMask(
+						mask.mask,
+						affectedBlocks,
+						maskInfo.level,
+						maskInfo.value,
+						paintedInterval,
+						acceptAsPainted).join();
+				setMasksConstant();
+				synchronized (this) {
+					LOG.debug("Done applying mask!");
+					this.isApplyingMask.set(false);
 				}
-			});
+			} finally {
+				// free resources
+				if (currentMaskBeforePropagation != null) {
+					if (currentMaskBeforePropagation.shutdown != null)
+						currentMaskBeforePropagation.shutdown.run();
+					if (currentMaskBeforePropagation.invalidate != null)
+						currentMaskBeforePropagation.invalidate.invalidateAll();
+					if (currentMaskBeforePropagation.invalidateVolatile != null)
+						currentMaskBeforePropagation.invalidateVolatile.invalidateAll();
+				}
+			}
 
 		}).start();
 
@@ -549,8 +558,23 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		Arrays.setAll(targetPosition, d -> (long) Math.ceil(positionDouble[d]));
 	}
 
+	/**
+	 * Remove the current mask and free its resources.
+	 */
 	public void resetMasks() throws MaskInUse
 	{
+		resetMasks(true);
+	}
+
+	/**
+	 * Remove the current mask.
+	 *
+	 * @param shutdownMask free the resources of the current mask. Pass {@code false} only if the mask is still used
+	 *                     elsewhere, e.g. to set it again later, and is shut down by the caller.
+	 */
+	public void resetMasks(final boolean shutdownMask) throws MaskInUse
+	{
+		final Mask<UnsignedLongType> mask;
 		synchronized (this)
 		{
 			final boolean canResetMask = !isCreatingMask && !isApplyingMask.get();
@@ -558,20 +582,34 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			if (!canResetMask)
 				throw new MaskInUse("Busy, cannot reset mask.");
 
+			mask = this.currentMask;
 			this.currentMask = null;
 		}
 		setMasksConstant();
+		if (shutdownMask)
+			shutdown(mask);
 	}
 
 	public void forgetCanvases() throws CannotClearCanvas
 	{
+		final Mask<UnsignedLongType> mask;
 		synchronized (this)
 		{
 			if (this.isPersisting)
 				throw new CannotClearCanvas("Currently persisting canvas -- try again later.");
+			mask = this.currentMask;
 			this.currentMask = null;
 		}
 		clearCanvases();
+		if (mask != null)
+			setMasksConstant();
+		shutdown(mask);
+	}
+
+	private static void shutdown(final Mask<?> mask)
+	{
+		if (mask != null && mask.shutdown != null)
+			mask.shutdown.run();
 	}
 
 
@@ -639,6 +677,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 						this.persistCanvas.updateLabelBlockLookup(blockDiffs);
 						states.set(states.size() - 1, "Updating label-to-block lookup...   Done");
 					}
+					final Interval[][] modifiedBlocks = modifiedBlocks(blockDiffs);
+					this.canvasPersistedListeners.forEach(l -> l.accept(modifiedBlocks));
 					if (clearCanvas) {
 						states.add("Clearing canvases...");
 						clearCanvases();
@@ -849,6 +889,95 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	}
 
 	/**
+	 * Downsample affected blocks of {@code img} in parallel on {@code executor}. Each block is scheduled as soon as
+	 * all blocks of {@code sourceTasks} that it reads from are done.
+	 *
+	 * @param source lower level that {@code img} is downsampled from
+	 * @param sourceGrid grid of {@code source}
+	 * @param sourceTasks pending tasks that write blocks of {@code source}, by linear block index
+	 * @return pending tasks that write blocks of {@code img}, by linear block index
+	 */
+	private static TLongObjectMap<CompletableFuture<Void>> downsampleBlocks(
+			final RandomAccessible<UnsignedLongType> source,
+			final CellGrid sourceGrid,
+			final TLongObjectMap<CompletableFuture<Void>> sourceTasks,
+			final CachedCellImg<UnsignedLongType, LongAccess> img,
+			final TLongSet affectedBlocks,
+			final int[] steps,
+			final Interval interval,
+			final ExecutorService executor)
+	{
+		final TLongObjectMap<CompletableFuture<Void>> tasks = new TLongObjectHashMap<>();
+		LOG.debug("Scheduling affected blocks: {}", affectedBlocks);
+		for (final TLongIterator it = affectedBlocks.iterator(); it.hasNext(); )
+		{
+			final long blockId = it.next();
+			final BlockSpec blockSpec = new BlockSpec(img.getCellGrid());
+			blockSpec.fromLinearIndex(blockId);
+
+			final long[] intersectedCellMin = blockSpec.min.clone();
+			final long[] intersectedCellMax = blockSpec.max.clone();
+			intersect(intersectedCellMin, intersectedCellMax, interval);
+
+			if (isNonEmpty(intersectedCellMin, intersectedCellMax))
+			{
+				final long[] sourceMin = new long[intersectedCellMin.length];
+				final long[] sourceMax = new long[intersectedCellMax.length];
+				Arrays.setAll(sourceMin, d -> intersectedCellMin[d] * steps[d]);
+				Arrays.setAll(sourceMax, d -> (intersectedCellMax[d] + 1) * steps[d] - 1);
+				final CompletableFuture<Void> dependencies = dependenciesOf(sourceTasks, sourceGrid, sourceMin, sourceMax);
+				tasks.put(blockId, dependencies.thenRunAsync(() -> {
+					LOG.trace("Downsampling for intersected min/max: {} {}", intersectedCellMin, intersectedCellMax);
+					downsample(source, Views.interval(img, intersectedCellMin, intersectedCellMax), steps);
+				}, executor));
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * @return future that completes when all tasks of {@code tasks} that write blocks intersecting
+	 * [{@code min}, {@code max}] of {@code grid} are done
+	 */
+	private static CompletableFuture<Void> dependenciesOf(
+			final TLongObjectMap<CompletableFuture<Void>> tasks,
+			final CellGrid grid,
+			final long[] min,
+			final long[] max)
+	{
+		if (tasks.isEmpty())
+			return CompletableFuture.completedFuture(null);
+
+		final long[] clampedMin = new long[min.length];
+		final long[] clampedMax = new long[max.length];
+		Arrays.setAll(clampedMin, d -> Math.max(min[d], 0));
+		Arrays.setAll(clampedMax, d -> Math.min(max[d], grid.imgDimension(d) - 1));
+		if (!isNonEmpty(clampedMin, clampedMax))
+			return CompletableFuture.completedFuture(null);
+
+		final long[] gridMin = new long[min.length];
+		final long[] gridMax = new long[max.length];
+		grid.getCellPosition(clampedMin, gridMin);
+		grid.getCellPosition(clampedMax, gridMax);
+		final long[] gridDimensions = grid.getGridDimensions();
+		final List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+		final long[] position = new long[gridMin.length];
+		for (final IntervalIterator it = new IntervalIterator(new FinalInterval(gridMin, gridMax)); it.hasNext(); )
+		{
+			it.fwd();
+			it.localize(position);
+			final CompletableFuture<Void> dependency = tasks.get(IntervalIndexer.positionToIndex(position, gridDimensions));
+			if (dependency != null)
+				dependencies.add(dependency);
+		}
+		return CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]));
+	}
+
+	/**
+	 * Set each voxel of {@code target} to the most frequent label in the corresponding window of {@code source}.
+	 * Windows of up to {@link #MAX_SORTED_WINDOW_SIZE} voxels are sorted in a re-used buffer, larger windows are
+	 * counted in a re-used hash map. Ties are resolved in favor of the smallest label (as signed {@code long}).
+	 *
 	 * @param source
 	 * @param target
 	 * @param steps
@@ -865,24 +994,32 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				Intervals.maxAsLongArray(target),
 				steps
 		         );
-		final TLongLongHashMap counts       = new TLongLongHashMap();
+		final int windowSize = IntStream.of(steps).reduce(1, (i1, i2) -> i1 * i2);
+		final boolean isSmallWindow = windowSize <= MAX_SORTED_WINDOW_SIZE;
+		final long[]           window       = new long[isSmallWindow ? windowSize : 0];
+		final TLongLongHashMap counts       = isSmallWindow ? null : new TLongLongHashMap();
 		final long[]           start        = new long[source.numDimensions()];
 		final long[]           stop         = new long[source.numDimensions()];
 		final RandomAccess<T>  sourceAccess = source.randomAccess();
 		for (final Cursor<T> targetCursor = Views.flatIterable(target).cursor(); targetCursor.hasNext(); )
 		{
 			final T t = targetCursor.next();
-			counts.clear();
+			if (counts != null)
+				counts.clear();
 
 			Arrays.setAll(start, d -> targetCursor.getLongPosition(d) * steps[d]);
 			Arrays.setAll(stop, d -> start[d] + steps[d]);
 			sourceAccess.setPosition(start);
 
+			int index = 0;
 			for (int dim = 0; dim < start.length; )
 			{
 				final long id = sourceAccess.get().getIntegerLong();
 				//				if ( id != Label.INVALID )
-				counts.put(id, counts.get(id) + 1);
+				if (counts == null)
+					window[index++] = id;
+				else
+					counts.adjustOrPutValue(id, 1, 1);
 
 				for (dim = 0; dim < start.length; ++dim)
 				{
@@ -898,20 +1035,56 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				}
 			}
 
-			long maxCount = 0;
-			for (final TLongLongIterator countIt = counts.iterator(); countIt.hasNext(); )
+			t.setInteger(counts == null ? majority(window) : majority(counts));
+		}
+	}
+
+	/**
+	 * Sorts {@code window} in place.
+	 *
+	 * @return most frequent value in {@code window}. Ties are broken in favor of regular labels (see
+	 * {@link Label#regular(long)}), then the smallest one: Otherwise, {@link Label#INVALID} and other reserved
+	 * labels would win every tie because they are negative as signed longs.
+	 */
+	static long majority(final long[] window)
+	{
+		Arrays.sort(window);
+		long majority = window[0];
+		int maxCount = 0;
+		for (int start = 0, stop; start < window.length; start = stop)
+		{
+			for (stop = start + 1; stop < window.length && window[stop] == window[start]; ++stop) ;
+			if (stop - start > maxCount || stop - start == maxCount && isPreferredOnTie(window[start], majority))
 			{
-				countIt.advance();
-				final long count = countIt.value();
-				final long id    = countIt.key();
-				if (count > maxCount)
-				{
-					maxCount = count;
-					t.setInteger(id);
-				}
+				maxCount = stop - start;
+				majority = window[start];
 			}
+		}
+		return majority;
+	}
 
+	private static long majority(final TLongLongHashMap counts)
+	{
+		long majority = 0;
+		long maxCount = 0;
+		for (final TLongLongIterator countIt = counts.iterator(); countIt.hasNext(); )
+		{
+			countIt.advance();
+			final long count = countIt.value();
+			final long id    = countIt.key();
+			if (count > maxCount || count == maxCount && isPreferredOnTie(id, majority))
+			{
+				maxCount = count;
+				majority = id;
+			}
 		}
+		return majority;
+	}
+
+	private static boolean isPreferredOnTie(final long id, final long majority)
+	{
+		final boolean isRegular = Label.regular(id);
+		return isRegular == Label.regular(majority) ? id < majority : isRegular;
 	}
 
 	public TLongSet getModifiedBlocks(final int level, final long id)
@@ -921,7 +1094,14 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				TLongHashSet::new);
 	}
 
-	private void propagateMask(
+	/**
+	 * Propagate the mask applied at {@code paintedLevel} to all other levels. Blocks are processed in parallel on the
+	 * {@link #propagationExecutor}: all blocks at lower resolution levels are downsampled as soon as the blocks they
+	 * read from are done, and blocks at higher resolution levels are upsampled independently.
+	 *
+	 * @return future that completes when all levels are up to date
+	 */
+	private CompletableFuture<Void> propagateMask(
 			final RandomAccessibleInterval<UnsignedLongType> mask,
 			final TLongSet paintedBlocksAtPaintedScale,
 			final int paintedLevel,
@@ -930,10 +1110,14 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			final Predicate<UnsignedLongType> isPaintedForeground)
 	{
 
+		final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+		// blocks at the painted level are written already
+		TLongObjectMap<CompletableFuture<Void>> tasksAtLowerLevel = new TLongObjectHashMap<>();
 		for (int level = paintedLevel + 1; level < getNumMipmapLevels(); ++level)
 		{
 			final int                                         levelAsFinal          = level;
-			final RandomAccessibleInterval<UnsignedLongType>  atLowerLevel          = dataCanvases[level - 1];
+			final CachedCellImg<UnsignedLongType, LongAccess> atLowerLevel          = dataCanvases[level - 1];
 			final CachedCellImg<UnsignedLongType, LongAccess> atHigherLevel         = dataCanvases[level];
 			final double[]                                    relativeScales        = DataSource.getRelativeScales(
 					this,
@@ -945,7 +1129,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					paintedLevel,
 					levelAsFinal);
 
-			LOG.debug("Downsampling level {} of {}", level, getNumMipmapLevels());
+			LOG.debug("Scheduling downsampling of level {} of {}", level, getNumMipmapLevels());
 
 			if (DoubleStream.of(relativeScales).filter(d -> Math.round(d) != d).count() > 0)
 			{
@@ -956,7 +1140,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 						level,
 						relativeScales
 				         );
-				throw new RuntimeException("Non-integer relative scales: " + Arrays.toString(relativeScales));
+				tasks.add(failedFuture(new RuntimeException("Non-integer relative scales: " + Arrays.toString(relativeScales))));
+				break;
 			}
 			final TLongSet affectedBlocksAtHigherLevel = this.scaleBlocksToLevel(
 					paintedBlocksAtPaintedScale,
@@ -972,29 +1157,27 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			// downsample
 			final int[] steps = DoubleStream.of(relativeScales).mapToInt(d -> (int) d).toArray();
 			LOG.debug("Downsample step size: {}", steps);
-			downsampleBlocks(
+			final TLongObjectMap<CompletableFuture<Void>> tasksAtHigherLevel = downsampleBlocks(
 					Views.extendValue(atLowerLevel, new UnsignedLongType(Label.INVALID)),
+					atLowerLevel.getCellGrid(),
+					tasksAtLowerLevel,
 					atHigherLevel,
 					affectedBlocksAtHigherLevel,
 					steps,
-					intervalAtHigherLevel);
-			LOG.debug("Downsampled level {}", level);
+					intervalAtHigherLevel,
+					propagationExecutor);
+			tasks.addAll(tasksAtHigherLevel.valueCollection());
+			tasksAtLowerLevel = tasksAtHigherLevel;
 		}
 
 		for (int level = paintedLevel - 1; level >= 0; --level)
 		{
-			LOG.debug("Upsampling for level={}", level);
+			LOG.debug("Scheduling upsampling for level={}", level);
 			final TLongSet affectedBlocksAtLowerLevel              = this.scaleBlocksToLevel(
 					paintedBlocksAtPaintedScale,
 					paintedLevel,
 					level
 			                                                                                );
-			final double[] currentRelativeScaleFromTargetToPainted = DataSource.getRelativeScales(
-					this,
-					0,
-					level,
-					paintedLevel
-			                                                                                     );
 			this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
 					.addAll(
 					affectedBlocksAtLowerLevel);
@@ -1005,102 +1188,128 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					level
 			                                                                  );
 
-			// upsample
-			final CachedCellImg<UnsignedLongType, LongAccess> canvasAtTargetLevel = dataCanvases[level];
-			final CellGrid                                    gridAtTargetLevel   = canvasAtTargetLevel.getCellGrid();
-			final int[]                                       blockSize           = new int[gridAtTargetLevel
-					.numDimensions()];
-			gridAtTargetLevel.cellDimensions(blockSize);
-
-			final long[]                                 cellPosTarget  = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 minTarget      = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 maxTarget      = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 stopTarget     = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 minPainted     = new long[minTarget.length];
-			final long[]                                 maxPainted     = new long[minTarget.length];
-
-			final RealRandomAccessible<UnsignedLongType> scaledMask = this.dMasks[level];
-
+			final int levelAsFinal = level;
 			for (final TLongIterator blockIterator = affectedBlocksAtLowerLevel.iterator(); blockIterator.hasNext(); )
 			{
 				final long blockId = blockIterator.next();
-				gridAtTargetLevel.getCellGridPositionFlat(blockId, cellPosTarget);
-				Arrays.setAll(
-						minTarget,
-						d -> Math.min(cellPosTarget[d] * blockSize[d], gridAtTargetLevel.imgDimension(d) - 1)
-				             );
-				Arrays.setAll(
-						maxTarget,
-						d -> Math.min(minTarget[d] + blockSize[d], gridAtTargetLevel.imgDimension(d)) - 1
-				             );
-				Arrays.setAll(stopTarget, d -> maxTarget[d] + 1);
-				this.scalePositionToLevel(minTarget, level, paintedLevel, minPainted);
-				this.scalePositionToLevel(stopTarget, level, paintedLevel, maxPainted);
-				Arrays.setAll(minPainted, d -> Math.min(Math.max(minPainted[d], mask.min(d)), mask.max(d)));
-				Arrays.setAll(maxPainted, d -> Math.min(Math.max(maxPainted[d] - 1, mask.min(d)), mask.max(d)));
-
-				final long[] intersectionMin = minTarget.clone();
-				final long[] intersectionMax = maxTarget.clone();
-
-				intersect(intersectionMin, intersectionMax, paintedIntervalAtTargetLevel);
-
-				if (isNonEmpty(intersectionMin, intersectionMax))
-				{
+				tasks.add(CompletableFuture.runAsync(
+						() -> upsampleBlock(
+								mask,
+								blockId,
+								levelAsFinal,
+								paintedLevel,
+								label,
+								paintedIntervalAtTargetLevel,
+								isPaintedForeground),
+						propagationExecutor));
+			}
 
-					LOG.debug("Intersected min={} max={}", intersectionMin, intersectionMax);
-
-					LOG.debug(
-							"Upsampling block: level={}, block min (target)={}, block max (target)={}, block min={}, " +
-									"block max={}, scale={}, mask min={}, mask max={}",
-							level,
-							minTarget,
-							maxTarget,
-							minPainted,
-							maxPainted,
-							currentRelativeScaleFromTargetToPainted,
-							Intervals.minAsLongArray(mask),
-							Intervals.maxAsLongArray(mask)
-					         );
-
-					final IntervalView<BoolType> relevantBlockAtPaintedResolution = Views.interval(
-							Converters.convert(mask, (s, t) -> t.set(isPaintedForeground.test(s)), new BoolType()),
-							minPainted,
-							maxPainted
-					                                                                              );
-
-					if (Intervals.numElements(relevantBlockAtPaintedResolution) == 0)
-					{
-						continue;
-					}
+		}
 
-					LOG.debug(
-							"Upsampling for level {} and intersected intervals ({} {})",
-							level,
-							intersectionMin,
-							intersectionMax
-					         );
-					final Interval                 interval     = new FinalInterval(intersectionMin, intersectionMax);
-					final Cursor<UnsignedLongType> canvasCursor = Views.flatIterable(Views.interval(
-							canvasAtTargetLevel,
-							interval
-					                                                                               )).cursor();
-					final Cursor<UnsignedLongType> maskCursor   = Views.flatIterable(Views.interval(Views.raster(
-							scaledMask), interval)).cursor();
-					while (maskCursor.hasNext())
-					{
-						canvasCursor.fwd();
-						final boolean wasPainted = isPaintedForeground.test(maskCursor.next());
-						if (wasPainted)
-						{
-							canvasCursor.get().set(label);
-						}
-					}
-				}
-			}
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+	}
+
+	private void upsampleBlock(
+			final RandomAccessibleInterval<UnsignedLongType> mask,
+			final long blockId,
+			final int level,
+			final int paintedLevel,
+			final UnsignedLongType label,
+			final Interval paintedIntervalAtTargetLevel,
+			final Predicate<UnsignedLongType> isPaintedForeground)
+	{
+		final CachedCellImg<UnsignedLongType, LongAccess> canvasAtTargetLevel = dataCanvases[level];
+		final CellGrid                                    gridAtTargetLevel   = canvasAtTargetLevel.getCellGrid();
+		final int[]                                       blockSize           = new int[gridAtTargetLevel
+				.numDimensions()];
+		gridAtTargetLevel.cellDimensions(blockSize);
+
+		final long[]                                 cellPosTarget  = new long[gridAtTargetLevel.numDimensions()];
+		final long[]                                 minTarget      = new long[gridAtTargetLevel.numDimensions()];
+		final long[]                                 maxTarget      = new long[gridAtTargetLevel.numDimensions()];
+		final long[]                                 stopTarget     = new long[gridAtTargetLevel.numDimensions()];
+		final long[]                                 minPainted     = new long[minTarget.length];
+		final long[]                                 maxPainted     = new long[minTarget.length];
+
+		final RealRandomAccessible<UnsignedLongType> scaledMask = this.dMasks[level];
+
+		gridAtTargetLevel.getCellGridPositionFlat(blockId, cellPosTarget);
+		Arrays.setAll(
+				minTarget,
+				d -> Math.min(cellPosTarget[d] * blockSize[d], gridAtTargetLevel.imgDimension(d) - 1)
+		             );
+		Arrays.setAll(
+				maxTarget,
+				d -> Math.min(minTarget[d] + blockSize[d], gridAtTargetLevel.imgDimension(d)) - 1
+		             );
+		Arrays.setAll(stopTarget, d -> maxTarget[d] + 1);
+		this.scalePositionToLevel(minTarget, level, paintedLevel, minPainted);
+		this.scalePositionToLevel(stopTarget, level, paintedLevel, maxPainted);
+		Arrays.setAll(minPainted, d -> Math.min(Math.max(minPainted[d], mask.min(d)), mask.max(d)));
+		Arrays.setAll(maxPainted, d -> Math.min(Math.max(maxPainted[d] - 1, mask.min(d)), mask.max(d)));
+
+		final long[] intersectionMin = minTarget.clone();
+		final long[] intersectionMax = maxTarget.clone();
+
+		intersect(intersectionMin, intersectionMax, paintedIntervalAtTargetLevel);
+
+		if (!isNonEmpty(intersectionMin, intersectionMax))
+			return;
+
+		LOG.debug("Intersected min={} max={}", intersectionMin, intersectionMax);
+
+		LOG.debug(
+				"Upsampling block: level={}, block min (target)={}, block max (target)={}, block min={}, " +
+						"block max={}, mask min={}, mask max={}",
+				level,
+				minTarget,
+				maxTarget,
+				minPainted,
+				maxPainted,
+				Intervals.minAsLongArray(mask),
+				Intervals.maxAsLongArray(mask)
+		         );
+
+		final IntervalView<BoolType> relevantBlockAtPaintedResolution = Views.interval(
+				Converters.convert(mask, (s, t) -> t.set(isPaintedForeground.test(s)), new BoolType()),
+				minPainted,
+				maxPainted
+		                                                                              );
+
+		if (Intervals.numElements(relevantBlockAtPaintedResolution) == 0)
+			return;
 
+		LOG.debug(
+				"Upsampling for level {} and intersected intervals ({} {})",
+				level,
+				intersectionMin,
+				intersectionMax
+		         );
+		final Interval                 interval     = new FinalInterval(intersectionMin, intersectionMax);
+		final Cursor<UnsignedLongType> canvasCursor = Views.flatIterable(Views.interval(
+				canvasAtTargetLevel,
+				interval
+		                                                                               )).cursor();
+		final Cursor<UnsignedLongType> maskCursor   = Views.flatIterable(Views.interval(Views.raster(
+				scaledMask), interval)).cursor();
+		while (maskCursor.hasNext())
+		{
+			canvasCursor.fwd();
+			final boolean wasPainted = isPaintedForeground.test(maskCursor.next());
+			if (wasPainted)
+			{
+				canvasCursor.get().set(label);
+			}
 		}
 	}
 
+	private static <T> CompletableFuture<T> failedFuture(final Throwable t)
+	{
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+
 	public static TLongSet affectedBlocks(final long[] gridDimensions, final int[] blockSize, final Interval...
 			intervals)
 	{
@@ -1331,7 +1540,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		private final SharedQueue queue;
 
-		private final DiskCachedCellImg<UnsignedLongType, ?>[] dataCanvases;
+		private final SparseCanvas[] dataCanvases;
 
 		private final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>[] canvases;
 
@@ -1341,7 +1550,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		public CanvasBaseDirChangeListener(
 				final SharedQueue queue,
-				final DiskCachedCellImg<UnsignedLongType, ?>[] dataCanvases,
+				final SparseCanvas[] dataCanvases,
 				final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>[] canvases,
 				final long[][] dimensions,
 				final int[][] blockSizes)
@@ -1365,35 +1574,19 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			LOG.info("Updating cache directory: observable={} oldValue={} newValue={}", observable, oldValue,
 					newValue);
 
-			final DiskCachedCellImgOptions opts = DiskCachedCellImgOptions
-					.options()
-					.volatileAccesses(true)
-					.dirtyAccesses(true);
-
 			for (int level = 0; level < canvases.length; ++level)
 			{
 				if (newValue != null)
 				{
 					final Path cacheDir = Paths.get(newValue, String.format("%d", level));
-					final DiskCachedCellImgOptions o = opts
-							.volatileAccesses(true)
-							.dirtyAccesses(true)
-							.cacheDirectory(cacheDir)
-							.deleteCacheDirectoryOnExit(true)
-							.cellDimensions(blockSizes[level]);
-					final DiskCachedCellImgFactory<UnsignedLongType> f = new DiskCachedCellImgFactory<>(new UnsignedLongType(), o);
-					final CellLoader<UnsignedLongType> loader = img -> img.forEach(t -> t.set(Label.INVALID));
-					final DiskCachedCellImg<UnsignedLongType, ?> store  = f.create(dimensions[level], loader, o);
-					final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType> vstore = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate((
-							DiskCachedCellImg)store,
+					final SparseCanvas store = SparseCanvas.create(dimensions[level], blockSizes[level], Label.INVALID, () -> cacheDir);
+					final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType> vstore = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
+							(CachedCellImg) store,
 							queue,
 							new CacheHints(LoadingStrategy.VOLATILE, canvases.length - 1 - level, true));
 
-					if (dataCanvases[level] != null) {
+					if (dataCanvases[level] != null)
 						this.dataCanvases[level].shutdown();
-						this.dataCanvases[level].getCache().invalidateAll();
-						this.dataCanvases[level].getCache().invalidateAll();
-					}
 					// TODO how to invalidate volatile canvases?
 					if (canvases[level] != null && canvases[level].getInvalidate() != null)
 						canvases[level].getInvalidate().invalidateAll();
@@ -1440,6 +1633,55 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.canvasClearedListeners.add(listener);
 	}
 
+	/**
+	 * @param listener
+	 * 		is notified with the blocks that were modified in the background, for each level, after the canvas was
+	 * 		persisted successfully and before the canvas is cleared.
+	 */
+	public void addOnCanvasPersistedListener(final Consumer<Interval[][]> listener)
+	{
+		this.canvasPersistedListeners.add(listener);
+	}
+
+	/**
+	 * @return {@code true} if the canvas holds any painted data that has not been persisted yet or is in the process
+	 * of being persisted, i.e. if the data of this source differs from the data of the {@link #underlyingSource()}.
+	 */
+	public boolean hasPendingCanvasChanges()
+	{
+		synchronized (this)
+		{
+			return this.isPersisting
+					|| this.isCreatingMask
+					|| this.currentMask != null
+					|| this.isApplyingMask.get()
+					|| !this.affectedBlocks.isEmpty();
+		}
+	}
+
+	private Interval[][] modifiedBlocks(final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs)
+	{
+		final Interval[][] modifiedBlocks = new Interval[Math.min(blockDiffs.size(), this.dimensions.length)][];
+		for (int level = 0; level < modifiedBlocks.length; ++level)
+		{
+			final CellGrid grid = new CellGrid(this.dimensions[level], this.blockSizes[level]);
+			final long[] gridPosition = new long[grid.numDimensions()];
+			final long[] min = new long[grid.numDimensions()];
+			final long[] max = new long[grid.numDimensions()];
+			final int[] size = new int[grid.numDimensions()];
+			final long[] blockIds = blockDiffs.get(level).keys();
+			modifiedBlocks[level] = new Interval[blockIds.length];
+			for (int i = 0; i < blockIds.length; ++i)
+			{
+				grid.getCellGridPositionFlat(blockIds[i], gridPosition);
+				grid.getCellDimensions(gridPosition, min, size);
+				Arrays.setAll(max, d -> min[d] + size[d] - 1);
+				modifiedBlocks[level][i] = new FinalInterval(min, max);
+			}
+		}
+		return modifiedBlocks;
+	}
+
 	Map<Long, long[]>[] getAffectedBlocksById()
 	{
 		@SuppressWarnings("unchecked") final Map<Long, long[]>[] maps = new HashMap[this.affectedBlocksByLabel.length];
@@ -1481,28 +1723,29 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	}
 
-	private DiskCachedCellImgOptions getMaskDiskCachedCellImgOptions(final int level)
+	private SparseCanvas createMaskStore(final int level)
 	{
-		return DiskCachedCellImgOptions
-				.options()
-				.cacheDirectory(null)
-				.deleteCacheDirectoryOnExit(true)
-				.volatileAccesses(true)
-				.dirtyAccesses(false)
-				.cellDimensions(this.blockSizes[level]);
+		return SparseCanvas.create(
+				this.dimensions[level],
+				this.blockSizes[level],
+				0,
+				MaskedSource::createMaskSpillDirectory);
 	}
 
-	private DiskCachedCellImg<UnsignedLongType, ?> createMaskStore(
-			final DiskCachedCellImgOptions maskOpts,
-			final int level)
+	private static Path createMaskSpillDirectory()
 	{
-		return new DiskCachedCellImgFactory<>(new UnsignedLongType(), maskOpts).create(source.getSource(0, level));
+		try
+		{
+			return Files.createTempDirectory("paintera-mask-");
+		} catch (final IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
 	}
 
-	private Pair<DiskCachedCellImg<UnsignedLongType, ?>, TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>> createMaskStoreWithVolatile(final int level)
+	private Pair<SparseCanvas, TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType>> createMaskStoreWithVolatile(final int level)
 	{
-		final DiskCachedCellImgOptions maskOpts = getMaskDiskCachedCellImgOptions(level);
-		final DiskCachedCellImg<UnsignedLongType, ?> store = createMaskStore(maskOpts, level);
+		final SparseCanvas store = createMaskStore(level);
 		final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType> vstore =
 				TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
 						(CachedCellImg) store,
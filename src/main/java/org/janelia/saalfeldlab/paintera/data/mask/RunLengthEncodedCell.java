@@ -0,0 +1,124 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable compact copy of the contents of a label canvas cell. Cells with few runs of equal labels (brush strokes,
+ * fills, and masks) are stored as run values and run ends, all other cells as a plain copy.
+ */
+final class RunLengthEncodedCell
+{
+
+	private static final byte RUN_LENGTH = 0;
+
+	private static final byte RAW = 1;
+
+	private final long[] values;
+
+	/**
+	 * Exclusive end index of each run, {@code null} if {@link #values} is a plain copy.
+	 */
+	private final int[] runEnds;
+
+	private RunLengthEncodedCell(final long[] values, final int[] runEnds)
+	{
+		this.values = values;
+		this.runEnds = runEnds;
+	}
+
+	static boolean isConstant(final long[] data, final long value)
+	{
+		for (final long d : data)
+			if (d != value)
+				return false;
+		return true;
+	}
+
+	static RunLengthEncodedCell encode(final long[] data)
+	{
+		int numRuns = data.length == 0 ? 0 : 1;
+		for (int i = 1; i < data.length; ++i)
+			if (data[i] != data[i - 1])
+				++numRuns;
+
+		// run length encoding needs 12 bytes per run, a plain copy 8 bytes per voxel
+		if (3 * numRuns >= 2 * data.length)
+			return new RunLengthEncodedCell(data.clone(), null);
+
+		final long[] values = new long[numRuns];
+		final int[] runEnds = new int[numRuns];
+		for (int i = 0, run = -1; i < data.length; ++i)
+		{
+			if (run < 0 || data[i] != values[run])
+				values[++run] = data[i];
+			runEnds[run] = i + 1;
+		}
+		return new RunLengthEncodedCell(values, runEnds);
+	}
+
+	void decode(final long[] target)
+	{
+		if (runEnds == null)
+		{
+			System.arraycopy(values, 0, target, 0, values.length);
+			return;
+		}
+		for (int run = 0, start = 0; run < runEnds.length; start = runEnds[run++])
+			Arrays.fill(target, start, runEnds[run], values[run]);
+	}
+
+	/**
+	 * @return {@code true} if {@code data} has the contents of this cell
+	 */
+	boolean matches(final long[] data)
+	{
+		if (data.length != numElements())
+			return false;
+		if (runEnds == null)
+			return Arrays.equals(values, data);
+		for (int run = 0, start = 0; run < runEnds.length; start = runEnds[run++])
+			for (int i = start; i < runEnds[run]; ++i)
+				if (data[i] != values[run])
+					return false;
+		return true;
+	}
+
+	int numElements()
+	{
+		return runEnds == null ? values.length : runEnds.length == 0 ? 0 : runEnds[runEnds.length - 1];
+	}
+
+	long sizeInBytes()
+	{
+		return 8L * values.length + (runEnds == null ? 0 : 4L * runEnds.length);
+	}
+
+	void write(final DataOutputStream out) throws IOException
+	{
+		out.writeByte(runEnds == null ? RAW : RUN_LENGTH);
+		out.writeInt(values.length);
+		for (final long value : values)
+			out.writeLong(value);
+		if (runEnds != null)
+			for (final int runEnd : runEnds)
+				out.writeInt(runEnd);
+	}
+
+	static RunLengthEncodedCell read(final DataInputStream in) throws IOException
+	{
+		final byte encoding = in.readByte();
+		final long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = in.readLong();
+		if (encoding == RAW)
+			return new RunLengthEncodedCell(values, null);
+		final int[] runEnds = new int[values.length];
+		for (int i = 0; i < runEnds.length; ++i)
+			runEnds[i] = in.readInt();
+		return new RunLengthEncodedCell(values, runEnds);
+	}
+
+}
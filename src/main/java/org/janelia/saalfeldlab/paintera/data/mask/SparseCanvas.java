@@ -0,0 +1,87 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.AccessFlags;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.DirtyVolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudgets;
+import org.janelia.saalfeldlab.paintera.cache.CacheTier;
+
+/**
+ * Label canvas backed by a {@link SparseCellCache}: memory is spent only on cells that were written to, compressed
+ * and bounded by the {@link CacheTier#CANVAS canvas budget}. Cells beyond the budget are spilled to disk. Replaces
+ * {@link net.imglib2.cache.img.DiskCachedCellImg} for canvases and masks, which typically change only a small
+ * fraction of a dataset.
+ */
+public class SparseCanvas extends CachedCellImg<UnsignedLongType, LongAccess>
+{
+
+	private final SparseCellCache sparseCache;
+
+	@SuppressWarnings("unchecked")
+	private SparseCanvas(final CellGrid grid, final SparseCellCache sparseCache, final CellLoader<UnsignedLongType> loader)
+	{
+		super(
+				grid,
+				new UnsignedLongType(),
+				(Cache<Long, Cell<LongAccess>>) (Cache) sparseCache.withLoader(LoadedCellCacheLoader.get(
+						grid,
+						loader,
+						new UnsignedLongType(),
+						AccessFlags.setOf(AccessFlags.DIRTY, AccessFlags.VOLATILE))),
+				new DirtyVolatileLongArray(1, true));
+		this.sparseCache = sparseCache;
+	}
+
+	/**
+	 * @param dimensions
+	 * 		dimensions of the canvas
+	 * @param blockSize
+	 * 		cell size of the canvas
+	 * @param defaultValue
+	 * 		value of all voxels that have not been written
+	 * @param spillDirectory
+	 * 		directory for cells beyond the {@link CacheTier#CANVAS canvas budget}, requested only when needed
+	 */
+	public static SparseCanvas create(
+			final long[] dimensions,
+			final int[] blockSize,
+			final long defaultValue,
+			final Supplier<Path> spillDirectory)
+	{
+		final CellGrid grid = new CellGrid(dimensions, blockSize);
+		final SparseCellCache sparseCache = new SparseCellCache(
+				grid,
+				defaultValue,
+				CacheBudgets.get(CacheTier.CANVAS),
+				spillDirectory,
+				SparseCellCache.DEFAULT_NUM_STRONGLY_REFERENCED_CELLS);
+		final CellLoader<UnsignedLongType> loader = defaultValue == 0
+		                                            ? img -> {}
+		                                            : img -> img.forEach(t -> t.set(defaultValue));
+		return new SparseCanvas(grid, sparseCache, loader);
+	}
+
+	public SparseCellCache getSparseCache()
+	{
+		return this.sparseCache;
+	}
+
+	/**
+	 * Discard all contents and delete spilled cells.
+	 */
+	public void shutdown()
+	{
+		this.sparseCache.shutdown();
+	}
+
+}
@@ -0,0 +1,476 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.img.DiskCellCache;
+import net.imglib2.img.basictypeaccess.volatiles.array.DirtyVolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LoaderCache} for label canvases that keeps only cells that differ from a default value, in compact form.
+ *
+ * Cells are handed out densely. As soon as the data access of a cell is not referenced anymore (outside of a small set
+ * of recently used cells), it is compacted: cells that contain only the default value are dropped, all others are kept as
+ * {@link RunLengthEncodedCell run length encoded} copies that are accounted against a {@link MemoryBudget}. Copies
+ * evicted from the budget are spilled into a directory on disk and read back on demand. Edits are never lost: a cell
+ * is always available either densely, compactly in memory, or on disk.
+ *
+ * Liveness is tracked on the data access rather than on the {@link Cell}: images and their types hold on to the
+ * access only. All cells handed out for the same key share the same access while it is referenced.
+ */
+public class SparseCellCache implements LoaderCache<Long, Cell<DirtyVolatileLongArray>>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_NUM_STRONGLY_REFERENCED_CELLS = 32;
+
+	/**
+	 * Spills of entries that were evicted while the current thread holds the lock of another entry, of any
+	 * {@link SparseCellCache} that shares the budget. Spilling immediately could deadlock with a thread that holds the
+	 * lock of the evicted entry and evicts the locked one.
+	 */
+	private static final ThreadLocal<List<Runnable>> DEFERRED_SPILLS = new ThreadLocal<>();
+
+	private final CellGrid grid;
+
+	private final long defaultValue;
+
+	private final MemoryBudget budget;
+
+	private final Supplier<Path> spillDirectorySupplier;
+
+	private Path spillDirectory = null;
+
+	private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+	private final ReferenceQueue<DirtyVolatileLongArray> released = new ReferenceQueue<>();
+
+	private final LinkedHashMap<Long, DirtyVolatileLongArray> recentlyUsed;
+
+	private long numSpills = 0;
+
+	private long numSpillReads = 0;
+
+	/**
+	 * @param grid
+	 * 		cell grid of the canvas
+	 * @param defaultValue
+	 * 		value of voxels that have not been written, cells that contain only this value are not stored
+	 * @param budget
+	 * 		memory budget for compacted cells, shared with other canvases
+	 * @param spillDirectorySupplier
+	 * 		create directory for cells that exceed the budget, called only once the first cell is spilled
+	 * @param numStronglyReferencedCells
+	 * 		number of most recently used cells that are kept densely even if they are not referenced anymore
+	 */
+	public SparseCellCache(
+			final CellGrid grid,
+			final long defaultValue,
+			final MemoryBudget budget,
+			final Supplier<Path> spillDirectorySupplier,
+			final int numStronglyReferencedCells)
+	{
+		this.grid = grid;
+		this.defaultValue = defaultValue;
+		this.budget = budget;
+		this.spillDirectorySupplier = spillDirectorySupplier;
+		this.recentlyUsed = new LinkedHashMap<Long, DirtyVolatileLongArray>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, DirtyVolatileLongArray> eldest)
+			{
+				return size() > numStronglyReferencedCells;
+			}
+		};
+	}
+
+	@Override
+	public Cell<DirtyVolatileLongArray> getIfPresent(final Long key)
+	{
+		compact();
+		final Entry entry = entries.get(key);
+		if (entry == null)
+			return null;
+		synchronized (entry)
+		{
+			return entries.get(key) == entry ? getOrRestore(entry) : null;
+		}
+	}
+
+	@Override
+	public Cell<DirtyVolatileLongArray> get(
+			final Long key,
+			final CacheLoader<? super Long, ? extends Cell<DirtyVolatileLongArray>> loader) throws ExecutionException
+	{
+		compact();
+		while (true)
+		{
+			final Entry entry = entries.computeIfAbsent(key, Entry::new);
+			synchronized (entry)
+			{
+				// entry was dropped by compaction in the meantime
+				if (entries.get(key) != entry)
+					continue;
+
+				final Cell<DirtyVolatileLongArray> cell = getOrRestore(entry);
+				if (cell != null)
+					return cell;
+
+				try
+				{
+					final Cell<DirtyVolatileLongArray> loaded = loader.get(key);
+					entry.data = loaded.getData().getCurrentStorageArray();
+					track(entry, loaded.getData());
+					return loaded;
+				} catch (final Exception e)
+				{
+					throw new ExecutionException(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void invalidate(final Long key)
+	{
+		final Entry entry = entries.remove(key);
+		if (entry != null)
+			discard(entry);
+	}
+
+	@Override
+	public void invalidateIf(final long parallelismThreshold, final Predicate<Long> condition)
+	{
+		for (final Long key : new ArrayList<>(entries.keySet()))
+			if (condition.test(key))
+				invalidate(key);
+	}
+
+	@Override
+	public void invalidateAll(final long parallelismThreshold)
+	{
+		invalidateIf(parallelismThreshold, key -> true);
+	}
+
+	/**
+	 * Compact all cells whose data is not referenced anymore. Called on every access, call explicitly to release
+	 * memory while the canvas is not used.
+	 */
+	public void compact()
+	{
+		for (Reference<? extends DirtyVolatileLongArray> ref; (ref = released.poll()) != null; )
+			compact((AccessReference) ref);
+	}
+
+	/**
+	 * Invalidate all cells and delete the spill directory, if any.
+	 */
+	public void shutdown()
+	{
+		invalidateAll(Long.MAX_VALUE);
+		synchronized (this)
+		{
+			if (spillDirectory != null)
+			{
+				try
+				{
+					Files.deleteIfExists(spillDirectory);
+				} catch (final IOException e)
+				{
+					LOG.debug("Unable to delete spill directory {}: {}", spillDirectory, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of cells that are stored in any form, i.e. that may differ from the default value
+	 */
+	public int getNumStoredCells()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getNumSpills()
+	{
+		return numSpills;
+	}
+
+	public synchronized long getNumSpillReads()
+	{
+		return numSpillReads;
+	}
+
+	public MemoryBudget getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Must hold lock of {@code entry}.
+	 *
+	 * @return cell with current contents of {@code entry} or {@code null} if {@code entry} holds no contents
+	 */
+	private Cell<DirtyVolatileLongArray> getOrRestore(final Entry entry)
+	{
+		DirtyVolatileLongArray access = entry.reference == null ? null : entry.reference.get();
+		if (access != null)
+			holdStrongly(entry.key, access);
+		else
+		{
+			if (entry.data == null)
+			{
+				final RunLengthEncodedCell compact = entry.encoded != null ? entry.encoded : entry.spilled ? readSpilled(entry) : null;
+				if (compact == null)
+					return null;
+				entry.data = new long[compact.numElements()];
+				compact.decode(entry.data);
+				if (entry.encoded != null)
+					budget.touch(this, entry.key);
+			}
+			// wrap the dense contents, they may still be written through an access that is about to be compacted
+			access = new DirtyVolatileLongArray(entry.data, true);
+			track(entry, access);
+		}
+
+		final long[] cellMin  = new long[grid.numDimensions()];
+		final int[]  cellDims = new int[grid.numDimensions()];
+		grid.getCellDimensions(entry.key, cellMin, cellDims);
+		return new Cell<>(cellDims, cellMin, access);
+	}
+
+	private void track(final Entry entry, final DirtyVolatileLongArray access)
+	{
+		entry.reference = new AccessReference(access, entry, released);
+		holdStrongly(entry.key, access);
+	}
+
+	private void holdStrongly(final long key, final DirtyVolatileLongArray access)
+	{
+		synchronized (recentlyUsed)
+		{
+			recentlyUsed.put(key, access);
+		}
+	}
+
+	private void compact(final AccessReference reference)
+	{
+		final Entry entry = reference.entry;
+		final List<Runnable> deferredSpills = new ArrayList<>();
+		DEFERRED_SPILLS.set(deferredSpills);
+		try
+		{
+			synchronized (entry)
+			{
+				// cell was handed out again since
+				if (entry.reference != reference || entry.data == null)
+					return;
+
+				// the dirty flag of the released access is gone, compare contents instead
+				final long[] data = entry.data;
+				entry.reference = null;
+				entry.data = null;
+				if (entry.encoded != null && entry.encoded.matches(data))
+					return;
+
+				discardCompact(entry);
+				if (RunLengthEncodedCell.isConstant(data, defaultValue))
+				{
+					entries.remove(entry.key, entry);
+					return;
+				}
+				final RunLengthEncodedCell encoded = RunLengthEncodedCell.encode(data);
+				entry.encoded = encoded;
+				// account under entry lock, so that the budget never holds a stale or discarded copy of this entry
+				budget.put(this, entry.key, encoded, encoded.sizeInBytes(), (key, value) -> spillOrDefer(entry, (RunLengthEncodedCell) value));
+			}
+		} finally
+		{
+			DEFERRED_SPILLS.remove();
+		}
+		// outside of entry lock: spilling locks the evicted entries
+		deferredSpills.forEach(Runnable::run);
+	}
+
+	private void spillOrDefer(final Entry entry, final RunLengthEncodedCell encoded)
+	{
+		final List<Runnable> deferredSpills = DEFERRED_SPILLS.get();
+		if (deferredSpills == null)
+			spill(entry, encoded);
+		else
+			deferredSpills.add(() -> spill(entry, encoded));
+	}
+
+	private void spill(final Entry entry, final RunLengthEncodedCell encoded)
+	{
+		synchronized (entry)
+		{
+			// replaced or invalidated in the meantime
+			if (entry.encoded != encoded)
+				return;
+			try
+			{
+				final Path path = spillDirectory().resolve(Long.toString(entry.key));
+				try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))))
+				{
+					encoded.write(out);
+				}
+				entry.encoded = null;
+				entry.spilled = true;
+				synchronized (this)
+				{
+					++numSpills;
+				}
+				LOG.trace("Spilled cell {} to {}", entry.key, path);
+			} catch (final IOException | UncheckedIOException e)
+			{
+				// keep cell in memory instead of losing edits
+				LOG.warn("Unable to spill canvas cell {} to disk, keeping it in memory: {}", entry.key, e.getMessage());
+			}
+		}
+	}
+
+	private RunLengthEncodedCell readSpilled(final Entry entry)
+	{
+		final Path path = spillDirectory().resolve(Long.toString(entry.key));
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+		{
+			synchronized (this)
+			{
+				++numSpillReads;
+			}
+			return RunLengthEncodedCell.read(in);
+		} catch (final IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Remove compacted copy of {@code entry} from memory budget and disk. Must hold lock of {@code entry}.
+	 */
+	private void discardCompact(final Entry entry)
+	{
+		if (entry.encoded != null)
+			budget.remove(this, entry.key);
+		if (entry.spilled)
+		{
+			try
+			{
+				Files.deleteIfExists(spillDirectory().resolve(Long.toString(entry.key)));
+			} catch (final IOException e)
+			{
+				LOG.debug("Unable to delete spilled cell {}: {}", entry.key, e.getMessage());
+			}
+		}
+		entry.encoded = null;
+		entry.spilled = false;
+	}
+
+	private void discard(final Entry entry)
+	{
+		synchronized (entry)
+		{
+			discardCompact(entry);
+			entry.data = null;
+			entry.reference = null;
+		}
+		synchronized (recentlyUsed)
+		{
+			recentlyUsed.remove(entry.key);
+		}
+	}
+
+	private synchronized Path spillDirectory()
+	{
+		if (spillDirectory == null)
+		{
+			spillDirectory = spillDirectorySupplier.get();
+			try
+			{
+				Files.createDirectories(spillDirectory);
+			} catch (final IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			DiskCellCache.addDeleteHook(spillDirectory);
+			LOG.debug("Spilling canvas cells into {}", spillDirectory);
+		}
+		return spillDirectory;
+	}
+
+	private static final class Entry
+	{
+
+		private final long key;
+
+		/**
+		 * Data access that was handed out last, if any.
+		 */
+		private AccessReference reference = null;
+
+		/**
+		 * Dense contents, while the data access of this entry is referenced.
+		 */
+		private long[] data = null;
+
+		/**
+		 * Compact contents in memory. Together with {@link #spilled} up to date unless {@link #data} was modified.
+		 */
+		private RunLengthEncodedCell encoded = null;
+
+		/**
+		 * Compact contents on disk.
+		 */
+		private boolean spilled = false;
+
+		private Entry(final long key)
+		{
+			this.key = key;
+		}
+
+	}
+
+	private static final class AccessReference extends WeakReference<DirtyVolatileLongArray>
+	{
+
+		private final Entry entry;
+
+		private AccessReference(
+				final DirtyVolatileLongArray access,
+				final Entry entry,
+				final ReferenceQueue<DirtyVolatileLongArray> queue)
+		{
+			super(access, queue);
+			this.entry = entry;
+		}
+
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.janelia.saalfeldlab.paintera.data.n5;
 
+import com.pivovarit.function.ThrowingFunction;
 import com.pivovarit.function.ThrowingSupplier;
 import gnu.trove.iterator.TLongIterator;
 import gnu.trove.iterator.TLongObjectIterator;
@@ -15,6 +16,7 @@ import net.imglib2.converter.Converters;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.cell.CellGrid;
+import net.imglib2.iterator.IntervalIterator;
 import net.imglib2.realtransform.Scale3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.label.Label;
@@ -25,6 +27,7 @@ import net.imglib2.type.label.LabelUtils;
 import net.imglib2.type.label.VolatileLabelMultisetArray;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
@@ -44,6 +47,7 @@ import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.math.ArrayMath;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
@@ -56,6 +60,10 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 public class CommitCanvasN5 implements PersistCanvas
@@ -63,6 +71,8 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	public static final int DEFAULT_NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
 	private final N5Writer n5;
 
 	private final String dataset;
@@ -73,10 +83,26 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	private final boolean isLabelMultiset;
 
+	private final ExecutorService executor;
+
 	public CommitCanvasN5(final N5Writer n5, final String dataset) throws IOException {
+		this(n5, dataset, null);
+	}
+
+	/**
+	 *
+	 * @param n5 container
+	 * @param dataset dataset or group of the label data
+	 * @param executor write and downsample blocks in parallel on this executor. If {@code null}, a thread pool with
+	 *                 {@link #DEFAULT_NUM_THREADS} threads is created for each call to {@link #persistCanvas} and
+	 *                 shut down when it returns.
+	 * @throws IOException if attributes of {@code dataset} cannot be read
+	 */
+	public CommitCanvasN5(final N5Writer n5, final String dataset, final ExecutorService executor) throws IOException {
 		super();
 		this.n5 = n5;
 		this.dataset = dataset;
+		this.executor = executor;
 		this.isPainteraDataset = N5Helpers.isPainteraDataset(this.n5, this.dataset);
 		final String volumetricDataGroup = this.isPainteraDataset ? this.dataset + "/data" : this.dataset;
 		this.isMultiscale = N5Helpers.isMultiScale(this.n5, volumetricDataGroup);
@@ -208,6 +234,9 @@ public class CommitCanvasN5 implements PersistCanvas
 	public List<TLongObjectMap<BlockDiff>> persistCanvas(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks) throws UnableToPersistCanvas {
 		LOG.info("Committing canvas: {} blocks", blocks.length);
 		LOG.debug("Affected blocks in grid {}: {}", canvas.getCellGrid(), blocks);
+		final ExecutorService es = this.executor == null
+				? Executors.newFixedThreadPool(DEFAULT_NUM_THREADS, new NamedThreadFactory("commit-canvas-%d", true))
+				: this.executor;
 		try
 		{
 			final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
@@ -221,18 +250,16 @@ public class CommitCanvasN5 implements PersistCanvas
 
 			checkGridsCompatibleOrFail(canvasGrid, highestResolutionDataset.grid);
 
-			final BlockSpec highestResolutionBlockSpec = new BlockSpec(highestResolutionDataset.grid);
-
 			LOG.debug("Persisting canvas with grid={} into background with grid={}", canvasGrid, highestResolutionDataset.grid);
 
-			final List<TLongObjectMap<BlockDiff>> blockDiffs = new ArrayList<>();
-			final TLongObjectHashMap<BlockDiff> blockDiffsAtHighestLevel = new TLongObjectHashMap<>();
-			blockDiffs.add(blockDiffsAtHighestLevel);
+			// Blocks are written and downsampled as tasks on the executor. A block at level N + 1 is scheduled to run
+			// as soon as all affected blocks at level N that it reads from have been written.
+			final List<TLongObjectMap<CompletableFuture<BlockDiff>>> tasks = new ArrayList<>();
 
 			if (this.isLabelMultiset)
-				writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
+				tasks.add(writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, es));
 			else {
-				writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
+				tasks.add(writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, es));
 			}
 
 			if (isMultiscale)
@@ -242,8 +269,6 @@ public class CommitCanvasN5 implements PersistCanvas
 				for (int level = 1; level < scaleDatasets.length; ++level)
 				{
 
-					final TLongObjectHashMap<BlockDiff> blockDiffsAt = new TLongObjectHashMap<>();
-					blockDiffs.add(blockDiffsAt);
 					final DatasetSpec targetDataset = DatasetSpec.of(n5, Paths.get(dataset, scaleDatasets[level]).toString());
 					final DatasetSpec previousDataset = DatasetSpec.of(n5, Paths.get(dataset, scaleDatasets[level - 1]).toString());
 
@@ -266,35 +291,37 @@ public class CommitCanvasN5 implements PersistCanvas
 
 					LOG.debug("level={}: Got {} blocks", level, affectedBlocks.length);
 
-					final BlockSpec blockSpec = new BlockSpec(targetDataset.grid);
+					final TLongObjectMap<CompletableFuture<BlockDiff>> previousLevelTasks = tasks.get(level - 1);
 
 					if (this.isLabelMultiset)
-						downsampleAndWriteBlocksLabelMultisetType(
+						tasks.add(downsampleAndWriteBlocksLabelMultisetType(
 								affectedBlocks,
 								n5,
 								previousDataset,
 								targetDataset,
-								blockSpec,
 								targetToPrevious,
 								relativeFactors,
 								targetMaxNumEntries,
 								level,
-								blockDiffsAt);
+								previousLevelTasks,
+								es));
 					else
-						downsampleAndWriteBlocksIntegerType(
+						tasks.add(downsampleAndWriteBlocksIntegerType(
 								affectedBlocks,
 								n5,
 								previousDataset,
 								targetDataset,
-								blockSpec,
 								targetToPrevious,
 								relativeFactors,
 								level,
-								blockDiffsAt);
+								previousLevelTasks,
+								es));
 
 				}
 
 			}
+
+			final List<TLongObjectMap<BlockDiff>> blockDiffs = collectBlockDiffs(tasks);
 			LOG.info("Finished commiting canvas");
 			return blockDiffs;
 
@@ -303,6 +330,82 @@ public class CommitCanvasN5 implements PersistCanvas
 			LOG.error("Unable to commit canvas.", e);
 			throw new UnableToPersistCanvas("Unable to commit canvas.", e);
 		}
+		finally
+		{
+			if (this.executor == null)
+				es.shutdown();
+		}
+	}
+
+	/**
+	 * Wait for all tasks to finish (including those that depend on failed tasks) before collecting the {@link BlockDiff}s
+	 * so that no writes are pending when this method returns.
+	 */
+	private static List<TLongObjectMap<BlockDiff>> collectBlockDiffs(
+			final List<TLongObjectMap<CompletableFuture<BlockDiff>>> tasks) throws IOException, PainteraException
+	{
+		final CompletableFuture<?>[] allTasks = tasks
+				.stream()
+				.flatMap(t -> t.valueCollection().stream())
+				.toArray(CompletableFuture[]::new);
+		try {
+			CompletableFuture.allOf(allTasks).join();
+		} catch (final CompletionException e) {
+			// exception of first failed task is re-thrown below
+		}
+
+		final List<TLongObjectMap<BlockDiff>> blockDiffs = new ArrayList<>();
+		for (final TLongObjectMap<CompletableFuture<BlockDiff>> tasksAtLevel : tasks)
+		{
+			final TLongObjectHashMap<BlockDiff> blockDiffsAtLevel = new TLongObjectHashMap<>();
+			for (final TLongObjectIterator<CompletableFuture<BlockDiff>> it = tasksAtLevel.iterator(); it.hasNext();)
+			{
+				it.advance();
+				try {
+					blockDiffsAtLevel.put(it.key(), it.value().join());
+				} catch (final CompletionException e) {
+					throw unwrapTaskException(e);
+				}
+			}
+			blockDiffs.add(blockDiffsAtLevel);
+		}
+		return blockDiffs;
+	}
+
+	private static PainteraException unwrapTaskException(final Throwable t) throws IOException
+	{
+		for (Throwable cause = t; cause != null; cause = cause.getCause())
+		{
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof PainteraException)
+				return (PainteraException) cause;
+		}
+		throw new RuntimeException(t.getCause() == null ? t : t.getCause());
+	}
+
+	private static CompletableFuture<Void> dependenciesOf(
+			final TLongObjectMap<CompletableFuture<BlockDiff>> previousLevelTasks,
+			final CellGrid previousGrid,
+			final long[] previousRelevantIntervalMin,
+			final long[] previousRelevantIntervalMax)
+	{
+		final long[] gridDimensions = previousGrid.getGridDimensions();
+		final long[] gridMin = new long[previousRelevantIntervalMin.length];
+		final long[] gridMax = new long[previousRelevantIntervalMax.length];
+		previousGrid.getCellPosition(previousRelevantIntervalMin, gridMin);
+		previousGrid.getCellPosition(previousRelevantIntervalMax, gridMax);
+		final List<CompletableFuture<BlockDiff>> dependencies = new ArrayList<>();
+		final long[] position = new long[gridMin.length];
+		for (final IntervalIterator it = new IntervalIterator(new FinalInterval(gridMin, gridMax)); it.hasNext();)
+		{
+			it.fwd();
+			it.localize(position);
+			final CompletableFuture<BlockDiff> dependency = previousLevelTasks.get(IntervalIndexer.positionToIndex(position, gridDimensions));
+			if (dependency != null)
+				dependencies.add(dependency);
+		}
+		return CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]));
 	}
 
 	private static long[] readContainedLabels(
@@ -609,54 +712,78 @@ public class CommitCanvasN5 implements PersistCanvas
 	}
 
 	// TODO: switch to N5LabelMultisets for writing label multiset data
-	private static void writeBlocksLabelMultisetType(
+	private static TLongObjectMap<CompletableFuture<BlockDiff>> writeBlocksLabelMultisetType(
 			final RandomAccessibleInterval<UnsignedLongType> canvas,
 			final long[] blocks,
 			final DatasetSpec datasetSpec,
-			final BlockSpec blockSpec,
-			final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+			final ExecutorService es) throws IOException {
 		final RandomAccessibleInterval<LabelMultisetType> highestResolutionData = N5LabelMultisets.openLabelMultiset(datasetSpec.container, datasetSpec.dataset);
+		final TLongObjectMap<CompletableFuture<BlockDiff>> tasks = new TLongObjectHashMap<>();
 		for (final long blockId : blocks) {
-			blockSpec.fromLinearIndex(blockId);
-			final IntervalView<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
-			final int numElements = (int) Intervals.numElements(backgroundWithCanvas);
-			final byte[] byteData = LabelUtils.serializeLabelMultisetTypes(new BackgroundCanvasIterable(Views.flatIterable(backgroundWithCanvas)), numElements);
-			final ByteArrayDataBlock dataBlock = new ByteArrayDataBlock(Intervals.dimensionsAsIntArray(backgroundWithCanvas), blockSpec.pos, byteData);
-			datasetSpec.container.writeBlock(datasetSpec.dataset, datasetSpec.attributes, dataBlock);
-			blockDiff.put(blockId, createBlockDiffFromCanvas(backgroundWithCanvas));
+			tasks.put(blockId, CompletableFuture.supplyAsync(
+					ThrowingSupplier.unchecked(() -> writeBlockLabelMultisetType(canvas, highestResolutionData, blockId, datasetSpec)),
+					es));
 		}
+		return tasks;
+	}
+
+	private static BlockDiff writeBlockLabelMultisetType(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final RandomAccessibleInterval<LabelMultisetType> highestResolutionData,
+			final long blockId,
+			final DatasetSpec datasetSpec) throws IOException {
+		final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+		blockSpec.fromLinearIndex(blockId);
+		final IntervalView<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
+		final int numElements = (int) Intervals.numElements(backgroundWithCanvas);
+		final byte[] byteData = LabelUtils.serializeLabelMultisetTypes(new BackgroundCanvasIterable(Views.flatIterable(backgroundWithCanvas)), numElements);
+		final ByteArrayDataBlock dataBlock = new ByteArrayDataBlock(Intervals.dimensionsAsIntArray(backgroundWithCanvas), blockSpec.pos, byteData);
+		datasetSpec.container.writeBlock(datasetSpec.dataset, datasetSpec.attributes, dataBlock);
+		return createBlockDiffFromCanvas(backgroundWithCanvas);
 	}
 
 	// TODO the integer type implementation does not need to iterate over all pixels per block but could intersect with bounding box first
-	private static <I extends IntegerType<I> & NativeType<I>> void writeBlocksLabelIntegerType(
+	private static <I extends IntegerType<I> & NativeType<I>> TLongObjectMap<CompletableFuture<BlockDiff>> writeBlocksLabelIntegerType(
 			final RandomAccessibleInterval<UnsignedLongType> canvas,
 			final long[] blocks,
 			final DatasetSpec datasetSpec,
-			final BlockSpec blockSpec,
-			final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+			final ExecutorService es) throws IOException {
 		final RandomAccessibleInterval<I> highestResolutionData = N5Utils.open(datasetSpec.container, datasetSpec.dataset);
-		final I i = Util.getTypeFromInterval(highestResolutionData).createVariable();
+		final TLongObjectMap<CompletableFuture<BlockDiff>> tasks = new TLongObjectHashMap<>();
 		for (final long blockId : blocks) {
-			blockSpec.fromLinearIndex(blockId);
-			final RandomAccessibleInterval<Pair<I, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
-			final RandomAccessibleInterval<I> mergedData = Converters.convert(backgroundWithCanvas, (s, t) -> pickFirstIfSecondIsInvalid(s.getA(), s.getB(), t), i.createVariable());
-			N5Utils.saveBlock(mergedData, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
-			blockDiff.put(blockId, createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas)));
+			tasks.put(blockId, CompletableFuture.supplyAsync(
+					ThrowingSupplier.unchecked(() -> writeBlockLabelIntegerType(canvas, highestResolutionData, blockId, datasetSpec)),
+					es));
 		}
+		return tasks;
+	}
+
+	private static <I extends IntegerType<I> & NativeType<I>> BlockDiff writeBlockLabelIntegerType(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final RandomAccessibleInterval<I> highestResolutionData,
+			final long blockId,
+			final DatasetSpec datasetSpec) throws IOException {
+		final I i = Util.getTypeFromInterval(highestResolutionData).createVariable();
+		final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+		blockSpec.fromLinearIndex(blockId);
+		final RandomAccessibleInterval<Pair<I, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
+		final RandomAccessibleInterval<I> mergedData = Converters.convert(backgroundWithCanvas, (s, t) -> pickFirstIfSecondIsInvalid(s.getA(), s.getB(), t), i.createVariable());
+		N5Utils.saveBlock(mergedData, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
+		return createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas));
 	}
 
 	// TODO: switch to N5LabelMultisets for writing label multiset data
-	private static void downsampleAndWriteBlocksLabelMultisetType(
+	private static TLongObjectMap<CompletableFuture<BlockDiff>> downsampleAndWriteBlocksLabelMultisetType(
 			final long[] affectedBlocks,
 			final N5Writer n5,
 			final DatasetSpec previousDataset,
 			final DatasetSpec targetDataset,
-			final BlockSpec blockSpec,
 			final Scale3D targetToPrevious,
 			final int[] relativeFactors,
 			final int targetMaxNumEntries,
 			final int level,
-			final TLongObjectHashMap<BlockDiff> blockDiffsAt
+			final TLongObjectMap<CompletableFuture<BlockDiff>> previousLevelTasks,
+			final ExecutorService es
 			) throws IOException {
 
 		// In older converted data the "isLabelMultiset" attribute may not be present in s1,s2,... datasets.
@@ -665,9 +792,11 @@ public class CommitCanvasN5 implements PersistCanvas
 		n5.setAttribute(targetDataset.dataset, N5Helpers.IS_LABEL_MULTISET_KEY, true);
 
 		final RandomAccessibleInterval<LabelMultisetType>  previousData = N5LabelMultisets.openLabelMultiset(n5, previousDataset.dataset);
+		final TLongObjectMap<CompletableFuture<BlockDiff>> tasks = new TLongObjectHashMap<>();
 
 		for (final long targetBlock : affectedBlocks)
 		{
+			final BlockSpec blockSpec = new BlockSpec(targetDataset.grid);
 			blockSpec.fromLinearIndex(targetBlock);
 			final double[] blockMinDouble = ArrayMath.asDoubleArray3(blockSpec.min);
 			final double[] blockMaxDouble = ArrayMath.asDoubleArray3(ArrayMath.add3(blockSpec.max, 1));
@@ -683,53 +812,53 @@ public class CommitCanvasN5 implements PersistCanvas
 			final long[] previousRelevantIntervalMin = blockMin.clone();
 			final long[] previousRelevantIntervalMax = ArrayMath.add3(blockMax, -1);
 
-			ArrayMath.divide3(blockMin, previousDataset.blockSize, blockMin);
-			ArrayMath.divide3(blockMax, previousDataset.blockSize, blockMax);
-			ArrayMath.add3(blockMax, -1, blockMax);
-			ArrayMath.minOf3(blockMax, blockMin, blockMax);
-
-			LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
-			final DataBlock<?> block = n5.readBlock(targetDataset.dataset, targetDataset.attributes, blockSpec.pos);
-			final VolatileLabelMultisetArray oldAccess = block != null && block.getData() instanceof byte[]
-					? LabelUtils.fromBytes(
-						(byte[]) block.getData(),
-						(int) Intervals.numElements(size))
-					: null;
-
-			final VolatileLabelMultisetArray newAccess = downsampleVolatileLabelMultisetArrayAndSerialize(
-					n5,
-					targetDataset.dataset,
-					targetDataset.attributes,
-					Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
-					relativeFactors,
-					targetMaxNumEntries,
-					size,
-					blockSpec.pos);
-			final int numElements = (int) Intervals.numElements(size);
-			blockDiffsAt.put(
-					targetBlock,
-					oldAccess == null
-							? createBlockDiffOldDoesNotExist(newAccess, numElements)
-							: createBlockDiff(oldAccess, newAccess, numElements));
+			final CompletableFuture<BlockDiff> task = dependenciesOf(previousLevelTasks, previousDataset.grid, previousRelevantIntervalMin, previousRelevantIntervalMax)
+					.thenApplyAsync(ThrowingFunction.unchecked(ignored -> {
+						LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
+						final DataBlock<?> block = n5.readBlock(targetDataset.dataset, targetDataset.attributes, blockSpec.pos);
+						final VolatileLabelMultisetArray oldAccess = block != null && block.getData() instanceof byte[]
+								? LabelUtils.fromBytes(
+									(byte[]) block.getData(),
+									(int) Intervals.numElements(size))
+								: null;
+
+						final VolatileLabelMultisetArray newAccess = downsampleVolatileLabelMultisetArrayAndSerialize(
+								n5,
+								targetDataset.dataset,
+								targetDataset.attributes,
+								Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
+								relativeFactors,
+								targetMaxNumEntries,
+								size,
+								blockSpec.pos);
+						final int numElements = (int) Intervals.numElements(size);
+						return oldAccess == null
+								? createBlockDiffOldDoesNotExist(newAccess, numElements)
+								: createBlockDiff(oldAccess, newAccess, numElements);
+					}), es);
+			tasks.put(targetBlock, task);
 		}
+		return tasks;
 	}
 
-	private static <I extends IntegerType<I> & NativeType<I>> void downsampleAndWriteBlocksIntegerType(
+	private static <I extends IntegerType<I> & NativeType<I>> TLongObjectMap<CompletableFuture<BlockDiff>> downsampleAndWriteBlocksIntegerType(
 			final long[] affectedBlocks,
 			final N5Writer n5,
 			final DatasetSpec previousDataset,
 			final DatasetSpec targetDataset,
-			final BlockSpec blockSpec,
 			final Scale3D targetToPrevious,
 			final int[] relativeFactors,
 			final int level,
-			final TLongObjectHashMap<BlockDiff> blockDiffsAt
+			final TLongObjectMap<CompletableFuture<BlockDiff>> previousLevelTasks,
+			final ExecutorService es
 	) throws IOException {
 
 		final RandomAccessibleInterval<I> previousData = N5Utils.open(n5, previousDataset.dataset);
+		final TLongObjectMap<CompletableFuture<BlockDiff>> tasks = new TLongObjectHashMap<>();
 
 		for (final long targetBlock : affectedBlocks)
 		{
+			final BlockSpec blockSpec = new BlockSpec(targetDataset.grid);
 			blockSpec.fromLinearIndex(targetBlock);
 			final double[] blockMinDouble = ArrayMath.asDoubleArray3(blockSpec.min);
 			final double[] blockMaxDouble = ArrayMath.asDoubleArray3(ArrayMath.add3(blockSpec.max, 1));
@@ -746,24 +875,22 @@ public class CommitCanvasN5 implements PersistCanvas
 			final long[] previousRelevantIntervalMin = blockMin.clone();
 			final long[] previousRelevantIntervalMax = ArrayMath.add3(blockMax, -1);
 
-			ArrayMath.divide3(blockMin, previousDataset.blockSize, blockMin);
-			ArrayMath.divide3(blockMax, previousDataset.blockSize, blockMax);
-			ArrayMath.add3(blockMax, -1, blockMax);
-			ArrayMath.minOf3(blockMax, blockMin, blockMax);
-
-			LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
-
-			final BlockDiff blockDiff = downsampleIntegerTypeAndSerialize(
-					n5,
-					targetDataset.dataset,
-					targetDataset.attributes,
-					Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
-					relativeFactors,
-					size,
-					targetInterval,
-					blockSpec.pos);
-			blockDiffsAt.put(targetBlock, blockDiff);
+			final CompletableFuture<BlockDiff> task = dependenciesOf(previousLevelTasks, previousDataset.grid, previousRelevantIntervalMin, previousRelevantIntervalMax)
+					.thenApplyAsync(ThrowingFunction.unchecked(ignored -> {
+						LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
+						return downsampleIntegerTypeAndSerialize(
+								n5,
+								targetDataset.dataset,
+								targetDataset.attributes,
+								Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
+								relativeFactors,
+								size,
+								targetInterval,
+								blockSpec.pos);
+					}), es);
+			tasks.put(targetBlock, task);
 		}
+		return tasks;
 	}
 
 	private static <I extends IntegerType<I>, C extends IntegerType<C>> void pickFirstIfSecondIsInvalid(final I s1, final C s2, final I t) {
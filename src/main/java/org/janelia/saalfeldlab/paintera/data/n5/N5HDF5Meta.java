@@ -55,6 +55,11 @@ public class N5HDF5Meta implements N5Meta
 		return new N5HDF5Writer(file);
 	}
 
+	public String file()
+	{
+		return file;
+	}
+
 	@Override
 	public String dataset()
 	{
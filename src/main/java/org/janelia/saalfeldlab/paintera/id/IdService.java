@@ -36,6 +36,15 @@ public interface IdService
 	 */
 	public boolean isInvalidated(final long id);
 
+	/**
+	 * Called when Paintera shuts down, e.g. to persist state or release reserved IDs. The service may still be used
+	 * afterwards.
+	 */
+	public default void onShutdown()
+	{
+
+	}
+
 	/**
 	 * Greater than comparison for two uint64 passed as long.
 	 *
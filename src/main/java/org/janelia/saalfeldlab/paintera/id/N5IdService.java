@@ -1,25 +1,76 @@
 package org.janelia.saalfeldlab.paintera.id;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.LongStream;
 
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Hands out ids and stores the maximum id in the {@code "maxId"} attribute of an N5 dataset.
+ *
+ * To avoid an attribute write per id, the service leases ranges of {@link #getLeaseSize()} ids: The end of the range
+ * is written to the {@code "maxId"} attribute before the first id of the range is handed out, and ids within the range
+ * are handed out from memory. After a restart, the service starts after the last leased range and no id from a
+ * leased range is ever handed out twice. Unused ids of the current lease are released in {@link #onShutdown()}.
+ */
 public class N5IdService implements IdService
 {
 
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final long DEFAULT_LEASE_SIZE = 100;
+
 	private final N5Writer n5;
 
 	private final String dataset;
 
-	private long next;
+	private final long leaseSize;
+
+	/**
+	 * Last id that was handed out.
+	 */
+	private final AtomicLong next;
+
+	/**
+	 * Value of the {@code "maxId"} attribute. All ids handed out are less than or equal to this value.
+	 */
+	private volatile long leasedUntil;
+
+	/**
+	 * Ids are handed out under the read lock and the lease is released under the write lock: Otherwise, an id that
+	 * passed the lease check could be handed out after {@link #onShutdown()} released its lease.
+	 */
+	private final ReadWriteLock leaseLock = new ReentrantReadWriteLock();
 
 	public N5IdService(final N5Writer n5, final String dataset, final long next)
+	{
+		this(n5, dataset, next, DEFAULT_LEASE_SIZE);
+	}
+
+	/**
+	 *
+	 * @param n5 container
+	 * @param dataset store {@code "maxId"} attribute in this dataset
+	 * @param next current {@code "maxId"}
+	 * @param leaseSize number of ids reserved per attribute write. Use {@code 1} to write the attribute for every id.
+	 */
+	public N5IdService(final N5Writer n5, final String dataset, final long next, final long leaseSize)
 	{
 		super();
+		if (leaseSize < 1)
+			throw new IllegalArgumentException("Lease size must be at least 1 but got " + leaseSize);
 		this.n5 = n5;
 		this.dataset = dataset;
-		this.next = next;
+		this.next = new AtomicLong(next);
+		this.leasedUntil = next;
+		this.leaseSize = leaseSize;
 	}
 
 	public N5Writer getWriter() {
@@ -30,39 +81,104 @@ public class N5IdService implements IdService
 		return dataset;
 	}
 
+	public long getLeaseSize() {
+		return leaseSize;
+	}
+
 	@Override
-	public synchronized void invalidate(final long id)
+	public void invalidate(final long id)
 	{
-		final long oldNext = next;
-		next = IdService.max(next, id + 1);
-		if (next != oldNext)
+		final Lock lock = leaseLock.readLock();
+		lock.lock();
+		try
 		{
-			serializeMaxId();
+			final long next = this.next.updateAndGet(n -> IdService.max(n, id + 1));
+			ensureLeased(next);
+		} finally
+		{
+			lock.unlock();
 		}
 	}
 
 	@Override
-	public synchronized long next()
+	public long next()
 	{
-		++next;
-		serializeMaxId();
-		return next;
+		final Lock lock = leaseLock.readLock();
+		lock.lock();
+		try
+		{
+			final long next = this.next.incrementAndGet();
+			ensureLeased(next);
+			return next;
+		} finally
+		{
+			lock.unlock();
+		}
 	}
 
 	@Override
-	public synchronized long[] next(final int n)
+	public long[] next(final int n)
 	{
-		final long[] ids = LongStream.range(next, next + n).toArray();
-		next += n;
-		serializeMaxId();
-		return ids;
+		final Lock lock = leaseLock.readLock();
+		lock.lock();
+		try
+		{
+			final long last = this.next.addAndGet(n);
+			ensureLeased(last);
+			return LongStream.rangeClosed(last - n + 1, last).toArray();
+		} finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write the last id that was handed out to the {@code "maxId"} attribute, releasing unused ids of the current
+	 * lease. The service remains usable and leases a new range when needed.
+	 */
+	@Override
+	public void onShutdown()
+	{
+		final Lock lock = leaseLock.writeLock();
+		lock.lock();
+		try
+		{
+			final long next = this.next.get();
+			if (next != leasedUntil)
+			{
+				LOG.debug("Releasing ids ({}, {}] in {}", next, leasedUntil, dataset);
+				serializeMaxId(next);
+				leasedUntil = next;
+			}
+		} finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Make sure that {@code id} is within a persisted lease before it is handed out. Caller must hold the read lock.
+	 */
+	private void ensureLeased(final long id)
+	{
+		if (!IdService.greaterThan(id, leasedUntil))
+			return;
+		synchronized (this)
+		{
+			if (!IdService.greaterThan(id, leasedUntil))
+				return;
+			final long newLeasedUntil = IdService.max(id, leasedUntil + leaseSize);
+			LOG.trace("Leasing ids ({}, {}] in {}", leasedUntil, newLeasedUntil, dataset);
+			serializeMaxId(newLeasedUntil);
+			leasedUntil = newLeasedUntil;
+		}
 	}
 
-	private void serializeMaxId()
+	private void serializeMaxId(final long maxId)
 	{
 		try
 		{
-			n5.setAttribute(dataset, "maxId", next);
+			n5.setAttribute(dataset, "maxId", maxId);
 		} catch (final IOException e)
 		{
 			throw new RuntimeException(e);
@@ -72,7 +188,7 @@ public class N5IdService implements IdService
 	@Override
 	public boolean isInvalidated(final long id)
 	{
-		return id < next;
+		return id < next.get();
 	}
 
 }
@@ -1,9 +1,6 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
-import java.util.Arrays;
-import java.util.HashMap;
-
-import org.janelia.saalfeldlab.util.HashWrapper;
+import net.imglib2.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,83 +17,174 @@ public class AverageNormals
 	 */
 	private static final Logger LOG = LoggerFactory.getLogger(AverageNormals.class);
 
+	/**
+	 * Average the normals of all corners of unconnected triangles that share the same position.
+	 *
+	 * @param triangles {@code x, y, z} for each of the three corners of each triangle
+	 * @param normals {@code x, y, z} for each corner, same length as {@code triangles}. Will be overwritten.
+	 */
 	public static void averagedNormals(final float[] triangles, final float[] normals)
 	{
 
 		LOG.debug("Averaging normals for {} triangles and {} normals", triangles.length, normals.length);
 
-		final HashMap<HashWrapper<float[]>, double[]> averages = new HashMap<>();
-
 		assert triangles.length % 9 == 0;
 		assert triangles.length == normals.length;
 
-		final double[] normal = new double[4];
-		normal[3] = 1.0;
-		final double[][] n = new double[3][3];
-		for (int triangle = 0; triangle < triangles.length; triangle += 9)
+		final Pair<float[], int[]> indexed = Convert.toIndexed(triangles);
+		final int[]                indices = indexed.getB();
+		final double[]             sums    = new double[indexed.getA().length];
+		final int[]                counts  = new int[indexed.getA().length / 3];
+		for (int corner = 0; corner < indices.length; ++corner)
 		{
-			final float v11 = triangles[triangle + 0], v12 = triangles[triangle + 1], v13 = triangles[triangle + 2];
-			final float v21 = triangles[triangle + 3], v22 = triangles[triangle + 4], v23 = triangles[triangle + 5];
-			final float v31 = triangles[triangle + 6], v32 = triangles[triangle + 7], v33 = triangles[triangle + 8];
+			final int i = 3 * indices[corner];
+			final int n = 3 * corner;
+			sums[i + 0] += normals[n + 0];
+			sums[i + 1] += normals[n + 1];
+			sums[i + 2] += normals[n + 2];
+			++counts[indices[corner]];
+		}
 
-			n[0][0] = normals[triangle + 0];
-			n[0][1] = normals[triangle + 1];
-			n[0][2] = normals[triangle + 2];
+		for (int corner = 0; corner < indices.length; ++corner)
+		{
+			final int    i     = 3 * indices[corner];
+			final int    n     = 3 * corner;
+			final double count = counts[indices[corner]];
+			normals[n + 0] = (float) (sums[i + 0] / count);
+			normals[n + 1] = (float) (sums[i + 1] / count);
+			normals[n + 2] = (float) (sums[i + 2] / count);
+		}
+	}
 
-			n[1][0] = normals[triangle + 3];
-			n[1][1] = normals[triangle + 4];
-			n[1][2] = normals[triangle + 5];
+	/**
+	 * Calculate smooth vertex normals of an indexed triangle mesh: The normal of each vertex is the average of the
+	 * (normalized) normals of all triangles that share this vertex.
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param indices three vertex indices per triangle
+	 * @param normals {@code x, y, z} for each vertex, same length as {@code vertices}. Will be overwritten.
+	 */
+	public static void averagedNormals(final float[] vertices, final int[] indices, final float[] normals)
+	{
 
-			n[2][0] = normals[triangle + 6];
-			n[2][1] = normals[triangle + 7];
-			n[2][2] = normals[triangle + 8];
+		LOG.debug("Averaging normals for {} indexed triangles and {} normals", indices.length / 3, normals.length / 3);
 
-			final float[][] keys = new float[][] {
-					{v11, v12, v13},
-					{v21, v22, v23},
-					{v31, v32, v33}
-			};
+		assert indices.length % 3 == 0;
+		assert vertices.length == normals.length;
 
-			for (int i = 0; i < keys.length; ++i)
-			{
-				final HashWrapper<float[]> wrappedKey = new HashWrapper<>(keys[i], Arrays::hashCode, Arrays::equals);
-				if (averages.containsKey(wrappedKey))
-				{
-					final double[] nn = averages.get(wrappedKey);
-					nn[0] += n[i][0];
-					nn[1] += n[i][1];
-					nn[2] += n[i][2];
-					nn[3] += 1.0;
-				}
-				else
-					averages.put(wrappedKey, new double[] {
-							n[i][0],
-							n[i][1],
-							n[i][2], 1.0});
-			}
+		final double[] sums   = new double[normals.length];
+		final int[]    counts = new int[normals.length / 3];
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			final int i1 = indices[triangle + 0] * 3;
+			final int i2 = indices[triangle + 1] * 3;
+			final int i3 = indices[triangle + 2] * 3;
+
+			final double diff11 = vertices[i2 + 0] - vertices[i1 + 0];
+			final double diff12 = vertices[i2 + 1] - vertices[i1 + 1];
+			final double diff13 = vertices[i2 + 2] - vertices[i1 + 2];
+
+			final double diff21 = vertices[i3 + 0] - vertices[i1 + 0];
+			final double diff22 = vertices[i3 + 1] - vertices[i1 + 1];
+			final double diff23 = vertices[i3 + 2] - vertices[i1 + 2];
+
+			double       n1   = diff12 * diff23 - diff13 * diff22;
+			double       n2   = diff13 * diff21 - diff11 * diff23;
+			double       n3   = diff11 * diff22 - diff12 * diff21;
+			final double norm = Math.sqrt(n1 * n1 + n2 * n2 + n3 * n3);
+			n1 /= norm;
+			n2 /= norm;
+			n3 /= norm;
+
+			addNormal(sums, counts, i1, n1, n2, n3);
+			addNormal(sums, counts, i2, n1, n2, n3);
+			addNormal(sums, counts, i3, n1, n2, n3);
 		}
 
-		for (final double[] nn : averages.values())
+		for (int vertex = 0, i = 0; vertex < counts.length; ++vertex, i += 3)
 		{
-			final double sum = nn[3];
-			nn[0] /= sum;
-			nn[1] /= sum;
-			nn[2] /= sum;
+			final int count = counts[vertex];
+			normals[i + 0] = count == 0 ? 0.0f : (float) (sums[i + 0] / count);
+			normals[i + 1] = count == 0 ? 0.0f : (float) (sums[i + 1] / count);
+			normals[i + 2] = count == 0 ? 0.0f : (float) (sums[i + 2] / count);
 		}
+	}
 
-		for (int vertex = 0; vertex < triangles.length; vertex += 3)
-		{
-			final HashWrapper<float[]> key = new HashWrapper<>(
-					new float[] {triangles[vertex + 0], triangles[vertex + 1], triangles[vertex + 2]},
-					Arrays::hashCode,
-					Arrays::equals
-			);
+	/**
+	 * Calculate smooth vertex normals of an indexed triangle mesh with precomputed {@link MeshTopology}: The normal
+	 * of each vertex is the average of the (normalized) normals of all triangles that share this vertex.
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param indices three vertex indices per triangle
+	 * @param topology topology of the mesh
+	 * @param normals {@code x, y, z} for each vertex, same length as {@code vertices}. Will be overwritten.
+	 */
+	public static void averagedNormals(
+			final float[] vertices,
+			final int[] indices,
+			final MeshTopology topology,
+			final float[] normals)
+	{
 
-			final double[] nn = averages.get(key);
+		LOG.debug("Averaging normals for {} indexed triangles and {} normals", indices.length / 3, normals.length / 3);
+
+		assert vertices.length == normals.length;
+		assert topology.numVertices() == vertices.length / 3;
+
+		final float[] triangleNormals = new float[indices.length];
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			final int i1 = indices[triangle + 0] * 3;
+			final int i2 = indices[triangle + 1] * 3;
+			final int i3 = indices[triangle + 2] * 3;
+
+			final double diff11 = vertices[i2 + 0] - vertices[i1 + 0];
+			final double diff12 = vertices[i2 + 1] - vertices[i1 + 1];
+			final double diff13 = vertices[i2 + 2] - vertices[i1 + 2];
+
+			final double diff21 = vertices[i3 + 0] - vertices[i1 + 0];
+			final double diff22 = vertices[i3 + 1] - vertices[i1 + 1];
+			final double diff23 = vertices[i3 + 2] - vertices[i1 + 2];
+
+			final double n1   = diff12 * diff23 - diff13 * diff22;
+			final double n2   = diff13 * diff21 - diff11 * diff23;
+			final double n3   = diff11 * diff22 - diff12 * diff21;
+			final double norm = Math.sqrt(n1 * n1 + n2 * n2 + n3 * n3);
+			triangleNormals[triangle + 0] = (float) (n1 / norm);
+			triangleNormals[triangle + 1] = (float) (n2 / norm);
+			triangleNormals[triangle + 2] = (float) (n3 / norm);
+		}
 
-			normals[vertex + 0] = (float) nn[0];
-			normals[vertex + 1] = (float) nn[1];
-			normals[vertex + 2] = (float) nn[2];
+		for (int vertex = 0, i = 0; vertex < topology.numVertices(); ++vertex, i += 3)
+		{
+			final int start = topology.trianglesStart(vertex);
+			final int stop  = topology.trianglesStop(vertex);
+			double    n1    = 0.0, n2 = 0.0, n3 = 0.0;
+			for (int k = start; k < stop; ++k)
+			{
+				final int t = 3 * topology.triangle(k);
+				n1 += triangleNormals[t + 0];
+				n2 += triangleNormals[t + 1];
+				n3 += triangleNormals[t + 2];
+			}
+			final int count = stop - start;
+			normals[i + 0] = count == 0 ? 0.0f : (float) (n1 / count);
+			normals[i + 1] = count == 0 ? 0.0f : (float) (n2 / count);
+			normals[i + 2] = count == 0 ? 0.0f : (float) (n3 / count);
 		}
 	}
+
+	private static void addNormal(
+			final double[] sums,
+			final int[] counts,
+			final int i,
+			final double n1,
+			final double n2,
+			final double n3)
+	{
+		sums[i + 0] += n1;
+		sums[i + 1] += n2;
+		sums[i + 2] += n3;
+		++counts[i / 3];
+	}
 }
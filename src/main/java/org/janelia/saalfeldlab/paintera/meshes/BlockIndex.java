@@ -0,0 +1,90 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import net.imglib2.RealInterval;
+
+/**
+ * Index of blocks in world coordinates for overlap and containment queries. Blocks are sorted by their minimum in the
+ * first dimension so that a query only visits blocks whose minimum is within the largest block extent of the query.
+ */
+class BlockIndex
+{
+
+	private final RealInterval[] blocks;
+
+	private final int[] indices;
+
+	private final double[] min;
+
+	private final double maxExtent;
+
+	/**
+	 * @param blocks queries report indices into this list
+	 */
+	BlockIndex(final List<? extends RealInterval> blocks)
+	{
+		this.indices = IntStream
+				.range(0, blocks.size())
+				.boxed()
+				.sorted(Comparator.comparingDouble(i -> blocks.get(i).realMin(0)))
+				.mapToInt(Integer::intValue)
+				.toArray();
+		this.blocks = new RealInterval[indices.length];
+		this.min = new double[indices.length];
+		double maxExtent = 0.0;
+		for (int i = 0; i < indices.length; ++i)
+		{
+			this.blocks[i] = blocks.get(indices[i]);
+			this.min[i] = this.blocks[i].realMin(0);
+			maxExtent = Math.max(maxExtent, this.blocks[i].realMax(0) - this.min[i]);
+		}
+		this.maxExtent = maxExtent;
+	}
+
+	/**
+	 * Call {@code action} with the index of each block that overlaps with {@code query}, see
+	 * {@link LevelOfDetail#overlap(RealInterval, RealInterval)}.
+	 */
+	void forEachOverlapping(final RealInterval query, final IntConsumer action)
+	{
+		for (int i = firstWithMinAtLeast(query.realMin(0) - maxExtent); i < blocks.length && min[i] < query.realMax(0); ++i)
+		{
+			if (LevelOfDetail.overlap(query, blocks[i]))
+				action.accept(indices[i]);
+		}
+	}
+
+	/**
+	 * @return smallest index of all blocks that contain {@code position}, {@code -1} if no block contains it.
+	 */
+	int firstContaining(final double[] position)
+	{
+		int first = -1;
+		for (int i = firstWithMinAtLeast(position[0] - maxExtent); i < blocks.length && min[i] <= position[0]; ++i)
+		{
+			if (LevelOfDetail.contains(blocks[i], position) && (first < 0 || indices[i] < first))
+				first = indices[i];
+		}
+		return first;
+	}
+
+	private int firstWithMinAtLeast(final double value)
+	{
+		int lower = 0;
+		int upper = min.length;
+		while (lower < upper)
+		{
+			final int mid = (lower + upper) >>> 1;
+			if (min[mid] < value)
+				lower = mid + 1;
+			else
+				upper = mid;
+		}
+		return lower;
+	}
+
+}
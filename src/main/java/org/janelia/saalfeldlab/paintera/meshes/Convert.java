@@ -1,13 +1,16 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import gnu.trove.list.array.TFloatArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 import javafx.geometry.Point3D;
+import net.imglib2.util.Pair;
 import net.imglib2.util.Triple;
+import net.imglib2.util.ValuePair;
 import net.imglib2.util.ValueTriple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -152,4 +155,85 @@ public class Convert
 		}
 		return vertexEdgeLUT;
 	}
+
+	/**
+	 * Merge corners of unconnected triangles at identical positions into shared vertices. Uses an open addressing
+	 * hash table over the coordinates instead of boxed keys.
+	 *
+	 * @param triangles {@code x, y, z} for each of the three corners of each triangle
+	 *
+	 * @return ([vertices], [indices]) with three vertex indices per triangle
+	 */
+	public static Pair<float[], int[]> toIndexed(final float[] triangles)
+	{
+		assert triangles.length % 9 == 0;
+
+		final int numCorners = triangles.length / 3;
+		final int capacity = Integer.highestOneBit(Math.max(2 * numCorners - 1, 1)) << 1;
+		final int mask = capacity - 1;
+		final int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+
+		final float[] vertices = new float[triangles.length];
+		final int[] indices = new int[numCorners];
+		int numVertices = 0;
+		for (int corner = 0, c = 0; corner < numCorners; ++corner, c += 3)
+		{
+			// add 0.0f to identify -0.0f and 0.0f, like Point3D.equals did before
+			final float x = triangles[c] + 0.0f;
+			final float y = triangles[c + 1] + 0.0f;
+			final float z = triangles[c + 2] + 0.0f;
+			int slot = hash(x, y, z) & mask;
+			while (true)
+			{
+				final int vertex = table[slot];
+				if (vertex < 0)
+				{
+					table[slot] = numVertices;
+					vertices[3 * numVertices] = x;
+					vertices[3 * numVertices + 1] = y;
+					vertices[3 * numVertices + 2] = z;
+					indices[corner] = numVertices++;
+					break;
+				}
+				final int v = 3 * vertex;
+				if (vertices[v] == x && vertices[v + 1] == y && vertices[v + 2] == z)
+				{
+					indices[corner] = vertex;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+		return new ValuePair<>(Arrays.copyOf(vertices, 3 * numVertices), indices);
+	}
+
+	/**
+	 * Inverse of {@link #toIndexed(float[])}.
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param indices three vertex indices per triangle
+	 *
+	 * @return {@code x, y, z} for each of the three corners of each triangle
+	 */
+	public static float[] toTriangles(final float[] vertices, final int[] indices)
+	{
+		final float[] triangles = new float[indices.length * 3];
+		for (int corner = 0, t = 0; corner < indices.length; ++corner)
+		{
+			final int v = indices[corner] * 3;
+			triangles[t++] = vertices[v];
+			triangles[t++] = vertices[v + 1];
+			triangles[t++] = vertices[v + 2];
+		}
+		return triangles;
+	}
+
+	static int hash(final float x, final float y, final float z)
+	{
+		int h = Float.floatToIntBits(x);
+		h = 31 * h + Float.floatToIntBits(y);
+		h = 31 * h + Float.floatToIntBits(z);
+		return h ^ (h >>> 16);
+	}
 }
@@ -0,0 +1,203 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.Interval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.LinAlgHelpers;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+
+/**
+ * View-dependent selection of scale levels for block-wise meshes. Starting at the coarsest level, a block is replaced
+ * with the blocks of the next finer level that it contains for as long as its projected size, i.e. the ratio of
+ * block diagonal and distance to the camera, exceeds {@link #threshold()}.
+ */
+public class LevelOfDetail
+{
+
+	public static final double DEFAULT_THRESHOLD = 0.25;
+
+	private final AffineTransform3D worldToCamera;
+
+	private final double threshold;
+
+	/**
+	 * @param worldToCamera transform from world coordinates into camera coordinates, i.e. the camera is at the origin.
+	 * @param threshold refine blocks with projected size larger than {@code threshold}
+	 */
+	public LevelOfDetail(final AffineTransform3D worldToCamera, final double threshold)
+	{
+		this.worldToCamera = worldToCamera.copy();
+		this.threshold = threshold;
+	}
+
+	public double threshold()
+	{
+		return this.threshold;
+	}
+
+	/**
+	 * @param block in world coordinates
+	 * @return distance of the center of {@code block} to the camera
+	 */
+	public double distanceToCamera(final RealInterval block)
+	{
+		final double[] center = center(block);
+		worldToCamera.apply(center, center);
+		return LinAlgHelpers.length(center);
+	}
+
+	/**
+	 * @param block in world coordinates
+	 * @return ratio of block diagonal and distance to camera, {@link Double#POSITIVE_INFINITY} if the camera is inside
+	 * {@code block}.
+	 */
+	public double projectedSize(final RealInterval block)
+	{
+		final double[] min = new double[3];
+		final double[] max = new double[3];
+		block.realMin(min);
+		block.realMax(max);
+		worldToCamera.apply(min, min);
+		worldToCamera.apply(max, max);
+		final double diagonal = LinAlgHelpers.distance(min, max);
+		final double distance = distanceToCamera(block);
+		return distance > 0.5 * diagonal ? diagonal / distance : Double.POSITIVE_INFINITY;
+	}
+
+	public boolean needsRefinement(final RealInterval block)
+	{
+		return projectedSize(block) > threshold;
+	}
+
+	/**
+	 * Select blocks between {@code finestLevel} and {@code coarsestLevel}. Blocks that need refinement but do not
+	 * contain any blocks of the next finer level are kept to avoid holes.
+	 *
+	 * @param blocksAtLevel blocks in source coordinates of each level. Only queried for levels that are needed.
+	 * @param sourceToWorld transforms from source coordinates into world coordinates for each level.
+	 * @param finestLevel finest level that may be selected
+	 * @param coarsestLevel starting level for refinement
+	 * @return level and block for each selected block, closest blocks (and finer levels for equal distance) first
+	 */
+	public List<Pair<Integer, Interval>> selectBlocks(
+			final IntFunction<Interval[]> blocksAtLevel,
+			final AffineTransform3D[] sourceToWorld,
+			final int finestLevel,
+			final int coarsestLevel)
+	{
+		final List<Pair<Integer, Interval>> selected = new ArrayList<>();
+		List<Interval> candidates = Arrays.asList(blocksAtLevel.apply(coarsestLevel));
+		for (int level = coarsestLevel; level >= finestLevel && !candidates.isEmpty(); --level)
+		{
+			final List<Interval> toBeRefined = new ArrayList<>();
+			final List<RealInterval> toBeRefinedInWorld = new ArrayList<>();
+			for (final Interval block : candidates)
+			{
+				final RealInterval blockInWorld = worldBounds(block, sourceToWorld[level]);
+				if (level > finestLevel && needsRefinement(blockInWorld))
+				{
+					toBeRefined.add(block);
+					toBeRefinedInWorld.add(blockInWorld);
+				}
+				else
+					selected.add(new ValuePair<>(level, block));
+			}
+
+			if (toBeRefined.isEmpty())
+				break;
+
+			final boolean[] isRefined = new boolean[toBeRefined.size()];
+			final BlockIndex toBeRefinedIndex = new BlockIndex(toBeRefinedInWorld);
+			final List<Interval> children = new ArrayList<>();
+			final double[] center = new double[3];
+			for (final Interval child : blocksAtLevel.apply(level - 1))
+			{
+				sourceToWorld[level - 1].apply(center(child), center);
+				final int parent = toBeRefinedIndex.firstContaining(center);
+				if (parent >= 0)
+				{
+					children.add(child);
+					isRefined[parent] = true;
+				}
+			}
+
+			for (int i = 0; i < isRefined.length; ++i)
+				if (!isRefined[i])
+					selected.add(new ValuePair<>(level, toBeRefined.get(i)));
+
+			candidates = children;
+		}
+
+		final double[] distances = selected
+				.stream()
+				.mapToDouble(p -> distanceToCamera(worldBounds(p.getB(), sourceToWorld[p.getA()])))
+				.toArray();
+		return IntStream
+				.range(0, selected.size())
+				.boxed()
+				.sorted(Comparator.<Integer>comparingDouble(i -> distances[i]).thenComparingInt(i -> selected.get(i).getA()))
+				.map(selected::get)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @param block in source coordinates, voxel centers at integer coordinates.
+	 * @param sourceToWorld transform from source coordinates into world coordinates
+	 * @return bounding box of {@code block} in world coordinates
+	 */
+	public static RealInterval worldBounds(final Interval block, final AffineTransform3D sourceToWorld)
+	{
+		final double[] min = new double[block.numDimensions()];
+		final double[] max = new double[block.numDimensions()];
+		for (int d = 0; d < min.length; ++d)
+		{
+			min[d] = block.min(d) - 0.5;
+			max[d] = block.max(d) + 0.5;
+		}
+		return sourceToWorld.estimateBounds(new FinalRealInterval(min, max));
+	}
+
+	/**
+	 * @return {@code true} if {@code block1} and {@code block2} share a volume, {@code false} if they are disjoint
+	 * or only touch.
+	 */
+	public static boolean overlap(final RealInterval block1, final RealInterval block2)
+	{
+		final double eps = 1e-6;
+		for (int d = 0; d < block1.numDimensions(); ++d)
+		{
+			if (block1.realMin(d) >= block2.realMax(d) - eps || block2.realMin(d) >= block1.realMax(d) - eps)
+				return false;
+		}
+		return true;
+	}
+
+	static boolean contains(final RealInterval block, final double[] position)
+	{
+		for (int d = 0; d < position.length; ++d)
+		{
+			if (position[d] < block.realMin(d) || position[d] > block.realMax(d))
+				return false;
+		}
+		return true;
+	}
+
+	private static double[] center(final RealInterval block)
+	{
+		final double[] center = new double[block.numDimensions()];
+		for (int d = 0; d < center.length; ++d)
+			center[d] = 0.5 * (block.realMin(d) + block.realMax(d));
+		return center;
+	}
+
+}
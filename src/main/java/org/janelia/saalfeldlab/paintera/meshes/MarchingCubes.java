@@ -3,7 +3,10 @@ package org.janelia.saalfeldlab.paintera.meshes;
 import java.util.Arrays;
 import java.util.function.BooleanSupplier;
 
+import gnu.trove.impl.Constants;
 import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
@@ -12,6 +15,8 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.Translation;
 import net.imglib2.type.BooleanType;
 import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
 import net.imglib2.view.SubsampleIntervalView;
 import net.imglib2.view.Views;
 import org.slf4j.Logger;
@@ -29,6 +34,13 @@ public class MarchingCubes<B extends BooleanType<B>>
 {
 	private static final int INVALID = -1;
 
+	/**
+	 * Number of bits per dimension in the edge keys used for vertex de-duplication.
+	 */
+	private static final int EDGE_KEY_BITS = 21;
+
+	private static final long EDGE_KEY_MAX = 1L << EDGE_KEY_BITS;
+
 	/**
 	 * For any edge, if one vertex is inside of the surface and the other is outside of the surface then the edge
 	 * intersects the surface. For each of the 8 vertices of the cube can be two possible states: either inside or
@@ -440,16 +452,28 @@ public class MarchingCubes<B extends BooleanType<B>>
 	}
 
 	/**
-	 * Creates the mesh using the information directly from the RAI structure
+	 * @param cubeSize size of the cube
+	 *
+	 * @return number of voxels by which {@link #generateMesh()} reads beyond each side of the interval
+	 */
+	public static long[] margin(final int[] cubeSize)
+	{
+		return Arrays.stream(cubeSize).mapToLong(s -> s + 1).toArray();
+	}
+
+	/**
+	 * Creates the mesh using the information directly from the RAI structure. Vertices are shared between adjacent
+	 * triangles: Each intersected edge of the (subsampled) grid contributes a single vertex that is referenced by all
+	 * triangles that touch it.
 	 *
-	 * @return
+	 * @return vertices ({@code x, y, z} for each vertex) and triangles (three vertex indices per triangle)
 	 */
-	public float[] generateMesh()
+	public Pair<float[], int[]> generateMesh()
 	{
 		final long[]                   stride           = Arrays.stream(cubeSize).mapToLong(i -> i).toArray();
 		final FinalInterval            expandedInterval = Intervals.expand(
 				interval,
-				Arrays.stream(stride).map(s -> s + 1).toArray()
+				margin(cubeSize)
 		                                                                  );
 		final SubsampleIntervalView<B> subsampled       = Views.subsample(
 				Views.interval(input, expandedInterval),
@@ -530,10 +554,17 @@ public class MarchingCubes<B extends BooleanType<B>>
 		final Translation              translation      = new Translation(Arrays.stream(Intervals.minAsLongArray(
 				expandedInterval)).mapToDouble(l -> l).toArray());
 
-		final TFloatArrayList vertices = new TFloatArrayList();
-		final double[]        p        = new double[3];
+		final TFloatArrayList vertices     = new TFloatArrayList();
+		final TIntArrayList   indices      = new TIntArrayList();
+		final TLongIntHashMap edgeToVertex = new TLongIntHashMap(
+				Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR,
+				-1,
+				-1);
+		final double[]        p            = new double[3];
 
-		final float[][] interpolationPoints = new float[12][3];
+		final int[]  interpolationIndices = new int[12];
+		final long[] edgeSum              = new long[3];
 
 		while (cursor0.hasNext() && !wasInterrupted.getAsBoolean())
 		{
@@ -582,7 +613,10 @@ public class MarchingCubes<B extends BooleanType<B>>
 					cursor0.getLongPosition(1),
 					cursor0.getLongPosition(2),
 					vertices,
-					interpolationPoints
+					indices,
+					edgeToVertex,
+					interpolationIndices,
+					edgeSum
 			             );
 
 		}
@@ -601,7 +635,7 @@ public class MarchingCubes<B extends BooleanType<B>>
 			vertexArray[i + 2] = (float) p[2];
 		}
 
-		return vertexArray;
+		return new ValuePair<>(vertexArray, indices.toArray());
 	}
 
 	/**
@@ -624,7 +658,10 @@ public class MarchingCubes<B extends BooleanType<B>>
 			final long cursorY,
 			final long cursorZ,
 			final TFloatArrayList vertices,
-			final float[][] interpolationPoints)
+			final TIntArrayList indices,
+			final TLongIntHashMap edgeToVertex,
+			final int[] interpolationIndices,
+			final long[] edgeSum)
 	{
 		// @formatter:off
 		// this algorithm (based on http://paulbourke.net/geometry/polygonise/)
@@ -662,68 +699,59 @@ public class MarchingCubes<B extends BooleanType<B>>
 		final int McEdge = MC_EDGE_TABLE[tableIndex];
 		if (McEdge != 0)
 		{
-			if ((McEdge & 1) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 0, interpolationPoints[0]);
-
-			if ((McEdge & 2) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 1, interpolationPoints[1]);
-
-			if ((McEdge & 4) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 2, interpolationPoints[2]);
-
-			if ((McEdge & 8) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 3, interpolationPoints[3]);
-
-			if ((McEdge & 16) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 4, interpolationPoints[4]);
-
-			if ((McEdge & 32) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 5, interpolationPoints[5]);
-
-			if ((McEdge & 64) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 6, interpolationPoints[6]);
-
-			if ((McEdge & 128) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 7, interpolationPoints[7]);
-
-			if ((McEdge & 256) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 8, interpolationPoints[8]);
-
-			if ((McEdge & 512) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 9, interpolationPoints[9]);
-
-			if ((McEdge & 1024) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 10, interpolationPoints[10]);
-
-			if ((McEdge & 2048) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 11, interpolationPoints[11]);
+			for (int edge = 0; edge < 12; ++edge)
+			{
+				if ((McEdge & (1 << edge)) != 0)
+					interpolationIndices[edge] = vertexIndex(cursorX, cursorY, cursorZ, edge, vertices, edgeToVertex, edgeSum);
+			}
 
 			final int[] McTri = MC_TRI_TABLE[tableIndex];
 
 			for (int i = 0; McTri[i] != INVALID; i += 3)
 			{
-				final float[] v1 = interpolationPoints[McTri[i]];
-				final float[] v2 = interpolationPoints[McTri[i + 1]];
-				final float[] v3 = interpolationPoints[McTri[i + 2]];
-
-				vertices.add(v1[0]);
-				vertices.add(v1[1]);
-				vertices.add(v1[2]);
-
-				vertices.add(v2[0]);
-				vertices.add(v2[1]);
-				vertices.add(v2[2]);
-
-				vertices.add(v3[0]);
-				vertices.add(v3[1]);
-				vertices.add(v3[2]);
+				indices.add(interpolationIndices[McTri[i]]);
+				indices.add(interpolationIndices[McTri[i + 1]]);
+				indices.add(interpolationIndices[McTri[i + 2]]);
 			}
 		}
 	}
 
 	/**
-	 * Given the position on the volume and the intersected edge, calculates the intersection point. The intersection
-	 * point is going to be in the middle of the intersected edge. In this method also the offset is applied.
+	 * Look up the index of the vertex on {@code intersectedEdge}, or add a new vertex if this is the first cube that
+	 * touches this edge. Each edge of the grid is identified by the sum of its two end points, which is unique.
+	 *
+	 * @return index of the vertex on {@code intersectedEdge}
+	 */
+	private int vertexIndex(
+			final long cursorX,
+			final long cursorY,
+			final long cursorZ,
+			final int intersectedEdge,
+			final TFloatArrayList vertices,
+			final TLongIntHashMap edgeToVertex,
+			final long[] edgeSum)
+	{
+		calculateIntersection(cursorX, cursorY, cursorZ, intersectedEdge, edgeSum);
+		assert edgeSum[0] >= 0 && edgeSum[0] < EDGE_KEY_MAX;
+		assert edgeSum[1] >= 0 && edgeSum[1] < EDGE_KEY_MAX;
+		assert edgeSum[2] >= 0 && edgeSum[2] < EDGE_KEY_MAX;
+		final long key = edgeSum[0] << 2 * EDGE_KEY_BITS | edgeSum[1] << EDGE_KEY_BITS | edgeSum[2];
+		final int existing = edgeToVertex.get(key);
+		if (existing >= 0)
+			return existing;
+
+		final int index = vertices.size() / 3;
+		vertices.add((float) (0.5 * cubeSize[0] * edgeSum[0]));
+		vertices.add((float) (0.5 * cubeSize[1] * edgeSum[1]));
+		vertices.add((float) (0.5 * cubeSize[2] * edgeSum[2]));
+		edgeToVertex.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Given the position on the volume and the intersected edge, calculates the sum of the two end points of the
+	 * intersected edge. The intersection point is going to be in the middle of the intersected edge, i.e. half of
+	 * that sum.
 	 *
 	 * @param cursorX
 	 * 		position on x
@@ -733,10 +761,10 @@ public class MarchingCubes<B extends BooleanType<B>>
 	 * 		position on z
 	 * @param intersectedEdge
 	 * 		intersected edge
-	 *
-	 * @return intersected point in world coordinates
+	 * @param edgeSum
+	 * 		sum of the end points of the intersected edge in (subsampled) grid coordinates
 	 */
-	private void calculateIntersection(final long cursorX, final long cursorY, final long cursorZ, final int intersectedEdge, final float[] intersection)
+	private void calculateIntersection(final long cursorX, final long cursorY, final long cursorZ, final int intersectedEdge, final long[] edgeSum)
 	{
 		LOGGER.trace("cursor position: " + cursorX + " " + cursorY + " " + cursorZ);
 		long v1x = cursorX, v1y = cursorY, v1z = cursorZ;
@@ -865,8 +893,8 @@ public class MarchingCubes<B extends BooleanType<B>>
 				break;
 		}
 
-		intersection[0] = (float) (0.5 * cubeSize[0] * (v1x + v2x));
-		intersection[1] = (float) (0.5 * cubeSize[1] * (v1y + v2y));
-		intersection[2] = (float) (0.5 * cubeSize[2] * (v1z + v2z));
+		edgeSum[0] = v1x + v2x;
+		edgeSum[1] = v1y + v2y;
+		edgeSum[2] = v1z + v2z;
 	}
 }
@@ -0,0 +1,296 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merge block meshes into a small number of {@link MeshView}s: Each {@link MeshView} is a node in the scene graph
+ * and JavaFX does not scale well with the number of nodes. Blocks are assigned to batches of at most
+ * {@code maxVerticesPerBatch} vertices (first fit). When a block is added or removed, only the {@link TriangleMesh}
+ * of its batch is rebuilt on the next call to {@link #prepareUpdate()}, no matter how many of its blocks changed.
+ *
+ * {@link #add}, {@link #remove}, and {@link #prepareUpdate()} may be called from any thread. Merging meshes is
+ * expensive and should not happen on the JavaFX application thread. {@link #apply(List)} only swaps the merged meshes
+ * into the {@link MeshView}s and must be called on the JavaFX application thread if any of the {@link MeshView}s are
+ * part of a live scene graph. Updates that are applied out of order are ignored if a more recent update of the same
+ * batch was applied already.
+ *
+ * @param <K> block key
+ */
+public class MeshBatches<K>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_MAX_VERTICES_PER_BATCH = 1 << 18;
+
+	private class Batch
+	{
+		private final Map<K, PainteraTriangleMesh> meshes = new LinkedHashMap<>();
+
+		private int numVertices = 0;
+
+		// incremented with each change, guarded by MeshBatches.this
+		private long generation = 0;
+
+		// only accessed when applying updates
+		private long appliedGeneration = -1;
+
+		private MeshView view = null;
+	}
+
+	/**
+	 * Merged mesh of a batch, {@code null} if the batch is empty and its view should be removed.
+	 */
+	public class Update
+	{
+		private final Batch batch;
+
+		private final long generation;
+
+		private final TriangleMesh mesh;
+
+		private Update(final Batch batch, final long generation, final TriangleMesh mesh)
+		{
+			this.batch = batch;
+			this.generation = generation;
+			this.mesh = mesh;
+		}
+	}
+
+	private final int maxVerticesPerBatch;
+
+	private final Supplier<MeshView> createView;
+
+	private final Consumer<MeshView> onViewAdded;
+
+	private final Consumer<MeshView> onViewRemoved;
+
+	private final List<Batch> batches = new ArrayList<>();
+
+	private final Map<K, Batch> batchForKey = new HashMap<>();
+
+	private final Set<Batch> dirty = new LinkedHashSet<>();
+
+	/**
+	 * @param maxVerticesPerBatch soft limit for number of vertices in each batch. Blocks that exceed this limit are
+	 *                            put into a batch of their own.
+	 * @param createView create {@link MeshView} for a new batch, e.g. with appropriate material
+	 * @param onViewAdded called on {@link #apply(List)} when a batch is created
+	 * @param onViewRemoved called on {@link #apply(List)} when a batch becomes empty
+	 */
+	public MeshBatches(
+			final int maxVerticesPerBatch,
+			final Supplier<MeshView> createView,
+			final Consumer<MeshView> onViewAdded,
+			final Consumer<MeshView> onViewRemoved)
+	{
+		this.maxVerticesPerBatch = maxVerticesPerBatch;
+		this.createView = createView;
+		this.onViewAdded = onViewAdded;
+		this.onViewRemoved = onViewRemoved;
+	}
+
+	/**
+	 * Add (or replace) mesh for {@code key}.
+	 */
+	public synchronized void add(final K key, final PainteraTriangleMesh mesh)
+	{
+		remove(key);
+		final int numVertices = mesh.getNumVertices();
+		Batch batch = null;
+		for (final Batch candidate : batches)
+		{
+			if (candidate.numVertices + numVertices <= maxVerticesPerBatch)
+			{
+				batch = candidate;
+				break;
+			}
+		}
+		if (batch == null)
+		{
+			batch = new Batch();
+			batches.add(batch);
+		}
+		batch.meshes.put(key, mesh);
+		batch.numVertices += numVertices;
+		batchForKey.put(key, batch);
+		markDirty(batch);
+	}
+
+	public synchronized void remove(final K key)
+	{
+		final Batch batch = batchForKey.remove(key);
+		if (batch == null)
+			return;
+		batch.numVertices -= batch.meshes.remove(key).getNumVertices();
+		markDirty(batch);
+	}
+
+	public synchronized void clear()
+	{
+		batchForKey.clear();
+		for (final Batch batch : batches)
+		{
+			batch.meshes.clear();
+			batch.numVertices = 0;
+			markDirty(batch);
+		}
+	}
+
+	private void markDirty(final Batch batch)
+	{
+		++batch.generation;
+		dirty.add(batch);
+	}
+
+	/**
+	 * Rebuild {@link TriangleMesh} of all batches that changed since the last call and apply them immediately.
+	 *
+	 * @return {@code true} if any batch was rebuilt
+	 */
+	public boolean update()
+	{
+		final List<Update> updates = prepareUpdate();
+		apply(updates);
+		return !updates.isEmpty();
+	}
+
+	/**
+	 * Merge meshes of all batches that changed since the last call. Only the list of meshes of each batch is copied
+	 * while holding the lock, merging happens outside of it.
+	 *
+	 * @return updates to be passed to {@link #apply(List)}
+	 */
+	public List<Update> prepareUpdate()
+	{
+		final List<Batch> changed = new ArrayList<>();
+		final List<Long> generations = new ArrayList<>();
+		final List<List<PainteraTriangleMesh>> meshes = new ArrayList<>();
+		synchronized (this)
+		{
+			if (dirty.isEmpty())
+				return new ArrayList<>();
+			LOG.debug("Rebuilding {} of {} batches", dirty.size(), batches.size());
+			for (final Batch batch : dirty)
+			{
+				// empty batches do not receive any new meshes
+				if (batch.meshes.isEmpty())
+					batches.remove(batch);
+				changed.add(batch);
+				generations.add(batch.generation);
+				meshes.add(new ArrayList<>(batch.meshes.values()));
+			}
+			dirty.clear();
+		}
+
+		final List<Update> updates = new ArrayList<>();
+		for (int i = 0; i < changed.size(); ++i)
+			updates.add(new Update(
+					changed.get(i),
+					generations.get(i),
+					meshes.get(i).isEmpty() ? null : merge(meshes.get(i))));
+		return updates;
+	}
+
+	/**
+	 * Set merged meshes of {@code updates} on their {@link MeshView}s, and add or remove views of batches that were
+	 * created or became empty.
+	 */
+	public void apply(final List<Update> updates)
+	{
+		for (final Update update : updates)
+		{
+			final Batch batch = update.batch;
+			if (update.generation <= batch.appliedGeneration)
+				continue;
+			batch.appliedGeneration = update.generation;
+			if (update.mesh == null)
+			{
+				if (batch.view != null)
+				{
+					onViewRemoved.accept(batch.view);
+					batch.view = null;
+				}
+			}
+			else if (batch.view == null)
+			{
+				batch.view = createView.get();
+				batch.view.setMesh(update.mesh);
+				onViewAdded.accept(batch.view);
+			}
+			else
+				batch.view.setMesh(update.mesh);
+		}
+	}
+
+	public synchronized List<MeshView> views()
+	{
+		final List<MeshView> views = new ArrayList<>();
+		for (final Batch batch : batches)
+			if (batch.view != null)
+				views.add(batch.view);
+		return views;
+	}
+
+	public synchronized int numBatches()
+	{
+		return batches.size();
+	}
+
+	/**
+	 * Merge {@code meshes} into a single {@link TriangleMesh} with shared vertices and normals.
+	 */
+	public static TriangleMesh merge(final Iterable<PainteraTriangleMesh> meshes)
+	{
+		int numVertices = 0;
+		int numIndices = 0;
+		for (final PainteraTriangleMesh mesh : meshes)
+		{
+			numVertices += mesh.getNumVertices();
+			numIndices += mesh.getIndices().length;
+		}
+
+		final float[] vertices = new float[3 * numVertices];
+		final float[] normals = new float[3 * numVertices];
+		// vertices and normals share the same index
+		final int[] faces = new int[3 * numIndices];
+		int vertexOffset = 0;
+		int faceOffset = 0;
+		for (final PainteraTriangleMesh mesh : meshes)
+		{
+			System.arraycopy(mesh.getVertices(), 0, vertices, 3 * vertexOffset, mesh.getVertices().length);
+			System.arraycopy(mesh.getNormals(), 0, normals, 3 * vertexOffset, mesh.getNormals().length);
+			for (final int index : mesh.getIndices())
+			{
+				faces[faceOffset++] = index + vertexOffset;
+				faces[faceOffset++] = index + vertexOffset;
+				faces[faceOffset++] = 0;
+			}
+			vertexOffset += mesh.getNumVertices();
+		}
+
+		final TriangleMesh mesh = new TriangleMesh();
+		mesh.setVertexFormat(VertexFormat.POINT_NORMAL_TEXCOORD);
+		mesh.getPoints().setAll(vertices);
+		mesh.getNormals().setAll(normals);
+		mesh.getTexCoords().setAll(0, 0);
+		mesh.getFaces().setAll(faces);
+		return mesh;
+	}
+
+}
@@ -1,106 +1,254 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
 import net.imglib2.Interval;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
 import org.janelia.saalfeldlab.util.HashWrapper;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Export the meshes of one or more segments, one output per segment. Block meshes are generated in parallel and
+ * appended in a deterministic order to a single {@link SegmentWriter} per segment. Vertices that are shared across
+ * block borders are written only once, with the normal of the first block that contains them.
+ */
 public abstract class MeshExporter<T>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	protected int numberOfFaces = 0;
+	/**
+	 * Receives the merged mesh of a single segment block by block. Each vertex is written before the first triangle
+	 * that references it.
+	 */
+	protected interface SegmentWriter extends Closeable
+	{
+		/**
+		 * @param vertices {@code x, y, z} for each new vertex. The first new vertex has the index of the number of
+		 *                 vertices written before.
+		 * @param normals {@code x, y, z} for each new vertex
+		 */
+		void writeVertices(float[] vertices, float[] normals) throws IOException;
+
+		/**
+		 * @param indices three vertex indices per triangle, relative to all vertices written for this segment
+		 */
+		void writeTriangles(int[] indices) throws IOException;
+	}
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	public void setNumThreads(final int numThreads)
+	{
+		this.numThreads = Math.max(numThreads, 1);
+	}
 
 	public void exportMesh(
 			final Function<T, Interval[]>[][] blockListCaches,
-			final Function<ShapeKey<T>, Pair<float[], float[]>>[][] meshCaches,
+			final Function<ShapeKey<T>, PainteraTriangleMesh>[][] meshCaches,
 			final T[] ids,
 			final int scale,
 			final String[] paths)
 	{
 		assert ids.length == paths.length;
+		final List<Segment<T>> segments = new ArrayList<>();
 		for (int i = 0; i < ids.length; i++)
-		{
-			numberOfFaces = 0;
-			exportMesh(blockListCaches[i], meshCaches[i], ids[i], scale, paths[i]);
-		}
+			segments.add(new Segment<>(blockListCaches[i][scale], meshCaches[i][scale], ids[i], paths[i]));
+		export(segments, scale);
 	}
 
 	public void exportMesh(
 			final Function<T, Interval[]>[] blockListCache,
-			final Function<ShapeKey<T>, Pair<float[], float[]>>[] meshCache,
+			final Function<ShapeKey<T>, PainteraTriangleMesh>[] meshCache,
 			final T id,
 			final int scaleIndex,
 			final String path)
 	{
-		// all blocks from id
-		final Set<HashWrapper<Interval>> blockSet = new HashSet<>();
+		export(Collections.singletonList(new Segment<>(blockListCache[scaleIndex], meshCache[scaleIndex], id, path)), scaleIndex);
+	}
+
+	/**
+	 * @param path output path without extension
+	 * @param id segment id
+	 */
+	protected abstract SegmentWriter createWriter(String path, String id) throws IOException;
+
+	private void export(final List<Segment<T>> segments, final int scaleIndex)
+	{
+		final Iterator<Pair<Segment<T>, ShapeKey<T>>> blocks = segments
+				.stream()
+				.flatMap(segment -> keys(segment, scaleIndex).stream().<Pair<Segment<T>, ShapeKey<T>>>map(key -> new ValuePair<>(segment, key)))
+				.iterator();
+
+		// bound the number of meshes that are held in memory but not written yet
+		final int maxInFlight = 2 * numThreads;
+		final Deque<Pair<Segment<T>, Future<PainteraTriangleMesh>>> inFlight = new ArrayDeque<>();
+		final ExecutorService es = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("paintera-mesh-export-%d", true));
+
+		Segment<T> segment = null;
+		SegmentWriter writer = null;
+		VertexIndex vertexIndex = null;
+		try
+		{
+			while (true)
+			{
+				while (inFlight.size() < maxInFlight && blocks.hasNext())
+				{
+					final Pair<Segment<T>, ShapeKey<T>> block = blocks.next();
+					inFlight.add(new ValuePair<>(block.getA(), es.submit(() -> block.getA().meshCache.apply(block.getB()))));
+				}
+
+				final Pair<Segment<T>, Future<PainteraTriangleMesh>> next = inFlight.poll();
+				if (next == null)
+					break;
+
+				if (next.getA() != segment)
+				{
+					if (writer != null)
+						writer.close();
+					writer = null;
+					segment = next.getA();
+					LOG.debug("Exporting mesh for segment {} to {}", segment.id, segment.path);
+					writer = createWriter(segment.path, segment.id.toString());
+					vertexIndex = new VertexIndex();
+				}
+				append(writer, vertexIndex, next.getB().get());
+			}
+			if (writer != null)
+				writer.close();
+			writer = null;
+		} catch (final IOException e)
+		{
+			throw new UncheckedIOException(e);
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e)
+		{
+			LOG.warn("{} : {}", e.getCause().getClass(), e.getCause().getMessage());
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+		} finally
+		{
+			es.shutdownNow();
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				} catch (final IOException e)
+				{
+					LOG.debug("Unable to close writer for {}: {}", segment.path, e.getMessage());
+				}
+			}
+		}
+	}
 
+	private static <T> List<ShapeKey<T>> keys(final Segment<T> segment, final int scaleIndex)
+	{
+		// all blocks from id
+		final Set<HashWrapper<Interval>> blockSet = new LinkedHashSet<>();
 		Arrays
-				.stream(blockListCache[scaleIndex].apply(id))
+				.stream(segment.blockListCache.apply(segment.id))
 				.map(HashWrapper::interval)
 				.forEach(blockSet::add);
 
-		final Interval[] blocks = blockSet.stream().map(HashWrapper::getData).toArray(Interval[]::new);
-
 		// generate keys from blocks, scaleIndex, and id
 		final List<ShapeKey<T>> keys = new ArrayList<>();
-		for (final Interval block : blocks)
+		for (final HashWrapper<Interval> block : blockSet)
 		{
 			// ignoring simplification iterations parameter
 			// TODO consider smoothing parameters
 			keys.add(new ShapeKey<>(
-					id,
+					segment.id,
 					scaleIndex,
 					0,
+					Simplify.DEFAULT_REDUCTION_RATIO,
 					0,
 					0,
-					Intervals.minAsLongArray(block),
-					Intervals.maxAsLongArray(block)
+					Intervals.minAsLongArray(block.getData()),
+					Intervals.maxAsLongArray(block.getData())
 			));
 		}
+		LOG.debug("Segment {} has {} blocks", segment.id, keys.size());
+		return keys;
+	}
+
+	private static void append(final SegmentWriter writer, final VertexIndex vertexIndex, final PainteraTriangleMesh mesh) throws IOException
+	{
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int numVertices = mesh.getNumVertices();
+		final int firstNewVertex = vertexIndex.size();
 
-		for (final ShapeKey<T> key : keys)
+		// new vertices are assigned consecutive indices in order of their first occurrence in this block
+		final int[] toGlobal = new int[numVertices];
+		final float[] newNormals = new float[3 * numVertices];
+		int numNewVertices = 0;
+		for (int vertex = 0, v = 0; vertex < numVertices; ++vertex, v += 3)
 		{
-			Pair<float[], float[]> verticesAndNormals;
-			try
-			{
-				verticesAndNormals = meshCache[scaleIndex].apply(key);
-				assert verticesAndNormals.getA().length == verticesAndNormals.getB().length : "Vertices and normals " +
-						"must have the same size.";
-				save(
-						path,
-						id.toString(),
-						verticesAndNormals.getA(),
-						verticesAndNormals.getB(),
-						hasFaces(numberOfFaces)
-				    );
-				numberOfFaces += verticesAndNormals.getA().length / 3;
-			} catch (final RuntimeException e)
-			{
-				LOG.warn("{} : {}", e.getClass(), e.getMessage());
-				e.printStackTrace();
-				throw e;
-			}
+			toGlobal[vertex] = vertexIndex.indexOf(vertices[v], vertices[v + 1], vertices[v + 2]);
+			if (toGlobal[vertex] == firstNewVertex + numNewVertices)
+				System.arraycopy(normals, v, newNormals, 3 * numNewVertices++, 3);
 		}
 
-	}
+		final int[] indices = mesh.getIndices().clone();
+		for (int k = 0; k < indices.length; ++k)
+			indices[k] = toGlobal[indices[k]];
 
-	protected abstract void save(String path, String id, float[] vertices, float[] normals, boolean append);
+		writer.writeVertices(
+				Arrays.copyOfRange(vertexIndex.vertices(), 3 * firstNewVertex, 3 * vertexIndex.size()),
+				Arrays.copyOf(newNormals, 3 * numNewVertices));
+		writer.writeTriangles(indices);
+	}
 
-	public static boolean hasFaces(final int numberOfFaces)
+	private static class Segment<T>
 	{
-		return numberOfFaces > 0;
+
+		private final Function<T, Interval[]> blockListCache;
+
+		private final Function<ShapeKey<T>, PainteraTriangleMesh> meshCache;
+
+		private final T id;
+
+		private final String path;
+
+		private Segment(
+				final Function<T, Interval[]> blockListCache,
+				final Function<ShapeKey<T>, PainteraTriangleMesh> meshCache,
+				final T id,
+				final String path)
+		{
+			this.blockListCache = blockListCache;
+			this.meshCache = meshCache;
+			this.id = id;
+			this.path = path;
+		}
 	}
 
 }
@@ -2,49 +2,86 @@ package org.janelia.saalfeldlab.paintera.meshes;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Arrays;
 
 public class MeshExporterBinary<T> extends MeshExporter<T>
 {
-	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * The binary format stores one vertex and one normal per triangle corner, i.e. shared vertices are expanded. Each
+	 * segment is written to a single {@code .vertices} and a single {@code .normals} file.
+	 */
 	@Override
-	protected void save(final String path, final String id, final float[] vertices, final float[] normals, final
-	boolean append)
-	{
-		save(path + ".vertices", vertices, append);
-		save(path + ".normals", normals, append);
-	}
-
-	private void save(final String path, final float[] info, final boolean append)
+	protected SegmentWriter createWriter(final String path, final String id) throws IOException
 	{
+		final DataOutputStream vertexStream = open(path + ".vertices");
+		final DataOutputStream normalStream;
 		try
 		{
-			final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
-					path,
-					append
-			)));
-			try
+			normalStream = open(path + ".normals");
+		} catch (final IOException e)
+		{
+			vertexStream.close();
+			throw e;
+		}
+
+		return new SegmentWriter()
+		{
+			// triangles may reference vertices of previous blocks
+			private float[] vertices = new float[3 * 1024];
+
+			private float[] normals = new float[3 * 1024];
+
+			private int size = 0;
+
+			@Override
+			public void writeVertices(final float[] vertices, final float[] normals) throws IOException
+			{
+				if (size + vertices.length > this.vertices.length)
+				{
+					final int capacity = Math.max(2 * this.vertices.length, size + vertices.length);
+					this.vertices = Arrays.copyOf(this.vertices, capacity);
+					this.normals = Arrays.copyOf(this.normals, capacity);
+				}
+				System.arraycopy(vertices, 0, this.vertices, size, vertices.length);
+				System.arraycopy(normals, 0, this.normals, size, normals.length);
+				size += vertices.length;
+			}
+
+			@Override
+			public void writeTriangles(final int[] indices) throws IOException
 			{
-				for (int i = 0; i < info.length; i++)
+				for (final int index : indices)
 				{
-					stream.writeFloat(info[i]);
+					final int i = 3 * index;
+					vertexStream.writeFloat(vertices[i + 0]);
+					vertexStream.writeFloat(vertices[i + 1]);
+					vertexStream.writeFloat(vertices[i + 2]);
+					normalStream.writeFloat(normals[i + 0]);
+					normalStream.writeFloat(normals[i + 1]);
+					normalStream.writeFloat(normals[i + 2]);
 				}
-				stream.close();
-			} catch (final IOException e)
+			}
+
+			@Override
+			public void close() throws IOException
 			{
-				LOG.warn("Couldn't write data to the file {}: {}", path, e.getMessage());
+				try
+				{
+					vertexStream.close();
+				} finally
+				{
+					normalStream.close();
+				}
 			}
-		} catch (final FileNotFoundException e)
-		{
-			LOG.warn("Couldn't find file {}: {}", path, e.getMessage());
-		}
+		};
+	}
+
+	private static DataOutputStream open(final String path) throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
 	}
 
 }
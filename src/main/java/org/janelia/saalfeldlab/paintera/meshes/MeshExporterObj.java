@@ -1,77 +1,62 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.io.Writer;
 
 public class MeshExporterObj<T> extends MeshExporter<T>
 {
-	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Writes a single {@code .obj} file per segment: {@code v} and {@code vn} lines for each vertex, and
+	 * {@code f i//i j//j k//k} lines for each triangle.
+	 */
 	@Override
-	protected void save(String path, final String id, final float[] vertices, final float[] normals, final boolean
-			append)
+	protected SegmentWriter createWriter(final String path, final String id) throws IOException
 	{
-		path = path + ".obj";
-		try
+		final Writer writer = new BufferedWriter(new FileWriter(path + ".obj"), 1 << 16);
+		writer.append("# id: ").append(id).append("\n");
+		return new SegmentWriter()
 		{
-			final FileWriter    writer    = new FileWriter(path, append);
-			final float[]       texCoords = new float[] {0.0f, 0.0f};
-			final StringBuilder sb        = new StringBuilder();
-
-			if (!append)
-			{
-				sb.append("# id: ").append(id).append("\n");
-			}
-
-			final int numVertices = vertices.length;
-			for (int k = 0; k < numVertices; k += 3)
-			{
-				sb.append("\nv ").append(vertices[k + 0]).append(" ").append(vertices[k + 1]).append(" ").append(
-						vertices[k + 2]);
-			}
-
-			sb.append("\n");
-			final int numNormals = normals.length;
-			for (int k = 0; k < numNormals; k += 3)
-			{
-				sb.append("\nvn ").append(normals[k + 0]).append(" ").append(normals[k + 1]).append(" ").append
-						(normals[k + 2]);
-			}
-
-			sb.append("\n");
-			final int numTexCoords = texCoords.length;
-			for (int k = 0; k < numTexCoords; k += 2)
+			@Override
+			public void writeVertices(final float[] vertices, final float[] normals) throws IOException
 			{
-				sb.append("\nvt ").append(texCoords[k + 0]).append(" ").append(texCoords[k + 1]);
+				final StringBuilder sb = new StringBuilder();
+				for (int k = 0; k < vertices.length; k += 3)
+				{
+					sb.append("v ").append(vertices[k + 0]).append(" ").append(vertices[k + 1]).append(" ").append(
+							vertices[k + 2]).append("\n");
+				}
+				for (int k = 0; k < normals.length; k += 3)
+				{
+					sb.append("vn ").append(normals[k + 0]).append(" ").append(normals[k + 1]).append(" ").append(
+							normals[k + 2]).append("\n");
+				}
+				writer.append(sb);
 			}
 
-			sb.append("\n");
-			for (int k = 0; k < numVertices / 3; k += 3)
+			@Override
+			public void writeTriangles(final int[] indices) throws IOException
 			{
-				sb.append("\nf ").append(k + numberOfFaces + 1).append("/").append(1).append("/").append(k +
-						numberOfFaces + 1)
-						.append(" ").append(k + numberOfFaces + 2).append("/").append(1).append("/").append(k +
-						numberOfFaces + 2)
-						.append(" ").append(k + numberOfFaces + 3).append("/").append(1).append("/").append(k +
-						numberOfFaces + 3);
+				final StringBuilder sb = new StringBuilder();
+				for (int k = 0; k < indices.length; k += 3)
+				{
+					final int i1 = indices[k + 0] + 1;
+					final int i2 = indices[k + 1] + 1;
+					final int i3 = indices[k + 2] + 1;
+					sb.append("f ").append(i1).append("//").append(i1)
+							.append(" ").append(i2).append("//").append(i2)
+							.append(" ").append(i3).append("//").append(i3).append("\n");
+				}
+				writer.append(sb);
 			}
 
-			try
+			@Override
+			public void close() throws IOException
 			{
-				writer.append(sb.toString());
 				writer.close();
-			} catch (final IOException e)
-			{
-				LOG.warn("Couldn't write data to the file {}: {}", path, e.getMessage());
 			}
-
-		} catch (final IOException e)
-		{
-			LOG.warn("Couldn't open the file {}: {}", path, e.getMessage());
-		}
+		};
 	}
 }
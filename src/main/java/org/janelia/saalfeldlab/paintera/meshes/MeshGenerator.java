@@ -14,7 +14,6 @@ import javafx.beans.value.ObservableIntegerValue;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.MapChangeListener;
-import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -24,17 +23,22 @@ import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.MeshView;
 import net.imglib2.Interval;
+import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.Pair;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.meshes.MeshGeneratorJobManager.ManagementTask;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Philipp Hanslovsky
@@ -43,6 +47,9 @@ public class MeshGenerator<T>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final ExecutorService BATCH_MERGE_EXECUTOR = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("mesh-batch-merge-%d", true));
+
 	public static int RETRIEVING_RELEVANT_BLOCKS = -1;
 
 	public static int SUBMITTED_MESH_GENERATION_TASK = -2;
@@ -96,16 +103,32 @@ public class MeshGenerator<T>
 
 	private final InterruptibleFunction<T, Interval[]>[] blockListCache;
 
-	private final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache;
+	private final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache;
 
 	private final BooleanProperty isVisible = new SimpleBooleanProperty(true);
 
-	private final ObservableMap<ShapeKey<T>, MeshView> meshes = FXCollections.observableHashMap();
+	private final ObservableMap<ShapeKey<T>, PainteraTriangleMesh> meshes = FXCollections.observableHashMap();
+
+	private final MeshBatches<ShapeKey<T>> batches;
+
+	private final AtomicBoolean isBatchUpdateScheduled = new AtomicBoolean(false);
 
 	private final IntegerProperty scaleIndex = new SimpleIntegerProperty(0);
 
 	private final IntegerProperty meshSimplificationIterations = new SimpleIntegerProperty(0);
 
+	private final DoubleProperty meshSimplificationReductionRatio = new SimpleDoubleProperty(Simplify.DEFAULT_REDUCTION_RATIO);
+
+	private final BooleanProperty levelOfDetail = new SimpleBooleanProperty(false);
+
+	private final DoubleProperty levelOfDetailThreshold = new SimpleDoubleProperty(LevelOfDetail.DEFAULT_THRESHOLD);
+
+	private final ObjectProperty<AffineTransform3D> worldToCameraTransform = new SimpleObjectProperty<>();
+
+	private final AffineTransform3D[] sourceToWorld;
+
+	private final AtomicBoolean isLevelOfDetailUpdatePending = new AtomicBoolean(false);
+
 	private final BooleanProperty changed = new SimpleBooleanProperty(false);
 
 	private final ObservableValue<Color> color;
@@ -155,7 +178,7 @@ public class MeshGenerator<T>
 	public MeshGenerator(
 			final T segmentId,
 			final InterruptibleFunction<T, Interval[]>[] blockListCache,
-			final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache,
+			final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache,
 			final ObservableIntegerValue color,
 			final int scaleIndex,
 			final int meshSimplificationIterations,
@@ -163,9 +186,42 @@ public class MeshGenerator<T>
 			final int smoothingIterations,
 			final ExecutorService managers,
 			final ExecutorService workers)
+	{
+		this(
+				segmentId,
+				blockListCache,
+				meshCache,
+				color,
+				scaleIndex,
+				meshSimplificationIterations,
+				smoothingLambda,
+				smoothingIterations,
+				managers,
+				workers,
+				null);
+	}
+
+	/**
+	 *
+	 * @param sourceToWorld transforms into world coordinates for each scale level. Level of detail is not available
+	 *                      if {@code null}.
+	 */
+	public MeshGenerator(
+			final T segmentId,
+			final InterruptibleFunction<T, Interval[]>[] blockListCache,
+			final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache,
+			final ObservableIntegerValue color,
+			final int scaleIndex,
+			final int meshSimplificationIterations,
+			final double smoothingLambda,
+			final int smoothingIterations,
+			final ExecutorService managers,
+			final ExecutorService workers,
+			final AffineTransform3D[] sourceToWorld)
 	{
 		super();
 		this.id = segmentId;
+		this.sourceToWorld = sourceToWorld;
 		this.blockListCache = blockListCache;
 		this.meshCache = meshCache;
 		this.color = Bindings.createObjectBinding(() -> fromInt(color.get()), color);
@@ -191,6 +247,7 @@ public class MeshGenerator<T>
 
 		this.meshSimplificationIterations.set(meshSimplificationIterations);
 		this.meshSimplificationIterations.addListener((obs, oldv, newv) -> changed.set(true));
+		this.meshSimplificationReductionRatio.addListener((obs, oldv, newv) -> changed.set(true));
 
 		this.smoothingLambda.set(smoothingLambda);
 		this.smoothingLambda.addListener((obs, oldv, newv) -> changed.set(true));
@@ -198,63 +255,52 @@ public class MeshGenerator<T>
 		this.smoothingIterations.set(smoothingIterations);
 		this.smoothingIterations.addListener((obs, oldv, newv) -> changed.set(true));
 
+		this.levelOfDetail.addListener((obs, oldv, newv) -> changed.set(true));
+		this.levelOfDetailThreshold.addListener((obs, oldv, newv) -> requestLevelOfDetailUpdate());
+		this.worldToCameraTransform.addListener((obs, oldv, newv) -> requestLevelOfDetailUpdate());
+
+		this.batches = new MeshBatches<>(
+				MeshBatches.DEFAULT_MAX_VERTICES_PER_BATCH,
+				this::createBatchView,
+				view -> {
+					if (this.isEnabled.get())
+					{
+						LOG.debug("Adding children: {}", view);
+						this.root.getChildren().add(view);
+					}
+				},
+				view -> {
+					unbindBatchView(view);
+					this.root.getChildren().remove(view);
+				});
+
 		this.isEnabled.addListener((obs, oldv, newv) -> {
 			InvokeOnJavaFXApplicationThread.invoke(() -> {
-				synchronized (this.meshes)
+				if (newv)
 				{
-					if (newv)
-					{
-						this.root.getChildren().addAll(this.meshes.values());
-					}
-					else
-					{
-						this.root.getChildren().removeAll(this.meshes.values());
-					}
+					this.root.getChildren().setAll(this.batches.views());
+				}
+				else
+				{
+					this.root.getChildren().clear();
 				}
 			});
 		});
 
-		this.meshes.addListener((MapChangeListener<ShapeKey<T>, MeshView>) change -> {
-			if (change.wasRemoved())
-			{
-				((PhongMaterial) change.getValueRemoved().getMaterial()).diffuseColorProperty().unbind();
-				change.getValueRemoved().visibleProperty().unbind();
-				change.getValueRemoved().drawModeProperty().unbind();
-				change.getValueRemoved().cullFaceProperty().unbind();
-				change.getValueRemoved().scaleXProperty().unbind();
-				change.getValueRemoved().scaleYProperty().unbind();
-				change.getValueRemoved().scaleZProperty().unbind();
-			}
-			else
-			{
-				((PhongMaterial) change.getValueAdded().getMaterial()).diffuseColorProperty().bind(this
-						.colorWithAlpha);
-				change.getValueAdded().visibleProperty().bind(this.isVisible);
-				change.getValueAdded().drawModeProperty().bind(this.drawMode);
-				change.getValueAdded().cullFaceProperty().bind(this.cullFace);
-				change.getValueAdded().scaleXProperty().bind(this.inflate);
-				change.getValueAdded().scaleYProperty().bind(this.inflate);
-				change.getValueAdded().scaleZProperty().bind(this.inflate);
-			}
-
-			if (change.wasRemoved())
+		this.meshes.addListener((MapChangeListener<ShapeKey<T>, PainteraTriangleMesh>) change -> {
+			if (change.wasAdded())
+				this.batches.add(change.getKey(), change.getValueAdded());
+			else if (change.wasRemoved())
+				this.batches.remove(change.getKey());
+			// coalesce changes of many blocks into a single rebuild of each affected batch. Batches are merged off
+			// the JavaFX application thread, only the merged meshes are swapped in on it.
+			if (!this.isBatchUpdateScheduled.getAndSet(true))
 			{
-				InvokeOnJavaFXApplicationThread.invoke(() -> this.root.getChildren().remove(change.getValueRemoved()));
-				//					InvokeOnJavaFXApplicationThread.invoke( synchronize( () -> this.root.getChildren()
-				// .remove( change.getValueRemoved() ), this.root ) );
-			}
-			else if (change.wasAdded() && !this.root.getChildren().contains(change.getValueAdded()))
-			{
-				InvokeOnJavaFXApplicationThread.invoke(() -> {
-					if (this.root != null && this.isEnabled.get())
-					{
-						final ObservableList<Node> children = this.root.getChildren();
-						if (!children.contains(change.getValueAdded()))
-						{
-							LOG.debug("Adding children: {}", change.getValueAdded());
-							children.add(change.getValueAdded());
-						}
-					}
+				BATCH_MERGE_EXECUTOR.submit(() -> {
+					this.isBatchUpdateScheduled.set(false);
+					final List<MeshBatches<ShapeKey<T>>.Update> updates = this.batches.prepareUpdate();
+					if (!updates.isEmpty())
+						InvokeOnJavaFXApplicationThread.invoke(() -> this.batches.apply(updates));
 				});
 			}
 		});
@@ -264,6 +310,33 @@ public class MeshGenerator<T>
 		this.changed.set(true);
 	}
 
+	private MeshView createBatchView()
+	{
+		final PhongMaterial material = Meshes.painteraPhongMaterial();
+		material.diffuseColorProperty().bind(this.colorWithAlpha);
+		final MeshView mv = new MeshView();
+		mv.setOpacity(1.0);
+		mv.setMaterial(material);
+		mv.visibleProperty().bind(this.isVisible);
+		mv.drawModeProperty().bind(this.drawMode);
+		mv.cullFaceProperty().bind(this.cullFace);
+		mv.scaleXProperty().bind(this.inflate);
+		mv.scaleYProperty().bind(this.inflate);
+		mv.scaleZProperty().bind(this.inflate);
+		return mv;
+	}
+
+	private static void unbindBatchView(final MeshView mv)
+	{
+		((PhongMaterial) mv.getMaterial()).diffuseColorProperty().unbind();
+		mv.visibleProperty().unbind();
+		mv.drawModeProperty().unbind();
+		mv.cullFaceProperty().unbind();
+		mv.scaleXProperty().unbind();
+		mv.scaleYProperty().unbind();
+		mv.scaleZProperty().unbind();
+	}
+
 	public void interrupt()
 	{
 		synchronized (this.activeFuture)
@@ -273,6 +346,7 @@ public class MeshGenerator<T>
 			Optional.ofNullable(activeTask.get()).ifPresent(ManagementTask::interrupt);
 			activeFuture.set(null);
 			activeTask.set(null);
+			isLevelOfDetailUpdatePending.set(false);
 			synchronized (this.meshes)
 			{
 				this.meshes.clear();
@@ -285,26 +359,68 @@ public class MeshGenerator<T>
 		synchronized (this.activeFuture)
 		{
 			interrupt();
-			final int scaleIndex = this.scaleIndex.get();
-			final Pair<Future<Void>, MeshGeneratorJobManager<T>.ManagementTask> futureAndTask = manager.submit(
-					id,
-					scaleIndex,
-					meshSimplificationIterations.intValue(),
-					smoothingLambda.doubleValue(),
-					smoothingIterations.intValue(),
-					blockListCache[scaleIndex],
-					meshCache[scaleIndex],
-					submittedTasks::set,
-					completedTasks::set,
-					() -> {
-					}
-			                                                                                                  );
-			LOG.debug("Submitting new task {}", futureAndTask);
-			this.activeFuture.set(futureAndTask.getA());
-			this.activeTask.set(futureAndTask.getB());
+			submit();
+		}
+	}
+
+	/**
+	 * Re-select blocks for the current camera. Unlike {@link #updateMeshes()}, existing meshes are kept until they are
+	 * replaced.
+	 */
+	private void updateLevelOfDetail()
+	{
+		synchronized (this.activeFuture)
+		{
+			Optional.ofNullable(activeTask.get()).ifPresent(ManagementTask::supersede);
+			submit();
 		}
 	}
 
+	private void submit()
+	{
+		final int scaleIndex = this.scaleIndex.get();
+		final boolean isLevelOfDetail = isLevelOfDetailEnabled();
+		if (!isLevelOfDetail)
+			isLevelOfDetailUpdatePending.set(false);
+		final Pair<Future<Void>, MeshGeneratorJobManager<T>.ManagementTask> futureAndTask = manager.submit(
+				id,
+				scaleIndex,
+				meshSimplificationIterations.intValue(),
+				meshSimplificationReductionRatio.doubleValue(),
+				smoothingLambda.doubleValue(),
+				smoothingIterations.intValue(),
+				blockListCache,
+				meshCache,
+				isLevelOfDetail ? this::currentLevelOfDetail : null,
+				sourceToWorld,
+				submittedTasks::set,
+				completedTasks::set,
+				() -> {
+				}
+		                                                                                                  );
+		LOG.debug("Submitting new task {}", futureAndTask);
+		this.activeFuture.set(futureAndTask.getA());
+		this.activeTask.set(futureAndTask.getB());
+	}
+
+	private void requestLevelOfDetailUpdate()
+	{
+		if (isEnabled.get() && isLevelOfDetailEnabled() && !isLevelOfDetailUpdatePending.getAndSet(true))
+			updateLevelOfDetail();
+	}
+
+	private boolean isLevelOfDetailEnabled()
+	{
+		return this.levelOfDetail.get() && this.sourceToWorld != null && this.worldToCameraTransform.get() != null;
+	}
+
+	private LevelOfDetail currentLevelOfDetail()
+	{
+		// camera updates that arrive after this are handled by a new task
+		isLevelOfDetailUpdatePending.set(false);
+		return new LevelOfDetail(worldToCameraTransform.get(), levelOfDetailThreshold.get());
+	}
+
 	private static final Color fromInt(final int argb)
 	{
 		return Color.rgb(ARGBType.red(argb), ARGBType.green(argb), ARGBType.blue(argb), 1.0);
@@ -340,6 +456,11 @@ public class MeshGenerator<T>
 		return this.meshSimplificationIterations;
 	}
 
+	public DoubleProperty meshSimplificationReductionRatioProperty()
+	{
+		return this.meshSimplificationReductionRatio;
+	}
+
 	public IntegerProperty smoothingIterationsProperty()
 	{
 		return smoothingIterations;
@@ -350,6 +471,34 @@ public class MeshGenerator<T>
 		return smoothingLambda;
 	}
 
+	/**
+	 *
+	 * @return if {@code true}, select scale level for each block based on the distance to the camera, with
+	 * {@link #scaleIndexProperty()} as the coarsest level.
+	 */
+	public BooleanProperty levelOfDetailProperty()
+	{
+		return this.levelOfDetail;
+	}
+
+	/**
+	 *
+	 * @return refine blocks with projected size larger than this threshold, see {@link LevelOfDetail}
+	 */
+	public DoubleProperty levelOfDetailThresholdProperty()
+	{
+		return this.levelOfDetailThreshold;
+	}
+
+	/**
+	 *
+	 * @return transform from world coordinates into camera coordinates for level of detail
+	 */
+	public ObjectProperty<AffineTransform3D> worldToCameraTransformProperty()
+	{
+		return this.worldToCameraTransform;
+	}
+
 	public IntegerProperty scaleIndexProperty()
 	{
 		LOG.debug("Querying scale index property {}", this.scaleIndex);
@@ -409,10 +558,13 @@ public class MeshGenerator<T>
 		opacityProperty().bind(meshSettings.opacityProperty());
 		scaleIndexProperty().bind(meshSettings.scaleLevelProperty());
 		meshSimplificationIterationsProperty().bind(meshSettings.simplificationIterationsProperty());
+		meshSimplificationReductionRatioProperty().bind(meshSettings.simplificationReductionRatioProperty());
 		cullFaceProperty().bind(meshSettings.cullFaceProperty());
 		drawModeProperty().bind(meshSettings.drawModeProperty());
 		smoothingIterationsProperty().bind(meshSettings.smoothingIterationsProperty());
 		smoothingLambdaProperty().bind(meshSettings.smoothingLambdaProperty());
+		levelOfDetailProperty().bind(meshSettings.levelOfDetailProperty());
+		levelOfDetailThresholdProperty().bind(meshSettings.levelOfDetailThresholdProperty());
 		inflateProperty().bind(meshSettings.inflateProperty());
 		isVisible.bind(meshSettings.isVisibleProperty());
 	}
@@ -423,10 +575,13 @@ public class MeshGenerator<T>
 		opacityProperty().unbind();
 		scaleIndexProperty().unbind();
 		meshSimplificationIterationsProperty().unbind();
+		meshSimplificationReductionRatioProperty().unbind();
 		cullFaceProperty().unbind();
 		drawModeProperty().unbind();
 		smoothingIterationsProperty().unbind();
 		smoothingLambdaProperty().unbind();
+		levelOfDetailProperty().unbind();
+		levelOfDetailThresholdProperty().unbind();
 		inflateProperty().unbind();
 		isVisible.unbind();
 	}
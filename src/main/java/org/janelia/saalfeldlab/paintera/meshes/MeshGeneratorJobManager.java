@@ -3,28 +3,28 @@ package org.janelia.saalfeldlab.paintera.meshes;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import gnu.trove.list.array.TIntArrayList;
 import org.janelia.saalfeldlab.util.HashWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javafx.collections.ObservableMap;
-import javafx.scene.paint.PhongMaterial;
-import javafx.scene.shape.CullFace;
-import javafx.scene.shape.DrawMode;
-import javafx.scene.shape.MeshView;
-import javafx.scene.shape.TriangleMesh;
-import javafx.scene.shape.VertexFormat;
 import net.imglib2.Interval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
@@ -33,14 +33,14 @@ public class MeshGeneratorJobManager<T>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	private final ObservableMap<ShapeKey<T>, MeshView> meshes;
+	private final ObservableMap<ShapeKey<T>, PainteraTriangleMesh> meshes;
 
 	private final ExecutorService manager;
 
 	private final ExecutorService workers;
 
 	public MeshGeneratorJobManager(
-			final ObservableMap<ShapeKey<T>, MeshView> meshes,
+			final ObservableMap<ShapeKey<T>, PainteraTriangleMesh> meshes,
 			final ExecutorService manager,
 			final ExecutorService workers)
 	{
@@ -50,14 +50,28 @@ public class MeshGeneratorJobManager<T>
 		this.workers = workers;
 	}
 
+	/**
+	 *
+	 * @param scaleIndex scale level of all blocks or, if {@code levelOfDetail} is not {@code null}, the coarsest
+	 *                   scale level
+	 * @param getBlockLists block lists for each scale level
+	 * @param getMeshes mesh caches for each scale level
+	 * @param levelOfDetail if not {@code null}, select the scale level for each block based on the distance to the
+	 *                      camera. Evaluated when the task starts. Meshes of blocks that are not selected anymore are
+	 *                      kept until they are replaced.
+	 * @param sourceToWorld transforms into world coordinates for each scale level. Required for level of detail.
+	 */
 	public Pair<Future<Void>, ManagementTask> submit(
 			final T identifier,
 			final int scaleIndex,
 			final int simplificationIterations,
+			final double simplificationReductionRatio,
 			final double smoothingLambda,
 			final int smoothingIterations,
-			final InterruptibleFunction<T, Interval[]> getBlockList,
-			final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh,
+			final InterruptibleFunction<T, Interval[]>[] getBlockLists,
+			final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] getMeshes,
+			final Supplier<LevelOfDetail> levelOfDetail,
+			final AffineTransform3D[] sourceToWorld,
 			final IntConsumer setNumberOfTasks,
 			final IntConsumer setNumberOfCompletedTasks,
 			final Runnable onFinish)
@@ -66,10 +80,13 @@ public class MeshGeneratorJobManager<T>
 				identifier,
 				scaleIndex,
 				simplificationIterations,
+				simplificationReductionRatio,
 				smoothingLambda,
 				smoothingIterations,
-				getBlockList,
-				getMesh,
+				getBlockLists,
+				getMeshes,
+				levelOfDetail,
+				sourceToWorld,
 				setNumberOfTasks,
 				setNumberOfCompletedTasks,
 				onFinish
@@ -87,15 +104,23 @@ public class MeshGeneratorJobManager<T>
 
 		private final int simplificationIterations;
 
+		private final double simplificationReductionRatio;
+
 		private final double smoothingLambda;
 
 		private final int smoothingIterations;
 
-		private final InterruptibleFunction<T, Interval[]> getBlockList;
+		private final InterruptibleFunction<T, Interval[]>[] getBlockLists;
+
+		private final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] getMeshes;
+
+		private final Supplier<LevelOfDetail> levelOfDetail;
 
-		private final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh;
+		private final AffineTransform3D[] sourceToWorld;
 
-		private boolean isInterrupted = false;
+		private volatile boolean isInterrupted = false;
+
+		private volatile boolean isSuperseded = false;
 
 		private final IntConsumer setNumberOfTasks;
 
@@ -109,10 +134,13 @@ public class MeshGeneratorJobManager<T>
 				final T identifier,
 				final int scaleIndex,
 				final int simplificationIterations,
+				final double simplificationReductionRatio,
 				final double smoothingLambda,
 				final int smoothingIterations,
-				final InterruptibleFunction<T, Interval[]> getBlockList,
-				final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>> getMesh,
+				final InterruptibleFunction<T, Interval[]>[] getBlockLists,
+				final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] getMeshes,
+				final Supplier<LevelOfDetail> levelOfDetail,
+				final AffineTransform3D[] sourceToWorld,
 				final IntConsumer setNumberOfTasks,
 				final IntConsumer setNumberOfCompletedTasks,
 				final Runnable onFinish)
@@ -121,10 +149,13 @@ public class MeshGeneratorJobManager<T>
 			this.identifier = identifier;
 			this.scaleIndex = scaleIndex;
 			this.simplificationIterations = simplificationIterations;
+			this.simplificationReductionRatio = simplificationReductionRatio;
 			this.smoothingLambda = smoothingLambda;
 			this.smoothingIterations = smoothingIterations;
-			this.getBlockList = getBlockList;
-			this.getMesh = getMesh;
+			this.getBlockLists = getBlockLists;
+			this.getMeshes = getMeshes;
+			this.levelOfDetail = levelOfDetail;
+			this.sourceToWorld = sourceToWorld;
 			this.setNumberOfTasks = setNumberOfTasks;
 			this.setNumberOfCompletedTasks = setNumberOfCompletedTasks;
 			this.onFinish = onFinish;
@@ -134,25 +165,47 @@ public class MeshGeneratorJobManager<T>
 		{
 			LOG.debug("Interrupting for {} keys={}", this.identifier, this.keys);
 			this.isInterrupted = true;
-			this.getBlockList.interruptFor(this.identifier);
+			Arrays.stream(this.getBlockLists).forEach(getBlockList -> getBlockList.interruptFor(this.identifier));
 			synchronized (this.keys)
 			{
-				this.keys.forEach(this.getMesh::interruptFor);
+				this.keys.forEach(this::interruptFor);
 			}
 		}
 
+		/**
+		 * Stop scheduling mesh generation for remaining blocks and discard results of blocks that are currently
+		 * generated, but do not remove any meshes: The superseding task replaces them. Blocks that are currently
+		 * generated are not interrupted so that their meshes are in the cache if they are requested again.
+		 */
+		public void supersede()
+		{
+			LOG.debug("Superseding task for {}", this.identifier);
+			this.isSuperseded = true;
+			this.isInterrupted = true;
+		}
+
+		private void interruptFor(final ShapeKey<T> key)
+		{
+			this.getMeshes[key.scaleIndex()].interruptFor(key);
+		}
+
 		@Override
 		public Void call()
 		{
 			try
 			{
-				synchronized (meshes)
+				final LevelOfDetail levelOfDetail = this.levelOfDetail == null ? null : this.levelOfDetail.get();
+
+				if (levelOfDetail == null)
 				{
-					LOG.debug("Clearing meshes: {}", meshes);
-					meshes.clear();
+					synchronized (meshes)
+					{
+						LOG.debug("Clearing meshes: {}", meshes);
+						meshes.clear();
+					}
 				}
 
-				final Set<HashWrapper<Interval>> blockSet = new HashSet<>();
+				final List<Pair<Integer, Interval>> blockList = new ArrayList<>();
 
 				final CountDownLatch countDownOnBlockList = new CountDownLatch(1);
 
@@ -165,13 +218,28 @@ public class MeshGeneratorJobManager<T>
 				workers.submit(() -> {
 					try
 					{
-
-						blockSet.addAll(
-								Arrays
-										.stream(getBlockList.apply(identifier))
-										.map(HashWrapper::interval)
-										.collect(Collectors.toList()));
-						LOG.debug("Found relevant blocks: {}", blockSet);
+						if (levelOfDetail == null)
+						{
+							final Set<HashWrapper<Interval>> blockSet = Arrays
+									.stream(getBlockLists[scaleIndex].apply(identifier))
+									.map(HashWrapper::interval)
+									.collect(Collectors.toSet());
+							blockSet.stream().map(HashWrapper::getData).map(b -> new ValuePair<>(scaleIndex, b)).forEach(blockList::add);
+						}
+						else
+						{
+							blockList.addAll(levelOfDetail.selectBlocks(
+									level -> Arrays
+											.stream(getBlockLists[level].apply(identifier))
+											.map(HashWrapper::interval)
+											.distinct()
+											.map(HashWrapper::getData)
+											.toArray(Interval[]::new),
+									sourceToWorld,
+									0,
+									scaleIndex));
+						}
+						LOG.debug("Found relevant blocks: {}", blockList);
 					} finally
 					{
 						countDownOnBlockList.countDown();
@@ -183,21 +251,10 @@ public class MeshGeneratorJobManager<T>
 				} catch (final InterruptedException e)
 				{
 					LOG.debug("Interrupted while waiting for block lists for label {}", identifier);
-					getBlockList.interruptFor(identifier);
+					Arrays.stream(getBlockLists).forEach(getBlockList -> getBlockList.interruptFor(identifier));
 					this.isInterrupted = true;
 				}
 
-				final List<Interval> blockList = blockSet
-						.stream()
-						.map(HashWrapper::getData)
-						.collect(Collectors.toList());
-
-				synchronized (setNumberOfTasks)
-				{
-					setNumberOfTasks.accept(blockList.size());
-					setNumberOfCompletedTasks.accept(0);
-				}
-
 				LOG.debug("Found {} blocks", blockList.size());
 
 				if (this.isInterrupted)
@@ -211,30 +268,60 @@ public class MeshGeneratorJobManager<T>
 				synchronized (keys)
 				{
 					keys.clear();
-					for (final Interval block : blockList)
+					for (final Pair<Integer, Interval> block : blockList)
 					{
 						keys.add(
 								new ShapeKey<>(
 										identifier,
-										scaleIndex,
+										block.getA(),
 										simplificationIterations,
+										simplificationReductionRatio,
 										smoothingLambda,
 										smoothingIterations,
-										Intervals.minAsLongArray(block),
-										Intervals.maxAsLongArray(block)
+										Intervals.minAsLongArray(block.getB()),
+										Intervals.maxAsLongArray(block.getB())
 								));
 					}
 				}
 
+				// with level of detail, existing meshes are swapped in place: Meshes of blocks that are not selected
+				// anymore are removed once all selected blocks that overlap with them are present.
+				final List<ShapeKey<T>> staleKeys = new ArrayList<>();
+				final List<ShapeKey<T>> missingKeys = new ArrayList<>();
+				synchronized (meshes)
+				{
+					for (final ShapeKey<T> key : keys)
+					{
+						if (!meshes.containsKey(key))
+							missingKeys.add(key);
+					}
+					if (levelOfDetail != null)
+					{
+						final Set<ShapeKey<T>> selectedKeys = new HashSet<>(keys);
+						meshes.keySet().stream().filter(key -> !selectedKeys.contains(key)).forEach(staleKeys::add);
+					}
+				}
+				final StaleMeshes stale = new StaleMeshes(staleKeys, missingKeys);
+				synchronized (meshes)
+				{
+					stale.removeReplaced();
+				}
+
+				synchronized (setNumberOfTasks)
+				{
+					setNumberOfTasks.accept(missingKeys.size());
+					setNumberOfCompletedTasks.accept(0);
+				}
+
 				if (!isInterrupted)
 				{
 
-					final int            numTasks          = keys.size();
+					final int            numTasks          = missingKeys.size();
 					final CountDownLatch countDownOnMeshes = new CountDownLatch(numTasks);
 
 					final ArrayList<Callable<Void>> tasks = new ArrayList<>();
 
-					for (final ShapeKey<T> key : keys)
+					for (final ShapeKey<T> key : missingKeys)
 					{
 						tasks.add(() -> {
 							try
@@ -250,14 +337,14 @@ public class MeshGeneratorJobManager<T>
 									         );
 									if (!isInterrupted)
 									{
-										final Pair<float[], float[]> verticesAndNormals = getMesh.apply(key);
-										final MeshView               mv                 = makeMeshView(verticesAndNormals);
-										LOG.debug("Found {}/3 vertices and {}/3 normals", verticesAndNormals.getA().length, verticesAndNormals.getB().length);
+										final PainteraTriangleMesh triangleMesh = getMeshes[key.scaleIndex()].apply(key);
+										LOG.debug("Found {} vertices and {} triangles", triangleMesh.getNumVertices(), triangleMesh.getNumTriangles());
 										synchronized (meshes)
 										{
 											if (!isInterrupted)
 											{
-												meshes.put(key, mv);
+												meshes.put(key, triangleMesh);
+												stale.removeReplacedBy(key);
 											}
 										}
 									}
@@ -292,14 +379,15 @@ public class MeshGeneratorJobManager<T>
 					} catch (final InterruptedException e)
 					{
 						this.isInterrupted = true;
-						keys.forEach(getMesh::interruptFor);
+						keys.forEach(this::interruptFor);
 					}
 
 					try
 					{
 						if (this.isInterrupted)
 						{
-							keys.forEach(getMesh::interruptFor);
+							if (!this.isSuperseded)
+								keys.forEach(this::interruptFor);
 						}
 						else
 						{
@@ -312,10 +400,18 @@ public class MeshGeneratorJobManager<T>
 										"remaining)",
 								countDownOnMeshes.getCount()
 						         );
-						synchronized (getMesh)
+						synchronized (getMeshes)
 						{
 							this.isInterrupted = true;
-							keys.forEach(getMesh::interruptFor);
+							keys.forEach(this::interruptFor);
+						}
+					}
+
+					synchronized (meshes)
+					{
+						if (!this.isInterrupted)
+						{
+							stale.removeAll();
 						}
 					}
 
@@ -324,7 +420,7 @@ public class MeshGeneratorJobManager<T>
 			} finally
 			{
 				{
-					if (this.isInterrupted)
+					if (this.isInterrupted && !this.isSuperseded)
 					{
 						LOG.debug("Was interrupted, removing all meshes");
 						synchronized (meshes)
@@ -340,37 +436,99 @@ public class MeshGeneratorJobManager<T>
 
 		}
 
-	}
+		private RealInterval worldBounds(final ShapeKey<T> key)
+		{
+			return LevelOfDetail.worldBounds(key.interval(), sourceToWorld[key.scaleIndex()]);
+		}
 
-	private static MeshView makeMeshView(final Pair<float[], float[]> verticesAndNormals)
-	{
-		final float[]      vertices = verticesAndNormals.getA();
-		final float[]      normals  = verticesAndNormals.getB();
-		final TriangleMesh mesh     = new TriangleMesh();
-		mesh.getPoints().addAll(vertices);
-		mesh.getNormals().addAll(normals);
-		mesh.getTexCoords().addAll(0, 0);
-		mesh.setVertexFormat(VertexFormat.POINT_NORMAL_TEXCOORD);
-		final int[] faceIndices = new int[vertices.length];
-		for (int i = 0, k = 0; i < faceIndices.length; i += 3, ++k)
+		/**
+		 * Meshes of blocks that are not selected anymore. A stale mesh is removed once all selected blocks that overlap
+		 * with it are present. Overlaps are computed once when the task starts so that each completed block only visits
+		 * the stale meshes that it overlaps with. Caller must hold lock on {@code meshes} for all methods but the
+		 * constructor.
+		 */
+		private class StaleMeshes
 		{
-			faceIndices[i + 0] = k;
-			faceIndices[i + 1] = k;
-			faceIndices[i + 2] = 0;
+			private final List<ShapeKey<T>> staleKeys;
+
+			private final boolean[] isRemoved;
+
+			private final boolean[] hasOverlaps;
+
+			private final int[] numMissingOverlaps;
+
+			private final Map<ShapeKey<T>, TIntArrayList> overlappingStaleMeshes = new HashMap<>();
+
+			private StaleMeshes(final List<ShapeKey<T>> staleKeys, final List<ShapeKey<T>> missingKeys)
+			{
+				this.staleKeys = staleKeys;
+				this.isRemoved = new boolean[staleKeys.size()];
+				this.hasOverlaps = new boolean[staleKeys.size()];
+				this.numMissingOverlaps = new int[staleKeys.size()];
+				if (staleKeys.isEmpty())
+					return;
+
+				final BlockIndex index = new BlockIndex(staleKeys.stream().map(ManagementTask.this::worldBounds).collect(Collectors.toList()));
+				final Set<ShapeKey<T>> missing = new HashSet<>(missingKeys);
+				for (final ShapeKey<T> key : keys)
+				{
+					final boolean isMissing = missing.contains(key);
+					index.forEachOverlapping(worldBounds(key), i -> {
+						hasOverlaps[i] = true;
+						if (isMissing)
+						{
+							++numMissingOverlaps[i];
+							overlappingStaleMeshes.computeIfAbsent(key, k -> new TIntArrayList()).add(i);
+						}
+					});
+				}
+			}
+
+			/**
+			 * Remove stale meshes that overlap with selected blocks only if all of them are present.
+			 */
+			private void removeReplaced()
+			{
+				for (int i = 0; i < staleKeys.size(); ++i)
+				{
+					if (hasOverlaps[i] && numMissingOverlaps[i] == 0)
+						remove(i);
+				}
+			}
+
+			/**
+			 * Remove stale meshes that overlap with {@code key} if all selected blocks that overlap with them are present.
+			 */
+			private void removeReplacedBy(final ShapeKey<T> key)
+			{
+				final TIntArrayList overlapping = overlappingStaleMeshes.remove(key);
+				if (overlapping == null)
+					return;
+				for (int k = 0; k < overlapping.size(); ++k)
+				{
+					final int i = overlapping.get(k);
+					if (--numMissingOverlaps[i] == 0)
+						remove(i);
+				}
+			}
+
+			private void removeAll()
+			{
+				LOG.debug("Removing stale meshes: {}", staleKeys);
+				for (int i = 0; i < staleKeys.size(); ++i)
+					remove(i);
+			}
+
+			private void remove(final int i)
+			{
+				if (!isRemoved[i])
+				{
+					isRemoved[i] = true;
+					meshes.remove(staleKeys.get(i));
+				}
+			}
 		}
-		mesh.getFaces().addAll(faceIndices);
-		final PhongMaterial material = Meshes.painteraPhongMaterial();
-		//						material.diffuseColorProperty().bind( color );
-		final MeshView mv = new MeshView(mesh);
-		mv.setOpacity(1.0);
-		//						synchronized ( this.isVisible )
-		//						{
-		//							mv.visibleProperty().bind( this.isVisible );
-		//						}
-		mv.setCullFace(CullFace.FRONT);
-		mv.setMaterial(material);
-		mv.setDrawMode(DrawMode.FILL);
-		return mv;
+
 	}
 
 }
@@ -5,8 +5,9 @@ import java.util.Map;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
 import net.imglib2.Interval;
-import net.imglib2.util.Pair;
+import net.imglib2.realtransform.AffineTransform3D;
 
 public interface MeshManager<N, T>
 {
@@ -28,7 +29,7 @@ public interface MeshManager<N, T>
 
 	InterruptibleFunction<T, Interval[]>[] blockListCache();
 
-	InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache();
+	InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache();
 
 	DoubleProperty opacityProperty();
 
@@ -38,6 +39,12 @@ public interface MeshManager<N, T>
 
 	BooleanProperty areMeshesEnabledProperty();
 
+	/**
+	 *
+	 * @return transform from world coordinates into camera coordinates of the 3D viewer, used for level of detail
+	 */
+	ObjectProperty<AffineTransform3D> worldToCameraTransformProperty();
+
 	ManagedMeshSettings managedMeshSettings();
 
 	default void invalidateMeshCaches() {}
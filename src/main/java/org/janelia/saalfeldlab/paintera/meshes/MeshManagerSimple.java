@@ -28,7 +28,7 @@ import javafx.beans.value.ObservableIntegerValue;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
 import net.imglib2.Interval;
-import net.imglib2.util.Pair;
+import net.imglib2.realtransform.AffineTransform3D;
 
 /**
  * @author Philipp Hanslovsky
@@ -40,7 +40,7 @@ public class MeshManagerSimple<N, T> implements MeshManager<N, T>
 
 	private final InterruptibleFunction<T, Interval[]>[] blockListCache;
 
-	private final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache;
+	private final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache;
 
 	private final Map<N, MeshGenerator<T>> neurons = Collections.synchronizedMap(new HashMap<>());
 
@@ -72,9 +72,11 @@ public class MeshManagerSimple<N, T> implements MeshManager<N, T>
 
 	private final BooleanProperty areMeshesEnabled = new SimpleBooleanProperty(true);
 
+	private final ObjectProperty<AffineTransform3D> worldToCameraTransform = new SimpleObjectProperty<>();
+
 	public MeshManagerSimple(
 			final InterruptibleFunction<T, Interval[]>[] blockListCache,
-			final InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache,
+			final InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache,
 			final Group root,
 			final ObservableIntegerValue meshSimplificationIterations,
 			final ObservableDoubleValue smoothingLambda,
@@ -206,7 +208,7 @@ public class MeshManagerSimple<N, T> implements MeshManager<N, T>
 	}
 
 	@Override
-	public InterruptibleFunction<ShapeKey<T>, Pair<float[], float[]>>[] meshCache()
+	public InterruptibleFunction<ShapeKey<T>, PainteraTriangleMesh>[] meshCache()
 	{
 		return meshCache;
 	}
@@ -240,6 +242,12 @@ public class MeshManagerSimple<N, T> implements MeshManager<N, T>
 		return this.areMeshesEnabled;
 	}
 
+	@Override
+	public ObjectProperty<AffineTransform3D> worldToCameraTransformProperty()
+	{
+		return this.worldToCameraTransform;
+	}
+
 	@Override
 	public ManagedMeshSettings managedMeshSettings()
 	{
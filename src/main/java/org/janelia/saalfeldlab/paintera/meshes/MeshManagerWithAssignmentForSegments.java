@@ -8,8 +8,10 @@ import javafx.beans.binding.ObjectBinding;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import net.imglib2.FinalInterval;
@@ -19,14 +21,16 @@ import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.util.Pair;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
 import org.janelia.saalfeldlab.paintera.meshes.cache.BlocksForLabelDelegate;
 import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
+import org.janelia.saalfeldlab.paintera.meshes.cache.DiskMeshCache;
 import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMaskGenerators;
 import org.janelia.saalfeldlab.paintera.stream.AbstractHighlightingARGBStream;
 import org.janelia.saalfeldlab.util.HashWrapper;
@@ -65,7 +69,7 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 
 	private final InterruptibleFunction<TLongHashSet, Interval[]>[] blockListCache;
 
-	private final InterruptibleFunction<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] meshCache;
+	private final InterruptibleFunction<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] meshCache;
 
 	private final Invalidate<ShapeKey<TLongHashSet>>[] invalidateMeshCaches;
 
@@ -87,12 +91,14 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 
 	private final BooleanProperty areMeshesEnabled = new SimpleBooleanProperty(true);
 
+	private final ObjectProperty<AffineTransform3D> worldToCameraTransform = new SimpleObjectProperty<>();
+
 	private final ExecutorService bindAndUnbindService = Executors.newSingleThreadExecutor(new NamedThreadFactory("meshmanager-unbind-%d", true));
 
 	public MeshManagerWithAssignmentForSegments(
 			final DataSource<?, ?> source,
 			final InterruptibleFunction<TLongHashSet, Interval[]>[] blockListCacheForFragments,
-			final InterruptibleFunction<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] meshCache,
+			final InterruptibleFunction<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] meshCache,
 			final Invalidate<ShapeKey<TLongHashSet>>[] invalidateMeshCaches,
 			final Group root,
 			final ManagedMeshSettings meshSettings,
@@ -109,7 +115,8 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		this.selectedSegments = selectedSegments;
 		this.stream = stream;
 
-		root.getChildren().add(this.root);
+		// states may be deserialized on loader threads, only modify the scene graph on the FX application thread
+		InvokeOnJavaFXApplicationThread.invoke(() -> root.getChildren().add(this.root));
 
 		this.meshSettings = meshSettings;
 
@@ -211,8 +218,10 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 				meshSettings.smoothingLambdaProperty().get(),
 				meshSettings.smoothingIterationsProperty().get(),
 				managers,
-				workers
+				workers,
+				sourceToWorld()
 		);
+		nfx.worldToCameraTransformProperty().bind(this.worldToCameraTransform);
 		final BooleanProperty isManaged = this.meshSettings.isManagedProperty(id);
 		final ObjectBinding<MeshSettings> segmentMeshSettings = Bindings.createObjectBinding(
 				() -> isManaged.get() ? this.meshSettings.getGlobalSettings() : meshSettings,
@@ -220,10 +229,27 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		nfx.meshSettingsProperty().bind(segmentMeshSettings);
 
 		neurons.put(idObject, nfx);
-		root.getChildren().add(nfx.getRoot());
+		updateSceneGraph();
 
 	}
 
+	/**
+	 * Set the children of {@link #root} to the roots of all current meshes on the FX application thread. The children
+	 * are read from {@link #neurons} when the update runs, i.e. updates that are queued from different threads do not
+	 * need to be ordered.
+	 */
+	private void updateSceneGraph()
+	{
+		InvokeOnJavaFXApplicationThread.invoke(() -> {
+			final List<Node> existingGroups;
+			synchronized (neurons)
+			{
+				existingGroups = neurons.values().stream().map(MeshGenerator::getRoot).collect(Collectors.toList());
+			}
+			root.getChildren().setAll(existingGroups);
+		});
+	}
+
 	@Override
 	public void removeMesh(final Long id)
 	{
@@ -243,9 +269,9 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		toBeRemoved.values().forEach(MeshGenerator::interrupt);
 
 		neurons.entrySet().removeAll(toBeRemoved.entrySet());
-		final List<Node> existingGroups = neurons.values().stream().map(MeshGenerator::getRoot).collect(Collectors.toList());
-		root.getChildren().setAll(existingGroups);
+		updateSceneGraph();
 		toBeRemoved.values().forEach(m -> m.meshSettingsProperty().unbind());
+		toBeRemoved.values().forEach(m -> m.worldToCameraTransformProperty().unbind());
 		// unbind() for each mesh here takes way too long for some reason. Do it on a separate thread to avoid app freezing.
 		bindAndUnbindService.submit(() -> toBeRemoved.values().forEach(m -> m.meshSettingsProperty().set(null)));
 	}
@@ -295,7 +321,7 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 	}
 
 	@Override
-	public InterruptibleFunction<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] meshCache()
+	public InterruptibleFunction<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] meshCache()
 	{
 		return this.meshCache;
 	}
@@ -325,6 +351,23 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		return this.areMeshesEnabled;
 	}
 
+	@Override
+	public ObjectProperty<AffineTransform3D> worldToCameraTransformProperty()
+	{
+		return this.worldToCameraTransform;
+	}
+
+	private AffineTransform3D[] sourceToWorld()
+	{
+		final AffineTransform3D[] transforms = new AffineTransform3D[source.getNumMipmapLevels()];
+		for (int level = 0; level < transforms.length; ++level)
+		{
+			transforms[level] = new AffineTransform3D();
+			source.getSourceTransform(0, level, transforms[level]);
+		}
+		return transforms;
+	}
+
 	@Override
 	public ManagedMeshSettings managedMeshSettings()
 	{
@@ -343,7 +386,37 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 			final AbstractHighlightingARGBStream stream,
 			final Group meshesGroup,
 			final InterruptibleFunction<Long, Interval[]>[] backgroundBlockCaches,
-			final Function<CacheLoader<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, Cache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>> makeCache,
+			final Function<CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh>, Cache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>> makeCache,
+			final ExecutorService meshManagerExecutors,
+			final ExecutorService meshWorkersExecutors
+			)
+	{
+		return fromBlockLookup(
+				dataSource,
+				selectedSegments,
+				stream,
+				meshesGroup,
+				backgroundBlockCaches,
+				makeCache,
+				null,
+				meshManagerExecutors,
+				meshWorkersExecutors);
+	}
+
+	/**
+	 *
+	 * @param diskMeshCache persistent tier in between {@code makeCache} and the mesh generators. Blocks are
+	 *                      invalidated when the canvas of a {@link MaskedSource} is committed, all meshes are
+	 *                      invalidated on {@link #refreshMeshes()}. Pass {@code null} to disable.
+	 */
+	public static <D extends IntegerType<D>> MeshManagerWithAssignmentForSegments fromBlockLookup(
+			final DataSource<D, ?> dataSource,
+			final SelectedSegments selectedSegments,
+			final AbstractHighlightingARGBStream stream,
+			final Group meshesGroup,
+			final InterruptibleFunction<Long, Interval[]>[] backgroundBlockCaches,
+			final Function<CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh>, Cache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>> makeCache,
+			final DiskMeshCache<TLongHashSet> diskMeshCache,
 			final ExecutorService meshManagerExecutors,
 			final ExecutorService meshWorkersExecutors
 			)
@@ -366,11 +439,11 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 		final D d = dataSource.getDataType();
 		final Function<TLongHashSet, Converter<D, BoolType>> segmentMaskGenerator = SegmentMaskGenerators.forType(d);
 
-		final InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] meshCaches = CacheUtils
+		final InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] meshCaches = CacheUtils
 				.segmentMeshCacheLoaders(
 						dataSource,
 						segmentMaskGenerator,
-						makeCache);
+						diskMeshCache == null ? makeCache : loader -> makeCache.apply(diskMeshCache.withLoader(loader)));
 
 		final MeshManagerWithAssignmentForSegments manager = new MeshManagerWithAssignmentForSegments(
 				dataSource,
@@ -383,8 +456,13 @@ public class MeshManagerWithAssignmentForSegments implements MeshManager<Long, T
 				stream,
 				meshManagerExecutors,
 				meshWorkersExecutors);
+		if (diskMeshCache != null && isMaskedSource)
+			((MaskedSource<?, ?>) dataSource).addOnCanvasPersistedListener(diskMeshCache::invalidate);
 		manager.addRefreshMeshesListener(() -> {
 			LOG.debug("Refreshing meshes!");
+			// clear disk tier first so that it does not re-populate the in-memory caches
+			if (diskMeshCache != null)
+				diskMeshCache.invalidateAll();
 			Stream.of(meshCaches).forEach(Invalidate::invalidateAll);
 			final long[] selection     = selectedSegments.getSelectedIds().getActiveIds();
 			final long   lastSelection = selectedSegments.getSelectedIds().getLastSelection();
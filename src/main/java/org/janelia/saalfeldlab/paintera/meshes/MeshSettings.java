@@ -20,6 +20,8 @@ public class MeshSettings
 
 	private final SimpleIntegerProperty simplificationIterations = new SimpleIntegerProperty(0);
 
+	private final DoubleProperty simplificationReductionRatio = new SimpleDoubleProperty(Simplify.DEFAULT_REDUCTION_RATIO);
+
 	private final DoubleProperty smoothingLambda = new SimpleDoubleProperty(Smooth.DEFAULT_LAMBDA);
 
 	private final IntegerProperty smoothingIterations = new SimpleIntegerProperty(Smooth.DEFAULT_ITERATIONS);
@@ -34,6 +36,10 @@ public class MeshSettings
 
 	private final BooleanProperty isVisible = new SimpleBooleanProperty(true);
 
+	private final BooleanProperty levelOfDetail = new SimpleBooleanProperty(false);
+
+	private final DoubleProperty levelOfDetailThreshold = new SimpleDoubleProperty(LevelOfDetail.DEFAULT_THRESHOLD);
+
 	public MeshSettings(final int numScaleLevels)
 	{
 		super();
@@ -51,6 +57,16 @@ public class MeshSettings
 		return this.simplificationIterations;
 	}
 
+	/**
+	 *
+	 * @return fraction of triangles removed in each of the {@link #simplificationIterationsProperty() simplification
+	 * iterations}, in {@code (0, 1)}.
+	 */
+	public DoubleProperty simplificationReductionRatioProperty()
+	{
+		return this.simplificationReductionRatio;
+	}
+
 	public DoubleProperty smoothingLambdaProperty()
 	{
 		return this.smoothingLambda;
@@ -86,6 +102,26 @@ public class MeshSettings
 		return this.isVisible;
 	}
 
+	/**
+	 *
+	 * @return if {@code true}, pick scale level for each block based on distance to camera, from the finest level
+	 * up to {@link #scaleLevelProperty()}.
+	 */
+	public BooleanProperty levelOfDetailProperty()
+	{
+		return this.levelOfDetail;
+	}
+
+	/**
+	 *
+	 * @return blocks are refined while their projected size, i.e. the ratio of block diagonal and distance to the
+	 * camera, exceeds this threshold. Smaller values pick finer scale levels.
+	 */
+	public DoubleProperty levelOfDetailThresholdProperty()
+	{
+		return this.levelOfDetailThreshold;
+	}
+
 	public int numScaleLevels()
 	{
 		return this.numScaleLevels;
@@ -102,6 +138,7 @@ public class MeshSettings
 	{
 		this.scaleLevel.set(that.scaleLevel.get());
 		this.simplificationIterations.set(that.simplificationIterations.get());
+		this.simplificationReductionRatio.set(that.simplificationReductionRatio.get());
 		this.smoothingLambda.set(that.smoothingLambda.get());
 		this.smoothingIterations.set(that.smoothingIterations.get());
 		this.opacity.set(that.opacity.get());
@@ -109,6 +146,8 @@ public class MeshSettings
 		this.cullFace.set(that.cullFace.get());
 		this.inflate.set(that.inflate.get());
 		this.isVisible.set(that.isVisible.get());
+		this.levelOfDetail.set(that.levelOfDetail.get());
+		this.levelOfDetailThreshold.set(that.levelOfDetailThreshold.get());
 	}
 
 }
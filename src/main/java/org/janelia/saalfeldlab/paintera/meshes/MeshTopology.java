@@ -0,0 +1,168 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency of an indexed triangle mesh in compressed sparse row layout: the neighbors of vertex {@code v} are
+ * {@code neighbors[neighborOffsets[v]]} to {@code neighbors[neighborOffsets[v + 1] - 1]} (sorted, without duplicates),
+ * and likewise for the triangles that contain {@code v}. Built once per mesh and shared by {@link Smooth smoothing},
+ * boundary detection, and {@link AverageNormals normal averaging}. Uses only primitive arrays.
+ *
+ * A vertex is on the boundary if any of its edges belongs to a single triangle only.
+ */
+public class MeshTopology
+{
+
+	private final int numVertices;
+
+	private final int[] neighborOffsets;
+
+	private final int[] neighbors;
+
+	private final int[] triangleOffsets;
+
+	private final int[] triangles;
+
+	private final boolean[] boundary;
+
+	private MeshTopology(
+			final int numVertices,
+			final int[] neighborOffsets,
+			final int[] neighbors,
+			final int[] triangleOffsets,
+			final int[] triangles,
+			final boolean[] boundary)
+	{
+		this.numVertices = numVertices;
+		this.neighborOffsets = neighborOffsets;
+		this.neighbors = neighbors;
+		this.triangleOffsets = triangleOffsets;
+		this.triangles = triangles;
+		this.boundary = boundary;
+	}
+
+	/**
+	 * @param numVertices number of vertices, i.e. one more than the largest index
+	 * @param indices three vertex indices per triangle
+	 */
+	public static MeshTopology fromIndices(final int numVertices, final int[] indices)
+	{
+		assert indices.length % 3 == 0;
+
+		// vertex -> triangles
+		final int[] triangleOffsets = new int[numVertices + 1];
+		for (final int index : indices)
+			++triangleOffsets[index + 1];
+		for (int v = 0; v < numVertices; ++v)
+			triangleOffsets[v + 1] += triangleOffsets[v];
+
+		final int[] triangles = new int[indices.length];
+		final int[] fill = Arrays.copyOf(triangleOffsets, numVertices);
+		for (int corner = 0; corner < indices.length; ++corner)
+			triangles[fill[indices[corner]]++] = corner / 3;
+
+		// vertex -> other two corners of each triangle, with repetitions: an edge that is shared by n triangles
+		// appears n times in the list of each of its vertices
+		final int[] neighbors = new int[2 * indices.length];
+		System.arraycopy(triangleOffsets, 0, fill, 0, numVertices);
+		for (int corner = 0; corner < indices.length; ++corner)
+		{
+			final int first = corner - corner % 3;
+			final int k = 2 * fill[indices[corner]]++;
+			neighbors[k] = indices[first + (corner + 1 - first) % 3];
+			neighbors[k + 1] = indices[first + (corner + 2 - first) % 3];
+		}
+
+		// sort and deduplicate each segment, count multiplicity of each edge
+		final boolean[] boundary = new boolean[numVertices];
+		final int[] neighborOffsets = new int[numVertices + 1];
+		int size = 0;
+		for (int v = 0; v < numVertices; ++v)
+		{
+			final int start = 2 * triangleOffsets[v];
+			final int stop = 2 * triangleOffsets[v + 1];
+			Arrays.sort(neighbors, start, stop);
+			neighborOffsets[v] = size;
+			for (int i = start; i < stop; )
+			{
+				final int neighbor = neighbors[i];
+				int j = i + 1;
+				while (j < stop && neighbors[j] == neighbor)
+					++j;
+				if (neighbor != v)
+				{
+					boundary[v] |= j - i < 2;
+					neighbors[size++] = neighbor;
+				}
+				i = j;
+			}
+		}
+		neighborOffsets[numVertices] = size;
+
+		return new MeshTopology(
+				numVertices,
+				neighborOffsets,
+				Arrays.copyOf(neighbors, size),
+				triangleOffsets,
+				triangles,
+				boundary);
+	}
+
+	public int numVertices()
+	{
+		return numVertices;
+	}
+
+	public int numNeighbors(final int vertex)
+	{
+		return neighborOffsets[vertex + 1] - neighborOffsets[vertex];
+	}
+
+	public int neighborsStart(final int vertex)
+	{
+		return neighborOffsets[vertex];
+	}
+
+	public int neighborsStop(final int vertex)
+	{
+		return neighborOffsets[vertex + 1];
+	}
+
+	/**
+	 * @param i position between {@link #neighborsStart(int)} (inclusive) and {@link #neighborsStop(int)} (exclusive)
+	 */
+	public int neighbor(final int i)
+	{
+		return neighbors[i];
+	}
+
+	public int numTriangles(final int vertex)
+	{
+		return triangleOffsets[vertex + 1] - triangleOffsets[vertex];
+	}
+
+	public int trianglesStart(final int vertex)
+	{
+		return triangleOffsets[vertex];
+	}
+
+	public int trianglesStop(final int vertex)
+	{
+		return triangleOffsets[vertex + 1];
+	}
+
+	/**
+	 * @param i position between {@link #trianglesStart(int)} (inclusive) and {@link #trianglesStop(int)} (exclusive)
+	 * @return index of triangle, i.e. its first vertex index is at {@code 3 * triangle}
+	 */
+	public int triangle(final int i)
+	{
+		return triangles[i];
+	}
+
+	public boolean isBoundary(final int vertex)
+	{
+		return boundary[vertex];
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+/**
+ * Indexed triangle mesh with one normal per vertex. Vertices are shared between adjacent triangles and are
+ * referenced by index from the face array.
+ */
+public class PainteraTriangleMesh
+{
+
+	private static final PainteraTriangleMesh EMPTY = new PainteraTriangleMesh(new float[0], new float[0], new int[0]);
+
+	private final float[] vertices;
+
+	private final float[] normals;
+
+	private final int[] indices;
+
+	/**
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param normals {@code x, y, z} for each vertex, i.e. same length as {@code vertices}
+	 * @param indices three vertex indices per triangle
+	 */
+	public PainteraTriangleMesh(final float[] vertices, final float[] normals, final int[] indices)
+	{
+		assert vertices.length % 3 == 0;
+		assert indices.length % 3 == 0;
+		assert vertices.length == normals.length : "Vertices and normals must have the same size.";
+		this.vertices = vertices;
+		this.normals = normals;
+		this.indices = indices;
+	}
+
+	public static PainteraTriangleMesh empty()
+	{
+		return EMPTY;
+	}
+
+	public float[] getVertices()
+	{
+		return this.vertices;
+	}
+
+	public float[] getNormals()
+	{
+		return this.normals;
+	}
+
+	public int[] getIndices()
+	{
+		return this.indices;
+	}
+
+	public int getNumVertices()
+	{
+		return this.vertices.length / 3;
+	}
+
+	public int getNumTriangles()
+	{
+		return this.indices.length / 3;
+	}
+
+	public boolean isEmpty()
+	{
+		return this.indices.length == 0;
+	}
+
+	/**
+	 *
+	 * @return approximate number of bytes occupied by this mesh
+	 */
+	public long sizeInBytes()
+	{
+		return 4L * (vertices.length + normals.length + indices.length);
+	}
+
+}
@@ -14,6 +14,8 @@ public class ShapeKey<T>
 
 	private final int simplificationIterations;
 
+	private final double simplificationReductionRatio;
+
 	private final double smoothingLambda;
 
 	private final int smoothingIterations;
@@ -26,6 +28,7 @@ public class ShapeKey<T>
 			final T shapeId,
 			final int scaleIndex,
 			final int simplificationIterations,
+			final double simplificationReductionRatio,
 			final double smoothingLambda,
 			final int smoothingIterations,
 			final long[] min,
@@ -34,6 +37,7 @@ public class ShapeKey<T>
 		this.shapeId = shapeId;
 		this.scaleIndex = scaleIndex;
 		this.simplificationIterations = simplificationIterations;
+		this.simplificationReductionRatio = simplificationReductionRatio;
 		this.smoothingLambda = smoothingLambda;
 		this.smoothingIterations = smoothingIterations;
 		this.min = min;
@@ -44,10 +48,11 @@ public class ShapeKey<T>
 	public String toString()
 	{
 		return String.format(
-				"{shapeId=%s, scaleIndex=%d, simplifications=%d, smoothingLambda=%f, smoothings=%d, min=%s, max=%s}",
+				"{shapeId=%s, scaleIndex=%d, simplifications=%d, reductionRatio=%f, smoothingLambda=%f, smoothings=%d, min=%s, max=%s}",
 				shapeId,
 				scaleIndex,
 				simplificationIterations,
+				simplificationReductionRatio,
 				smoothingLambda,
 				smoothingIterations,
 				Arrays.toString(min), Arrays.toString(max)
@@ -60,6 +65,7 @@ public class ShapeKey<T>
 		int result = scaleIndex;
 		result = 31 * result + shapeId.hashCode();
 		result = 31 * result + simplificationIterations;
+		result = 31 * result + Double.hashCode(simplificationReductionRatio);
 		result = 31 * result + Double.hashCode(smoothingLambda);
 		result = 31 * result + smoothingIterations;
 		result = 31 * result + Arrays.hashCode(this.min);
@@ -76,6 +82,7 @@ public class ShapeKey<T>
 			return shapeId.equals(otherShapeKey.shapeId) &&
 					otherShapeKey.scaleIndex == scaleIndex &&
 					otherShapeKey.simplificationIterations == this.simplificationIterations &&
+					otherShapeKey.simplificationReductionRatio == this.simplificationReductionRatio &&
 					otherShapeKey.smoothingLambda == this.smoothingLambda &&
 					otherShapeKey.smoothingIterations == this.smoothingIterations &&
 					Arrays.equals(otherShapeKey.min, min) &&
@@ -99,6 +106,11 @@ public class ShapeKey<T>
 		return simplificationIterations;
 	}
 
+	public double simplificationReductionRatio()
+	{
+		return simplificationReductionRatio;
+	}
+
 	public double smoothingLambda()
 	{
 		return smoothingLambda;
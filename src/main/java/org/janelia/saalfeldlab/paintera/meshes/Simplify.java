@@ -1,12 +1,24 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Calculate and assign surface normals of a triangle mesh.
+ * Simplify an indexed triangle mesh with quadric error metric edge collapses as described in
+ *
+ * Garland, M. and Heckbert, P. S.: Surface Simplification Using Quadric Error Metrics. SIGGRAPH 1997.
+ *
+ * Vertices on the boundary of the mesh, i.e. vertices that are part of an edge that belongs to a single triangle only,
+ * are never moved or removed. Meshes are generated per block and the boundary of a block mesh is where it meets the
+ * meshes of the neighboring blocks, so fixing boundary vertices avoids cracks between blocks.
  *
  * @author Philipp Hanslovsky
  */
@@ -17,10 +29,529 @@ public class Simplify
 	 */
 	private static final Logger LOG = LoggerFactory.getLogger(Simplify.class);
 
-	public static Pair<float[], float[]> simplify(final float[] vertices, final float[] normals)
+	public static final double DEFAULT_REDUCTION_RATIO = 0.5;
+
+	/**
+	 * Reject collapses that rotate any adjacent triangle normal by more than ~90 degrees.
+	 */
+	private static final double MIN_NORMAL_DOT_PRODUCT = 0.0;
+
+	private static final int QUADRIC_SIZE = 10;
+
+	private static class Collapse implements Comparable<Collapse>
+	{
+		private final int v1;
+
+		private final int v2;
+
+		private final int version1;
+
+		private final int version2;
+
+		private final double cost;
+
+		private final double x, y, z;
+
+		private Collapse(
+				final int v1,
+				final int v2,
+				final int version1,
+				final int version2,
+				final double cost,
+				final double x,
+				final double y,
+				final double z)
+		{
+			this.v1 = v1;
+			this.v2 = v2;
+			this.version1 = version1;
+			this.version2 = version2;
+			this.cost = cost;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		@Override
+		public int compareTo(final Collapse other)
+		{
+			return Double.compare(this.cost, other.cost);
+		}
+	}
+
+	/**
+	 * @param vertices
+	 * 		{@code x, y, z} for each vertex
+	 * @param indices
+	 * 		three vertex indices per triangle
+	 * @param iterations
+	 * 		number of simplification iterations. Each iteration reduces the number of triangles by
+	 * 		{@code reductionRatio}, if possible.
+	 * @param reductionRatio
+	 * 		fraction of triangles that should be removed in each iteration, in {@code (0, 1)}
+	 *
+	 * @return simplified vertices and triangle indices
+	 */
+	public static Pair<float[], int[]> simplify(
+			final float[] vertices,
+			final int[] indices,
+			final int iterations,
+			final double reductionRatio)
+	{
+		if (iterations <= 0 || indices.length == 0)
+			return new ValuePair<>(vertices, indices);
+
+		if (!(reductionRatio > 0.0 && reductionRatio < 1.0))
+			throw new IllegalArgumentException("Reduction ratio must be in (0, 1) but got " + reductionRatio);
+
+		final int numTriangles = indices.length / 3;
+		final double targetRatio = Math.pow(1.0 - reductionRatio, iterations);
+		final int targetNumTriangles = (int) Math.ceil(numTriangles * targetRatio);
+		LOG.debug(
+				"Simplifying {} vertices and {} triangles to {} triangles ({} iterations with ratio {})",
+				vertices.length / 3,
+				numTriangles,
+				targetNumTriangles,
+				iterations,
+				reductionRatio);
+
+		final Simplifier simplifier = new Simplifier(vertices, indices);
+		simplifier.collapseUntil(targetNumTriangles);
+		final Pair<float[], int[]> simplified = simplifier.compact();
+		LOG.debug(
+				"Simplified mesh has {} vertices and {} triangles",
+				simplified.getA().length / 3,
+				simplified.getB().length / 3);
+		return simplified;
+	}
+
+	private static class Simplifier
 	{
 
-		LOG.debug("Simplifying {} vertices and {} normals", vertices.length, normals.length);
-		return new ValuePair<>(vertices, normals);
+		private final double[] vertices;
+
+		private final int[] indices;
+
+		private final int numVertices;
+
+		private final double[] quadrics;
+
+		private final boolean[] isFixed;
+
+		private final boolean[] isRemovedVertex;
+
+		private final boolean[] isRemovedTriangle;
+
+		private final int[] versions;
+
+		private final TIntArrayList[] vertexTriangles;
+
+		private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+
+		private int numTriangles;
+
+		private Simplifier(final float[] vertices, final int[] indices)
+		{
+			this.numVertices = vertices.length / 3;
+			this.vertices = new double[vertices.length];
+			for (int i = 0; i < vertices.length; ++i)
+				this.vertices[i] = vertices[i];
+			this.indices = indices.clone();
+			this.numTriangles = indices.length / 3;
+			this.quadrics = new double[numVertices * QUADRIC_SIZE];
+			this.isFixed = new boolean[numVertices];
+			this.isRemovedVertex = new boolean[numVertices];
+			this.isRemovedTriangle = new boolean[numTriangles];
+			this.versions = new int[numVertices];
+			this.vertexTriangles = new TIntArrayList[numVertices];
+			for (int v = 0; v < numVertices; ++v)
+				this.vertexTriangles[v] = new TIntArrayList();
+
+			final TLongIntHashMap edgeCounts = new TLongIntHashMap();
+			final double[] plane = new double[4];
+			for (int t = 0; t < numTriangles; ++t)
+			{
+				final int offset = 3 * t;
+				final int v1 = this.indices[offset + 0];
+				final int v2 = this.indices[offset + 1];
+				final int v3 = this.indices[offset + 2];
+				if (v1 == v2 || v2 == v3 || v1 == v3)
+				{
+					// degenerate triangles do not contribute to the surface
+					removeTriangle(t);
+					continue;
+				}
+				vertexTriangles[v1].add(t);
+				vertexTriangles[v2].add(t);
+				vertexTriangles[v3].add(t);
+				edgeCounts.adjustOrPutValue(edgeKey(v1, v2), 1, 1);
+				edgeCounts.adjustOrPutValue(edgeKey(v2, v3), 1, 1);
+				edgeCounts.adjustOrPutValue(edgeKey(v3, v1), 1, 1);
+				if (plane(v1, v2, v3, plane))
+				{
+					addPlaneQuadric(plane, v1);
+					addPlaneQuadric(plane, v2);
+					addPlaneQuadric(plane, v3);
+				}
+			}
+
+			edgeCounts.forEachEntry((edge, count) -> {
+				if (count != 2)
+				{
+					isFixed[(int) (edge >>> 32)] = true;
+					isFixed[(int) edge] = true;
+				}
+				return true;
+			});
+
+			edgeCounts.forEachKey(edge -> {
+				pushCollapse((int) (edge >>> 32), (int) edge);
+				return true;
+			});
+		}
+
+		private void collapseUntil(final int targetNumTriangles)
+		{
+			while (numTriangles > targetNumTriangles && !queue.isEmpty())
+			{
+				final Collapse collapse = queue.poll();
+				if (isStale(collapse))
+					continue;
+				collapse(collapse);
+			}
+		}
+
+		private boolean isStale(final Collapse collapse)
+		{
+			return isRemovedVertex[collapse.v1]
+					|| isRemovedVertex[collapse.v2]
+					|| versions[collapse.v1] != collapse.version1
+					|| versions[collapse.v2] != collapse.version2;
+		}
+
+		/**
+		 * Collapse {@code collapse.v2} into {@code collapse.v1}.
+		 */
+		private void collapse(final Collapse collapse)
+		{
+			final int keep = collapse.v1;
+			final int remove = collapse.v2;
+
+			if (!isManifoldCollapse(keep, remove))
+				return;
+
+			if (flipsNormal(keep, remove, collapse.x, collapse.y, collapse.z) ||
+					flipsNormal(remove, keep, collapse.x, collapse.y, collapse.z))
+				return;
+
+			final int k = 3 * keep;
+			vertices[k + 0] = collapse.x;
+			vertices[k + 1] = collapse.y;
+			vertices[k + 2] = collapse.z;
+
+			final TIntArrayList keepTriangles = vertexTriangles[keep];
+			final TIntArrayList removeTriangles = vertexTriangles[remove];
+			for (int i = 0; i < removeTriangles.size(); ++i)
+			{
+				final int t = removeTriangles.get(i);
+				if (isRemovedTriangle[t])
+					continue;
+				final int offset = 3 * t;
+				if (indices[offset] == keep || indices[offset + 1] == keep || indices[offset + 2] == keep)
+				{
+					removeTriangle(t);
+					continue;
+				}
+				for (int c = offset; c < offset + 3; ++c)
+					if (indices[c] == remove)
+						indices[c] = keep;
+				keepTriangles.add(t);
+			}
+			removeTriangles.clear();
+			removeRemovedTriangles(keepTriangles);
+
+			isRemovedVertex[remove] = true;
+			final int q1 = keep * QUADRIC_SIZE;
+			final int q2 = remove * QUADRIC_SIZE;
+			for (int i = 0; i < QUADRIC_SIZE; ++i)
+				quadrics[q1 + i] += quadrics[q2 + i];
+
+			++versions[keep];
+			final TIntHashSet neighbors = neighbors(keep);
+			neighbors.forEach(neighbor -> {
+				// neighbor edges have changed as well, invalidate previous collapses of neighbors with keep
+				pushCollapse(keep, neighbor);
+				return true;
+			});
+		}
+
+		private void removeTriangle(final int t)
+		{
+			isRemovedTriangle[t] = true;
+			--numTriangles;
+		}
+
+		private void removeRemovedTriangles(final TIntArrayList triangles)
+		{
+			int target = 0;
+			for (int i = 0; i < triangles.size(); ++i)
+			{
+				final int t = triangles.get(i);
+				if (!isRemovedTriangle[t])
+					triangles.set(target++, t);
+			}
+			triangles.remove(target, triangles.size() - target);
+		}
+
+		private TIntHashSet neighbors(final int v)
+		{
+			final TIntHashSet neighbors = new TIntHashSet();
+			final TIntArrayList triangles = vertexTriangles[v];
+			for (int i = 0; i < triangles.size(); ++i)
+			{
+				final int t = triangles.get(i);
+				if (isRemovedTriangle[t])
+					continue;
+				final int offset = 3 * t;
+				for (int c = offset; c < offset + 3; ++c)
+					if (indices[c] != v)
+						neighbors.add(indices[c]);
+			}
+			return neighbors;
+		}
+
+		/**
+		 * An interior edge can be collapsed without creating non-manifold geometry if, and only if, its end points
+		 * share exactly two neighbors (link condition).
+		 */
+		private boolean isManifoldCollapse(final int v1, final int v2)
+		{
+			final TIntHashSet neighbors1 = neighbors(v1);
+			if (!neighbors1.contains(v2))
+				return false;
+			final TIntHashSet neighbors2 = neighbors(v2);
+			neighbors1.retainAll(neighbors2);
+			return neighbors1.size() == 2;
+		}
+
+		/**
+		 * Check if moving {@code v} to {@code (x, y, z)} flips any of the triangles of {@code v} that do not contain
+		 * {@code other} (triangles that contain both are removed by the collapse).
+		 */
+		private boolean flipsNormal(final int v, final int other, final double x, final double y, final double z)
+		{
+			final TIntArrayList triangles = vertexTriangles[v];
+			final double[] before = new double[4];
+			final double[] after = new double[4];
+			final double[] position = new double[3];
+			final int i = 3 * v;
+			for (int k = 0; k < triangles.size(); ++k)
+			{
+				final int t = triangles.get(k);
+				if (isRemovedTriangle[t])
+					continue;
+				final int offset = 3 * t;
+				final int v1 = indices[offset + 0];
+				final int v2 = indices[offset + 1];
+				final int v3 = indices[offset + 2];
+				if (v1 == other || v2 == other || v3 == other)
+					continue;
+				if (!plane(v1, v2, v3, before))
+					continue;
+
+				position[0] = vertices[i + 0];
+				position[1] = vertices[i + 1];
+				position[2] = vertices[i + 2];
+				vertices[i + 0] = x;
+				vertices[i + 1] = y;
+				vertices[i + 2] = z;
+				final boolean isValid = plane(v1, v2, v3, after);
+				vertices[i + 0] = position[0];
+				vertices[i + 1] = position[1];
+				vertices[i + 2] = position[2];
+
+				if (!isValid || before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < MIN_NORMAL_DOT_PRODUCT)
+					return true;
+			}
+			return false;
+		}
+
+		private void pushCollapse(final int v1, final int v2)
+		{
+			final boolean isFixed1 = isFixed[v1];
+			final boolean isFixed2 = isFixed[v2];
+			if (isFixed1 && isFixed2)
+				return;
+
+			// fixed vertices must survive the collapse and keep their position
+			final int keep = isFixed2 ? v2 : v1;
+			final int remove = keep == v1 ? v2 : v1;
+
+			final double[] q = new double[QUADRIC_SIZE];
+			final int q1 = v1 * QUADRIC_SIZE;
+			final int q2 = v2 * QUADRIC_SIZE;
+			for (int i = 0; i < QUADRIC_SIZE; ++i)
+				q[i] = quadrics[q1 + i] + quadrics[q2 + i];
+
+			final double[] target = new double[3];
+			if (isFixed1 || isFixed2)
+				getVertex(keep, target);
+			else
+				optimalPosition(q, v1, v2, target);
+
+			final double cost = Math.max(error(q, target[0], target[1], target[2]), 0.0);
+			queue.add(new Collapse(keep, remove, versions[keep], versions[remove], cost, target[0], target[1], target[2]));
+		}
+
+		/**
+		 * Minimize the quadric error by solving the 3x3 linear system. Fall back to the best of end points and
+		 * mid point if the system is (close to) singular.
+		 */
+		private void optimalPosition(final double[] q, final int v1, final int v2, final double[] target)
+		{
+			// q = [a2, ab, ac, ad, b2, bc, bd, c2, cd, d2]
+			final double a00 = q[0], a01 = q[1], a02 = q[2];
+			final double a11 = q[4], a12 = q[5];
+			final double a22 = q[7];
+			final double b0 = -q[3], b1 = -q[6], b2 = -q[8];
+
+			final double c00 = a11 * a22 - a12 * a12;
+			final double c01 = a02 * a12 - a01 * a22;
+			final double c02 = a01 * a12 - a02 * a11;
+			final double det = a00 * c00 + a01 * c01 + a02 * c02;
+
+			if (Math.abs(det) > 1e-12)
+			{
+				final double c11 = a00 * a22 - a02 * a02;
+				final double c12 = a01 * a02 - a00 * a12;
+				final double c22 = a00 * a11 - a01 * a01;
+				target[0] = (c00 * b0 + c01 * b1 + c02 * b2) / det;
+				target[1] = (c01 * b0 + c11 * b1 + c12 * b2) / det;
+				target[2] = (c02 * b0 + c12 * b1 + c22 * b2) / det;
+				return;
+			}
+
+			final double[] p1 = new double[3];
+			final double[] p2 = new double[3];
+			getVertex(v1, p1);
+			getVertex(v2, p2);
+			final double e1 = error(q, p1[0], p1[1], p1[2]);
+			final double e2 = error(q, p2[0], p2[1], p2[2]);
+			final double mx = 0.5 * (p1[0] + p2[0]);
+			final double my = 0.5 * (p1[1] + p2[1]);
+			final double mz = 0.5 * (p1[2] + p2[2]);
+			final double em = error(q, mx, my, mz);
+			if (em <= e1 && em <= e2)
+			{
+				target[0] = mx;
+				target[1] = my;
+				target[2] = mz;
+			}
+			else
+				System.arraycopy(e1 <= e2 ? p1 : p2, 0, target, 0, 3);
+		}
+
+		private void getVertex(final int v, final double[] target)
+		{
+			final int i = 3 * v;
+			target[0] = vertices[i + 0];
+			target[1] = vertices[i + 1];
+			target[2] = vertices[i + 2];
+		}
+
+		/**
+		 * Unit normal {@code (a, b, c)} and offset {@code d} of the plane through the triangle.
+		 *
+		 * @return {@code false} if the triangle is degenerate
+		 */
+		private boolean plane(final int v1, final int v2, final int v3, final double[] plane)
+		{
+			final int i1 = 3 * v1, i2 = 3 * v2, i3 = 3 * v3;
+			final double d11 = vertices[i2 + 0] - vertices[i1 + 0];
+			final double d12 = vertices[i2 + 1] - vertices[i1 + 1];
+			final double d13 = vertices[i2 + 2] - vertices[i1 + 2];
+			final double d21 = vertices[i3 + 0] - vertices[i1 + 0];
+			final double d22 = vertices[i3 + 1] - vertices[i1 + 1];
+			final double d23 = vertices[i3 + 2] - vertices[i1 + 2];
+			final double n1 = d12 * d23 - d13 * d22;
+			final double n2 = d13 * d21 - d11 * d23;
+			final double n3 = d11 * d22 - d12 * d21;
+			final double norm = Math.sqrt(n1 * n1 + n2 * n2 + n3 * n3);
+			if (norm == 0.0)
+				return false;
+			plane[0] = n1 / norm;
+			plane[1] = n2 / norm;
+			plane[2] = n3 / norm;
+			plane[3] = -(plane[0] * vertices[i1 + 0] + plane[1] * vertices[i1 + 1] + plane[2] * vertices[i1 + 2]);
+			return true;
+		}
+
+		private void addPlaneQuadric(final double[] plane, final int v)
+		{
+			final double a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+			final int o = v * QUADRIC_SIZE;
+			quadrics[o + 0] += a * a;
+			quadrics[o + 1] += a * b;
+			quadrics[o + 2] += a * c;
+			quadrics[o + 3] += a * d;
+			quadrics[o + 4] += b * b;
+			quadrics[o + 5] += b * c;
+			quadrics[o + 6] += b * d;
+			quadrics[o + 7] += c * c;
+			quadrics[o + 8] += c * d;
+			quadrics[o + 9] += d * d;
+		}
+
+		private static double error(final double[] q, final double x, final double y, final double z)
+		{
+			return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+					+ q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+					+ q[7] * z * z + 2 * q[8] * z
+					+ q[9];
+		}
+
+		/**
+		 * Remove unreferenced vertices and re-index triangles.
+		 */
+		private Pair<float[], int[]> compact()
+		{
+			final int[] newIndex = new int[numVertices];
+			Arrays.fill(newIndex, -1);
+			final int[] compactIndices = new int[3 * numTriangles];
+			int numCompactVertices = 0;
+			int c = 0;
+			for (int t = 0; t < isRemovedTriangle.length; ++t)
+			{
+				if (isRemovedTriangle[t])
+					continue;
+				for (int offset = 3 * t, k = 0; k < 3; ++k)
+				{
+					final int v = indices[offset + k];
+					if (newIndex[v] < 0)
+						newIndex[v] = numCompactVertices++;
+					compactIndices[c++] = newIndex[v];
+				}
+			}
+
+			final float[] compactVertices = new float[3 * numCompactVertices];
+			for (int v = 0; v < numVertices; ++v)
+			{
+				final int n = newIndex[v];
+				if (n < 0)
+					continue;
+				compactVertices[3 * n + 0] = (float) vertices[3 * v + 0];
+				compactVertices[3 * n + 1] = (float) vertices[3 * v + 1];
+				compactVertices[3 * n + 2] = (float) vertices[3 * v + 2];
+			}
+			return new ValuePair<>(compactVertices, compactIndices);
+		}
+
+	}
+
+	private static long edgeKey(final int v1, final int v2)
+	{
+		return v1 < v2
+		       ? (long) v1 << 32 | v2
+		       : (long) v2 << 32 | v1;
 	}
 }
@@ -1,12 +1,6 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
-import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import gnu.trove.list.array.TFloatArrayList;
-import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.set.hash.TIntHashSet;
-import net.imglib2.util.Triple;
+import net.imglib2.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,35 +20,6 @@ public class Smooth
 
 	public static final int DEFAULT_ITERATIONS = 3;
 
-	private static boolean isBoundary(
-			final ArrayList<TIntHashSet> vertexTriangleLUT,
-			final ArrayList<TIntHashSet> edgeSets,
-			final int vertexIndex)
-	{
-		final TIntHashSet vertexTriangles = vertexTriangleLUT.get(vertexIndex);
-		final TIntHashSet copy            = new TIntHashSet();
-		return edgeSets.get(vertexIndex).forEach(edge ->
-		{
-			copy.clear();
-			copy.addAll(vertexTriangles);
-			copy.retainAll(vertexTriangleLUT.get(edge));
-			return copy.size() < 2;
-
-		});
-	}
-
-	private static boolean[] boundaryVertices(
-			final ArrayList<TIntHashSet> vertexTriangleLUT,
-			final ArrayList<TIntArrayList> triangleVertexLUT)
-	{
-		final ArrayList<TIntHashSet> edgeSets         = Convert.convertToEdgeSets(vertexTriangleLUT,
-				triangleVertexLUT);
-		final boolean[]              boundaryVertices = new boolean[vertexTriangleLUT.size()];
-		for (int i = 0; i < boundaryVertices.length; ++i)
-			boundaryVertices[i] = isBoundary(vertexTriangleLUT, edgeSets, i);
-		return boundaryVertices;
-	}
-
 	private static void getVertex(final float[] vertices, final double[] vertexRef, final int vertexIndex)
 	{
 		int i = vertexIndex * 3;
@@ -80,77 +45,82 @@ public class Smooth
 		vertexRef[2] += vertices[++i];
 	}
 
+	/**
+	 * Smooth a mesh of unconnected triangles. Corners at identical positions are treated as a shared vertex.
+	 *
+	 * @param vertices {@code x, y, z} for each of the three corners of each triangle
+	 * @param lambda weight of the neighbor average in each iteration
+	 * @param iterations number of iterations
+	 * @return smoothed triangles
+	 */
 	public static float[] smooth(final float[] vertices, final double lambda, final int iterations)
 	{
 		LOG.debug("Smoothing {} vertices with lambda={} and iterations={}", vertices.length, lambda, iterations);
-		Triple<TFloatArrayList, ArrayList<TIntHashSet>, ArrayList<TIntArrayList>> luts               = Convert
-				.convertToLUT(
-				vertices);
-		float[]                                                                   vertexCoordinates1 = luts.getA()
-				.toArray();
-		final ArrayList<TIntHashSet>                                              vertexTriangleLUT  = luts.getB();
-		final ArrayList<TIntArrayList>                                            triangleVertexLUT  = luts.getC();
-		final boolean[]                                                           boundaryVertices   =
-				boundaryVertices(
-				vertexTriangleLUT,
-				triangleVertexLUT
-		                                                                                                               );
+		final Pair<float[], int[]> indexed = Convert.toIndexed(vertices);
+		final float[] smoothed = smooth(indexed.getA(), indexed.getB(), lambda, iterations);
+		return Convert.toTriangles(smoothed, indexed.getB());
+	}
+
+	/**
+	 * Smooth an indexed triangle mesh. Vertices on the boundary of the mesh, i.e. vertices that are part of an edge
+	 * that belongs to a single triangle only, are not modified.
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param indices three vertex indices per triangle
+	 * @param lambda weight of the neighbor average in each iteration
+	 * @param iterations number of iterations
+	 * @return smoothed vertices; {@code indices} remain valid for the smoothed vertices
+	 */
+	public static float[] smooth(final float[] vertices, final int[] indices, final double lambda, final int iterations)
+	{
+		return smooth(vertices, MeshTopology.fromIndices(vertices.length / 3, indices), lambda, iterations);
+	}
 
+	/**
+	 * Smooth an indexed triangle mesh with precomputed {@link MeshTopology}. Vertices on the boundary of the mesh are
+	 * not modified.
+	 *
+	 * @param vertices {@code x, y, z} for each vertex
+	 * @param topology topology of the mesh
+	 * @param lambda weight of the neighbor average in each iteration
+	 * @param iterations number of iterations
+	 * @return smoothed vertices
+	 */
+	public static float[] smooth(final float[] vertices, final MeshTopology topology, final double lambda, final int iterations)
+	{
+		LOG.debug("Smoothing {} indexed vertices with lambda={} and iterations={}", vertices.length / 3, lambda, iterations);
+		final int numVertices = topology.numVertices();
+		float[] vertexCoordinates1 = vertices.clone();
+		float[] vertexCoordinates2 = new float[vertexCoordinates1.length];
+		final double[] vertexRef = new double[3];
+		final double[] otherVertexRef = new double[3];
 		for (int iteration = 0; iteration < iterations; ++iteration)
 		{
-			float[] vertexCoordinates2 = new float[vertexCoordinates1.length];
-
-			final double[]    vertexRef          = new double[3];
-			final double[]    otherVertexRef     = new double[3];
-			AtomicInteger     count              = new AtomicInteger(0);
-			final TIntHashSet otherVertexIndices = new TIntHashSet();
-			for (int vertexIndex = 0; vertexIndex < vertexTriangleLUT.size(); ++vertexIndex)
+			for (int vertexIndex = 0; vertexIndex < numVertices; ++vertexIndex)
 			{
 				getVertex(vertexCoordinates1, vertexRef, vertexIndex);
-				if (!boundaryVertices[vertexIndex])
+				final int start = topology.neighborsStart(vertexIndex);
+				final int stop = topology.neighborsStop(vertexIndex);
+				if (!topology.isBoundary(vertexIndex) && stop > start)
 				{
-					final int fVertexIndex = vertexIndex;
-					count.set(0);
-					otherVertexIndices.clear();
 					otherVertexRef[0] = 0;
 					otherVertexRef[1] = 0;
 					otherVertexRef[2] = 0;
+					for (int i = start; i < stop; ++i)
+						addVertex(vertexCoordinates1, otherVertexRef, topology.neighbor(i));
 
-					vertexTriangleLUT.get(vertexIndex).forEach(otherTriangleIndex ->
-					{
-						final TIntArrayList otherVertices = triangleVertexLUT.get(otherTriangleIndex);
-						for (int k = 0; k < otherVertices.size(); ++k)
-						{
-							final int otherVertexIndex = otherVertices.get(k);
-							if (otherVertexIndex != fVertexIndex)
-								otherVertexIndices.add(otherVertexIndex);
-						}
-						return true;
-					});
-
-					final float[] fVertexCoordinates1 = vertexCoordinates1;
-
-					otherVertexIndices.forEach(l -> {
-						count.incrementAndGet();
-						addVertex(fVertexCoordinates1, otherVertexRef, l);
-						return true;
-					});
-
-					final double c = 1.0 / count.get();
+					final double c = 1.0 / (stop - start);
 					vertexRef[0] = (otherVertexRef[0] * c - vertexRef[0]) * lambda + vertexRef[0];
 					vertexRef[1] = (otherVertexRef[1] * c - vertexRef[1]) * lambda + vertexRef[1];
 					vertexRef[2] = (otherVertexRef[2] * c - vertexRef[2]) * lambda + vertexRef[2];
-
-					//					System.out.println( "count = " + count.get() );
 				}
-				//				else
-				//					System.out.println( "leaving boundary vertex untouched." );
-
 				setVertex(vertexCoordinates2, vertexRef, vertexIndex);
 			}
+			final float[] tmp = vertexCoordinates1;
 			vertexCoordinates1 = vertexCoordinates2;
+			vertexCoordinates2 = tmp;
 		}
 
-		return Convert.convertFromLUT(TFloatArrayList.wrap(vertexCoordinates1), triangleVertexLUT);
+		return vertexCoordinates1;
 	}
 }
@@ -0,0 +1,93 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Arrays;
+
+/**
+ * Growable open addressing map from vertex position to consecutive vertex index, used to merge the meshes of
+ * adjacent blocks into a single indexed mesh. Positions are compared exactly, with {@code -0.0f} and {@code 0.0f}
+ * considered equal.
+ */
+class VertexIndex
+{
+
+	private float[] vertices;
+
+	private int[] table;
+
+	private int size = 0;
+
+	VertexIndex()
+	{
+		this(1024);
+	}
+
+	VertexIndex(final int expectedSize)
+	{
+		this.vertices = new float[3 * Math.max(expectedSize, 1)];
+		this.table = new int[Integer.highestOneBit(Math.max(2 * expectedSize - 1, 1)) << 1];
+		Arrays.fill(this.table, -1);
+	}
+
+	/**
+	 * @return index of vertex {@code (x, y, z)}. A new vertex is assigned the index {@link #size()} (before
+	 * insertion).
+	 */
+	int indexOf(float x, float y, float z)
+	{
+		// add 0.0f to identify -0.0f and 0.0f
+		x += 0.0f;
+		y += 0.0f;
+		z += 0.0f;
+		if (2 * (size + 1) > table.length)
+			grow();
+		final int mask = table.length - 1;
+		int slot = Convert.hash(x, y, z) & mask;
+		while (true)
+		{
+			final int vertex = table[slot];
+			if (vertex < 0)
+			{
+				if (3 * size == vertices.length)
+					vertices = Arrays.copyOf(vertices, 2 * vertices.length);
+				vertices[3 * size] = x;
+				vertices[3 * size + 1] = y;
+				vertices[3 * size + 2] = z;
+				table[slot] = size;
+				return size++;
+			}
+			final int v = 3 * vertex;
+			if (vertices[v] == x && vertices[v + 1] == y && vertices[v + 2] == z)
+				return vertex;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return {@code x, y, z} for each vertex, only the first {@code 3 * }{@link #size()} entries are valid.
+	 */
+	float[] vertices()
+	{
+		return vertices;
+	}
+
+	private void grow()
+	{
+		final int[] table = new int[2 * this.table.length];
+		Arrays.fill(table, -1);
+		final int mask = table.length - 1;
+		for (int vertex = 0, v = 0; vertex < size; ++vertex, v += 3)
+		{
+			int slot = Convert.hash(vertices[v], vertices[v + 1], vertices[v + 2]) & mask;
+			while (table[slot] >= 0)
+				slot = (slot + 1) & mask;
+			table[slot] = vertex;
+		}
+		this.table = table;
+	}
+
+}
@@ -5,10 +5,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.function.BiPredicate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -23,6 +26,7 @@ import net.imglib2.util.Intervals;
 import org.janelia.saalfeldlab.paintera.meshes.Interruptible;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.util.HashWrapper;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +35,13 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Reading unique labels is I/O bound: Use more threads than cores by default.
+	 */
+	public static final int DEFAULT_PARALLELISM = 2 * Runtime.getRuntime().availableProcessors();
+
+	private static ExecutorService defaultExecutors = null;
+
 	private final CellGrid grid;
 
 	private final InterruptibleFunction<T, Interval[]> getRelevantIntervalsFromLowerResolution;
@@ -39,7 +50,11 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 
 	private final Function<long[], long[]> getUniqueLabelListForBlock;
 
-	private final BiPredicate<T, long[]> checkIfLabelsAreContained;
+	private final Function<T, long[]> getSortedIds;
+
+	private final ExecutorService executors;
+
+	private final int parallelism;
 
 	private final List<Consumer<T>> interruptionListeners = new ArrayList<>();
 
@@ -56,20 +71,30 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 	 * 		Given a block for this resolution defined by its position in the cell grid, retrieve a unique list of
 	 * 		labels
 	 * 		present in this block.
+	 * @param getSortedIds
+	 * 		Sorted array of all ids for a key. A block is relevant if it contains any of these ids.
+	 * @param executors
+	 * 		Retrieve unique label lists for candidate blocks on {@code executors}
+	 * @param parallelism
+	 * 		Maximum number of unique label lists that are retrieved in parallel for a single key.
 	 */
 	public BlocksForLabelCacheLoader(
 			final CellGrid grid,
 			final InterruptibleFunction<T, Interval[]> getRelevantIntervalsFromLowerResolution,
 			final Function<Interval, List<Interval>> getRelevantBlocksIntersectingWithLowResInterval,
 			final Function<long[], long[]> getUniqueLabelListForBlock,
-			final BiPredicate<T, long[]> checkIfLabelsAreContained)
+			final Function<T, long[]> getSortedIds,
+			final ExecutorService executors,
+			final int parallelism)
 	{
 		super();
 		this.grid = grid;
 		this.getRelevantIntervalsFromLowerResolution = getRelevantIntervalsFromLowerResolution;
 		this.getRelevantBlocksIntersectingWithLowResInterval = getRelevantBlocksIntersectingWithLowResInterval;
 		this.getUniqueLabelListForBlock = getUniqueLabelListForBlock;
-		this.checkIfLabelsAreContained = checkIfLabelsAreContained;
+		this.getSortedIds = getSortedIds;
+		this.executors = executors;
+		this.parallelism = Math.max(parallelism, 1);
 	}
 
 	public static BlocksForLabelCacheLoader<Long> longKeys(
@@ -83,7 +108,9 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 				getRelevantIntervalsFromLowerResolution,
 				getRelevantBlocksIntersectingWithLowResInterval,
 				getUniqueLabelListForBlock,
-				(id, block) -> Arrays.stream(block).filter(b -> b == id).count() > 0
+				id -> new long[] {id},
+				defaultExecutors(),
+				DEFAULT_PARALLELISM
 		);
 	}
 
@@ -98,18 +125,53 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 				getRelevantIntervalsFromLowerResolution,
 				getRelevantBlocksIntersectingWithLowResInterval,
 				getUniqueLabelListForBlock,
-				(ids, block) -> Arrays.stream(block).filter(ids::contains).count() > 0
+				ids -> {
+					final long[] sorted = ids.toArray();
+					Arrays.sort(sorted);
+					return sorted;
+				},
+				defaultExecutors(),
+				DEFAULT_PARALLELISM
 		);
 	}
 
+	private static synchronized ExecutorService defaultExecutors()
+	{
+		if (defaultExecutors == null)
+			defaultExecutors = Executors.newFixedThreadPool(
+					DEFAULT_PARALLELISM,
+					new NamedThreadFactory("blocks-for-label-%d", true));
+		return defaultExecutors;
+	}
+
+	/**
+	 *
+	 * @param sortedIds sorted in ascending order
+	 * @param labels arbitrary order
+	 * @return {@code true} if any of {@code labels} is in {@code sortedIds}
+	 */
+	public static boolean containsAny(final long[] sortedIds, final long[] labels)
+	{
+		if (sortedIds.length == 0)
+			return false;
+		final long min = sortedIds[0];
+		final long max = sortedIds[sortedIds.length - 1];
+		for (final long label : labels)
+		{
+			if (label >= min && label <= max && Arrays.binarySearch(sortedIds, label) >= 0)
+				return true;
+		}
+		return false;
+	}
+
 	@Override
 	public Interval[] get(final T key) throws Exception
 	{
-		final boolean[] isInterrupted = {false};
+		final AtomicBoolean isInterrupted = new AtomicBoolean(false);
 		final Consumer<T> listener = interruptedKey -> {
 			if (interruptedKey.equals(key))
 			{
-				isInterrupted[0] = true;
+				isInterrupted.set(true);
 				this.getRelevantIntervalsFromLowerResolution.interruptFor(key);
 			}
 		};
@@ -131,22 +193,55 @@ public class BlocksForLabelCacheLoader<T> implements CacheLoader<T, Interval[]>,
 					.forEach(blocks::add);
 			LOG.debug("key={} grid={} -- got {} block candidates", key, grid, blocks.size());
 
-			final List<Interval> results = new ArrayList<>();
-			for (final Iterator<HashWrapper<Interval>> blockIt = blocks.iterator(); blockIt.hasNext() &&
-					!isInterrupted[0]; )
-			{
-				final HashWrapper<Interval> block   = blockIt.next();
-				final long[]                cellPos = new long[grid.numDimensions()];
-				grid.getCellPosition(Intervals.minAsLongArray(block.getData()), cellPos);
-				final long[] uniqueLabels = getUniqueLabelListForBlock.apply(cellPos);
-				LOG.trace("key={} grid ={} -- Unique labels: {}", key, grid, uniqueLabels);
-				if (checkIfLabelsAreContained.test(key, uniqueLabels))
+			final long[] sortedIds = getSortedIds.apply(key);
+			final Interval[] candidates = blocks.stream().map(HashWrapper::getData).toArray(Interval[]::new);
+			final boolean[] isRelevant = new boolean[candidates.length];
+
+			// workers pull candidates until all are processed or the key is interrupted
+			final AtomicInteger nextCandidate = new AtomicInteger(0);
+			final Runnable worker = () -> {
+				final long[] cellPos = new long[grid.numDimensions()];
+				for (int index = nextCandidate.getAndIncrement(); index < candidates.length && !isInterrupted.get(); index = nextCandidate.getAndIncrement())
 				{
-					results.add(block.getData());
+					grid.getCellPosition(Intervals.minAsLongArray(candidates[index]), cellPos);
+					final long[] uniqueLabels = getUniqueLabelListForBlock.apply(cellPos);
+					LOG.trace("key={} grid ={} -- Unique labels: {}", key, grid, uniqueLabels);
+					isRelevant[index] = containsAny(sortedIds, uniqueLabels);
 				}
+			};
+
+			final int numWorkers = Math.min(parallelism, candidates.length);
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int i = 1; i < numWorkers; ++i)
+				futures.add(executors.submit(worker));
+			try
+			{
+				// calling thread participates so that progress is made even if executors are busy
+				worker.run();
+				for (final Future<?> future : futures)
+					future.get();
+			}
+			catch (final InterruptedException e)
+			{
+				isInterrupted.set(true);
+				throw e;
+			}
+			catch (final ExecutionException e)
+			{
+				isInterrupted.set(true);
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
 			}
+			finally
+			{
+				futures.forEach(f -> f.cancel(true));
+			}
+
+			final List<Interval> results = new ArrayList<>();
+			for (int index = 0; index < candidates.length; ++index)
+				if (isRelevant[index])
+					results.add(candidates[index]);
 			LOG.debug("key={} grid={} -- still {} blocks after filtering", key, grid, results.size());
-			return isInterrupted[0] ? null : results.toArray(new Interval[results.size()]);
+			return isInterrupted.get() ? null : results.toArray(new Interval[results.size()]);
 		} finally
 		{
 			synchronized (this.interruptionListeners)
@@ -13,11 +13,13 @@ import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.util.Intervals;
-import net.imglib2.util.Pair;
+import org.janelia.saalfeldlab.paintera.cache.CacheTier;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedLoaderCache;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.meshes.Interruptible;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunctionAndCache;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
 import org.janelia.saalfeldlab.util.HashWrapper;
 import org.slf4j.Logger;
@@ -40,6 +42,16 @@ public class CacheUtils
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * @return Build a {@link Cache} for meshes that accounts against the global {@link CacheTier#MESHES} budget.
+	 */
+	public static <K> Function<CacheLoader<K, PainteraTriangleMesh>, Cache<K, PainteraTriangleMesh>> meshCacheFactory()
+	{
+		return loader -> MemoryBoundedLoaderCache
+				.<K, PainteraTriangleMesh>forTier(CacheTier.MESHES, PainteraTriangleMesh::sizeInBytes)
+				.withLoader(loader);
+	}
+
 	/**
 	 * Create cascade of caches that produce list of containing blocks for a label at each scale level.
 	 *
@@ -230,12 +242,11 @@ public class CacheUtils
 	 *
 	 * @return Cascade of {@link Cache} for retrieval of mesh queried by label id.
 	 */
-	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<Long>, Pair<float[], float[]>>[]
+	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<Long>, PainteraTriangleMesh>[]
 	meshCacheLoaders(
 			final DataSource<D, T> source,
 			final LongFunction<Converter<D, BoolType>> getMaskGenerator,
-			final Function<CacheLoader<ShapeKey<Long>, Pair<float[], float[]>>, Cache<ShapeKey<Long>, Pair<float[],
-					float[]>>> makeCache)
+			final Function<CacheLoader<ShapeKey<Long>, PainteraTriangleMesh>, Cache<ShapeKey<Long>, PainteraTriangleMesh>> makeCache)
 	{
 		return meshCacheLoaders(
 				source,
@@ -256,16 +267,15 @@ public class CacheUtils
 	 *
 	 * @return Cascade of {@link Cache} for retrieval of mesh queried by label id.
 	 */
-	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<Long>, Pair<float[], float[]>>[]
+	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<Long>, PainteraTriangleMesh>[]
 	meshCacheLoaders(
 			final DataSource<D, T> source,
 			final int[][] cubeSizes,
 			final LongFunction<Converter<D, BoolType>> getMaskGenerator,
-			final Function<CacheLoader<ShapeKey<Long>, Pair<float[], float[]>>, Cache<ShapeKey<Long>, Pair<float[],
-					float[]>>> makeCache)
+			final Function<CacheLoader<ShapeKey<Long>, PainteraTriangleMesh>, Cache<ShapeKey<Long>, PainteraTriangleMesh>> makeCache)
 	{
 		final int numMipmapLevels = source.getNumMipmapLevels();
-		@SuppressWarnings("unchecked") final InterruptibleFunctionAndCache<ShapeKey<Long>, Pair<float[], float[]>>[]
+		@SuppressWarnings("unchecked") final InterruptibleFunctionAndCache<ShapeKey<Long>, PainteraTriangleMesh>[]
 				caches = new InterruptibleFunctionAndCache[numMipmapLevels];
 
 		for (int i = 0; i < numMipmapLevels; ++i)
@@ -278,7 +288,7 @@ public class CacheUtils
 					getMaskGenerator,
 					transform
 			);
-			final Cache<ShapeKey<Long>, Pair<float[], float[]>> cache = makeCache.apply(loader);
+			final Cache<ShapeKey<Long>, PainteraTriangleMesh> cache = makeCache.apply(loader);
 			caches[i] = new InterruptibleFunctionAndCache<>(cache.unchecked(), loader);
 		}
 
@@ -295,10 +305,10 @@ public class CacheUtils
 	 *
 	 * @return Cascade of {@link Cache} for retrieval of mesh queried by label id.
 	 */
-	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] segmentMeshCacheLoaders(
+	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] segmentMeshCacheLoaders(
 			final DataSource<D, T> source,
 			final Function<TLongHashSet, Converter<D, BoolType>> getMaskGenerator,
-			final Function<CacheLoader<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, Cache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>> makeCache)
+			final Function<CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh>, Cache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>> makeCache)
 	{
 		return segmentMeshCacheLoaders(
 				source,
@@ -318,15 +328,15 @@ public class CacheUtils
 	 *
 	 * @return Cascade of {@link Cache} for retrieval of mesh queried by label id.
 	 */
-	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[]
+	public static <D, T> InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[]
 	segmentMeshCacheLoaders(
 			final DataSource<D, T> source,
 			final int[][] cubeSizes,
 			final Function<TLongHashSet, Converter<D, BoolType>> getMaskGenerator,
-			final Function<CacheLoader<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, Cache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>> makeCache)
+			final Function<CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh>, Cache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>> makeCache)
 	{
 		final int numMipmapLevels = source.getNumMipmapLevels();
-		@SuppressWarnings("unchecked") InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[] caches = new InterruptibleFunctionAndCache[numMipmapLevels];
+		@SuppressWarnings("unchecked") InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[] caches = new InterruptibleFunctionAndCache[numMipmapLevels];
 
 		LOG.debug("source is type {}", source.getClass());
 		for (int i = 0; i < numMipmapLevels; ++i)
@@ -340,7 +350,7 @@ public class CacheUtils
 					getMaskGenerator,
 					transform
 			);
-			final Cache<ShapeKey<TLongHashSet>, Pair<float[], float[]>> cache = makeCache.apply(loader);
+			final Cache<ShapeKey<TLongHashSet>, PainteraTriangleMesh> cache = makeCache.apply(loader);
 			caches[i] = new InterruptibleFunctionAndCache<>(cache.unchecked(), loader);
 		}
 
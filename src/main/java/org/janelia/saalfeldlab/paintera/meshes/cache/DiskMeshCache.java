@@ -0,0 +1,500 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonElement;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.PainteraConfigYaml;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.data.n5.N5HDF5Meta;
+import org.janelia.saalfeldlab.paintera.data.n5.N5Meta;
+import org.janelia.saalfeldlab.paintera.meshes.MarchingCubes;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent tier for block meshes. Each mesh is stored in a compact binary file
+ *
+ * {@code <directory>/s<scaleIndex>/<min>_<max>/<hash>.mesh}
+ *
+ * where {@code min} and {@code max} are the comma-separated corners of the block and {@code hash} identifies the source, the shape,
+ * and the mesh parameters of the {@link ShapeKey}. The source is identified by the URI of its container, its dataset,
+ * and a data version, e.g. a hash of the dataset attributes. The full key is stored in the header of each file and
+ * validated on read: Meshes of a different source that ended up in the same directory, e.g. after the source was
+ * re-opened from another container under the same name, or meshes of a source whose data was replaced, are ignored
+ * and overwritten.
+ * All meshes of a block can be invalidated by deleting the block directory, e.g. when the block or its meshing margin
+ * was modified by a commit (see {@link #invalidate(Interval[][])}).
+ *
+ * The disk tier is bypassed whenever {@code isDataPersisted} returns false, e.g. while a {@link MaskedSource} holds
+ * uncommitted changes: Meshes generated from the canvas must not be persisted and persisted meshes may be outdated.
+ *
+ * @param <T> type of shape id
+ */
+public class DiskMeshCache<T>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String MESH_CACHE_DIRECTORY = "mesh-cache";
+
+	private static final String EXTENSION = ".mesh";
+
+	private static final int MAGIC = 0x504d4333;
+
+	private final Supplier<Path> directory;
+
+	private final byte[] container;
+
+	private final byte[] dataset;
+
+	private final long dataVersion;
+
+	private final Function<T, long[]> shapeIdAsLongs;
+
+	private final BooleanSupplier isDataPersisted;
+
+	private final long[] meshingMargin;
+
+	/**
+	 * @param directory root directory of this cache, typically in the project directory.
+	 * @param container URI of the container of the source
+	 * @param dataset dataset of the source within {@code container}
+	 * @param dataVersion changes whenever the persisted data of the source is replaced
+	 * @param shapeIdAsLongs unique, order-independent representation of shape ids.
+	 * @param isDataPersisted read from and write to disk only if this is {@code true}
+	 * @param meshingMargin number of voxels by which mesh generation reads beyond each side of a block
+	 *                      (see {@link MarchingCubes#margin(int[])})
+	 */
+	public DiskMeshCache(
+			final Supplier<Path> directory,
+			final String container,
+			final String dataset,
+			final long dataVersion,
+			final Function<T, long[]> shapeIdAsLongs,
+			final BooleanSupplier isDataPersisted,
+			final long[] meshingMargin)
+	{
+		this.directory = directory;
+		this.container = container.getBytes(StandardCharsets.UTF_8);
+		this.dataset = dataset.getBytes(StandardCharsets.UTF_8);
+		this.dataVersion = dataVersion;
+		this.shapeIdAsLongs = shapeIdAsLongs;
+		this.isDataPersisted = isDataPersisted;
+		this.meshingMargin = meshingMargin;
+	}
+
+	/**
+	 * Users can disable the disk tier in {@code ~/.config/paintera.yml}:
+	 * <pre>
+	 * meshes:
+	 *   diskCache:
+	 *     enabled: false
+	 * </pre>
+	 *
+	 * @return {@code true} unless disabled in the paintera config
+	 */
+	public static boolean isEnabledInConfig()
+	{
+		return Boolean.TRUE.equals(PainteraConfigYaml.getConfig(() -> true, "meshes", "diskCache", "enabled"));
+	}
+
+	/**
+	 * Create a disk cache for segment meshes of {@code source} in {@code projectDirectory}.
+	 *
+	 * @return disk cache, or {@code null} if disabled in config, {@code projectDirectory} is {@code null}, or
+	 * {@code source} is not backed by an N5 container that identifies it
+	 */
+	public static DiskMeshCache<TLongHashSet> forSegments(
+			final Supplier<String> projectDirectory,
+			final String sourceName,
+			final DataSource<?, ?> source)
+	{
+		if (projectDirectory == null || !isEnabledInConfig())
+			return null;
+		final DataSource<?, ?> persistedSource = source instanceof MaskedSource<?, ?>
+				? ((MaskedSource<?, ?>) source).underlyingSource()
+				: source;
+		if (!(persistedSource instanceof N5DataSource<?, ?>))
+		{
+			LOG.debug("Not caching meshes of source {} on disk: Not backed by an N5 container.", sourceName);
+			return null;
+		}
+		final N5Meta meta = ((N5DataSource<?, ?>) persistedSource).meta();
+		final String container = containerUri(meta);
+		if (container == null)
+		{
+			LOG.debug("Not caching meshes of source {} on disk: Unable to identify container of {}.", sourceName, meta);
+			return null;
+		}
+		final long dataVersion;
+		try
+		{
+			dataVersion = attributesHash(meta.reader(), meta.dataset());
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Not caching meshes of source {} on disk: Unable to read attributes of {}: {}", sourceName, meta, e.getMessage());
+			return null;
+		}
+		final BooleanSupplier isDataPersisted = source instanceof MaskedSource<?, ?>
+				? () -> !((MaskedSource<?, ?>) source).hasPendingCanvasChanges()
+				: () -> true;
+		return new DiskMeshCache<>(
+				() -> Paths.get(projectDirectory.get(), MESH_CACHE_DIRECTORY, sanitize(sourceName)),
+				container,
+				meta.dataset(),
+				dataVersion,
+				ids -> {
+					final long[] sorted = ids.toArray();
+					Arrays.sort(sorted);
+					return sorted;
+				},
+				isDataPersisted,
+				// cube size of CacheUtils.segmentMeshCacheLoaders
+				MarchingCubes.margin(new int[] {1, 1, 1}));
+	}
+
+	/**
+	 * @param loader generate meshes that are not on disk yet
+	 * @return loader that looks up meshes on disk first and writes newly generated meshes to disk
+	 */
+	public CacheLoader<ShapeKey<T>, PainteraTriangleMesh> withLoader(final CacheLoader<ShapeKey<T>, PainteraTriangleMesh> loader)
+	{
+		return key -> {
+			if (!isDataPersisted.getAsBoolean())
+				return loader.get(key);
+
+			final Path path = pathFor(key);
+			final PainteraTriangleMesh fromDisk = read(path, key);
+			if (fromDisk != null)
+				return fromDisk;
+
+			final PainteraTriangleMesh mesh = loader.get(key);
+			// data may have changed while generating mesh
+			if (mesh != null && isDataPersisted.getAsBoolean())
+				write(path, key, mesh);
+			return mesh;
+		};
+	}
+
+	/**
+	 * Remove all meshes in blocks that intersect with any of {@code modifiedBlocks}.
+	 *
+	 * @param modifiedBlocks modified blocks for each scale level
+	 */
+	public void invalidate(final Interval[][] modifiedBlocks)
+	{
+		for (int level = 0; level < modifiedBlocks.length; ++level)
+			invalidate(level, modifiedBlocks[level]);
+	}
+
+	/**
+	 * Remove all meshes at {@code scaleIndex} in blocks that intersect with any of {@code modifiedBlocks}, grown by
+	 * the meshing margin: Meshes of a block depend on data in its neighbors, too.
+	 */
+	public void invalidate(final int scaleIndex, final Interval... modifiedBlocks)
+	{
+		if (modifiedBlocks.length == 0)
+			return;
+		final Path scaleDirectory = directory.get().resolve(scaleDirectory(scaleIndex));
+		if (!Files.isDirectory(scaleDirectory))
+			return;
+		final Interval[] affectedBlocks = Arrays
+				.stream(modifiedBlocks)
+				.map(m -> m.numDimensions() == meshingMargin.length ? Intervals.expand(m, meshingMargin) : m)
+				.toArray(Interval[]::new);
+		try (final DirectoryStream<Path> blockDirectories = Files.newDirectoryStream(scaleDirectory))
+		{
+			for (final Path blockDirectory : blockDirectories)
+			{
+				final Interval block = parseBlockDirectory(blockDirectory.getFileName().toString());
+				if (block == null || Arrays.stream(affectedBlocks).anyMatch(m -> intersect(m, block)))
+				{
+					LOG.debug("Removing cached meshes in {}", blockDirectory);
+					deleteRecursively(blockDirectory);
+				}
+			}
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Unable to invalidate meshes in {}: {}", scaleDirectory, e.getMessage());
+		}
+	}
+
+	/**
+	 * Remove all meshes.
+	 */
+	public void invalidateAll()
+	{
+		final Path directory = this.directory.get();
+		LOG.debug("Removing all cached meshes in {}", directory);
+		try
+		{
+			deleteRecursively(directory);
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Unable to remove cached meshes in {}: {}", directory, e.getMessage());
+		}
+	}
+
+	private Path pathFor(final ShapeKey<T> key)
+	{
+		final ByteBuffer header = header(key);
+		return directory
+				.get()
+				.resolve(scaleDirectory(key.scaleIndex()))
+				.resolve(blockDirectory(key.min(), key.max()))
+				.resolve(String.format("%016x%s", hash(header), EXTENSION));
+	}
+
+	private PainteraTriangleMesh read(final Path path, final ShapeKey<T> key)
+	{
+		final byte[] bytes;
+		try
+		{
+			bytes = Files.readAllBytes(path);
+		}
+		catch (final NoSuchFileException e)
+		{
+			return null;
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Unable to read cached mesh {}: {}", path, e.getMessage());
+			return null;
+		}
+
+		try
+		{
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			final ByteBuffer expectedHeader = header(key);
+			if (buffer.remaining() < expectedHeader.remaining())
+				return null;
+			final ByteBuffer actualHeader = buffer.slice();
+			actualHeader.limit(expectedHeader.remaining());
+			if (!expectedHeader.equals(actualHeader))
+			{
+				LOG.debug("Cached mesh {} does not match key {}", path, key);
+				return null;
+			}
+			buffer.position(buffer.position() + expectedHeader.remaining());
+			final float[] vertices = new float[buffer.getInt()];
+			final float[] normals = new float[vertices.length];
+			buffer.asFloatBuffer().get(vertices);
+			buffer.position(buffer.position() + Float.BYTES * vertices.length);
+			buffer.asFloatBuffer().get(normals);
+			buffer.position(buffer.position() + Float.BYTES * normals.length);
+			final int[] indices = new int[buffer.getInt()];
+			buffer.asIntBuffer().get(indices);
+			LOG.trace("Read cached mesh for key {} from {}", key, path);
+			return new PainteraTriangleMesh(vertices, normals, indices);
+		}
+		catch (final RuntimeException e)
+		{
+			LOG.warn("Ignoring corrupt cached mesh {}: {}", path, e.getMessage());
+			return null;
+		}
+	}
+
+	private void write(final Path path, final ShapeKey<T> key, final PainteraTriangleMesh mesh)
+	{
+		final ByteBuffer header = header(key);
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int[] indices = mesh.getIndices();
+		final ByteBuffer buffer = ByteBuffer.allocate(header.remaining()
+				+ Integer.BYTES + Float.BYTES * (vertices.length + normals.length)
+				+ Integer.BYTES + Integer.BYTES * indices.length);
+		buffer.put(header);
+		buffer.putInt(vertices.length);
+		buffer.asFloatBuffer().put(vertices);
+		buffer.position(buffer.position() + Float.BYTES * vertices.length);
+		buffer.asFloatBuffer().put(normals);
+		buffer.position(buffer.position() + Float.BYTES * normals.length);
+		buffer.putInt(indices.length);
+		buffer.asIntBuffer().put(indices);
+
+		try
+		{
+			Files.createDirectories(path.getParent());
+			// write to temporary file first so that readers never see partially written meshes
+			final Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+			try
+			{
+				Files.write(tmp, buffer.array());
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				Files.deleteIfExists(tmp);
+			}
+			LOG.trace("Wrote mesh for key {} to {}", key, path);
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Unable to write mesh for key {} to {}: {}", key, path, e.getMessage());
+		}
+	}
+
+	private ByteBuffer header(final ShapeKey<T> key)
+	{
+		final long[] ids = shapeIdAsLongs.apply(key.shapeId());
+		final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES
+				+ Integer.BYTES + container.length
+				+ Integer.BYTES + dataset.length
+				+ Long.BYTES
+				+ Integer.BYTES + Long.BYTES * ids.length
+				+ Integer.BYTES + Double.BYTES + Double.BYTES + Integer.BYTES);
+		header.putInt(MAGIC);
+		header.putInt(container.length);
+		header.put(container);
+		header.putInt(dataset.length);
+		header.put(dataset);
+		header.putLong(dataVersion);
+		header.putInt(ids.length);
+		for (final long id : ids)
+			header.putLong(id);
+		header.putInt(key.simplificationIterations());
+		header.putDouble(key.simplificationReductionRatio());
+		header.putDouble(key.smoothingLambda());
+		header.putInt(key.smoothingIterations());
+		header.flip();
+		return header;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash
+	 */
+	private static long hash(final ByteBuffer buffer)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = buffer.position(); i < buffer.limit(); ++i)
+		{
+			hash ^= buffer.get(i) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return URI of the container of {@code meta}, or {@code null} if unknown
+	 */
+	private static String containerUri(final N5Meta meta)
+	{
+		if (meta instanceof N5FSMeta)
+			return Paths.get(((N5FSMeta) meta).basePath()).toAbsolutePath().normalize().toUri().toString();
+		if (meta instanceof N5HDF5Meta)
+			return Paths.get(((N5HDF5Meta) meta).file()).toAbsolutePath().normalize().toUri().toString();
+		return null;
+	}
+
+	/**
+	 * Hash of the attributes of {@code dataset} and, for multi-scale groups, of all its scale datasets. Replacing the
+	 * data with data of different dimensions, block size, or data type changes the hash. The max id is ignored: It is
+	 * updated whenever new ids are requested, which does not affect any meshes.
+	 */
+	static long attributesHash(final N5Reader reader, final String dataset) throws IOException
+	{
+		final StringBuilder attributes = new StringBuilder();
+		appendAttributes(reader, dataset, attributes);
+		if (N5Helpers.isMultiScale(reader, dataset))
+			for (final String scaleDataset : N5Helpers.listAndSortScaleDatasets(reader, dataset))
+				appendAttributes(reader, dataset + "/" + scaleDataset, attributes);
+		return hash(ByteBuffer.wrap(attributes.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static void appendAttributes(final N5Reader reader, final String dataset, final StringBuilder attributes) throws IOException
+	{
+		final Map<String, JsonElement> datasetAttributes = new TreeMap<>(reader.getAttributes(dataset));
+		datasetAttributes.remove(N5Helpers.MAX_ID_KEY);
+		datasetAttributes.forEach((name, value) -> attributes
+				.append(dataset).append('/').append(name)
+				.append('=').append(value)
+				.append('\n'));
+	}
+
+	private static String scaleDirectory(final int scaleIndex)
+	{
+		return "s" + scaleIndex;
+	}
+
+	private static String blockDirectory(final long[] min, final long[] max)
+	{
+		return join(min) + "_" + join(max);
+	}
+
+	private static String join(final long[] position)
+	{
+		return Arrays.stream(position).mapToObj(Long::toString).collect(Collectors.joining(","));
+	}
+
+	private static Interval parseBlockDirectory(final String name)
+	{
+		final String[] minAndMax = name.split("_");
+		if (minAndMax.length != 2)
+			return null;
+		try
+		{
+			final long[] min = Stream.of(minAndMax[0].split(",")).mapToLong(Long::parseLong).toArray();
+			final long[] max = Stream.of(minAndMax[1].split(",")).mapToLong(Long::parseLong).toArray();
+			return min.length == max.length ? new FinalInterval(min, max) : null;
+		}
+		catch (final NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	private static boolean intersect(final Interval interval1, final Interval interval2)
+	{
+		return interval1.numDimensions() == interval2.numDimensions() && !Intervals.isEmpty(Intervals.intersect(interval1, interval2));
+	}
+
+	private static String sanitize(final String name)
+	{
+		return name.replaceAll("[^a-zA-Z0-9_.-]", "_");
+	}
+
+	private static void deleteRecursively(final Path path) throws IOException
+	{
+		if (!Files.exists(path))
+			return;
+		try (final Stream<Path> paths = Files.walk(path))
+		{
+			for (final Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.deleteIfExists(p);
+		}
+	}
+
+}
@@ -15,19 +15,20 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
-import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.meshes.AverageNormals;
 import org.janelia.saalfeldlab.paintera.meshes.Interruptible;
 import org.janelia.saalfeldlab.paintera.meshes.MarchingCubes;
-import org.janelia.saalfeldlab.paintera.meshes.Normals;
+import org.janelia.saalfeldlab.paintera.meshes.MeshTopology;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.Simplify;
 import org.janelia.saalfeldlab.paintera.meshes.Smooth;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class MeshCacheLoader<T>
-		implements CacheLoader<ShapeKey<Long>, Pair<float[], float[]>>, Interruptible<ShapeKey<Long>>
+		implements CacheLoader<ShapeKey<Long>, PainteraTriangleMesh>, Interruptible<ShapeKey<Long>>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -65,14 +66,9 @@ public class MeshCacheLoader<T>
 	}
 
 	@Override
-	public Pair<float[], float[]> get(final ShapeKey<Long> key) throws Exception
+	public PainteraTriangleMesh get(final ShapeKey<Long> key) throws Exception
 	{
 
-		//		if ( key.meshSimplificationIterations() > 0 )
-		//		{
-		// TODO deal with mesh simplification
-		//		}
-
 		LOG.debug("key={}, getMaskGenerator={}", key, getMaskGenerator);
 		final RandomAccessibleInterval<BoolType> mask = Converters.convert(
 				data,
@@ -94,21 +90,33 @@ public class MeshCacheLoader<T>
 
 		try
 		{
-			final float[] mesh = new MarchingCubes<>(
+			final Pair<float[], int[]> mesh = new MarchingCubes<>(
 					Views.extendZero(mask),
 					Intervals.expand(key.interval(), Arrays.stream(cubeSize).mapToLong(size -> size).toArray()),
 					transform,
 					cubeSize,
 					() -> isInterrupted[0]
 			).generateMesh();
-			final float[] normals = new float[mesh.length];
-			if (key.smoothingIterations() > 0)
-			{
-				final float[] smoothMesh = Smooth.smooth(mesh, key.smoothingLambda(), key.smoothingIterations());
-				System.arraycopy(smoothMesh, 0, mesh, 0, mesh.length);
-			}
-			Normals.normals(mesh, normals);
-			AverageNormals.averagedNormals(mesh, normals);
+			// building the topology only pays off if it is needed for smoothing. It is shared with normal averaging
+			// unless simplification changes the mesh.
+			final MeshTopology topology = key.smoothingIterations() > 0
+					? MeshTopology.fromIndices(mesh.getA().length / 3, mesh.getB())
+					: null;
+			final float[] smoothedVertices = topology == null
+					? mesh.getA()
+					: Smooth.smooth(mesh.getA(), topology, key.smoothingLambda(), key.smoothingIterations());
+			final Pair<float[], int[]> simplified = Simplify.simplify(
+					smoothedVertices,
+					mesh.getB(),
+					key.simplificationIterations(),
+					key.simplificationReductionRatio());
+			final float[] vertices = simplified.getA();
+			final int[] indices = simplified.getB();
+			final float[] normals = new float[vertices.length];
+			if (topology != null && indices == mesh.getB())
+				AverageNormals.averagedNormals(vertices, indices, topology, normals);
+			else
+				AverageNormals.averagedNormals(vertices, indices, normals);
 
 			for (int i = 0; i < normals.length; ++i)
 			{
@@ -116,7 +124,7 @@ public class MeshCacheLoader<T>
 			}
 			synchronized (interruptListeners)
 			{
-				return isInterrupted[0] ? new ValuePair<>(mesh, normals) : null;
+				return isInterrupted[0] ? new PainteraTriangleMesh(vertices, normals, indices) : null;
 			}
 		} finally
 		{
@@ -0,0 +1,38 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.cache.CacheTier
+import org.janelia.saalfeldlab.paintera.config.CacheBudgetsConfig
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+/**
+ * Only budgets that differ from the (heap size dependent) defaults are serialized.
+ */
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class CacheBudgetsConfigSerializer : PainteraSerialization.PainteraAdapter<CacheBudgetsConfig> {
+	override fun serialize(
+			src: CacheBudgetsConfig?,
+			typeOfSrc: Type?,
+			context: JsonSerializationContext) = JsonObject().also { map -> src?.let { config ->
+		CacheTier.values().filterNot { config.isDefault(it) }.forEach { map.addProperty(it.key, config.getMaxBytes(it)) }
+	} }
+
+	override fun deserialize(
+			json: JsonElement?,
+			typeOfT: Type?,
+			context: JsonDeserializationContext): CacheBudgetsConfig {
+		val config = CacheBudgetsConfig()
+		with(GsonExtensions) {
+			CacheTier.values().forEach { tier -> json?.getNumberProperty(tier.key)?.let { config.setMaxBytes(tier, it.toLong()) } }
+		}
+		return config
+	}
+
+	override fun getTargetClass() = CacheBudgetsConfig::class.java
+
+	override fun isHierarchyAdapter() = false
+}
@@ -0,0 +1,40 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.config.PrefetchConfig
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class PrefetchConfigSerializer : PainteraSerialization.PainteraAdapter<PrefetchConfig> {
+	override fun serialize(
+			src: PrefetchConfig?,
+			typeOfSrc: Type?,
+			context: JsonSerializationContext?) = JsonObject()
+			.also { map -> src?.let { map.addProperty(IS_ENABLED_KEY, it.isEnabled) } }
+			.also { map -> src?.let { map.addProperty(NUM_PREDICTED_FRAMES_KEY, it.numPredictedFrames) } }
+			.also { map -> src?.let { map.addProperty(MAX_CELLS_PER_FRAME_KEY, it.maxCellsPerFrame) } }
+
+	override fun deserialize(json: JsonElement?, typeOfT: Type?, context: JsonDeserializationContext?): PrefetchConfig {
+		val config = PrefetchConfig()
+		with(GsonExtensions) {
+			json?.getBooleanProperty(IS_ENABLED_KEY)?.let { config.isEnabled = it }
+			json?.getIntProperty(NUM_PREDICTED_FRAMES_KEY)?.let { config.numPredictedFrames = it }
+			json?.getIntProperty(MAX_CELLS_PER_FRAME_KEY)?.let { config.maxCellsPerFrame = it }
+		}
+		return config
+	}
+
+	override fun getTargetClass() = PrefetchConfig::class.java
+
+	override fun isHierarchyAdapter() = false
+
+	companion object {
+		private const val IS_ENABLED_KEY = "isEnabled"
+		private const val NUM_PREDICTED_FRAMES_KEY = "numPredictedFrames"
+		private const val MAX_CELLS_PER_FRAME_KEY = "maxCellsPerFrame"
+	}
+}
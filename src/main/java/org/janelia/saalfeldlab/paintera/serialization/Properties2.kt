@@ -32,6 +32,12 @@ class Properties2() : TransformListener<AffineTransform3D> {
     @Expose
     val screenScalesConfig = ScreenScalesConfig()
 
+    @Expose
+    val cacheBudgetsConfig = CacheBudgetsConfig()
+
+    @Expose
+    val prefetchConfig = PrefetchConfig()
+
     @Expose
     val scaleBarOverlayConfig = ScaleBarOverlayConfig()
 
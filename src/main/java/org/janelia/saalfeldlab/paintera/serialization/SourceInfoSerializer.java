@@ -9,12 +9,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import bdv.viewer.Source;
 import com.google.gson.Gson;
@@ -30,6 +36,7 @@ import net.imglib2.exception.IncompatibleTypeException;
 import org.janelia.saalfeldlab.paintera.serialization.sourcestate.SourceStateSerialization;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +59,8 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
 	private static final String STATE_TYPE_KEY = "type";
 
+	private static final int NUM_LOADER_THREADS = Math.max(Runtime.getRuntime().availableProcessors(), 8);
+
 	@Override
 	public JsonElement serialize(final SourceInfo src, final Type typeOfSrc, final JsonSerializationContext context)
 	{
@@ -80,6 +89,12 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 		return context.serialize(elements);
 	}
 
+	/**
+	 * Deserialize all states in {@code serializedSourceInfo}, add them in their serialized order once all of them
+	 * were loaded, and set the current source index.
+	 *
+	 * @see #makeStates(JsonArray, BiConsumer, Gson)
+	 */
 	public static void populate(
 			final Consumer<SourceState<?, ?>> addState,
 			final IntConsumer currentSourceIndex,
@@ -104,6 +119,44 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 		currentSourceIndex.accept(serializedSourceInfo.get(CURRENT_SOURCE_INDEX_KEY).getAsInt());
 	}
 
+	/**
+	 * Deserialize all states in {@code serializedSourceInfo} concurrently and pass each state to {@code addState}
+	 * as soon as it and all states before it in the serialized order were loaded, i.e. source order is preserved.
+	 * {@code addState}, {@code currentSourceIndex}, and {@code progress} are called from loader threads, one at a
+	 * time; {@code currentSourceIndex} is called after the last state was added.
+	 *
+	 * @param progress called with the number of loaded states and the total number of states whenever a state was
+	 *                 loaded
+	 * @see #makeStates(JsonArray, BiConsumer, Gson, BiConsumer, BiConsumer)
+	 */
+	public static void populate(
+			final Consumer<SourceState<?, ?>> addState,
+			final IntConsumer currentSourceIndex,
+			final JsonObject serializedSourceInfo,
+			final BiConsumer<Integer, SourceState<?, ?>> logSourceForDependencies,
+			final Gson gson,
+			final BiConsumer<Integer, Integer> progress) throws
+			IncompatibleTypeException,
+			ClassNotFoundException,
+			JsonParseException,
+			UndefinedDependency,
+			HasCyclicDependencies,
+			IOException
+	{
+		makeStates(
+				serializedSourceInfo.get(SOURCES_KEY).getAsJsonArray(),
+				logSourceForDependencies,
+				gson,
+				(index, state) -> addState.accept(state),
+				progress);
+		currentSourceIndex.accept(serializedSourceInfo.get(CURRENT_SOURCE_INDEX_KEY).getAsInt());
+	}
+
+	public static int numSources(final JsonObject serializedSourceInfo)
+	{
+		return serializedSourceInfo.get(SOURCES_KEY).getAsJsonArray().size();
+	}
+
 	public static SourceState<?, ?>[] makeStates(
 			final JsonArray serializedStates,
 			final BiConsumer<Integer, SourceState<?, ?>> logSourceForDependencies,
@@ -114,14 +167,42 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 			IncompatibleTypeException,
 			JsonParseException,
 			IOException
+	{
+		return makeStates(serializedStates, logSourceForDependencies, gson, (index, state) -> {}, (numLoaded, numStates) -> {});
+	}
+
+	/**
+	 * Deserialize states concurrently: each state is submitted to a loader thread as soon as all states that it
+	 * depends on are loaded, so independent states open their datasets in parallel. Deserializers run on loader
+	 * threads and must not modify the scene graph directly but hand these modifications to the FX application thread.
+	 *
+	 * @param logSourceForDependencies called from loader threads before any dependent state is deserialized.
+	 *                                 Deserializers of dependent states look up their dependencies concurrently, so
+	 *                                 this should be backed by a concurrent map.
+	 * @param onLoadedInOrder called, one state at a time, with each state and its index in serialized order, as soon
+	 *                        as the state and all states before it were loaded
+	 * @param progress called with the number of loaded states and the total number of states whenever a state was
+	 *                 loaded
+	 * @return deserialized states in serialized order
+	 */
+	public static SourceState<?, ?>[] makeStates(
+			final JsonArray serializedStates,
+			final BiConsumer<Integer, SourceState<?, ?>> logSourceForDependencies,
+			final Gson gson,
+			final BiConsumer<Integer, SourceState<?, ?>> onLoadedInOrder,
+			final BiConsumer<Integer, Integer> progress) throws
+			ClassNotFoundException,
+			UndefinedDependency,
+			HasCyclicDependencies,
+			IncompatibleTypeException,
+			JsonParseException,
+			IOException
 	{
 		final int numStates           = serializedStates.size();
 		final TIntHashSet[] dependsOn = new TIntHashSet[numStates];
 		LOG.debug("Deserializing {}", serializedStates);
 		for (int i = 0; i < numStates; ++i)
 		{
-			final JsonObject map = serializedStates.get(i).getAsJsonObject().get(STATE_KEY).getAsJsonObject();
-			LOG.debug("Deserializing state {}: {}", i, map);
 			final int[] depends = Optional
 					.ofNullable(serializedStates.get(i).getAsJsonObject().get(DEPENDS_ON_KEY))
 					.map(el -> gson.fromJson(el, int[].class))
@@ -135,59 +216,164 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
 		if (hasCycles(dependsOn)) { throw new HasCyclicDependencies(dependsOn); }
 
-		final SourceState<?, ?>[] sourceStates = new SourceState[numStates];
+		if (numStates == 0)
+			return new SourceState[0];
 
-		for (int i = 0; i < numStates && Arrays.stream(sourceStates).filter(s -> s == null).count() > 0; ++i)
+		final ExecutorService loaders = Executors.newFixedThreadPool(
+				Math.min(numStates, NUM_LOADER_THREADS),
+				new NamedThreadFactory("paintera-load-source-%d", true));
+		try
 		{
-			for (int k = 0; k < numStates; ++k)
-			{
-				if (sourceStates[k] == null)
-				{
-					final SourceState<?, ?>[] dependencies = IntStream.of(dependsOn[k].toArray()).mapToObj(m ->
-							sourceStates[m]).toArray(
-							SourceState[]::new);
-					if (Stream.of(dependencies).filter(s -> s == null).count() == 0)
-					{
+			return new DependencyOrderLoader<SourceState<?, ?>>(
+					dependsOn,
+					k -> {
 						final JsonObject state = serializedStates.get(k).getAsJsonObject();
-						@SuppressWarnings("unchecked") final Class<? extends SourceState<?, ?>> clazz = (Class<?
-								extends SourceState<?, ?>>) Class.forName(
-								state.get(STATE_TYPE_KEY).getAsString());
-						LOG.debug("Deserializing state={}, class={}", state, clazz);
-						sourceStates[k] = gson.fromJson(state.get(STATE_KEY), clazz);
-						logSourceForDependencies.accept(k, sourceStates[k]);
-					}
-				}
-			}
+						try
+						{
+							@SuppressWarnings("unchecked") final Class<? extends SourceState<?, ?>> clazz = (Class<?
+									extends SourceState<?, ?>>) Class.forName(
+									state.get(STATE_TYPE_KEY).getAsString());
+							LOG.debug("Deserializing state={}, class={}", state, clazz);
+							final SourceState<?, ?> sourceState = gson.fromJson(state.get(STATE_KEY), clazz);
+							logSourceForDependencies.accept(k, sourceState);
+							return sourceState;
+						} catch (final ClassNotFoundException e)
+						{
+							throw new CompletionException(e);
+						}
+					},
+					loaders,
+					onLoadedInOrder,
+					progress,
+					SourceState[]::new).load();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof ClassNotFoundException)
+				throw (ClassNotFoundException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally
+		{
+			loaders.shutdown();
+		}
+	}
+
+	/**
+	 * Schedule loading of each node once all its dependencies are loaded. The dependency graph must be acyclic.
+	 *
+	 * @param <T> type of loaded nodes
+	 */
+	static class DependencyOrderLoader<T>
+	{
+
+		private final TIntHashSet[] dependsOn;
+
+		private final IntFunction<T> load;
+
+		private final Executor executor;
+
+		private final BiConsumer<Integer, T> onLoadedInOrder;
+
+		private final BiConsumer<Integer, Integer> progress;
+
+		private final T[] loaded;
+
+		private final CompletableFuture<?>[] futures;
+
+		private int numLoaded = 0;
+
+		private int nextInOrder = 0;
+
+		DependencyOrderLoader(
+				final TIntHashSet[] dependsOn,
+				final IntFunction<T> load,
+				final Executor executor,
+				final BiConsumer<Integer, T> onLoadedInOrder,
+				final BiConsumer<Integer, Integer> progress,
+				final IntFunction<T[]> arrayFactory)
+		{
+			this.dependsOn = dependsOn;
+			this.load = load;
+			this.executor = executor;
+			this.onLoadedInOrder = onLoadedInOrder;
+			this.progress = progress;
+			this.loaded = arrayFactory.apply(dependsOn.length);
+			this.futures = new CompletableFuture[dependsOn.length];
+		}
+
+		/**
+		 * @return loaded nodes, in the same order as {@code dependsOn}
+		 * @throws ExecutionException if loading any node failed. Nodes that depend on a failed node are not loaded.
+		 */
+		T[] load() throws InterruptedException, ExecutionException
+		{
+			for (int k = 0; k < futures.length; ++k)
+				schedule(k);
+			CompletableFuture.allOf(futures).get();
+			return loaded;
 		}
 
-		if (Arrays.stream(sourceStates).filter(s -> s == null).count() > 0) { throw new RuntimeException("OOPS!"); }
+		private CompletableFuture<?> schedule(final int index)
+		{
+			if (futures[index] == null)
+			{
+				final CompletableFuture<?>[] dependencies = IntStream
+						.of(dependsOn[index].toArray())
+						.mapToObj(this::schedule)
+						.toArray(CompletableFuture[]::new);
+				futures[index] = CompletableFuture
+						.allOf(dependencies)
+						.thenApplyAsync(ignored -> load.apply(index), executor)
+						.thenAccept(t -> onLoaded(index, t));
+			}
+			return futures[index];
+		}
 
-		return sourceStates;
+		private synchronized void onLoaded(final int index, final T t)
+		{
+			loaded[index] = t;
+			progress.accept(++numLoaded, loaded.length);
+			for (; nextInOrder < loaded.length && loaded[nextInOrder] != null; ++nextInOrder)
+				onLoadedInOrder.accept(nextInOrder, loaded[nextInOrder]);
+		}
 
 	}
 
 	private static boolean hasCycles(final TIntHashSet[] nodeEdgeMap)
 	{
-		final TIntHashSet visitedNodes = new TIntHashSet();
+		final byte[] marks = new byte[nodeEdgeMap.length];
 		for (int node = 0; node < nodeEdgeMap.length; ++node)
 		{
-			visit(nodeEdgeMap, node, visitedNodes);
+			if (visit(nodeEdgeMap, node, marks)) { return true; }
 		}
 		return false;
 	}
 
+	private static final byte ON_PATH = 1;
+
+	private static final byte DONE = 2;
+
 	private static boolean visit(
 			final TIntHashSet[] nodeEdgeMap,
 			final int node,
-			final TIntHashSet hasVisited)
+			final byte[] marks)
 	{
-		if (hasVisited.contains(node)) { return true; }
-		hasVisited.add(node);
+		if (marks[node] == DONE) { return false; }
+		if (marks[node] == ON_PATH) { return true; }
+		marks[node] = ON_PATH;
 		for (final TIntIterator it = nodeEdgeMap[node].iterator(); it.hasNext(); )
 		{
-			final boolean foundAlreadyVisitedNode = visit(nodeEdgeMap, it.next(), hasVisited);
-			if (foundAlreadyVisitedNode) { return foundAlreadyVisitedNode; }
+			if (visit(nodeEdgeMap, it.next(), marks)) { return true; }
 		}
+		marks[node] = DONE;
 		return false;
 	}
 
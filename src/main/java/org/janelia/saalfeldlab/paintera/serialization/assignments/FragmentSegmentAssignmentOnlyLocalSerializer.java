@@ -2,29 +2,53 @@ package org.janelia.saalfeldlab.paintera.serialization.assignments;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 import gnu.trove.map.TLongLongMap;
 import javafx.util.Pair;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentLookup;
 import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
-import org.janelia.saalfeldlab.paintera.serialization.PainteraSerialization;
 import org.janelia.saalfeldlab.paintera.serialization.SerializationHelpers;
+import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer;
+import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.n5.N5AssignmentActionLog;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
-@Plugin(type = PainteraSerialization.PainteraAdapter.class)
-public class FragmentSegmentAssignmentOnlyLocalSerializer implements PainteraSerialization.PainteraAdapter<FragmentSegmentAssignmentOnlyLocal>
+/**
+ * Actions are stored in a binary {@link N5AssignmentActionLog} in the project container if it was written by
+ * {@link #saveActionLog} before serialization, and as JSON in {@link #ACTIONS_KEY} otherwise. Every
+ * {@link #CHECKPOINT_INTERVAL} actions, the current assignment is stored as a checkpoint in the log, and only actions
+ * after the most recent checkpoint are replayed on load.
+ */
+public class FragmentSegmentAssignmentOnlyLocalSerializer implements
+		JsonSerializer<FragmentSegmentAssignmentOnlyLocal>,
+		JsonDeserializer<FragmentSegmentAssignmentOnlyLocal>
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -39,25 +63,135 @@ public class FragmentSegmentAssignmentOnlyLocalSerializer implements PainteraSer
 
 	public static final String INITIAL_LUT_KEY = "initialLut";
 
+	public static final String ACTION_LOG_KEY = "actionLog";
+
+	public static final String GROUP_KEY = "group";
+
+	public static final String NUM_ACTIONS_KEY = "numActions";
+
+	public static final String NUM_CHECKPOINTED_ACTIONS_KEY = "numCheckpointedActions";
+
+	/**
+	 * Action logs are stored in groups {@code assignment-actions/<random-uuid>} in the project container.
+	 */
+	public static final String ACTION_LOG_ROOT = "assignment-actions";
+
+	public static final int CHECKPOINT_INTERVAL = 10_000;
+
+	/**
+	 * State of the action log in the project container as of the last save or load, to append only new actions and
+	 * write only new checkpoints, and to reference the log when serializing.
+	 */
+	private static final Map<FragmentSegmentAssignmentOnlyLocal, ActionLog> ACTION_LOGS = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private static class ActionLog
+	{
+		private final String container;
+
+		private final String group;
+
+		private final List<AssignmentAction> actions;
+
+		private final FragmentSegmentLookup checkpoint;
+
+		private final int numCheckpointedActions;
+
+		private ActionLog(
+				final String container,
+				final String group,
+				final List<AssignmentAction> actions,
+				final FragmentSegmentLookup checkpoint,
+				final int numCheckpointedActions)
+		{
+			this.container = container;
+			this.group = group;
+			this.actions = actions;
+			this.checkpoint = checkpoint;
+			this.numCheckpointedActions = numCheckpointedActions;
+		}
+
+		/**
+		 * @return {@code true} if this log holds exactly {@code actions}
+		 */
+		private boolean holds(final List<AssignmentAction> actions)
+		{
+			return this.actions.size() == actions.size() && firstModified(this.actions, actions) == actions.size();
+		}
+
+		private JsonObject toJson()
+		{
+			final JsonObject actionLog = new JsonObject();
+			actionLog.addProperty(GROUP_KEY, group);
+			actionLog.addProperty(NUM_ACTIONS_KEY, actions.size());
+			actionLog.addProperty(NUM_CHECKPOINTED_ACTIONS_KEY, numCheckpointedActions);
+			return actionLog;
+		}
+	}
+
+	private final Supplier<String> projectDirectory;
+
+	/**
+	 * @param projectDirectory N5 container for the action log. If {@code null}, actions are stored as JSON.
+	 */
+	public FragmentSegmentAssignmentOnlyLocalSerializer(final Supplier<String> projectDirectory)
+	{
+		this.projectDirectory = projectDirectory;
+	}
+
+	@Plugin(type = StatefulSerializer.SerializerFactory.class)
+	public static class SerializerFactory implements
+			StatefulSerializer.SerializerFactory<FragmentSegmentAssignmentOnlyLocal, FragmentSegmentAssignmentOnlyLocalSerializer>
+	{
+		@Override
+		public FragmentSegmentAssignmentOnlyLocalSerializer createSerializer(
+				final Supplier<String> projectDirectory,
+				final ToIntFunction<SourceState<?, ?>> stateToIndex)
+		{
+			return new FragmentSegmentAssignmentOnlyLocalSerializer(projectDirectory);
+		}
+
+		@Override
+		public Class<FragmentSegmentAssignmentOnlyLocal> getTargetClass()
+		{
+			return FragmentSegmentAssignmentOnlyLocal.class;
+		}
+	}
+
+	@Plugin(type = StatefulSerializer.DeserializerFactory.class)
+	public static class DeserializerFactory implements
+			StatefulSerializer.DeserializerFactory<FragmentSegmentAssignmentOnlyLocal, FragmentSegmentAssignmentOnlyLocalSerializer>
+	{
+		@Override
+		public FragmentSegmentAssignmentOnlyLocalSerializer createDeserializer(
+				final StatefulSerializer.Arguments arguments,
+				final Supplier<String> projectDirectory,
+				final IntFunction<SourceState<?, ?>> dependencyFromIndex)
+		{
+			return new FragmentSegmentAssignmentOnlyLocalSerializer(projectDirectory);
+		}
+
+		@Override
+		public Class<FragmentSegmentAssignmentOnlyLocal> getTargetClass()
+		{
+			return FragmentSegmentAssignmentOnlyLocal.class;
+		}
+	}
+
 	@Override
 	public JsonElement serialize(
 			final FragmentSegmentAssignmentOnlyLocal src,
 			final Type typeOfSrc,
 			final JsonSerializationContext context)
 	{
-		final List<AssignmentAction> actions = src.events().stream().filter(p -> p.getValue().get()).map(Pair::getKey).collect(Collectors.toList());
+		final List<AssignmentAction> actions = appliedActions(src);
 		LOG.debug("Serializing actions {}", actions);
-		final List<JsonElement> serializedActions = new ArrayList<>();
-		for (final AssignmentAction action : actions)
-		{
-			final JsonObject serializedAction = new JsonObject();
-			serializedAction.add(TYPE_KEY, context.serialize(action.getType()));
-			serializedAction.add(DATA_KEY, context.serialize(action));
-			serializedActions.add(serializedAction);
-		}
-		LOG.debug("Serialized actions {}", serializedActions);
 		final JsonObject map = new JsonObject();
-		map.add(ACTIONS_KEY, context.serialize(serializedActions));
+		final String container = projectDirectory == null ? null : projectDirectory.get();
+		final ActionLog actionLog = container == null ? null : ACTION_LOGS.get(src);
+		if (!actions.isEmpty() && actionLog != null && actionLog.container.equals(container) && actionLog.holds(actions))
+			map.add(ACTION_LOG_KEY, actionLog.toJson());
+		else
+			map.add(ACTIONS_KEY, serializeActions(actions, context));
 		map.add(PERSISTER_KEY, SerializationHelpers.serializeWithClassInfo(src.getPersister(), context));
 		map.add(INITIAL_LUT_KEY, SerializationHelpers.serializeWithClassInfo(src.getInitialLutSupplier(), context));
 		return map;
@@ -82,7 +216,9 @@ public class FragmentSegmentAssignmentOnlyLocalSerializer implements PainteraSer
 			final FragmentSegmentAssignmentOnlyLocal.Persister persister = SerializationHelpers.deserializeFromClassInfo(map.get(PERSISTER_KEY).getAsJsonObject(), context);
 			final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(tryDeserializeInitialLutSupplier(map.getAsJsonObject(INITIAL_LUT_KEY), context), persister);
 
-			if (map.has(ACTIONS_KEY)) {
+			if (map.has(ACTION_LOG_KEY)) {
+				restoreFromActionLog(assignment, map.getAsJsonObject(ACTION_LOG_KEY));
+			} else if (map.has(ACTIONS_KEY)) {
 				final JsonArray serializedActions = map.get(FragmentSegmentAssignmentOnlyLocalSerializer.ACTIONS_KEY).getAsJsonArray();
 				final List<AssignmentAction> actions = new ArrayList<>();
 				for (int i = 0; i < serializedActions.size(); ++i) {
@@ -94,15 +230,128 @@ public class FragmentSegmentAssignmentOnlyLocalSerializer implements PainteraSer
 				assignment.apply(actions);
 			}
 			return assignment;
-		} catch (ClassNotFoundException e) {
+		} catch (ClassNotFoundException | IOException e) {
 			throw new JsonParseException(e);
 		}
 	}
 
+	private static JsonElement serializeActions(final List<AssignmentAction> actions, final JsonSerializationContext context)
+	{
+		final List<JsonElement> serializedActions = new ArrayList<>();
+		for (final AssignmentAction action : actions)
+		{
+			final JsonObject serializedAction = new JsonObject();
+			serializedAction.add(TYPE_KEY, context.serialize(action.getType()));
+			serializedAction.add(DATA_KEY, context.serialize(action));
+			serializedActions.add(serializedAction);
+		}
+		LOG.debug("Serialized actions {}", serializedActions);
+		return context.serialize(serializedActions);
+	}
+
+	/**
+	 * Append new actions of {@code assignment} to its action log in {@code container} and store a checkpoint every
+	 * {@link #CHECKPOINT_INTERVAL} actions. Call this before serializing a project into {@code container}: Projects
+	 * reference the log only if it holds all actions of {@code assignment}, and store the actions as JSON otherwise.
+	 *
+	 * @param assignment assignment whose actions are logged
+	 * @param container project container
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static void saveActionLog(
+			final FragmentSegmentAssignmentOnlyLocal assignment,
+			final String container) throws IOException
+	{
+		final List<AssignmentAction> actions = appliedActions(assignment);
+		if (actions.isEmpty())
+			return;
 
-	@Override
-	public Class<FragmentSegmentAssignmentOnlyLocal> getTargetClass() {
-		return FragmentSegmentAssignmentOnlyLocal.class;
+		final ActionLog previous = ACTION_LOGS.get(assignment);
+		final boolean isSameContainer = previous != null && previous.container.equals(container);
+		// Logged actions are never modified, because the project that is currently stored may reference them. Append to
+		// the log if possible, and write the history into a new group if it diverged, e.g. after undo.
+		final boolean isAppend = isSameContainer && firstModified(previous.actions, actions) == previous.actions.size();
+		final String group = isAppend ? previous.group : ACTION_LOG_ROOT + "/" + UUID.randomUUID();
+		final N5Writer writer = new N5FSWriter(container);
+
+		if (isAppend)
+			N5AssignmentActionLog.appendActions(writer, group, actions, previous.actions.size());
+		else
+		{
+			N5AssignmentActionLog.appendActions(writer, group, actions, 0);
+			if (isSameContainer)
+				N5AssignmentActionLog.supersede(writer, group, previous.group);
+		}
+
+		int numCheckpointedActions = assignment.numCheckpointedActions();
+		if (actions.size() - numCheckpointedActions >= CHECKPOINT_INTERVAL)
+		{
+			assignment.checkpoint();
+			numCheckpointedActions = actions.size();
+		}
+		final FragmentSegmentLookup checkpoint = numCheckpointedActions > 0 ? assignment.getCheckpoint() : null;
+		if (checkpoint != null && (!isAppend || checkpoint != previous.checkpoint))
+			N5AssignmentActionLog.writeCheckpoint(
+					writer,
+					group,
+					checkpoint,
+					numCheckpointedActions,
+					assignment.getInitialLutFingerprint(),
+					isAppend ? previous.numCheckpointedActions : numCheckpointedActions);
+
+		ACTION_LOGS.put(assignment, new ActionLog(container, group, new ArrayList<>(actions), checkpoint, numCheckpointedActions));
+	}
+
+	private static List<AssignmentAction> appliedActions(final FragmentSegmentAssignmentOnlyLocal assignment)
+	{
+		return assignment.events().stream().filter(p -> p.getValue().get()).map(Pair::getKey).collect(Collectors.toList());
+	}
+
+	private void restoreFromActionLog(
+			final FragmentSegmentAssignmentOnlyLocal assignment,
+			final JsonObject actionLog) throws IOException
+	{
+		final String container = projectDirectory == null ? null : projectDirectory.get();
+		if (container == null)
+			throw new JsonParseException(String.format("Project directory required to read assignment action log %s", actionLog));
+		final String group = actionLog.get(GROUP_KEY).getAsString();
+		final int numActions = actionLog.get(NUM_ACTIONS_KEY).getAsInt();
+		final int numCheckpointedActions = actionLog.has(NUM_CHECKPOINTED_ACTIONS_KEY)
+				? actionLog.get(NUM_CHECKPOINTED_ACTIONS_KEY).getAsInt()
+				: 0;
+
+		final N5Reader reader = new N5FSReader(container);
+		final List<AssignmentAction> actions = N5AssignmentActionLog.readActions(reader, group, numActions);
+		final Optional<FragmentSegmentLookup> checkpoint = numCheckpointedActions > 0
+				? N5AssignmentActionLog.readCheckpoint(reader, group, numCheckpointedActions, assignment.getInitialLutFingerprint())
+				: Optional.empty();
+		if (checkpoint.isPresent())
+			assignment.restore(actions, checkpoint.get(), numCheckpointedActions);
+		else
+			assignment.apply(actions);
+		ACTION_LOGS.put(assignment, new ActionLog(container, group, actions, checkpoint.orElse(null), checkpoint.isPresent() ? numCheckpointedActions : 0));
+
+		// The project references this group, so groups that it superseded on earlier saves are not needed anymore.
+		try
+		{
+			N5AssignmentActionLog.removeSupersededGroups(new N5FSWriter(container), group);
+		} catch (final IOException e)
+		{
+			LOG.info("Unable to remove superseded assignment action logs in {}", container, e);
+		}
+	}
+
+	/**
+	 *
+	 * @return index of the first action in {@code current} that is not the same instance as in {@code logged}
+	 */
+	private static int firstModified(final List<AssignmentAction> logged, final List<AssignmentAction> current)
+	{
+		final int size = Math.min(logged.size(), current.size());
+		for (int i = 0; i < size; ++i)
+			if (logged.get(i) != current.get(i))
+				return i;
+		return size;
 	}
 
 	public static class NoPersisterFound extends JsonParseException {
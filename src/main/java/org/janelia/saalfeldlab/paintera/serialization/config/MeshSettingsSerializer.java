@@ -26,6 +26,8 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 
 	private static final String SIMPLIFCIATION_ITERATIONS_KEY = "simplificationIterations";
 
+	private static final String SIMPLIFICATION_REDUCTION_RATIO_KEY = "simplificationReductionRatio";
+
 	private static final String SMOOTHING_LAMBDA_KEY = "smoothingLambda";
 
 	private static final String SMOOTHING_ITERATIONS_KEY = "smoothingIterations";
@@ -40,6 +42,10 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 
 	private static final String IS_VISIBLE_KEY = "isVisible";
 
+	private static final String LEVEL_OF_DETAIL_KEY = "levelOfDetail";
+
+	private static final String LEVEL_OF_DETAIL_THRESHOLD_KEY = "levelOfDetailThreshold";
+
 	//		private final int numScaleLevels;
 	//
 	//	private final SimpleIntegerProperty scaleLevel = new SimpleIntegerProperty();
@@ -67,6 +73,8 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 				()::set);
 		Optional.ofNullable(map.get(SIMPLIFCIATION_ITERATIONS_KEY)).map(JsonElement::getAsInt).ifPresent(settings
 				.simplificationIterationsProperty()::set);
+		Optional.ofNullable(map.get(SIMPLIFICATION_REDUCTION_RATIO_KEY)).map(JsonElement::getAsDouble).ifPresent(settings
+				.simplificationReductionRatioProperty()::set);
 		Optional.ofNullable(map.get(SMOOTHING_ITERATIONS_KEY)).map(JsonElement::getAsInt).ifPresent(settings
 				.smoothingIterationsProperty()::set);
 		Optional.ofNullable(map.get(SMOOTHING_LAMBDA_KEY)).map(JsonElement::getAsDouble).ifPresent(settings
@@ -87,6 +95,10 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 				.cullFaceProperty()::set);
 		Optional.ofNullable(map.get(IS_VISIBLE_KEY)).map(JsonElement::getAsBoolean).ifPresent(settings
 				.isVisibleProperty()::set);
+		Optional.ofNullable(map.get(LEVEL_OF_DETAIL_KEY)).map(JsonElement::getAsBoolean).ifPresent(settings
+				.levelOfDetailProperty()::set);
+		Optional.ofNullable(map.get(LEVEL_OF_DETAIL_THRESHOLD_KEY)).map(JsonElement::getAsDouble).ifPresent(settings
+				.levelOfDetailThresholdProperty()::set);
 		return settings;
 	}
 
@@ -97,11 +109,14 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 		map.addProperty(NUM_SCALE_LEVLES_KEY, src.numScaleLevels());
 		map.addProperty(SCALE_LEVEL_KEY, src.scaleLevelProperty().get());
 		map.addProperty(SIMPLIFCIATION_ITERATIONS_KEY, src.simplificationIterationsProperty().get());
+		map.addProperty(SIMPLIFICATION_REDUCTION_RATIO_KEY, src.simplificationReductionRatioProperty().get());
 		map.addProperty(SMOOTHING_LAMBDA_KEY, src.smoothingLambdaProperty().get());
 		map.addProperty(SMOOTHING_ITERATIONS_KEY, src.smoothingIterationsProperty().get());
 		map.addProperty(OPACITY_KEY, src.opacityProperty().get());
 		map.addProperty(INFLATE_KEY, src.inflateProperty().get());
 		map.addProperty(IS_VISIBLE_KEY, src.isVisibleProperty().get());
+		map.addProperty(LEVEL_OF_DETAIL_KEY, src.levelOfDetailProperty().get());
+		map.addProperty(LEVEL_OF_DETAIL_THRESHOLD_KEY, src.levelOfDetailThresholdProperty().get());
 		map.add(DRAW_MODE_KEY, context.serialize(src.drawModeProperty().get()));
 		map.add(CULL_FACE_KEY, context.serialize(src.cullFaceProperty().get()));
 		return map;
@@ -5,11 +5,8 @@ import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.pivovarit.function.ThrowingFunction;
-import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.Interval;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.type.numeric.ARGBType;
-import net.imglib2.util.Pair;
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
@@ -26,7 +23,8 @@ import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerWithAssignmentForSegments;
-import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
+import org.janelia.saalfeldlab.paintera.meshes.cache.DiskMeshCache;
 import org.janelia.saalfeldlab.paintera.serialization.SerializationHelpers;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer;
 import org.janelia.saalfeldlab.paintera.serialization.StatefulSerializer.Arguments;
@@ -64,10 +62,21 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 
 	private final Arguments arguments;
 
+	private final Supplier<String> projectDirectory;
+
 	public LabelSourceStateDeserializer(final Arguments arguments)
+	{
+		this(arguments, null);
+	}
+
+	/**
+	 * @param projectDirectory location of the persistent mesh cache, if any.
+	 */
+	public LabelSourceStateDeserializer(final Arguments arguments, final Supplier<String> projectDirectory)
 	{
 		super();
 		this.arguments = arguments;
+		this.projectDirectory = projectDirectory;
 	}
 
 	@Plugin(type = StatefulSerializer.DeserializerFactory.class)
@@ -79,7 +88,7 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 		public LabelSourceStateDeserializer<C> createDeserializer(final Arguments arguments, final Supplier<String>
 				projectDirectory, final IntFunction<SourceState<?, ?>> dependencyFromIndex)
 		{
-			return new LabelSourceStateDeserializer<>(arguments);
+			return new LabelSourceStateDeserializer<>(arguments, projectDirectory);
 		}
 
 		@Override
@@ -143,7 +152,8 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 				stream,
 				arguments.meshesGroup,
 				blockLoaders,
-				loader -> new SoftRefLoaderCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>().withLoader(loader),
+				CacheUtils.meshCacheFactory(),
+				DiskMeshCache.forSegments(projectDirectory, name, source),
 				arguments.meshManagerExecutors,
 				arguments.meshWorkersExecutors
 		);
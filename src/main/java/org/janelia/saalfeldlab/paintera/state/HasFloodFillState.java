@@ -1,6 +1,8 @@
 package org.janelia.saalfeldlab.paintera.state;
 
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 
 public interface HasFloodFillState {
 
@@ -9,6 +11,16 @@ public interface HasFloodFillState {
 		public final long labelId;
 		public final Runnable interrupt;
 
+		/**
+		 * Number of blocks that have been filled so far. Update on the JavaFX application thread.
+		 */
+		public final IntegerProperty numProcessedBlocks = new SimpleIntegerProperty(0);
+
+		/**
+		 * Number of blocks that have been reached by the fill so far. Update on the JavaFX application thread.
+		 */
+		public final IntegerProperty numDiscoveredBlocks = new SimpleIntegerProperty(0);
+
 		public FloodFillState(final long labelId, final Runnable interrupt)
 		{
 			this.labelId = labelId;
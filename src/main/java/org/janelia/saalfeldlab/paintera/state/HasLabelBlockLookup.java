@@ -0,0 +1,9 @@
+package org.janelia.saalfeldlab.paintera.state;
+
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+
+public interface HasLabelBlockLookup {
+
+	LabelBlockLookup labelBlockLookup();
+
+}
@@ -30,7 +30,6 @@ import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.algorithm.util.Grids;
 import net.imglib2.cache.Invalidate;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
 import net.imglib2.img.cell.AbstractCellImg;
@@ -45,7 +44,6 @@ import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Intervals;
-import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
@@ -59,7 +57,6 @@ import org.janelia.saalfeldlab.paintera.composition.ARGBCompositeAlphaYCbCr;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.config.input.KeyAndMouseBindings;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode;
-import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ActiveSection;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ModeState;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
@@ -78,7 +75,7 @@ import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
 import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManager;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerWithAssignmentForSegments;
-import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
 import org.janelia.saalfeldlab.paintera.stream.ARGBStreamSeedSetter;
 import org.janelia.saalfeldlab.paintera.stream.AbstractHighlightingARGBStream;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
@@ -93,6 +90,7 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongFunction;
@@ -111,7 +109,8 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		HasMaskForLabel<D>,
 		HasFragmentSegmentAssignments,
 		HasLockedSegments,
-		HasFloodFillState
+		HasFloodFillState,
+		HasLabelBlockLookup
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -142,6 +141,11 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 
 	private final IdService idService;
 
+	/**
+	 * Unused ids are released only once: A source may be removed before Paintera shuts down.
+	 */
+	private final AtomicBoolean isIdServiceReleased = new AtomicBoolean(false);
+
 	private final MeshManager<Long, TLongHashSet> meshManager;
 
 	private final LockedSegmentsState lockedSegments;
@@ -203,6 +207,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		lockedSegments.addListener(obs -> stain());
 	}
 
+	@Override
 	public LabelBlockLookup labelBlockLookup() {
 		return this.labelBlockLookup;
 	}
@@ -276,12 +281,9 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 	@Override
 	public void refreshMeshes()
 	{
-		this.invalidateAll();
-		final long[] selection     = this.selectedIds.getActiveIds();
-		final long   lastSelection = this.selectedIds.getLastSelection();
-		this.selectedIds.deactivateAll();
-		this.selectedIds.activate(selection);
-		this.selectedIds.activateAlso(lastSelection);
+		// mesh manager clears the disk tier along with the in-memory caches and re-generates selected meshes
+		this.invalidateAllBlockCaches();
+		this.meshManager.refreshMeshes();
 	}
 
 	@Override
@@ -446,7 +448,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 				stream,
 				meshesGroup,
 				backgroundBlockCaches,
-				loader -> new SoftRefLoaderCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>().withLoader(loader),
+				CacheUtils.meshCacheFactory(),
 				meshManagerExecutors,
 				meshWorkersExecutors);
 
@@ -563,6 +565,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		selectedIds.addListener(obs -> paintera.orthogonalViews().requestRepaint());
 		lockedSegments.addListener(obs -> paintera.orthogonalViews().requestRepaint());
 		meshManager().areMeshesEnabledProperty().bind(paintera.viewer3D().isMeshesEnabledProperty());
+		meshManager().worldToCameraTransformProperty().bind(paintera.viewer3D().worldToCameraTransformProperty());
 		assignment.addListener(obs -> paintera.orthogonalViews().requestRepaint());
 	}
 
@@ -656,6 +659,16 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 				if (newv != null) {
 					paintingProgressIndicator.setVisible(true);
 					paintingProgressIndicatorTooltip.setText("Flood-filling, label ID: " + newv.labelId);
+					final InvalidationListener progressListener = progressObs -> {
+						if (this.floodFillState.get() == newv)
+							paintingProgressIndicatorTooltip.setText(String.format(
+									"Flood-filling, label ID: %d (%d/%d blocks)",
+									newv.labelId,
+									newv.numProcessedBlocks.get(),
+									newv.numDiscoveredBlocks.get()));
+					};
+					newv.numProcessedBlocks.addListener(progressListener);
+					newv.numDiscoveredBlocks.addListener(progressListener);
 
 					final MenuItem floodFillContextMenuCancelItem = new MenuItem("Cancel");
 					if (newv.interrupt != null) {
@@ -676,7 +689,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 			final InvalidationListener shapeInterpolationModeStatusUpdater = obs -> {
 				InvokeOnJavaFXApplicationThread.invoke(() -> {
 					final ModeState modeState = this.shapeInterpolationMode.modeStateProperty().get();
-					final ActiveSection activeSection = this.shapeInterpolationMode.activeSectionProperty().get();
+					final Integer activeSection = this.shapeInterpolationMode.activeSectionProperty().get();
 					if (modeState != null) {
 						switch (modeState) {
 							case Select:
@@ -716,6 +729,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 	public void onRemoval(SourceInfo sourceInfo) {
 		LOG.info("Removed LabelSourceState {}", nameProperty().get());
 		meshManager.removeAllMeshes();
+		meshManager.invalidateMeshCaches();
 		LabelSourceStateCommitHandler.showCommitDialog(
 				this,
 				sourceInfo.indexOf(this.getDataSource()),
@@ -725,6 +739,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 						"Uncommitted changes to the canvas and/or fragment-segment assignment will be lost if skipped.", index, name),
 				false,
 				"_Skip");
+		releaseIdService();
 	}
 
 	@Override
@@ -740,6 +755,12 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 						"but can be committed to the data backend, as well.", index, name),
 				false,
 				"_Skip");
+		releaseIdService();
+	}
+
+	private void releaseIdService() {
+		if (isIdServiceReleased.compareAndSet(false, true))
+			this.idService.onShutdown();
 	}
 
 	@Override
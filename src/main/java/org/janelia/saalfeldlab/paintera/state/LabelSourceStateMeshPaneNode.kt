@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.state
 
 import gnu.trove.set.hash.TLongHashSet
+import javafx.beans.property.BooleanProperty
 import javafx.beans.property.DoubleProperty
 import javafx.beans.property.IntegerProperty
 import javafx.beans.property.Property
@@ -62,7 +63,11 @@ class LabelSourceStateMeshPaneNode(
 							it.smoothingIterationsProperty(),
 							it.inflateProperty(),
 							it.drawModeProperty(),
-							it.cullFaceProperty()).node,
+							it.cullFaceProperty(),
+							it.levelOfDetailProperty(),
+							it.levelOfDetailThresholdProperty(),
+							it.simplificationIterationsProperty(),
+							it.simplificationReductionRatioProperty()).node,
 					MeshesList(manager, meshInfos).node)
 		}
 
@@ -94,7 +99,11 @@ class LabelSourceStateMeshPaneNode(
 			val smoothingIterations: IntegerProperty,
 			val inflate: DoubleProperty,
 			val drawMode: Property<DrawMode>,
-			val cullFace: Property<CullFace>) {
+			val cullFace: Property<CullFace>,
+			val levelOfDetail: BooleanProperty,
+			val levelOfDetailThreshold: DoubleProperty,
+			val simplificationIterations: IntegerProperty,
+			val simplificationReductionRatio: DoubleProperty) {
 
 
 		val node: Node
@@ -103,7 +112,7 @@ class LabelSourceStateMeshPaneNode(
 		private fun createNode(): TitledPane {
 			val contents = GridPane()
 
-			populateGridWithMeshSettings(
+			val row = populateGridWithMeshSettings(
 					contents,
 					0,
 					NumericSliderWithField(0.0, 1.0, opacity.value).also { it.slider().valueProperty().bindBidirectional(opacity) },
@@ -114,6 +123,54 @@ class LabelSourceStateMeshPaneNode(
 					ComboBox(FXCollections.observableArrayList(*DrawMode.values())).also { it.valueProperty().bindBidirectional(drawMode) },
 					ComboBox(FXCollections.observableArrayList(*CullFace.values())).also { it.valueProperty().bindBidirectional(cullFace) })
 
+			val levelOfDetailLabel = Labels.withTooltip("Level of Detail", "Pick scale level of each block by distance to camera, up to the selected scale level.")
+			val levelOfDetailCheckBox = CheckBox().also { it.selectedProperty().bindBidirectional(levelOfDetail) }
+			contents.add(levelOfDetailLabel, 0, row)
+			GridPane.setColumnSpan(levelOfDetailLabel, 2)
+			contents.add(levelOfDetailCheckBox, 3, row)
+			GridPane.setHalignment(levelOfDetailCheckBox, HPos.RIGHT)
+
+			val thresholdRow = row + 1
+			val levelOfDetailThresholdSlider = NumericSliderWithField(0.05, 1.0, levelOfDetailThreshold.value)
+					.also { it.slider().valueProperty().bindBidirectional(levelOfDetailThreshold) }
+					.also { it.slider().isShowTickLabels = true }
+					.also { it.slider().tooltip = Tooltip("Refine blocks while the ratio of block diagonal and distance to camera exceeds this threshold. Smaller values pick finer scale levels.") }
+					.also { it.textField().prefWidth = 55.0 }
+					.also { GridPane.setHgrow(it.slider(), Priority.ALWAYS) }
+					.also { it.slider().disableProperty().bind(levelOfDetail.not()) }
+					.also { it.textField().disableProperty().bind(levelOfDetail.not()) }
+			contents.add(Labels.withTooltip("LoD Threshold"), 0, thresholdRow)
+			contents.add(levelOfDetailThresholdSlider.slider(), 1, thresholdRow)
+			GridPane.setColumnSpan(levelOfDetailThresholdSlider.slider(), 2)
+			contents.add(levelOfDetailThresholdSlider.textField(), 3, thresholdRow)
+
+			val simplificationsRow = thresholdRow + 1
+			val simplificationIterationsSlider = NumericSliderWithField(0, 10, simplificationIterations.value)
+					.also { it.slider().valueProperty().bindBidirectional(simplificationIterations) }
+					.also { it.slider().isShowTickLabels = true }
+					.also { it.slider().tooltip = Tooltip("Simplification Iterations") }
+					.also { it.textField().prefWidth = 55.0 }
+					.also { GridPane.setHgrow(it.slider(), Priority.ALWAYS) }
+			contents.add(Labels.withTooltip("Simplifications"), 0, simplificationsRow)
+			contents.add(simplificationIterationsSlider.slider(), 1, simplificationsRow)
+			GridPane.setColumnSpan(simplificationIterationsSlider.slider(), 2)
+			contents.add(simplificationIterationsSlider.textField(), 3, simplificationsRow)
+
+			val reductionRatioRow = simplificationsRow + 1
+			val noSimplification = simplificationIterations.isEqualTo(0)
+			val simplificationReductionRatioSlider = NumericSliderWithField(0.05, 0.95, simplificationReductionRatio.value)
+					.also { it.slider().valueProperty().bindBidirectional(simplificationReductionRatio) }
+					.also { it.slider().isShowTickLabels = true }
+					.also { it.slider().tooltip = Tooltip("Fraction of triangles removed in each simplification iteration.") }
+					.also { it.textField().prefWidth = 55.0 }
+					.also { GridPane.setHgrow(it.slider(), Priority.ALWAYS) }
+					.also { it.slider().disableProperty().bind(noSimplification) }
+					.also { it.textField().disableProperty().bind(noSimplification) }
+			contents.add(Labels.withTooltip("Reduction"), 0, reductionRatioRow)
+			contents.add(simplificationReductionRatioSlider.slider(), 1, reductionRatioRow)
+			GridPane.setColumnSpan(simplificationReductionRatioSlider.slider(), 2)
+			contents.add(simplificationReductionRatioSlider.textField(), 3, reductionRatioRow)
+
 			val helpDialog = PainteraAlerts
 					.alert(Alert.AlertType.INFORMATION, true)
 					.also { it.initModality(Modality.NONE) }
@@ -238,6 +238,8 @@ public class SourceInfo
 		this.composites.remove(source);
 		this.removedSources.add(source);
 		state.onRemoval(this);
+		// release the share of the cache budgets held by the removed source
+		state.getDataSource().invalidateAll();
 	}
 
 	public SourceState<?, ?> getState(final Source<?> source)
@@ -14,6 +14,7 @@
 package org.janelia.saalfeldlab.paintera.stream;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegments;
@@ -24,6 +25,8 @@ import org.slf4j.LoggerFactory;
 import gnu.trove.impl.Constants;
 import gnu.trove.map.TLongIntMap;
 import gnu.trove.map.hash.TLongIntHashMap;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import net.imglib2.type.label.Label;
@@ -74,12 +77,19 @@ public abstract class AbstractHighlightingARGBStream extends ObservableWithListe
 
 	protected final TLongIntHashMap explicitlySpecifiedColors = new TLongIntHashMap();
 
+	private final AtomicLong colorVersion = new AtomicLong();
+
+	private final InvalidationListener incrementColorVersion = obs -> colorVersion.incrementAndGet();
+
 	public AbstractHighlightingARGBStream(
 			final SelectedSegments selectedSegments,
 			final LockedSegments lockedSegments)
 	{
+		// register first so that the version is up to date before any other listener is notified
+		addListener(incrementColorVersion);
 		this.selectedSegments = selectedSegments;
 		this.lockedSegments = lockedSegments;
+		listenForColorChanges(null, null);
 		this.colorFromSegmentId.addListener((obs, oldv, newv) -> stateChanged());
 	}
 
@@ -276,25 +286,54 @@ public abstract class AbstractHighlightingARGBStream extends ObservableWithListe
 
 	public void setSelectedSegments(final SelectedSegments selectedSegments)
 	{
-		this.selectedSegments = selectedSegments;
-		clearCache();
+		setSelectedAndLockedSegments(selectedSegments, this.lockedSegments);
 	}
 
 	public void setLockedSegments(final LockedSegments lockedSegments)
 	{
-		this.lockedSegments = lockedSegments;
-		clearCache();
+		setSelectedAndLockedSegments(this.selectedSegments, lockedSegments);
 	}
 
 	public void setSelectedAndLockedSegments(
 			final SelectedSegments selectedSegments,
 			final LockedSegments lockedSegments)
 	{
+		final SelectedSegments previousSelectedSegments = this.selectedSegments;
+		final LockedSegments   previousLockedSegments   = this.lockedSegments;
 		this.selectedSegments = selectedSegments;
 		this.lockedSegments = lockedSegments;
+		listenForColorChanges(previousSelectedSegments, previousLockedSegments);
 		clearCache();
 	}
 
+	/**
+	 * The color version is incremented whenever the output of {@link #argb(long)} may change for any id, i.e. on
+	 * changes of seed, alpha, explicitly specified colors, selection, assignment, or locked segments. Consumers that
+	 * cache colors derived from this stream, e.g. {@link HighlightingStreamConverterLabelMultisetType}, can compare
+	 * versions to decide when to invalidate.
+	 *
+	 * @return current color version
+	 */
+	public long getColorVersion()
+	{
+		return colorVersion.get();
+	}
+
+	private void listenForColorChanges(
+			final SelectedSegments previousSelectedSegments,
+			final LockedSegments previousLockedSegments)
+	{
+		if (previousSelectedSegments != null)
+			previousSelectedSegments.removeListener(incrementColorVersion);
+		if (previousLockedSegments instanceof Observable)
+			((Observable) previousLockedSegments).removeListener(incrementColorVersion);
+		if (this.selectedSegments != null)
+			this.selectedSegments.addListener(incrementColorVersion);
+		if (this.lockedSegments instanceof Observable)
+			((Observable) this.lockedSegments).addListener(incrementColorVersion);
+		colorVersion.incrementAndGet();
+	}
+
 	public void setHideLockedSegments(final boolean hideLockedSegments)
 	{
 		if (hideLockedSegments != this.hideLockedSegments)
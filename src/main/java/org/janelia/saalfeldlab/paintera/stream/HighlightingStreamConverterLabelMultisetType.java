@@ -1,5 +1,6 @@
 package org.janelia.saalfeldlab.paintera.stream;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import net.imglib2.type.label.Label;
@@ -7,10 +8,20 @@ import net.imglib2.type.label.LabelMultisetType.Entry;
 import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.ARGBType;
 
+/**
+ * Blend the colors of all entries of a {@link VolatileLabelMultisetType}, weighted by alpha and count.
+ *
+ * Label multisets repeat heavily within a block (most pixels of a downsampled block share one of few distinct
+ * multisets), so the blended color is cached per distinct multiset and per rendering thread. The cache is discarded
+ * whenever {@link AbstractHighlightingARGBStream#getColorVersion()} changes, i.e. on changes of seed, alpha,
+ * selection, assignment, or locked segments.
+ */
 public class HighlightingStreamConverterLabelMultisetType extends HighlightingStreamConverter<VolatileLabelMultisetType>
 {
 	final static private double ONE_OVER_255 = 1.0 / 255.0;
 
+	private final ThreadLocal<MultisetColorCache> colorCache = ThreadLocal.withInitial(MultisetColorCache::new);
+
 	public HighlightingStreamConverterLabelMultisetType(final AbstractHighlightingARGBStream stream)
 	{
 		super(stream);
@@ -19,7 +30,6 @@ public class HighlightingStreamConverterLabelMultisetType extends HighlightingSt
 	@Override
 	public void convert(final VolatileLabelMultisetType input, final ARGBType output)
 	{
-		// TODO this needs to use all LabelMultisetType, not just first
 		final boolean isValid = input.isValid();
 		if (!isValid) { return; }
 		// entry
@@ -30,31 +40,135 @@ public class HighlightingStreamConverterLabelMultisetType extends HighlightingSt
 		}
 		else
 		{
-			double a              = 0;
-			double r              = 0;
-			double g              = 0;
-			double b              = 0;
-			double alphaCountSize = 0;
+			final MultisetColorCache cache = colorCache.get();
+			cache.validate(stream.getColorVersion());
+			final int numEntries = cache.readKey(entries);
+			final int slot       = cache.find(numEntries);
+			if (slot >= 0)
+			{
+				output.set(cache.argbs[slot]);
+				return;
+			}
+			final int argb = blend(cache.key, numEntries);
+			cache.put(numEntries, argb);
+			output.set(argb);
+		}
+	}
+
+	private int blend(final long[] key, final int numEntries)
+	{
+		double a              = 0;
+		double r              = 0;
+		double g              = 0;
+		double b              = 0;
+		double alphaCountSize = 0;
+		for (int i = 0, k = 0; i < numEntries; ++i, k += 2)
+		{
+			final int    argb       = stream.argb(key[k]);
+			final double alpha      = ARGBType.alpha(argb);
+			final double alphaCount = alpha * ONE_OVER_255 * key[k + 1];
+			a += alphaCount * alpha;
+			r += alphaCount * ARGBType.red(argb);
+			g += alphaCount * ARGBType.green(argb);
+			b += alphaCount * ARGBType.blue(argb);
+			alphaCountSize += alphaCount;
+		}
+		final double iAlphaCountSize = 1.0 / alphaCountSize;
+		final int    aInt            = Math.min(255, (int) (a * iAlphaCountSize));
+		final int    rInt            = Math.min(255, (int) (r * iAlphaCountSize));
+		final int    gInt            = Math.min(255, (int) (g * iAlphaCountSize));
+		final int    bInt            = Math.min(255, (int) (b * iAlphaCountSize));
+		return ((aInt << 8 | rInt) << 8 | gInt) << 8 | bInt;
+	}
+
+	/**
+	 * Direct mapped cache from multiset contents (interleaved id and count) to blended color. Collisions simply
+	 * overwrite the previous entry. Not thread safe: one instance per rendering thread.
+	 */
+	static final class MultisetColorCache
+	{
+
+		static final int NUM_SLOTS = 1 << 12;
+
+		private static final int MASK = NUM_SLOTS - 1;
+
+		private static final long[] EMPTY = {};
+
+		private final long[][] keys = new long[NUM_SLOTS][];
+
+		private final int[] hashes = new int[NUM_SLOTS];
+
+		private final int[] argbs = new int[NUM_SLOTS];
+
+		private long[] key = new long[16];
+
+		private int hash;
+
+		private long version = Long.MIN_VALUE;
+
+		MultisetColorCache()
+		{
+			Arrays.fill(keys, EMPTY);
+		}
+
+		void validate(final long version)
+		{
+			if (this.version != version)
+			{
+				Arrays.fill(keys, EMPTY);
+				this.version = version;
+			}
+		}
+
+		/**
+		 * Copy ids and counts of {@code entries} into {@link #key} and update {@link #hash}.
+		 *
+		 * @return number of entries
+		 */
+		int readKey(final Set<Entry<Label>> entries)
+		{
+			final int size = entries.size();
+			if (key.length < 2 * size)
+				key = new long[2 * size];
+			int  k = 0;
+			long h = 17;
 			for (final Entry<Label> entry : entries)
 			{
-				final int    argb       = stream.argb(entry.getElement().id());
-				final double alpha      = ARGBType.alpha(argb);
-				final double alphaCount = alpha * ONE_OVER_255 * entry.getCount();
-				a += alphaCount * alpha;
-				r += alphaCount * ARGBType.red(argb);
-				g += alphaCount * ARGBType.green(argb);
-				b += alphaCount * ARGBType.blue(argb);
-				alphaCountSize += alphaCount;
+				final long id    = entry.getElement().id();
+				final int  count = entry.getCount();
+				key[k++] = id;
+				key[k++] = count;
+				h = 31 * (31 * h + id) + count;
 			}
-			final double iAlphaCountSize = 1.0 / alphaCountSize;
-			final int    aInt            = Math.min(255, (int) (a * iAlphaCountSize));
-			final int    rInt            = Math.min(255, (int) (r * iAlphaCountSize));
-			final int    gInt            = Math.min(255, (int) (g * iAlphaCountSize));
-			final int    bInt            = Math.min(255, (int) (b * iAlphaCountSize));
-			output.set(((aInt << 8 | rInt) << 8 | gInt) << 8 | bInt);
-		}
-		//		final Iterator< LabelMultiset.Entry< Label > > it = input.get().entrySet().iterator();
-		//		output.set( stream.argb( it.hasNext() ? considerMaxUnsignedInt( it.next().getElement().id() ) : Label.INVALID ) );
+			h ^= h >>> 32;
+			h ^= h >>> 16;
+			this.hash = (int) h;
+			return k / 2;
+		}
+
+		/**
+		 * @return slot of the current {@link #key} or {@code -1} if not present
+		 */
+		int find(final int numEntries)
+		{
+			final int    slot   = hash & MASK;
+			final long[] stored = keys[slot];
+			if (hashes[slot] != hash || stored.length != 2 * numEntries)
+				return -1;
+			for (int k = 0; k < stored.length; ++k)
+				if (stored[k] != key[k])
+					return -1;
+			return slot;
+		}
+
+		void put(final int numEntries, final int argb)
+		{
+			final int slot = hash & MASK;
+			keys[slot] = Arrays.copyOf(key, 2 * numEntries);
+			hashes[slot] = hash;
+			argbs[slot] = argb;
+		}
+
 	}
 
 }
@@ -1,6 +1,5 @@
 package org.janelia.saalfeldlab.paintera.ui;
 
-import com.pivovarit.function.ThrowingConsumer;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.binding.DoubleBinding;
@@ -9,7 +8,6 @@ import javafx.beans.binding.StringBinding;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.ReadOnlyLongWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleLongProperty;
@@ -26,15 +24,8 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
-import net.imglib2.Dimensions;
-import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.util.Grids;
-import net.imglib2.img.cell.AbstractCellImg;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.util.Intervals;
-import net.imglib2.view.Views;
 import org.controlsfx.control.StatusBar;
 import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.fx.ui.NumberField;
@@ -52,22 +43,16 @@ import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
+import org.janelia.saalfeldlab.util.n5.MaxIdFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
-import java.util.function.DoubleConsumer;
-import java.util.function.LongConsumer;
 
 public class PainteraAlerts {
 
@@ -204,7 +189,9 @@ public class PainteraAlerts {
 		cancelButton.setText("_Cancel");
 		alert.setHeaderText("maxId not specified in dataset.");
 		final TextArea ta = new TextArea(String.format("Could not read maxId attribute from dataset `%s' in container `%s'. " +
-				"You can specify the max id manually, or read it from the data set (this can take a long time if your data is big).\n" +
+				"You can specify the max id manually, or read it from the data set. Unique labels, label block lookup, and " +
+				"label multiset mipmap levels are used if available, otherwise all voxels are scanned " +
+				"(this can take a long time if your data is big).\n" +
 				"Alternatively, press cancel to load the data set without an id service. " +
 				"Fragment-segment-assignments and selecting new (wrt to the data) labels require an id service " +
 				"and will not be available if you press cancel.", dataset, n5));
@@ -215,6 +202,7 @@ public class PainteraAlerts {
 				v -> true,
 				ObjectField.SubmitOn.ENTER_PRESSED,
 				ObjectField.SubmitOn.FOCUS_LOST);
+		MaxIdFinder.getCached(n5, dataset).ifPresent(result -> maxIdField.valueProperty().set(result.getMaxId()));
 		final BooleanBinding isValidMaxId = maxIdField.valueProperty().greaterThanOrEqualTo(0L);
 		final ObjectProperty<ThreadWithCancellation> task = new SimpleObjectProperty<>();
 		task.addListener((obs, oldv, newv) -> {
@@ -256,16 +244,24 @@ public class PainteraAlerts {
 		final Runnable runOnScanData = () -> {
 			initialValue.set(maxIdField.valueProperty().get());
 			final ThreadWithCancellation t = new ThreadWithCancellation(wasCanceled -> {
-				findMaxId(
-						source,
-						0,
-						maxId -> InvokeOnJavaFXApplicationThread.invoke(() -> {
-							final ThreadWithCancellation currentTask = task.get();
-							if (currentTask != null && !currentTask.wasCancelled())
-								maxIdField.valueProperty().set(Math.max(maxId, maxIdField.valueProperty().get()));
-						}),
-						wasCanceled,
-						p -> InvokeOnJavaFXApplicationThread.invoke(() -> statusBar.setProgress(p)));
+				try {
+					final MaxIdFinder.Result result = MaxIdFinder.findMaxId(
+							n5,
+							dataset,
+							source,
+							maxId -> InvokeOnJavaFXApplicationThread.invoke(() -> {
+								final ThreadWithCancellation currentTask = task.get();
+								if (currentTask != null && !currentTask.wasCancelled())
+									maxIdField.valueProperty().set(Math.max(maxId, maxIdField.valueProperty().get()));
+							}),
+							wasCanceled,
+							p -> InvokeOnJavaFXApplicationThread.invoke(() -> statusBar.setProgress(p)));
+					if (!wasCanceled.get())
+						InvokeOnJavaFXApplicationThread.invoke(() -> statusBar.setText(String.format("From %s", result.getTier())));
+				} catch (final IOException e) {
+					LOG.error("Unable to find max id for dataset {} in container {}", dataset, n5, e);
+					InvokeOnJavaFXApplicationThread.invoke(() -> statusBar.setText("Failed"));
+				}
 				if (!wasCanceled.get()) {
 					currentIndex.set(0);
 					InvokeOnJavaFXApplicationThread.invoke(() -> {
@@ -361,79 +357,6 @@ public class PainteraAlerts {
 		return alert;
 	}
 
-	private static void findMaxId(
-			final DataSource<? extends IntegerType<?>, ?> source,
-			final int level,
-			final LongConsumer maxIdTracker,
-			final AtomicBoolean cancel,
-			final DoubleConsumer progressTracker) {
-		final RandomAccessibleInterval<? extends IntegerType<?>> rai = source.getDataSource(0, level);
-		final ReadOnlyLongWrapper totalNumVoxels = new ReadOnlyLongWrapper(Intervals.numElements(rai));
-		maxIdTracker.accept(org.janelia.saalfeldlab.labels.Label.getINVALID());
-		final LongProperty numProcessedVoxels = new SimpleLongProperty(0);
-		numProcessedVoxels.addListener((obs, oldv, newv) -> progressTracker.accept(numProcessedVoxels.doubleValue() / totalNumVoxels.doubleValue()));
-
-		final int[] blockSize = blockSizeFromRai(rai);
-		final List<Interval> intervals = Grids.collectAllContainedIntervals(Intervals.minAsLongArray(rai), Intervals.maxAsLongArray(rai), blockSize);
-
-		final ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-		final List<Future<?>> futures = new ArrayList<>();
-		for (final Interval interval : intervals) {
-			futures.add(es.submit(() -> {
-				synchronized (cancel) {
-					if (cancel.get())
-						return;
-				}
-				final RandomAccessibleInterval<? extends IntegerType<?>> slice = Views.interval(rai, interval);
-				final long maxId = findMaxId(slice);
-				synchronized (cancel) {
-					if (!cancel.get()) {
-						numProcessedVoxels.set(numProcessedVoxels.get() + Intervals.numElements(slice));
-						maxIdTracker.accept(maxId);
-					}
-				}
-			}));
-		}
-		futures.forEach(ThrowingConsumer.unchecked(Future::get));
-		es.shutdown();
-	}
-
-	private static long findMaxId(final RandomAccessibleInterval<? extends IntegerType<?>> rai) {
-		long maxId = org.janelia.saalfeldlab.labels.Label.getINVALID();
-		for (final IntegerType<?> t : Views.iterable(rai)) {
-			final long id = t.getIntegerLong();
-			if (id > maxId)
-				maxId = id;
-		}
-		return maxId;
-	}
-
-	private static int[] blockSizeFromRai(final RandomAccessibleInterval<?> rai) {
-		if (rai instanceof AbstractCellImg<?, ?, ?, ?>) {
-			final CellGrid cellGrid = ((AbstractCellImg<?, ?, ?, ?>) rai).getCellGrid();
-			final int[] blockSize = new int[cellGrid.numDimensions()];
-			cellGrid.cellDimensions(blockSize);
-			LOG.debug("{} is a cell img with block size {}", rai, blockSize);
-			return blockSize;
-		}
-		int argMaxDim = argMaxDim(rai);
-		final int[] blockSize = Intervals.dimensionsAsIntArray(rai);
-		blockSize[argMaxDim] = 1;
-		return blockSize;
-	}
-
-	private static int argMaxDim(final Dimensions dims) {
-		long max = -1;
-		int argMax = -1;
-		for (int d = 0; d < dims.numDimensions(); ++d) {
-			if (dims.dimension(d) > max) {
-				max = dims.dimension(d);
-				argMax = d;
-			}
-		}
-		return argMax;
-	}
-
 	private static final class ThreadWithCancellation extends Thread {
 
 		private AtomicBoolean cancelled = new AtomicBoolean(false);
@@ -29,7 +29,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import net.imglib2.Interval;
-import net.imglib2.util.Pair;
 import org.janelia.saalfeldlab.fx.ui.NumericSliderWithField;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
@@ -38,6 +37,7 @@ import org.janelia.saalfeldlab.paintera.meshes.MeshInfo;
 import org.janelia.saalfeldlab.paintera.meshes.MeshInfos;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManager;
 import org.janelia.saalfeldlab.paintera.meshes.MeshSettings;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
 import org.janelia.saalfeldlab.paintera.ui.BindUnbindAndNodeSupplier;
 import org.slf4j.Logger;
@@ -230,7 +230,7 @@ public class MeshPane implements BindUnbindAndNodeSupplier, ListChangeListener<M
 						.limit(meshInfos.readOnlyInfos().size())
 						.toArray(InterruptibleFunction[][]::new);
 
-				final InterruptibleFunction<ShapeKey<TLongHashSet>, Pair<float[], float[]>>[][] meshCaches = Stream
+				final InterruptibleFunction<ShapeKey<TLongHashSet>, PainteraTriangleMesh>[][] meshCaches = Stream
 						.generate(manager::meshCache)
 						.limit(meshInfos.readOnlyInfos().size())
 						.toArray(InterruptibleFunction[][]::new);
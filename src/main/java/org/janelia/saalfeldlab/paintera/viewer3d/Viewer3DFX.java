@@ -7,6 +7,8 @@ import javafx.animation.Timeline;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -59,6 +61,8 @@ public class Viewer3DFX extends Pane
 
 	private final ObjectProperty<Color> backgroundFill = new SimpleObjectProperty<>(Color.BLACK);
 
+	private final ReadOnlyObjectWrapper<AffineTransform3D> worldToCameraTransform = new ReadOnlyObjectWrapper<>(new AffineTransform3D());
+
 	public Viewer3DFX(final double width, final double height)
 	{
 		super();
@@ -93,6 +97,12 @@ public class Viewer3DFX extends Pane
 		this.cameraGroup.getTransforms().add(new Translate(0, 0, -1));
 
 		handler = new Scene3DHandler(this);
+		// camera is located at (0, 0, -1) in the coordinate system of root
+		handler.addAffineListener(affine -> {
+			final AffineTransform3D worldToCamera = fromAffine(affine);
+			worldToCamera.translate(0, 0, 1);
+			worldToCameraTransform.set(worldToCamera);
+		});
 
 		this.root.visibleProperty().bind(isMeshesEnabled);
 
@@ -162,6 +172,15 @@ public class Viewer3DFX extends Pane
 		return backgroundFill;
 	}
 
+	/**
+	 *
+	 * @return transform from world coordinates, i.e. the coordinates of {@link #meshesGroup()}, into camera
+	 * coordinates, i.e. the camera is at the origin.
+	 */
+	public ReadOnlyObjectProperty<AffineTransform3D> worldToCameraTransformProperty() {
+		return worldToCameraTransform.getReadOnlyProperty();
+	}
+
 	private static Affine fromAffineTransform3D(final AffineTransform3D affineTransform3D) {
 		return new Affine(
 				affineTransform3D.get(0, 0), affineTransform3D.get(0, 1), affineTransform3D.get(0, 2), affineTransform3D.get(0, 3),
@@ -0,0 +1,455 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import com.google.gson.JsonElement;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.Grids;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.data.n5.N5Meta;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Find the maximum id of a label dataset that does not specify the {@code maxId} attribute. Sources are tried from
+ * cheapest to most expensive:
+ * <ol>
+ * <li>{@link Tier#LABEL_BLOCK_LOOKUP}: file names of the default {@code label-to-block-mapping} of Paintera datasets,</li>
+ * <li>{@link Tier#UNIQUE_LABELS}: {@code unique-labels} blocks of Paintera datasets,</li>
+ * <li>{@link Tier#LABEL_MULTISET_MIPMAP}: coarsest mipmap level of label multiset data that keeps all ids,</li>
+ * <li>{@link Tier#VOXELS}: all voxels at full resolution.</li>
+ * </ol>
+ * All tiers run in parallel. Results are cached per container and dataset for the lifetime of the application.
+ */
+public class MaxIdFinder
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public enum Tier
+	{
+		CACHE("cache"),
+		LABEL_BLOCK_LOOKUP("label block lookup"),
+		UNIQUE_LABELS("unique labels"),
+		LABEL_MULTISET_MIPMAP("label multiset mipmap"),
+		VOXELS("voxel scan");
+
+		private final String description;
+
+		Tier(final String description)
+		{
+			this.description = description;
+		}
+
+		@Override
+		public String toString()
+		{
+			return description;
+		}
+	}
+
+	public static final class Result
+	{
+
+		private final long maxId;
+
+		private final Tier tier;
+
+		private Result(final long maxId, final Tier tier)
+		{
+			this.maxId = maxId;
+			this.tier = tier;
+		}
+
+		public long getMaxId()
+		{
+			return maxId;
+		}
+
+		public Tier getTier()
+		{
+			return tier;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("{maxId=%d tier=%s}", maxId, tier);
+		}
+	}
+
+	private static final String UNIQUE_LABELS = "unique-labels";
+
+	private static final int BLOCKS_PER_TASK = 256;
+
+	private static final Map<String, Result> CACHE = new ConcurrentHashMap<>();
+
+	public static Result findMaxId(
+			final N5Reader n5,
+			final String dataset,
+			final DataSource<? extends IntegerType<?>, ?> source) throws IOException
+	{
+		return findMaxId(n5, dataset, source, id -> {}, new AtomicBoolean(false), p -> {});
+	}
+
+	/**
+	 * @param maxIdTracker notified with intermediate maxima while scanning, in increasing order
+	 * @param cancel stop as soon as possible when set, the result is incomplete in that case and not cached
+	 * @param progressTracker notified with the fraction of work done within the current tier
+	 * @return maximum id, or {@link Label#INVALID} if the dataset is empty or the search was cancelled
+	 */
+	public static Result findMaxId(
+			final N5Reader n5,
+			final String dataset,
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final LongConsumer maxIdTracker,
+			final AtomicBoolean cancel,
+			final DoubleConsumer progressTracker) throws IOException
+	{
+		final String cacheKey = cacheKey(n5, dataset);
+		final Result cached = CACHE.get(cacheKey);
+		if (cached != null)
+		{
+			LOG.debug("Using cached max id {} for {}", cached, cacheKey);
+			maxIdTracker.accept(cached.maxId);
+			progressTracker.accept(1.0);
+			return new Result(cached.maxId, Tier.CACHE);
+		}
+
+		maxIdTracker.accept(Label.INVALID);
+		final AtomicLong maxId = new AtomicLong(Label.INVALID);
+		final LongConsumer tracker = id -> {
+			if (updateMax(maxId, id))
+				maxIdTracker.accept(id);
+		};
+
+		final ExecutorService es = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new NamedThreadFactory("find-max-id-%d", true));
+		try
+		{
+			final Tier tier = findMaxId(n5, dataset, source, tracker, cancel, progressTracker, es);
+			final Result result = new Result(maxId.get(), tier);
+			if (!cancel.get())
+			{
+				LOG.info("Found max id {} for {}", result, cacheKey);
+				CACHE.put(cacheKey, result);
+			}
+			return result;
+		} finally
+		{
+			es.shutdownNow();
+		}
+	}
+
+	public static Optional<Result> getCached(final N5Reader n5, final String dataset)
+	{
+		return Optional.ofNullable(CACHE.get(cacheKey(n5, dataset)));
+	}
+
+	public static void invalidate(final N5Reader n5, final String dataset)
+	{
+		CACHE.remove(cacheKey(n5, dataset));
+	}
+
+	private static Tier findMaxId(
+			final N5Reader n5,
+			final String dataset,
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final LongConsumer maxIdTracker,
+			final AtomicBoolean cancel,
+			final DoubleConsumer progressTracker,
+			final ExecutorService es) throws IOException
+	{
+		if (N5Helpers.isPainteraDataset(n5, dataset))
+		{
+			if (fromLabelBlockLookupFiles(n5, dataset, maxIdTracker))
+				return Tier.LABEL_BLOCK_LOOKUP;
+			if (fromUniqueLabels(n5, dataset, maxIdTracker, cancel, progressTracker, es))
+				return Tier.UNIQUE_LABELS;
+		}
+
+		final int level = coarsestLevelWithAllIds(n5, dataset, source);
+		if (level > 0)
+		{
+			LOG.debug("Scanning label multisets at level {} of {}", level, dataset);
+			scan(source.getDataSource(0, level), maxIdTracker, cancel, progressTracker, es);
+			return Tier.LABEL_MULTISET_MIPMAP;
+		}
+
+		LOG.debug("Scanning all voxels of {}", dataset);
+		scan(source.getDataSource(0, 0), maxIdTracker, cancel, progressTracker, es);
+		return Tier.VOXELS;
+	}
+
+	/**
+	 * The default {@link org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile} of Paintera datasets stores
+	 * one file per id at full resolution. Custom lookups configured through the {@code labelBlockLookup} attribute
+	 * cannot be enumerated and are skipped.
+	 */
+	private static boolean fromLabelBlockLookupFiles(
+			final N5Reader n5,
+			final String dataset,
+			final LongConsumer maxIdTracker) throws IOException
+	{
+		if (n5.getAttribute(dataset, "labelBlockLookup", JsonElement.class) != null)
+			return false;
+
+		final Path lookupDirectory;
+		try
+		{
+			final N5Meta meta = N5Meta.fromReader(n5, dataset);
+			if (!(meta instanceof N5FSMeta))
+				return false;
+			lookupDirectory = Paths.get(((N5FSMeta) meta).basePath(), dataset, N5Helpers.LABEL_TO_BLOCK_MAPPING, "s0");
+		} catch (final ReflectionException e)
+		{
+			LOG.debug("Unable to determine location of label block lookup for {}: {}", dataset, e.getMessage());
+			return false;
+		}
+
+		if (!Files.isDirectory(lookupDirectory))
+			return false;
+
+		try (final Stream<Path> files = Files.list(lookupDirectory))
+		{
+			final long[] ids = files
+					.map(Path::getFileName)
+					.map(Path::toString)
+					.filter(name -> name.matches("\\d+"))
+					.mapToLong(Long::parseLong)
+					.toArray();
+			if (ids.length == 0)
+				return false;
+			long maxId = Label.INVALID;
+			for (final long id : ids)
+				maxId = Math.max(maxId, id);
+			LOG.debug("Found {} ids in label block lookup {}", ids.length, lookupDirectory);
+			maxIdTracker.accept(maxId);
+			return true;
+		}
+	}
+
+	private static boolean fromUniqueLabels(
+			final N5Reader n5,
+			final String dataset,
+			final LongConsumer maxIdTracker,
+			final AtomicBoolean cancel,
+			final DoubleConsumer progressTracker,
+			final ExecutorService es) throws IOException
+	{
+		final String uniqueLabelsGroup = dataset + "/" + UNIQUE_LABELS;
+		if (!n5.exists(uniqueLabelsGroup))
+			return false;
+		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, uniqueLabelsGroup);
+		if (scaleDatasets.length == 0)
+			return false;
+
+		// unique labels of the full resolution level are always complete
+		final String uniqueLabels = uniqueLabelsGroup + "/" + scaleDatasets[0];
+		final DatasetAttributes attributes = n5.getDatasetAttributes(uniqueLabels);
+		if (attributes == null)
+			return false;
+
+		final CellGrid grid = N5Helpers.asCellGrid(attributes);
+		final long numBlocks = Intervals.numElements(grid.getGridDimensions());
+		LOG.debug("Reading {} unique label blocks from {}", numBlocks, uniqueLabels);
+
+		final AtomicLong numProcessedBlocks = new AtomicLong(0);
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		for (long start = 0; start < numBlocks; start += BLOCKS_PER_TASK)
+		{
+			final long taskStart = start;
+			final long taskStop = Math.min(start + BLOCKS_PER_TASK, numBlocks);
+			tasks.add(() -> {
+				final long[] gridPosition = new long[grid.numDimensions()];
+				long maxId = Label.INVALID;
+				for (long index = taskStart; index < taskStop && !cancel.get(); ++index)
+				{
+					grid.getCellGridPositionFlat(index, gridPosition);
+					final DataBlock<?> block = n5.readBlock(uniqueLabels, attributes, gridPosition);
+					if (block != null && block.getData() instanceof long[])
+						for (final long id : (long[]) block.getData())
+							maxId = Math.max(maxId, id);
+				}
+				maxIdTracker.accept(maxId);
+				progressTracker.accept(numProcessedBlocks.addAndGet(taskStop - taskStart) / (double) numBlocks);
+				return null;
+			});
+		}
+		invokeAll(es, tasks);
+		return true;
+	}
+
+	/**
+	 * @return coarsest level of a label multiset {@code source} whose multisets are not limited in their number of
+	 * entries, or {@code -1} if no such level exists or {@code source} does not hold label multisets
+	 */
+	private static int coarsestLevelWithAllIds(
+			final N5Reader n5,
+			final String dataset,
+			final DataSource<? extends IntegerType<?>, ?> source) throws IOException
+	{
+		if (source.getNumMipmapLevels() < 2 || !(Util.getTypeFromInterval(source.getDataSource(0, 0)) instanceof LabelMultisetType))
+			return -1;
+
+		final String group = N5Helpers.volumetricDataGroup(dataset, N5Helpers.isPainteraDataset(n5, dataset));
+		if (!N5Helpers.isMultiScale(n5, group))
+			return -1;
+
+		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, group);
+		for (int level = Math.min(scaleDatasets.length, source.getNumMipmapLevels()) - 1; level > 0; --level)
+		{
+			final Integer maxNumEntries = n5.getAttribute(group + "/" + scaleDatasets[level], N5Helpers.MAX_NUM_ENTRIES_KEY, Integer.class);
+			if (maxNumEntries != null && maxNumEntries <= 0)
+				return level;
+		}
+		return -1;
+	}
+
+	private static void scan(
+			final RandomAccessibleInterval<? extends IntegerType<?>> rai,
+			final LongConsumer maxIdTracker,
+			final AtomicBoolean cancel,
+			final DoubleConsumer progressTracker,
+			final ExecutorService es) throws IOException
+	{
+		final boolean isLabelMultiset = Util.getTypeFromInterval(rai) instanceof LabelMultisetType;
+		final List<Interval> intervals = Grids.collectAllContainedIntervals(
+				Intervals.minAsLongArray(rai),
+				Intervals.maxAsLongArray(rai),
+				blockSizeFromRai(rai));
+		final double numVoxels = Intervals.numElements(rai);
+		final AtomicLong numProcessedVoxels = new AtomicLong(0);
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		for (final Interval interval : intervals)
+		{
+			tasks.add(() -> {
+				if (cancel.get())
+					return null;
+				final RandomAccessibleInterval<? extends IntegerType<?>> block = Views.interval(rai, interval);
+				maxIdTracker.accept(isLabelMultiset ? maxIdOfMultisets(block) : maxId(block));
+				progressTracker.accept(numProcessedVoxels.addAndGet(Intervals.numElements(interval)) / numVoxels);
+				return null;
+			});
+		}
+		invokeAll(es, tasks);
+	}
+
+	private static long maxId(final RandomAccessibleInterval<? extends IntegerType<?>> rai)
+	{
+		long maxId = Label.INVALID;
+		for (final IntegerType<?> t : Views.iterable(rai))
+			maxId = Math.max(maxId, t.getIntegerLong());
+		return maxId;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static long maxIdOfMultisets(final RandomAccessibleInterval<? extends IntegerType<?>> rai)
+	{
+		long maxId = Label.INVALID;
+		for (final LabelMultisetType t : Views.iterable((RandomAccessibleInterval<LabelMultisetType>) (RandomAccessibleInterval) rai))
+			for (final LabelMultisetType.Entry<Label> entry : t.entrySet())
+				maxId = Math.max(maxId, entry.getElement().id());
+		return maxId;
+	}
+
+	private static void invokeAll(final ExecutorService es, final List<Callable<Void>> tasks) throws IOException
+	{
+		try
+		{
+			for (final Future<Void> future : es.invokeAll(tasks))
+				future.get();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static boolean updateMax(final AtomicLong max, final long value)
+	{
+		for (long current = max.get(); value > current; current = max.get())
+			if (max.compareAndSet(current, value))
+				return true;
+		return false;
+	}
+
+	private static int[] blockSizeFromRai(final RandomAccessibleInterval<?> rai)
+	{
+		if (rai instanceof AbstractCellImg<?, ?, ?, ?>)
+		{
+			final CellGrid cellGrid = ((AbstractCellImg<?, ?, ?, ?>) rai).getCellGrid();
+			final int[] blockSize = new int[cellGrid.numDimensions()];
+			cellGrid.cellDimensions(blockSize);
+			LOG.debug("{} is a cell img with block size {}", rai, blockSize);
+			return blockSize;
+		}
+		final int[] blockSize = Intervals.dimensionsAsIntArray(rai);
+		blockSize[argMaxDim(blockSize)] = 1;
+		return blockSize;
+	}
+
+	private static int argMaxDim(final int[] dims)
+	{
+		int argMax = 0;
+		for (int d = 1; d < dims.length; ++d)
+			if (dims[d] > dims[argMax])
+				argMax = d;
+		return argMax;
+	}
+
+	private static String cacheKey(final N5Reader n5, final String dataset)
+	{
+		try
+		{
+			return N5Meta.fromReader(n5, dataset).toString();
+		} catch (final ReflectionException e)
+		{
+			return String.format("{%s: dataset=%s}", n5, dataset);
+		}
+	}
+
+}
@@ -0,0 +1,432 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentLookup;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Detach;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Binary history of {@link AssignmentAction assignment actions} in an N5 group, as an alternative to storing each
+ * action as JSON in the project attributes:
+ * <ul>
+ * <li>{@code <group>/actions}: uint64 dataset with one record of {@link #RECORD_SIZE} entries per action
+ * ({@link #MERGE}, from, into, segment) or ({@link #DETACH}, fragment, from, 0). Each block holds up to
+ * {@link #ACTIONS_PER_BLOCK} actions. The attributes {@link #NUM_ACTIONS_KEY} and {@link #NUM_BLOCKS_KEY} hold the
+ * number of records and blocks.</li>
+ * <li>{@code <group>/checkpoint-<n>}: uint64 dataset of shape {@code (m, 2)} that holds the fragment-segment
+ * assignment after applying the first {@code n} actions, as {@code m} {@code (fragment, segment)} rows. The
+ * attribute {@link #INITIAL_LUT_FINGERPRINT_KEY} identifies the initial lut that the actions were applied to.</li>
+ * </ul>
+ *
+ * The log is append-only: Existing blocks are never modified, new actions are appended as new blocks, which may be
+ * smaller than {@link #ACTIONS_PER_BLOCK}. Any prefix of the log that was referenced by a project remains valid.
+ * A history that diverges from the log, e.g. after undo, has to be written into a new group that
+ * {@link #supersede supersedes} the old one. Superseded groups are removed only once a project that references the
+ * new group was loaded successfully ({@link #removeSupersededGroups}).
+ */
+public class N5AssignmentActionLog
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String ACTIONS_DATASET = "actions";
+
+	public static final String CHECKPOINT_DATASET = "checkpoint";
+
+	public static final String NUM_ACTIONS_KEY = "numActions";
+
+	public static final String NUM_BLOCKS_KEY = "numBlocks";
+
+	public static final String SUPERSEDES_KEY = "supersedes";
+
+	public static final String INITIAL_LUT_FINGERPRINT_KEY = "initialLutFingerprint";
+
+	public static final int RECORD_SIZE = 4;
+
+	public static final int ACTIONS_PER_BLOCK = 1 << 14;
+
+	public static final long MERGE = 1;
+
+	public static final long DETACH = 2;
+
+	private static final int CHECKPOINT_BLOCK_SIZE = 1 << 20;
+
+	private N5AssignmentActionLog()
+	{
+
+	}
+
+	public static String actionsDataset(final String group)
+	{
+		return group + "/" + ACTIONS_DATASET;
+	}
+
+	/**
+	 *
+	 * @return dataset of the checkpoint after {@code numActions} actions
+	 */
+	public static String checkpointDataset(final String group, final int numActions)
+	{
+		return group + "/" + CHECKPOINT_DATASET + "-" + numActions;
+	}
+
+	/**
+	 * Append actions {@code [numLoggedActions, actions.size())} to the log as new blocks. Existing blocks are not
+	 * modified.
+	 *
+	 * @param writer container
+	 * @param group log group
+	 * @param actions complete history, in order. The first {@code numLoggedActions} actions must be identical to the
+	 *                actions in the log.
+	 * @param numLoggedActions number of actions in the log
+	 * @throws IOException if any n5 operation throws {@link IOException} or if the log does not hold exactly
+	 *                     {@code numLoggedActions} actions
+	 */
+	public static void appendActions(
+			final N5Writer writer,
+			final String group,
+			final List<? extends AssignmentAction> actions,
+			final int numLoggedActions) throws IOException
+	{
+		final String dataset = actionsDataset(group);
+		final int numActionsInLog = getIntAttribute(writer, dataset, NUM_ACTIONS_KEY);
+		if (numActionsInLog != numLoggedActions)
+			throw new IOException(String.format("Expected %d actions in %s but found %d", numLoggedActions, dataset, numActionsInLog));
+		if (numLoggedActions == actions.size())
+			return;
+
+		final int numBlocksInLog = getIntAttribute(writer, dataset, NUM_BLOCKS_KEY);
+		if (numLoggedActions > 0 && numBlocksInLog == 0)
+			throw new IOException(String.format("Attribute %s missing in %s", NUM_BLOCKS_KEY, dataset));
+		final int numBlocks = numBlocksInLog + (actions.size() - numLoggedActions + ACTIONS_PER_BLOCK - 1) / ACTIONS_PER_BLOCK;
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[] {(long) RECORD_SIZE * ACTIONS_PER_BLOCK * numBlocks},
+				new int[] {RECORD_SIZE * ACTIONS_PER_BLOCK},
+				DataType.UINT64,
+				new GzipCompression());
+		// createDataset only updates attributes and keeps existing blocks and custom attributes
+		writer.createDataset(dataset, attributes);
+		int blockIndex = numBlocksInLog;
+		for (int blockStart = numLoggedActions; blockStart < actions.size(); blockStart += ACTIONS_PER_BLOCK, ++blockIndex)
+		{
+			final int blockStop = Math.min(blockStart + ACTIONS_PER_BLOCK, actions.size());
+			final long[] records = new long[RECORD_SIZE * (blockStop - blockStart)];
+			for (int action = blockStart, i = 0; action < blockStop; ++action, i += RECORD_SIZE)
+				encode(actions.get(action), records, i);
+			writer.writeBlock(dataset, attributes, new LongArrayDataBlock(
+					new int[] {records.length},
+					new long[] {blockIndex},
+					records));
+		}
+		// readers that see the new number of actions also see the new blocks
+		final Map<String, Object> logAttributes = new HashMap<>();
+		logAttributes.put(NUM_ACTIONS_KEY, actions.size());
+		logAttributes.put(NUM_BLOCKS_KEY, numBlocks);
+		writer.setAttributes(dataset, logAttributes);
+		LOG.debug("Appended actions [{}, {}) to {}", numLoggedActions, actions.size(), dataset);
+	}
+
+	/**
+	 * Record that {@code group} replaces {@code supersededGroup} and all groups that {@code supersededGroup} replaced.
+	 *
+	 * @param writer container
+	 * @param group new log group
+	 * @param supersededGroup log group that is replaced by {@code group}
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static void supersede(final N5Writer writer, final String group, final String supersededGroup) throws IOException
+	{
+		final List<String> superseded = new ArrayList<>(Arrays.asList(supersededGroups(writer, supersededGroup)));
+		superseded.add(supersededGroup);
+		writer.setAttribute(group, SUPERSEDES_KEY, superseded.toArray(new String[0]));
+	}
+
+	/**
+	 * Remove all groups that {@code group} {@link #supersede supersedes}. Call this only if the project that
+	 * references {@code group} was stored successfully.
+	 *
+	 * @param writer container
+	 * @param group log group
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static void removeSupersededGroups(final N5Writer writer, final String group) throws IOException
+	{
+		final String[] superseded = supersededGroups(writer, group);
+		for (final String supersededGroup : superseded)
+		{
+			LOG.debug("Removing action log {} that was superseded by {}", supersededGroup, group);
+			if (!supersededGroup.equals(group) && writer.exists(supersededGroup))
+				writer.remove(supersededGroup);
+		}
+		if (superseded.length > 0)
+			writer.setAttribute(group, SUPERSEDES_KEY, new String[0]);
+	}
+
+	private static String[] supersededGroups(final N5Reader reader, final String group) throws IOException
+	{
+		if (!reader.exists(group))
+			return new String[0];
+		return Optional.ofNullable(reader.getAttribute(group, SUPERSEDES_KEY, String[].class)).orElse(new String[0]);
+	}
+
+	/**
+	 * @param reader container
+	 * @param group log group
+	 * @param numActions read the first {@code numActions} actions
+	 * @return the first {@code numActions} actions in the log
+	 * @throws IOException if any n5 operation throws {@link IOException} or if the log holds less than
+	 *                     {@code numActions} actions.
+	 */
+	public static List<AssignmentAction> readActions(
+			final N5Reader reader,
+			final String group,
+			final int numActions) throws IOException
+	{
+		final String dataset = actionsDataset(group);
+		final List<AssignmentAction> actions = new ArrayList<>(numActions);
+		if (numActions == 0)
+			return actions;
+		final int numActionsInLog = getIntAttribute(reader, dataset, NUM_ACTIONS_KEY);
+		if (numActionsInLog < numActions)
+			throw new IOException(String.format("Expected at least %d actions in %s but found %d", numActions, dataset, numActionsInLog));
+		final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+		for (long blockIndex = 0; actions.size() < numActions; ++blockIndex)
+		{
+			final DataBlock<?> block = reader.readBlock(dataset, attributes, new long[] {blockIndex});
+			if (block == null)
+				throw new IOException(String.format("Block %d missing in %s", blockIndex, dataset));
+			final long[] records = (long[]) block.getData();
+			for (int i = 0; i < records.length && actions.size() < numActions; i += RECORD_SIZE)
+				actions.add(decode(records, i));
+		}
+		LOG.debug("Read {} actions from {}", actions.size(), dataset);
+		return actions;
+	}
+
+	/**
+	 * Write {@code checkpoint} into a new dataset. Existing checkpoints are not modified, except that all checkpoints
+	 * other than the new one and the one after {@code keepNumActions} actions are removed.
+	 *
+	 * @param writer container
+	 * @param group log group
+	 * @param checkpoint assignment after applying the first {@code numActions} actions
+	 * @param numActions number of actions included in {@code checkpoint}
+	 * @param initialLutFingerprint fingerprint of the lut that the actions were applied to
+	 * @param keepNumActions keep the checkpoint after this many actions, e.g. because a project references it
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static void writeCheckpoint(
+			final N5Writer writer,
+			final String group,
+			final FragmentSegmentLookup checkpoint,
+			final int numActions,
+			final long initialLutFingerprint,
+			final int keepNumActions) throws IOException
+	{
+		final String dataset = checkpointDataset(group, numActions);
+		// A complete checkpoint after the same number of actions in the same group holds the same assignment and may be
+		// referenced by a project. Only replace a partially written checkpoint, which does not have all attributes yet.
+		if (!isCompleteCheckpoint(writer, dataset, numActions, initialLutFingerprint))
+		{
+			if (writer.exists(dataset))
+				writer.remove(dataset);
+			writeCheckpointDataset(writer, dataset, checkpoint, numActions, initialLutFingerprint);
+		}
+
+		final String keep = checkpointDataset(group, keepNumActions);
+		for (final String child : writer.list(group))
+		{
+			final String path = group + "/" + child;
+			if (child.startsWith(CHECKPOINT_DATASET) && !path.equals(dataset) && !path.equals(keep))
+				writer.remove(path);
+		}
+	}
+
+	/**
+	 * @param reader container
+	 * @param group log group
+	 * @param numActions expected number of actions included in the checkpoint
+	 * @param initialLutFingerprint expected fingerprint of the initial lut
+	 * @return checkpoint, if it exists and matches {@code numActions} and {@code initialLutFingerprint}
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static Optional<FragmentSegmentLookup> readCheckpoint(
+			final N5Reader reader,
+			final String group,
+			final int numActions,
+			final long initialLutFingerprint) throws IOException
+	{
+		final String dataset = checkpointDataset(group, numActions);
+		if (!reader.datasetExists(dataset))
+			return Optional.empty();
+
+		final Integer checkpointNumActions = reader.getAttribute(dataset, NUM_ACTIONS_KEY, Integer.class);
+		final Long checkpointFingerprint = reader.getAttribute(dataset, INITIAL_LUT_FINGERPRINT_KEY, Long.class);
+		if (checkpointNumActions == null || checkpointNumActions != numActions)
+		{
+			LOG.info("Checkpoint in {} includes {} actions but expected {}. Ignoring checkpoint.", dataset, checkpointNumActions, numActions);
+			return Optional.empty();
+		}
+		if (checkpointFingerprint == null || checkpointFingerprint != initialLutFingerprint)
+		{
+			LOG.info("Initial lut changed since checkpoint in {} was created. Ignoring checkpoint.", dataset);
+			return Optional.empty();
+		}
+
+		final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+		final int size = (int) attributes.getDimensions()[0];
+		final long[] fragments = new long[size];
+		final long[] segments = new long[size];
+		for (int start = 0, blockIndex = 0; start < size; start += CHECKPOINT_BLOCK_SIZE, ++blockIndex)
+		{
+			readCheckpointBlock(reader, dataset, attributes, blockIndex, 0, fragments, start);
+			readCheckpointBlock(reader, dataset, attributes, blockIndex, 1, segments, start);
+		}
+		return Optional.of(FragmentSegmentLookup.of(fragments, segments));
+	}
+
+	private static void writeCheckpointDataset(
+			final N5Writer writer,
+			final String dataset,
+			final FragmentSegmentLookup checkpoint,
+			final int numActions,
+			final long initialLutFingerprint) throws IOException
+	{
+		final int size = checkpoint.size();
+		final long[] fragments = new long[size];
+		final long[] segments = new long[size];
+		final int[] index = {0};
+		checkpoint.forEach((fragment, segment) -> {
+			fragments[index[0]] = fragment;
+			segments[index[0]] = segment;
+			++index[0];
+			return true;
+		});
+
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[] {size, 2},
+				new int[] {CHECKPOINT_BLOCK_SIZE, 1},
+				DataType.UINT64,
+				new GzipCompression());
+		writer.createDataset(dataset, attributes);
+		for (int start = 0, blockIndex = 0; start < size; start += CHECKPOINT_BLOCK_SIZE, ++blockIndex)
+		{
+			final int stop = Math.min(start + CHECKPOINT_BLOCK_SIZE, size);
+			writeCheckpointBlock(writer, dataset, attributes, blockIndex, 0, fragments, start, stop);
+			writeCheckpointBlock(writer, dataset, attributes, blockIndex, 1, segments, start, stop);
+		}
+		// the checkpoint is valid only once all blocks are written
+		final Map<String, Object> checkpointAttributes = new HashMap<>();
+		checkpointAttributes.put(NUM_ACTIONS_KEY, numActions);
+		checkpointAttributes.put(INITIAL_LUT_FINGERPRINT_KEY, initialLutFingerprint);
+		writer.setAttributes(dataset, checkpointAttributes);
+		LOG.debug("Wrote checkpoint with {} entries after {} actions to {}", size, numActions, dataset);
+	}
+
+	private static boolean isCompleteCheckpoint(
+			final N5Reader reader,
+			final String dataset,
+			final int numActions,
+			final long initialLutFingerprint) throws IOException
+	{
+		if (!reader.datasetExists(dataset))
+			return false;
+		final Integer checkpointNumActions = reader.getAttribute(dataset, NUM_ACTIONS_KEY, Integer.class);
+		final Long checkpointFingerprint = reader.getAttribute(dataset, INITIAL_LUT_FINGERPRINT_KEY, Long.class);
+		return checkpointNumActions != null && checkpointNumActions == numActions
+				&& checkpointFingerprint != null && checkpointFingerprint == initialLutFingerprint;
+	}
+
+	private static void encode(final AssignmentAction action, final long[] records, final int offset)
+	{
+		switch (action.getType())
+		{
+			case MERGE:
+			{
+				final Merge merge = (Merge) action;
+				records[offset] = MERGE;
+				records[offset + 1] = merge.fromFragmentId;
+				records[offset + 2] = merge.intoFragmentId;
+				records[offset + 3] = merge.segmentId;
+				break;
+			}
+			case DETACH:
+			{
+				final Detach detach = (Detach) action;
+				records[offset] = DETACH;
+				records[offset + 1] = detach.fragmentId;
+				records[offset + 2] = detach.fragmentFrom;
+				break;
+			}
+		}
+	}
+
+	private static AssignmentAction decode(final long[] records, final int offset) throws IOException
+	{
+		if (records[offset] == MERGE)
+			return new Merge(records[offset + 1], records[offset + 2], records[offset + 3]);
+		if (records[offset] == DETACH)
+			return new Detach(records[offset + 1], records[offset + 2]);
+		throw new IOException(String.format("Invalid action type %d", records[offset]));
+	}
+
+	private static void writeCheckpointBlock(
+			final N5Writer writer,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final int blockIndex,
+			final int column,
+			final long[] data,
+			final int start,
+			final int stop) throws IOException
+	{
+		final long[] blockData = new long[stop - start];
+		System.arraycopy(data, start, blockData, 0, blockData.length);
+		writer.writeBlock(dataset, attributes, new LongArrayDataBlock(
+				new int[] {blockData.length, 1},
+				new long[] {blockIndex, column},
+				blockData));
+	}
+
+	private static void readCheckpointBlock(
+			final N5Reader reader,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final int blockIndex,
+			final int column,
+			final long[] data,
+			final int start) throws IOException
+	{
+		final DataBlock<?> block = reader.readBlock(dataset, attributes, new long[] {blockIndex, column});
+		if (block == null)
+			throw new IOException(String.format("Block (%d, %d) missing in %s", blockIndex, column, dataset));
+		final long[] blockData = (long[]) block.getData();
+		System.arraycopy(blockData, 0, data, start, blockData.length);
+	}
+
+	private static int getIntAttribute(final N5Reader reader, final String dataset, final String key) throws IOException
+	{
+		if (!reader.exists(dataset))
+			return 0;
+		return Optional.ofNullable(reader.getAttribute(dataset, key, Integer.class)).orElse(0);
+	}
+
+}
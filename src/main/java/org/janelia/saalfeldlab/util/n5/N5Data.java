@@ -9,12 +9,13 @@ import net.imglib2.RandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.img.CachedCellImg;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.cache.volatiles.UncheckedVolatileCache;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
@@ -34,8 +35,11 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
 import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.imglib2.N5CellLoader;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisetCacheLoader;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.cache.CacheTier;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedLoaderCache;
 import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
@@ -55,6 +59,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -261,7 +266,19 @@ public class N5Data {
 			final int priority /* TODO use priority, probably in wrapAsVolatile? */) throws IOException {
 
 		try {
-			final CachedCellImg<T, ?> raw = N5Utils.openVolatile(reader, dataset);
+			final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+			final CellGrid grid = new CellGrid(attributes.getDimensions(), attributes.getBlockSize());
+			final T type = N5Utils.type(attributes.getDataType());
+			final Set<AccessFlags> accessFlags = AccessFlags.setOf(AccessFlags.VOLATILE);
+			final LoadedCellCacheLoader<T, A> loader = LoadedCellCacheLoader.get(
+					grid,
+					new N5CellLoader<>(reader, dataset, attributes.getBlockSize()),
+					type,
+					accessFlags);
+			final Cache<Long, Cell<A>> cache = MemoryBoundedLoaderCache
+					.<Long, Cell<A>>forTier(CacheTier.RAW_CELLS, N5Data::arrayCellSizeInBytes)
+					.withLoader(loader);
+			final CachedCellImg<T, A> raw = new CachedCellImg<>(grid, type, cache, ArrayDataAccessFactory.get(type, accessFlags));
 			final TmpVolatileHelpers.RaiWithInvalidate<V> vraw = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
 					(CachedCellImg) raw,
 					queue,
@@ -472,7 +489,9 @@ public class N5Data {
 				dataset,
 				N5LabelMultisetCacheLoader.constantNullReplacement(Label.BACKGROUND));
 		// TODO make cache a parameter?
-		final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = new SoftRefLoaderCache<Long, Cell<VolatileLabelMultisetArray>>().withLoader(loader);
+		final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = MemoryBoundedLoaderCache
+				.<Long, Cell<VolatileLabelMultisetArray>>forTier(CacheTier.LABEL_CELLS, N5Data::sizeInBytes)
+				.withLoader(loader);
 		final CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray> cachedImg = new CachedCellImg<>(
 				new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
 				new LabelMultisetType().getEntitiesPerPixel(),
@@ -770,4 +789,31 @@ public class N5Data {
 			}
 		}
 	}
+
+	/**
+	 * @return memory footprint of the primitive storage array of a cell
+	 */
+	private static long arrayCellSizeInBytes(final Cell<? extends ArrayDataAccess<?>> cell)
+	{
+		final Class<?> elementType = cell.getData().getCurrentStorageArray().getClass().getComponentType();
+		final int bytesPerElement;
+		if (elementType == byte.class || elementType == boolean.class)
+			bytesPerElement = 1;
+		else if (elementType == short.class || elementType == char.class)
+			bytesPerElement = 2;
+		else if (elementType == int.class || elementType == float.class)
+			bytesPerElement = 4;
+		else
+			bytesPerElement = 8;
+		return (long) bytesPerElement * cell.getData().getArrayLength();
+	}
+
+	/**
+	 * @return approximate memory footprint of a label multiset cell: one list index per pixel plus the list data
+	 */
+	private static long sizeInBytes(final Cell<VolatileLabelMultisetArray> cell)
+	{
+		final VolatileLabelMultisetArray data = cell.getData();
+		return Integer.BYTES * (long) data.getCurrentStorageArray().length + data.getListDataUsedSizeInBytes();
+	}
 }
@@ -0,0 +1,229 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import gnu.trove.map.TLongLongMap;
+import net.imglib2.type.label.Label;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Append-only log of changes to a fragment-segment assignment that is stored next to the full lookup table (base)
+ * written by {@link N5FragmentSegmentAssignmentPersister}. Each delta is a single block at grid position {@code i}
+ * of a 1-dimensional dataset {@code <base>-deltas}. The block holds interleaved {@code (fragment, segment)} pairs.
+ * A segment of {@link Label#TRANSPARENT} means that the fragment was removed from the lookup table.
+ *
+ * Deltas are absolute assignments, i.e. replaying a delta more than once in the correct order does not change
+ * the result. The attributes {@link #NUM_DELTAS_KEY} and {@link #BASE_INCLUDES_DELTAS_KEY} specify the range of
+ * deltas that need to be applied on top of the base: {@code [baseIncludesDeltas, numDeltas)}. Delta blocks are
+ * never overwritten.
+ *
+ * Compaction writes the base into a new versioned dataset ({@link #versionedBaseDataset(String, long)}) and then
+ * points {@link #BASE_KEY} at it, together with the new {@link #BASE_INCLUDES_DELTAS_KEY}, in a single attribute
+ * update. Until then, readers keep using the previous base. Readers must read {@link #BASE_INCLUDES_DELTAS_KEY}
+ * before {@link #BASE_KEY}: If compaction happens in between, they replay deltas that are already part of the new
+ * base, which does not change the result.
+ */
+public class N5FragmentSegmentAssignmentDeltas
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String DELTAS_SUFFIX = "-deltas";
+
+	public static final String NUM_DELTAS_KEY = "numDeltas";
+
+	public static final String BASE_INCLUDES_DELTAS_KEY = "baseIncludesDeltas";
+
+	public static final String BASE_KEY = "base";
+
+	public static final String PREVIOUS_BASE_KEY = "previousBase";
+
+	public static final String BASE_VERSION_SUFFIX = "-base-";
+
+	public static final long REMOVED = Label.TRANSPARENT;
+
+	private N5FragmentSegmentAssignmentDeltas()
+	{
+
+	}
+
+	public static String deltasDataset(final String baseDataset)
+	{
+		return baseDataset + DELTAS_SUFFIX;
+	}
+
+	/**
+	 *
+	 * @param baseDataset dataset of the full lookup table
+	 * @param baseIncludesDeltas number of deltas that are included in the compacted base
+	 * @return dataset for a compacted base that includes the first {@code baseIncludesDeltas} deltas
+	 */
+	public static String versionedBaseDataset(final String baseDataset, final long baseIncludesDeltas)
+	{
+		return baseDataset + BASE_VERSION_SUFFIX + baseIncludesDeltas;
+	}
+
+	/**
+	 *
+	 * @param reader container
+	 * @param baseDataset dataset of the full lookup table as written on the first commit
+	 * @return dataset that holds the current base, {@code baseDataset} if the base was never compacted
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static String currentBaseDataset(final N5Reader reader, final String baseDataset) throws IOException
+	{
+		return getStringAttribute(reader, deltasDataset(baseDataset), BASE_KEY, baseDataset);
+	}
+
+	public static long numDeltas(final N5Reader reader, final String baseDataset) throws IOException
+	{
+		return getLongAttribute(reader, deltasDataset(baseDataset), NUM_DELTAS_KEY, 0L);
+	}
+
+	public static long baseIncludesDeltas(final N5Reader reader, final String baseDataset) throws IOException
+	{
+		return getLongAttribute(reader, deltasDataset(baseDataset), BASE_INCLUDES_DELTAS_KEY, 0L);
+	}
+
+	/**
+	 * Apply all deltas starting at {@code fromDelta} to {@code lut}.
+	 *
+	 * @param reader container
+	 * @param baseDataset dataset of the full lookup table
+	 * @param fromDelta first delta to apply, at most {@link #baseIncludesDeltas(N5Reader, String)} at the time the
+	 *                  base was read
+	 * @param lut apply deltas to this lookup table
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static void applyDeltas(final N5Reader reader, final String baseDataset, final long fromDelta, final TLongLongMap lut) throws IOException
+	{
+		final String deltas = deltasDataset(baseDataset);
+		if (!reader.datasetExists(deltas))
+			return;
+		final DatasetAttributes attributes = reader.getDatasetAttributes(deltas);
+		final long numDeltas = getLongAttribute(reader, deltas, NUM_DELTAS_KEY, 0L);
+		LOG.debug("Applying deltas [{}, {}) from {}", fromDelta, numDeltas, deltas);
+		for (long index = fromDelta; index < numDeltas; ++index)
+		{
+			final DataBlock<?> block = reader.readBlock(deltas, attributes, new long[] {index});
+			if (block == null)
+				throw new IOException(String.format("Delta %d missing in %s", index, deltas));
+			applyDelta((long[]) block.getData(), lut);
+		}
+	}
+
+	/**
+	 * Apply a single delta to {@code lut}.
+	 *
+	 * @param fragmentsAndSegments interleaved {@code (fragment, segment)} pairs
+	 * @param lut apply delta to this lookup table
+	 */
+	public static void applyDelta(final long[] fragmentsAndSegments, final TLongLongMap lut)
+	{
+		for (int i = 0; i < fragmentsAndSegments.length; i += 2)
+		{
+			if (fragmentsAndSegments[i + 1] == REMOVED)
+				lut.remove(fragmentsAndSegments[i]);
+			else
+				lut.put(fragmentsAndSegments[i], fragmentsAndSegments[i + 1]);
+		}
+	}
+
+	/**
+	 * Append {@code fragmentsAndSegments} as new delta. The delta becomes visible to readers only after the block was
+	 * written successfully.
+	 *
+	 * @param writer container
+	 * @param baseDataset dataset of the full lookup table
+	 * @param fragmentsAndSegments interleaved {@code (fragment, segment)} pairs
+	 * @return number of deltas after appending
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static long append(final N5Writer writer, final String baseDataset, final long[] fragmentsAndSegments) throws IOException
+	{
+		final String deltas = deltasDataset(baseDataset);
+		final long numDeltas = getLongAttribute(writer, deltas, NUM_DELTAS_KEY, 0L);
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[] {numDeltas + 1},
+				new int[] {1},
+				DataType.UINT64,
+				new GzipCompression());
+		// createDataset only updates attributes and keeps existing blocks and custom attributes
+		writer.createDataset(deltas, attributes);
+		writer.writeBlock(deltas, attributes, new LongArrayDataBlock(
+				new int[] {fragmentsAndSegments.length},
+				new long[] {numDeltas},
+				fragmentsAndSegments));
+		writer.setAttribute(deltas, NUM_DELTAS_KEY, numDeltas + 1);
+		LOG.debug("Appended delta {} with {} entries to {}", numDeltas, fragmentsAndSegments.length / 2, deltas);
+		return numDeltas + 1;
+	}
+
+	/**
+	 * Point readers at {@code base}, which includes the first {@code baseIncludesDeltas} deltas. Both are updated
+	 * in a single attribute write, so readers never combine a base with the wrong range of deltas. {@code base} must
+	 * be written completely before calling this method.
+	 *
+	 * @param writer container
+	 * @param baseDataset dataset of the full lookup table as written on the first commit
+	 * @param base dataset that holds the new base
+	 * @param baseIncludesDeltas number of deltas that have been applied to {@code base}
+	 * @return the base that was current before, or {@link Optional#empty()} if there was none or it was {@code base}
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static Optional<String> setBase(
+			final N5Writer writer,
+			final String baseDataset,
+			final String base,
+			final long baseIncludesDeltas) throws IOException
+	{
+		final String deltas = deltasDataset(baseDataset);
+		if (!writer.exists(deltas))
+			writer.createGroup(deltas);
+		final String previousBase = getStringAttribute(writer, deltas, BASE_KEY, baseDataset);
+		final Map<String, Object> attributes = new HashMap<>();
+		attributes.put(BASE_KEY, base);
+		attributes.put(BASE_INCLUDES_DELTAS_KEY, baseIncludesDeltas);
+		if (!previousBase.equals(base))
+			attributes.put(PREVIOUS_BASE_KEY, previousBase);
+		writer.setAttributes(deltas, attributes);
+		LOG.debug("Base of {} is {} and includes {} deltas", baseDataset, base, baseIncludesDeltas);
+		return previousBase.equals(base) ? Optional.empty() : Optional.of(previousBase);
+	}
+
+	/**
+	 *
+	 * @return the base that was current before the last call to {@link #setBase}
+	 */
+	public static Optional<String> previousBaseDataset(final N5Reader reader, final String baseDataset) throws IOException
+	{
+		return Optional.ofNullable(getStringAttribute(reader, deltasDataset(baseDataset), PREVIOUS_BASE_KEY, null));
+	}
+
+	private static long getLongAttribute(final N5Reader reader, final String dataset, final String key, final long fallback) throws IOException
+	{
+		if (!reader.exists(dataset))
+			return fallback;
+		return Optional.ofNullable(reader.getAttribute(dataset, key, Long.class)).orElse(fallback);
+	}
+
+	private static String getStringAttribute(final N5Reader reader, final String dataset, final String key, final String fallback) throws IOException
+	{
+		if (!reader.exists(dataset))
+			return fallback;
+		return Optional.ofNullable(reader.getAttribute(dataset, key, String.class)).orElse(fallback);
+	}
+
+}
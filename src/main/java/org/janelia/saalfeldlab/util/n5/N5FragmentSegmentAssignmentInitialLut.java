@@ -44,17 +44,7 @@ public class N5FragmentSegmentAssignmentInitialLut implements Supplier<TLongLong
 	@Override
 	public TLongLongMap get() {
 		try {
-			RandomAccessibleInterval<UnsignedLongType> data = openDatasetSafe(meta.reader(), meta.dataset());
-			final long[] keys = new long[(int) data.dimension(0)];
-			final long[] values = new long[keys.length];
-			LOG.debug("Found {} assignments", keys.length);
-			final Cursor<UnsignedLongType> keyCursor = Views.flatIterable(Views.hyperSlice(data, 1, 0L)).cursor();
-			final Cursor<UnsignedLongType> valueCursor = Views.flatIterable(Views.hyperSlice(data, 1, 1L)).cursor();
-			for (int i = 0; i < keys.length; ++i) {
-				keys[i] = keyCursor.next().getIntegerLong();
-				values[i] = valueCursor.next().getIntegerLong();
-			}
-			return new TLongLongHashMap(keys, values);
+			return readBaseAndDeltas(meta.reader(), meta.dataset());
 		} catch (IOException e) {
 			LOG.debug("Exception while trying to return initial lut from N5", e);
 			LOG.info("Unable to read initial lut from {} -- returning empty map", meta);
@@ -62,6 +52,36 @@ public class N5FragmentSegmentAssignmentInitialLut implements Supplier<TLongLong
 		}
 	}
 
+	/**
+	 * Read the current full lookup table of {@code dataset} and apply all deltas that were appended by
+	 * {@link N5FragmentSegmentAssignmentPersister} since the lookup table was last written in full. After compaction,
+	 * the full lookup table is stored in a versioned dataset next to {@code dataset}.
+	 *
+	 * @param reader container
+	 * @param dataset dataset of the full lookup table
+	 * @return fragment-segment lookup table
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static TLongLongMap readBaseAndDeltas(final N5Reader reader, final String dataset) throws IOException {
+		// read the number of included deltas before the base pointer, see N5FragmentSegmentAssignmentDeltas
+		final long baseIncludesDeltas = N5FragmentSegmentAssignmentDeltas.baseIncludesDeltas(reader, dataset);
+		final String base = N5FragmentSegmentAssignmentDeltas.currentBaseDataset(reader, dataset);
+		LOG.debug("Reading base {} that includes {} deltas", base, baseIncludesDeltas);
+		RandomAccessibleInterval<UnsignedLongType> data = openDatasetSafe(reader, base);
+		final long[] keys = new long[(int) data.dimension(0)];
+		final long[] values = new long[keys.length];
+		LOG.debug("Found {} assignments", keys.length);
+		final Cursor<UnsignedLongType> keyCursor = Views.flatIterable(Views.hyperSlice(data, 1, 0L)).cursor();
+		final Cursor<UnsignedLongType> valueCursor = Views.flatIterable(Views.hyperSlice(data, 1, 1L)).cursor();
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = keyCursor.next().getIntegerLong();
+			values[i] = valueCursor.next().getIntegerLong();
+		}
+		final TLongLongMap lut = new TLongLongHashMap(keys, values);
+		N5FragmentSegmentAssignmentDeltas.applyDeltas(reader, dataset, baseIncludesDeltas, lut);
+		return lut;
+	}
+
 	private static RandomAccessibleInterval<UnsignedLongType> openDatasetSafe(
 			final N5Reader reader,
 			final String dataset
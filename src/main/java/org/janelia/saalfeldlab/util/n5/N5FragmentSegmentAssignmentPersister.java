@@ -1,5 +1,9 @@
 package org.janelia.saalfeldlab.util.n5;
 
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 import org.janelia.saalfeldlab.n5.DataBlock;
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
@@ -8,22 +12,52 @@ import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Persist fragment-segment assignments incrementally: The full lookup table (base) is written only on the first
+ * commit. Subsequent commits append the fragments that changed since the last commit to a delta log
+ * ({@link N5FragmentSegmentAssignmentDeltas}). Once the log holds more than {@link #getMaxNumDeltas()} deltas, a
+ * new base is written (compacted) into a versioned dataset on a background thread.
+ */
 public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssignmentOnlyLocal.Persister {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	public static final int DEFAULT_MAX_NUM_DELTAS = 50;
+
+	private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("fragment-segment-assignment-compaction-%d", true));
+
 	private final N5Writer writer;
 
 	private final String dataset;
 
+	private final int maxNumDeltas;
+
+	/**
+	 * State of the lookup table in the container (base + deltas) as of the last commit. Loaded lazily on first commit.
+	 */
+	private TLongLongHashMap persisted = null;
+
+	private boolean isCompacting = false;
+
 	public N5FragmentSegmentAssignmentPersister(N5Writer writer, String dataset) {
+		this(writer, dataset, DEFAULT_MAX_NUM_DELTAS);
+	}
+
+	public N5FragmentSegmentAssignmentPersister(N5Writer writer, String dataset, int maxNumDeltas) {
 		this.writer = writer;
 		this.dataset = dataset;
+		this.maxNumDeltas = maxNumDeltas;
 		LOG.debug("Creating {} with writer {} and dataset {}", getClass().getName(), this.writer, this.dataset);
 	}
 
@@ -35,42 +69,190 @@ public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssi
 		return this.dataset;
 	}
 
+	public int getMaxNumDeltas() {
+		return this.maxNumDeltas;
+	}
+
 	@Override
-	public void persist(long[] keys, long[] values) throws UnableToPersist {
+	public synchronized void persist(long[] keys, long[] values) throws UnableToPersist {
 		try
 		{
 
 			LOG.debug("Persisting fragment-segment-lookup: {} {}", keys, values);
 
-			final DatasetAttributes attrs = new DatasetAttributes(
-					new long[] {keys.length, 2},
-					new int[] {Math.max(keys.length, 1), 1},
-					DataType.UINT64,
-					new GzipCompression()
-			);
-			writer.createDataset(dataset, attrs);
+			final TLongLongHashMap current = new TLongLongHashMap(keys, values);
 
-			if (keys.length == 0)
+			if (!writer.datasetExists(dataset))
 			{
-				LOG.debug("Zero-length-lookup: Will not write any data.");
+				writeBase(writer, dataset, keys, values);
+				if (writer.exists(N5FragmentSegmentAssignmentDeltas.deltasDataset(dataset)))
+					N5FragmentSegmentAssignmentDeltas.setBase(writer, dataset, dataset, N5FragmentSegmentAssignmentDeltas.numDeltas(writer, dataset));
+				this.persisted = current;
+				return;
 			}
 
-			final DataBlock<long[]> keyBlock = new LongArrayDataBlock(
-					new int[] {keys.length, 1},
-					new long[] {0, 0},
-					keys
-			);
-			final DataBlock<long[]> valueBlock = new LongArrayDataBlock(
-					new int[] {values.length, 1},
-					new long[] {0, 1},
-					values
-			);
-			writer.writeBlock(dataset, attrs, keyBlock);
-			writer.writeBlock(dataset, attrs, valueBlock);
+			if (this.persisted == null)
+				this.persisted = readPersisted();
+
+			final long[] delta = diff(this.persisted, current);
+			if (delta.length == 0)
+			{
+				LOG.debug("No changes since last commit: Will not write any data.");
+				return;
+			}
+
+			final long numDeltas = N5FragmentSegmentAssignmentDeltas.append(writer, dataset, delta);
+			this.persisted = current;
+
+			if (numDeltas - N5FragmentSegmentAssignmentDeltas.baseIncludesDeltas(writer, dataset) > maxNumDeltas)
+				compactInBackground(numDeltas, keys, values);
 		} catch (final Exception e)
 		{
 			throw new UnableToPersist(e);
 		}
 	}
 
+	/**
+	 * Append {@code fragments} and {@code segments} as a delta without comparing against the persisted lookup table.
+	 * {@code lut} is read only if there is no base yet or if the deltas are compacted.
+	 */
+	@Override
+	public synchronized void persistChanges(long[] fragments, long[] segments, TLongLongMap lut) throws UnableToPersist {
+		try
+		{
+			if (!writer.datasetExists(dataset))
+			{
+				persist(lut.keys(), lut.values());
+				return;
+			}
+
+			if (fragments.length == 0)
+			{
+				LOG.debug("No changes since last commit: Will not write any data.");
+				return;
+			}
+
+			LOG.debug("Persisting {} changed fragments: {} {}", fragments.length, fragments, segments);
+			final long[] delta = new long[2 * fragments.length];
+			// removed fragments are mapped to Label.TRANSPARENT, which is N5FragmentSegmentAssignmentDeltas.REMOVED
+			for (int i = 0; i < fragments.length; ++i)
+			{
+				delta[2 * i] = fragments[i];
+				delta[2 * i + 1] = segments[i];
+			}
+			final long numDeltas = N5FragmentSegmentAssignmentDeltas.append(writer, dataset, delta);
+
+			if (this.persisted != null)
+				N5FragmentSegmentAssignmentDeltas.applyDelta(delta, this.persisted);
+
+			if (numDeltas - N5FragmentSegmentAssignmentDeltas.baseIncludesDeltas(writer, dataset) > maxNumDeltas && !isCompacting)
+				compactInBackground(numDeltas, lut.keys(), lut.values());
+		} catch (final Exception e)
+		{
+			throw new UnableToPersist(e);
+		}
+	}
+
+	private TLongLongHashMap readPersisted() throws IOException
+	{
+		final TLongLongMap lut = N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(writer, dataset);
+		return lut instanceof TLongLongHashMap ? (TLongLongHashMap) lut : new TLongLongHashMap(lut);
+	}
+
+	/**
+	 * Write the compacted base into a new dataset, so that readers never see a partially written base. Readers switch
+	 * to the new base only once it is complete, see {@link N5FragmentSegmentAssignmentDeltas#setBase}. The previous
+	 * base is kept for readers that are still using it, older compacted bases are removed.
+	 */
+	private void compactInBackground(final long baseIncludesDeltas, final long[] keys, final long[] values)
+	{
+		if (isCompacting)
+			return;
+		isCompacting = true;
+		final String base = N5FragmentSegmentAssignmentDeltas.versionedBaseDataset(dataset, baseIncludesDeltas);
+		LOG.debug("Compacting {} deltas of {} into {}", baseIncludesDeltas, dataset, base);
+		COMPACTION_EXECUTOR.submit(() -> {
+			try {
+				if (writer.exists(base))
+					writer.remove(base);
+				writeBase(writer, base, keys, values);
+				final Optional<String> obsoleteBase;
+				synchronized (this) {
+					obsoleteBase = N5FragmentSegmentAssignmentDeltas.previousBaseDataset(writer, dataset);
+					N5FragmentSegmentAssignmentDeltas.setBase(writer, dataset, base, baseIncludesDeltas);
+				}
+				// never remove the dataset of the first commit, it is referenced by projects
+				if (obsoleteBase.isPresent() && !obsoleteBase.get().equals(dataset) && !obsoleteBase.get().equals(base))
+					writer.remove(obsoleteBase.get());
+			} catch (final IOException e) {
+				// Deltas and the previous base are still valid if compaction fails. Try again on next commit.
+				LOG.warn("Unable to compact fragment-segment-assignment deltas for {}", dataset, e);
+			}
+			finally {
+				synchronized (this) {
+					isCompacting = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 *
+	 * @return interleaved {@code (fragment, segment)} pairs for all fragments whose segment differs between
+	 * {@code previous} and {@code current}. Fragments that are not in {@code current} are mapped to
+	 * {@link N5FragmentSegmentAssignmentDeltas#REMOVED}.
+	 */
+	private static long[] diff(final TLongLongMap previous, final TLongLongMap current)
+	{
+		final TLongArrayList delta = new TLongArrayList();
+		for (final TLongLongIterator it = current.iterator(); it.hasNext();)
+		{
+			it.advance();
+			if (!previous.containsKey(it.key()) || previous.get(it.key()) != it.value())
+			{
+				delta.add(it.key());
+				delta.add(it.value());
+			}
+		}
+		for (final TLongLongIterator it = previous.iterator(); it.hasNext();)
+		{
+			it.advance();
+			if (!current.containsKey(it.key()))
+			{
+				delta.add(it.key());
+				delta.add(N5FragmentSegmentAssignmentDeltas.REMOVED);
+			}
+		}
+		return delta.toArray();
+	}
+
+	private static void writeBase(final N5Writer writer, final String dataset, long[] keys, long[] values) throws IOException
+	{
+		final DatasetAttributes attrs = new DatasetAttributes(
+				new long[] {keys.length, 2},
+				new int[] {Math.max(keys.length, 1), 1},
+				DataType.UINT64,
+				new GzipCompression()
+		);
+		writer.createDataset(dataset, attrs);
+
+		if (keys.length == 0)
+		{
+			LOG.debug("Zero-length-lookup: Will not write any data.");
+		}
+
+		final DataBlock<long[]> keyBlock = new LongArrayDataBlock(
+				new int[] {keys.length, 1},
+				new long[] {0, 0},
+				keys
+		);
+		final DataBlock<long[]> valueBlock = new LongArrayDataBlock(
+				new int[] {values.length, 1},
+				new long[] {0, 1},
+				values
+		);
+		writer.writeBlock(dataset, attrs, keyBlock);
+		writer.writeBlock(dataset, attrs, valueBlock);
+	}
+
 }
@@ -0,0 +1,72 @@
+package bdv.fx.viewer.render;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NavigationPredictorTest
+{
+
+	@Test
+	public void testScrolling()
+	{
+		final NavigationPredictor predictor = new NavigationPredictor();
+		final AffineTransform3D transform = new AffineTransform3D();
+		Assert.assertEquals(NavigationPredictor.Motion.CHANGED, predictor.update(transform));
+		Assert.assertFalse(predictor.hasVelocity());
+
+		transform.translate(0, 0, 1);
+		Assert.assertEquals(NavigationPredictor.Motion.CHANGED, predictor.update(transform));
+		Assert.assertArrayEquals(new double[] {0, 0, 1}, predictor.getVelocity(), 1e-9);
+
+		transform.translate(0, 0, 1);
+		Assert.assertEquals(NavigationPredictor.Motion.CONTINUED, predictor.update(transform));
+		Assert.assertEquals(NavigationPredictor.Motion.STATIONARY, predictor.update(transform));
+		Assert.assertArrayEquals(new double[] {0, 0, 1}, predictor.getVelocity(), 1e-9);
+
+		final AffineTransform3D predicted = predictor.predict(transform, 3);
+		Assert.assertEquals(5.0, predicted.get(2, 3), 1e-9);
+		Assert.assertEquals(0.0, predicted.get(0, 3), 1e-9);
+
+		// reversal
+		transform.translate(0, 0, -1);
+		Assert.assertEquals(NavigationPredictor.Motion.CHANGED, predictor.update(transform));
+		Assert.assertArrayEquals(new double[] {0, 0, -1}, predictor.getVelocity(), 1e-9);
+	}
+
+	@Test
+	public void testPanning()
+	{
+		final NavigationPredictor predictor = new NavigationPredictor();
+		final AffineTransform3D transform = new AffineTransform3D();
+		predictor.update(transform);
+
+		transform.translate(10, 0, 0);
+		predictor.update(transform);
+		// small deviation keeps direction and smooths velocity
+		transform.translate(10, 2, 0);
+		Assert.assertEquals(NavigationPredictor.Motion.CONTINUED, predictor.update(transform));
+		Assert.assertArrayEquals(new double[] {10, 1, 0}, predictor.getVelocity(), 1e-9);
+
+		// perpendicular
+		transform.translate(0, 10, 0);
+		Assert.assertEquals(NavigationPredictor.Motion.CHANGED, predictor.update(transform));
+		Assert.assertArrayEquals(new double[] {0, 10, 0}, predictor.getVelocity(), 1e-9);
+	}
+
+	@Test
+	public void testZoomResets()
+	{
+		final NavigationPredictor predictor = new NavigationPredictor();
+		final AffineTransform3D transform = new AffineTransform3D();
+		predictor.update(transform);
+		transform.translate(0, 0, 1);
+		predictor.update(transform);
+		Assert.assertTrue(predictor.hasVelocity());
+
+		transform.scale(2.0);
+		Assert.assertEquals(NavigationPredictor.Motion.CHANGED, predictor.update(transform));
+		Assert.assertFalse(predictor.hasVelocity());
+	}
+
+}
@@ -0,0 +1,65 @@
+package bdv.fx.viewer.render;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RenderMetricsTest
+{
+
+	@Test
+	public void testRingBuffer()
+	{
+		final RenderMetrics metrics = new RenderMetrics(3);
+		Assert.assertNull(metrics.getLastFrame());
+		Assert.assertTrue(Double.isNaN(metrics.getMeanFrameMillis()));
+
+		for (int i = 1; i <= 5; ++i)
+			metrics.record(frame(i));
+
+		Assert.assertEquals(5, metrics.getNumRecordedFrames());
+		Assert.assertEquals(3, metrics.getNumBufferedFrames());
+		final List<FrameMetrics> frames = metrics.getFrames();
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals(3, frames.get(0).getTimestampMillis());
+		Assert.assertEquals(5, frames.get(2).getTimestampMillis());
+		Assert.assertEquals(5, metrics.getLastFrame().getTimestampMillis());
+
+		// frames 3, 4, 5 with 3ms, 4ms, 5ms
+		Assert.assertEquals(4.0, metrics.getMeanFrameMillis(), 1e-9);
+		Assert.assertEquals(5.0, metrics.getMaxFrameMillis(), 1e-9);
+		Assert.assertEquals(12, metrics.getCacheHits());
+		Assert.assertEquals(3, metrics.getCacheMisses());
+		Assert.assertEquals(0.8, metrics.getCacheHitRatio(), 1e-9);
+		Assert.assertArrayEquals(new long[] {5, 0}, metrics.getLastInvalidPixelsPerLevel());
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getNumBufferedFrames());
+		Assert.assertNull(metrics.getLastFrame());
+	}
+
+	@Test
+	public void testCsv() throws IOException
+	{
+		final RenderMetrics metrics = new RenderMetrics(2);
+		metrics.record(frame(1));
+		metrics.record(frame(2));
+
+		final StringWriter writer = new StringWriter();
+		metrics.writeCsv(writer);
+		final String[] lines = writer.toString().split("\n");
+		Assert.assertEquals(3, lines.length);
+		Assert.assertEquals(FrameMetrics.CSV_HEADER, lines[0]);
+		Assert.assertEquals("2,2000000,1000000,500000,1,true,false,4,1,2;0", lines[2]);
+		Assert.assertEquals(lines[0].split(",").length, lines[1].split(",").length);
+	}
+
+	private static FrameMetrics frame(final int i)
+	{
+		return new FrameMetrics(i, i * 1000000L, 1000000L, 500000L, 1, true, false, 4, 1, new long[] {i, 0});
+	}
+
+}
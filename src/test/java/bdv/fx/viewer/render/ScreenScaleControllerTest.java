@@ -0,0 +1,76 @@
+package bdv.fx.viewer.render;
+
+import bdv.fx.viewer.render.ScreenScaleController.Interaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScreenScaleControllerTest
+{
+
+	private static final long MILLIS = 1000 * 1000;
+
+	@Test
+	public void testNoOscillation()
+	{
+		// very different screen scales: full resolution is too slow, coarse scale is very fast
+		final ScreenScaleController controller = new ScreenScaleController(30 * MILLIS);
+		controller.setScreenScales(new double[] {1.0, 0.1});
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+
+		for (int frame = 0; frame < 10; ++frame)
+		{
+			final int start = controller.getStartScreenScaleIndex(Interaction.NAVIGATE);
+			Assert.assertEquals(1, start);
+			controller.update(Interaction.NAVIGATE, 1, 1 * MILLIS);
+			controller.update(Interaction.NAVIGATE, 0, 100 * MILLIS);
+		}
+	}
+
+	@Test
+	public void testInteractionsAreIndependent()
+	{
+		final ScreenScaleController controller = new ScreenScaleController(30 * MILLIS);
+		controller.setScreenScales(new double[] {1.0, 0.5, 0.25});
+
+		// painting small intervals renders quickly at full resolution
+		controller.update(Interaction.PAINT, 2, 1 * MILLIS);
+		controller.update(Interaction.PAINT, 1, 2 * MILLIS);
+		controller.update(Interaction.PAINT, 0, 4 * MILLIS);
+		Assert.assertEquals(0, controller.getStartScreenScaleIndex(Interaction.PAINT));
+		Assert.assertEquals(2, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+
+		// navigation: 0.5 is expected to take 4 * 5 = 20ms from extrapolation, full resolution takes 80ms
+		controller.update(Interaction.NAVIGATE, 2, 5 * MILLIS);
+		Assert.assertEquals(20 * MILLIS, controller.getExpectedRenderNanos(Interaction.NAVIGATE, 1), 1e-6);
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		controller.update(Interaction.NAVIGATE, 1, 20 * MILLIS);
+		controller.update(Interaction.NAVIGATE, 0, 80 * MILLIS);
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		Assert.assertEquals(0, controller.getStartScreenScaleIndex(Interaction.PAINT));
+
+		controller.setAdaptive(false);
+		Assert.assertEquals(2, controller.getStartScreenScaleIndex(Interaction.PAINT));
+	}
+
+	@Test
+	public void testHysteresis()
+	{
+		final ScreenScaleController controller = new ScreenScaleController(30 * MILLIS, 1.0, 0.25);
+		controller.setScreenScales(new double[] {1.0, 0.5});
+
+		// 4 * 7ms = 28ms extrapolated for full resolution
+		controller.update(Interaction.NAVIGATE, 1, 7 * MILLIS);
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		controller.update(Interaction.NAVIGATE, 0, 28 * MILLIS);
+		// 28ms is within target but not below 0.75 * 30ms
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		controller.update(Interaction.NAVIGATE, 0, 20 * MILLIS);
+		Assert.assertEquals(0, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		// once at full resolution, stay there as long as target is met
+		controller.update(Interaction.NAVIGATE, 0, 28 * MILLIS);
+		Assert.assertEquals(0, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+		controller.update(Interaction.NAVIGATE, 0, 40 * MILLIS);
+		Assert.assertEquals(1, controller.getStartScreenScaleIndex(Interaction.NAVIGATE));
+	}
+
+}
@@ -0,0 +1,97 @@
+package bdv.fx.viewer.render;
+
+import java.util.List;
+
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScrollBlitTest
+{
+
+	private static final int WIDTH = 7;
+
+	private static final int HEIGHT = 5;
+
+	@Test
+	public void testShift()
+	{
+		final AffineTransform3D from = new AffineTransform3D();
+		from.scale(2.0);
+		from.rotate(2, 0.3);
+
+		final AffineTransform3D to = from.copy();
+		to.translate(3.0, -2.0, 0.0);
+		Assert.assertArrayEquals(new long[] {3, -2}, ScrollBlit.shift(from, to, 1.0, WIDTH, HEIGHT));
+		Assert.assertArrayEquals(new long[] {6, -4}, ScrollBlit.shift(from, to, 2.0, 2 * WIDTH, 2 * HEIGHT));
+
+		// sub-pixel shift at this screen scale
+		Assert.assertNull(ScrollBlit.shift(from, to, 0.5, WIDTH, HEIGHT));
+
+		// no overlap
+		Assert.assertNull(ScrollBlit.shift(from, to, 1.0, 3, HEIGHT));
+
+		// no shift
+		Assert.assertNull(ScrollBlit.shift(from, from.copy(), 1.0, WIDTH, HEIGHT));
+
+		// out-of-plane translation
+		final AffineTransform3D outOfPlane = to.copy();
+		outOfPlane.translate(0.0, 0.0, 1.0);
+		Assert.assertNull(ScrollBlit.shift(from, outOfPlane, 1.0, WIDTH, HEIGHT));
+
+		// rotation
+		final AffineTransform3D rotated = to.copy();
+		rotated.rotate(2, 0.1);
+		Assert.assertNull(ScrollBlit.shift(from, rotated, 1.0, WIDTH, HEIGHT));
+	}
+
+	@Test
+	public void testCopyAndExposedIntervals()
+	{
+		for (final long[] shift : new long[][] {{2, 1}, {-3, 2}, {1, -4}, {-6, -1}, {0, 3}, {-2, 0}})
+		{
+			final IntArray source = new IntArray(WIDTH * HEIGHT);
+			final IntArray target = new IntArray(WIDTH * HEIGHT);
+			for (int i = 0; i < WIDTH * HEIGHT; ++i)
+			{
+				source.setValue(i, i + 1);
+				target.setValue(i, -1);
+			}
+
+			ScrollBlit.copy(source, target, WIDTH, HEIGHT, shift[0], shift[1]);
+			final List<Interval> exposed = ScrollBlit.exposedIntervals(WIDTH, HEIGHT, shift[0], shift[1]);
+
+			long numExposed = 0;
+			for (final Interval interval : exposed)
+				numExposed += Intervals.numElements(interval);
+
+			long numCopied = 0;
+			for (int y = 0; y < HEIGHT; ++y)
+				for (int x = 0; x < WIDTH; ++x)
+				{
+					final long sourceX = x - shift[0];
+					final long sourceY = y - shift[1];
+					final boolean isCovered = sourceX >= 0 && sourceX < WIDTH && sourceY >= 0 && sourceY < HEIGHT;
+					final int value = target.getValue(y * WIDTH + x);
+					if (isCovered)
+					{
+						Assert.assertEquals(sourceY * WIDTH + sourceX + 1, value);
+						++numCopied;
+					}
+					else
+						Assert.assertEquals(-1, value);
+
+					final long[] position = {x, y};
+					final long numContaining = exposed.stream().filter(i -> Intervals.contains(i, new Point(position))).count();
+					Assert.assertEquals(isCovered ? 0 : 1, numContaining);
+				}
+
+			Assert.assertEquals(WIDTH * HEIGHT, numCopied + numExposed);
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryBoundedLoaderCacheTest
+{
+
+	private static final long VALUE_SIZE = 100;
+
+	private static final long ENTRY_SIZE = VALUE_SIZE + MemoryBudget.ENTRY_OVERHEAD_BYTES;
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws ExecutionException
+	{
+		final MemoryBudget                              budget   = new MemoryBudget("test", 3 * ENTRY_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache1   = new MemoryBoundedLoaderCache<>(budget, v -> VALUE_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache2   = new MemoryBoundedLoaderCache<>(budget, v -> VALUE_SIZE);
+		final AtomicInteger                             numLoads = new AtomicInteger();
+
+		Assert.assertEquals("1", cache1.get(1, k -> load(k, numLoads)));
+		Assert.assertEquals("2", cache1.get(2, k -> load(k, numLoads)));
+		Assert.assertEquals("1", cache2.get(1, k -> load(k, numLoads)));
+		Assert.assertEquals(3, numLoads.get());
+		Assert.assertEquals(3 * ENTRY_SIZE, budget.getUsedBytes());
+
+		// touch 1 in cache1 so that 2 is least recently used
+		Assert.assertEquals("1", cache1.get(1, k -> load(k, numLoads)));
+		Assert.assertEquals(3, numLoads.get());
+
+		cache2.get(3, k -> load(k, numLoads));
+		Assert.assertEquals(3, budget.getNumEntries());
+		Assert.assertEquals(1, budget.getNumEvictions());
+		Assert.assertNull(cache1.getIfPresent(2));
+		Assert.assertEquals("1", cache1.getIfPresent(1));
+		Assert.assertEquals("1", cache2.getIfPresent(1));
+		Assert.assertEquals("3", cache2.getIfPresent(3));
+
+		budget.setMaxBytes(ENTRY_SIZE);
+		Assert.assertEquals(1, budget.getNumEntries());
+		Assert.assertEquals("3", cache2.getIfPresent(3));
+	}
+
+	@Test
+	public void testBufferedAccesses() throws ExecutionException, InterruptedException
+	{
+		final MemoryBudget                              budget = new MemoryBudget("test", 3 * ENTRY_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache  = new MemoryBoundedLoaderCache<>(budget, v -> VALUE_SIZE);
+		for (int i = 0; i < 3; ++i)
+			cache.get(i, String::valueOf);
+
+		// accesses beyond the buffer capacity are dropped, the buffered ones still mark 0 as most recently used
+		final int numReads = MemoryBudget.MAX_BUFFERED_ACCESSES + 10;
+		final Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; ++t)
+		{
+			readers[t] = new Thread(() -> {
+				for (int i = 0; i < numReads; ++i)
+					Assert.assertEquals("0", cache.getIfPresent(0));
+			});
+			readers[t].start();
+		}
+		for (final Thread reader : readers)
+			reader.join();
+		Assert.assertEquals(readers.length * numReads, budget.getNumHits());
+
+		cache.get(3, String::valueOf);
+		Assert.assertEquals(3, budget.getNumEntries());
+		Assert.assertEquals("0", cache.getIfPresent(0));
+		Assert.assertNull(cache.getIfPresent(1));
+
+		// accesses are recorded again after the buffer was drained: 0 and 2 are more recently used than 3
+		Assert.assertEquals("2", cache.getIfPresent(2));
+		cache.get(4, String::valueOf);
+		Assert.assertNull(cache.getIfPresent(3));
+		Assert.assertEquals("0", cache.getIfPresent(0));
+		Assert.assertEquals("2", cache.getIfPresent(2));
+		Assert.assertEquals(3 * ENTRY_SIZE, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testInvalidate() throws ExecutionException
+	{
+		final MemoryBudget                              budget = new MemoryBudget("test", 10 * ENTRY_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache1 = new MemoryBoundedLoaderCache<>(budget, v -> VALUE_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache2 = new MemoryBoundedLoaderCache<>(budget, v -> VALUE_SIZE);
+		for (int i = 0; i < 4; ++i)
+		{
+			cache1.get(i, String::valueOf);
+			cache2.get(i, String::valueOf);
+		}
+
+		cache1.invalidateIf(0, k -> k % 2 == 0);
+		Assert.assertEquals(6, budget.getNumEntries());
+		Assert.assertNull(cache1.getIfPresent(0));
+		Assert.assertEquals("1", cache1.getIfPresent(1));
+		Assert.assertEquals("0", cache2.getIfPresent(0));
+
+		cache2.invalidateAll(0);
+		Assert.assertEquals(2, budget.getNumEntries());
+		Assert.assertEquals(2 * ENTRY_SIZE, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testValueLargerThanBudgetIsNotStored() throws ExecutionException
+	{
+		final MemoryBudget                              budget = new MemoryBudget("test", ENTRY_SIZE);
+		final MemoryBoundedLoaderCache<Integer, String> cache  = new MemoryBoundedLoaderCache<>(budget, v -> 2 * VALUE_SIZE);
+		Assert.assertEquals("1", cache.get(1, String::valueOf));
+		Assert.assertNull(cache.getIfPresent(1));
+		Assert.assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testParse()
+	{
+		Assert.assertEquals(512, CacheBudgets.parseBytes("512"));
+		Assert.assertEquals(3L << 10, CacheBudgets.parseBytes("3k"));
+		Assert.assertEquals(512L << 20, CacheBudgets.parseBytes("512M"));
+		Assert.assertEquals(3L << 29, CacheBudgets.parseBytes("1.5gb"));
+		final Map<CacheTier, Long> budgets = CacheBudgets.parse("labels=2g, meshes=1m");
+		Assert.assertEquals(2, budgets.size());
+		Assert.assertEquals(2L << 30, (long) budgets.get(CacheTier.LABEL_CELLS));
+		Assert.assertEquals(1L << 20, (long) budgets.get(CacheTier.MESHES));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidTier()
+	{
+		CacheBudgets.parse("foo=1g");
+	}
+
+	private static String load(final Integer key, final AtomicInteger numLoads)
+	{
+		numLoads.incrementAndGet();
+		return String.valueOf(key);
+	}
+
+}
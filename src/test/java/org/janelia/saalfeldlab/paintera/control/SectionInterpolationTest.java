@@ -0,0 +1,148 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SectionInterpolationTest
+{
+
+	private static final long SIZE = 32;
+
+	private static final long CENTER = 16;
+
+	// disc of radius 4 at depth 0, radius 10 at depth 10, radius 4 at depth 20
+	private static final double[] DEPTHS = {0, 10, 20};
+
+	@Test
+	public void testInterpolation() throws InterruptedException, ExecutionException
+	{
+		final ExecutorService es = Executors.newFixedThreadPool(3);
+		try
+		{
+			final SectionInterpolation interpolation = SectionInterpolation.fromSections(discs(4, 10, 4), DEPTHS, es);
+			Assert.assertEquals(3, interpolation.numSections());
+
+			// on the sections
+			Assert.assertTrue(interpolation.isInside(CENTER + 3, CENTER, 0));
+			Assert.assertFalse(interpolation.isInside(CENTER + 6, CENTER, 0));
+			Assert.assertTrue(interpolation.isInside(CENTER + 9, CENTER, 10));
+			Assert.assertTrue(interpolation.isInside(CENTER, CENTER, 20));
+
+			// between the first and the second section
+			Assert.assertTrue(interpolation.isInside(CENTER + 5, CENTER, 5));
+			Assert.assertFalse(interpolation.isInside(CENTER + 9, CENTER, 5));
+
+			// between the second and the third section
+			Assert.assertTrue(interpolation.isInside(CENTER, CENTER + 5, 15));
+			Assert.assertFalse(interpolation.isInside(CENTER, CENTER + 9, 15));
+
+			// beyond the first and the last section, and outside of the sections
+			Assert.assertFalse(interpolation.isInside(CENTER, CENTER, -1));
+			Assert.assertFalse(interpolation.isInside(CENTER, CENTER, 21));
+			Assert.assertFalse(interpolation.isInside(-1, CENTER, 10));
+			Assert.assertEquals(Double.POSITIVE_INFINITY, interpolation.distance(CENTER, SIZE, 10), 0.0);
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	@Test
+	public void testMaterialize() throws InterruptedException, ExecutionException
+	{
+		final ExecutorService es = Executors.newFixedThreadPool(3);
+		try
+		{
+			final SectionInterpolation interpolation = SectionInterpolation.fromSections(discs(4, 10, 4), DEPTHS, es);
+			final long[] dimensions = {SIZE, SIZE, 21};
+			final CellGrid grid = new CellGrid(dimensions, new int[] {16, 16, 8});
+			final UnsignedByteType value = new UnsignedByteType(1);
+
+			final ArrayImg<UnsignedByteType, ByteArray> target = ArrayImgs.unsignedBytes(dimensions);
+			final long[] cells = interpolation.materialize(target, target, grid, new AffineTransform3D(), value, es);
+			Arrays.sort(cells);
+			Assert.assertArrayEquals(new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}, cells);
+			final Cursor<UnsignedByteType> cursor = target.localizingCursor();
+			while (cursor.hasNext())
+			{
+				final int voxel = cursor.next().get();
+				final boolean isInside = interpolation.isInside(cursor.getDoublePosition(0), cursor.getDoublePosition(1), cursor.getDoublePosition(2));
+				Assert.assertEquals(Util.printCoordinates(cursor), isInside ? 1 : 0, voxel);
+			}
+
+			// only the first cell is within the interval
+			final ArrayImg<UnsignedByteType, ByteArray> partialTarget = ArrayImgs.unsignedBytes(dimensions);
+			final long[] partialCells = interpolation.materialize(
+					partialTarget,
+					new FinalInterval(new long[] {0, 0, 0}, new long[] {15, 15, 7}),
+					grid,
+					new AffineTransform3D(),
+					value,
+					es);
+			Assert.assertArrayEquals(new long[] {0}, partialCells);
+			final RandomAccess<UnsignedByteType> access = partialTarget.randomAccess();
+			access.setPosition(new long[] {15, 15, 0});
+			Assert.assertEquals(1, access.get().get());
+			access.setPosition(new long[] {CENTER, CENTER, 10});
+			Assert.assertEquals(0, access.get().get());
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	@Test
+	public void testInvalidDepths() throws InterruptedException, ExecutionException
+	{
+		final ExecutorService es = Executors.newSingleThreadExecutor();
+		try
+		{
+			SectionInterpolation.fromSections(discs(4, 10), new double[] {0, 0}, es);
+			Assert.fail("Expected IllegalArgumentException for depths that are not strictly increasing");
+		} catch (final IllegalArgumentException e)
+		{
+			// expected
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<ArrayImg<BitType, LongArray>> discs(final double... radii)
+	{
+		final ArrayImg<BitType, LongArray>[] discs = new ArrayImg[radii.length];
+		for (int i = 0; i < radii.length; ++i)
+		{
+			discs[i] = ArrayImgs.bits(SIZE, SIZE);
+			final Cursor<BitType> cursor = discs[i].localizingCursor();
+			while (cursor.hasNext())
+			{
+				cursor.fwd();
+				final double dx = cursor.getDoublePosition(0) - CENTER;
+				final double dy = cursor.getDoublePosition(1) - CENTER;
+				cursor.get().set(dx * dx + dy * dy <= radii[i] * radii[i]);
+			}
+		}
+		return Arrays.asList(discs);
+	}
+
+}
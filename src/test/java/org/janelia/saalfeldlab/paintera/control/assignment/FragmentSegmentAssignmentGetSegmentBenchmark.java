@@ -0,0 +1,118 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongLongHashMap;
+import net.imglib2.type.label.Label;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the previous {@code synchronized} lookup into a {@link TLongLongHashMap} against the lock-free
+ * {@link FragmentSegmentLookup} snapshot used by {@link FragmentSegmentAssignmentOnlyLocal#getSegment(long)}.
+ *
+ * Run {@link #main(String[])} to benchmark with 1, 4, and 16 reader threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FragmentSegmentAssignmentGetSegmentBenchmark
+{
+
+	private static final int NUM_QUERIES = 1024;
+
+	@State(Scope.Benchmark)
+	public static class Assignments
+	{
+
+		@Param({"1000", "1000000"})
+		public int numFragments;
+
+		private final TLongLongHashMap map = new TLongLongHashMap(
+				Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR,
+				Label.TRANSPARENT,
+				Label.TRANSPARENT);
+
+		private FragmentSegmentLookup lookup;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			final Random rng = new Random(100);
+			for (int fragment = 0; fragment < numFragments; ++fragment)
+				if (rng.nextBoolean())
+					map.put(fragment, numFragments + rng.nextInt(Math.max(numFragments / 10, 1)));
+			lookup = FragmentSegmentLookup.of(map);
+		}
+
+		synchronized long getSegmentSynchronized(final long fragmentId)
+		{
+			final long segmentId = map.get(fragmentId);
+			return segmentId == map.getNoEntryValue() ? fragmentId : segmentId;
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class Queries
+	{
+
+		private final long[] fragments = new long[NUM_QUERIES];
+
+		@Setup(Level.Trial)
+		public void setup(final Assignments assignments)
+		{
+			final Random rng = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < fragments.length; ++i)
+				fragments[i] = rng.nextInt(assignments.numFragments);
+		}
+
+	}
+
+	@Benchmark
+	public void synchronizedTroveMap(final Assignments assignments, final Queries queries, final Blackhole blackhole)
+	{
+		for (final long fragment : queries.fragments)
+			blackhole.consume(assignments.getSegmentSynchronized(fragment));
+	}
+
+	@Benchmark
+	public void lockFreeSnapshot(final Assignments assignments, final Queries queries, final Blackhole blackhole)
+	{
+		for (final long fragment : queries.fragments)
+			blackhole.consume(assignments.lookup.getSegment(fragment));
+	}
+
+	public static void main(final String[] args) throws RunnerException
+	{
+		for (final int numThreads : new int[] {1, 4, 16})
+		{
+			final Options options = new OptionsBuilder()
+					.include(FragmentSegmentAssignmentGetSegmentBenchmark.class.getSimpleName())
+					.threads(numThreads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.type.label.Label;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FragmentSegmentLookupTest
+{
+
+	@Test
+	public void testEmpty()
+	{
+		final FragmentSegmentLookup lookup = FragmentSegmentLookup.of(new TLongLongHashMap());
+		Assert.assertEquals(0, lookup.size());
+		for (long id = 0; id < 100; ++id)
+			Assert.assertEquals(id, lookup.getSegment(id));
+		Assert.assertEquals(Label.TRANSPARENT, lookup.getSegment(Label.TRANSPARENT));
+	}
+
+	@Test
+	public void testAgainstTroveMap()
+	{
+		final Random rng = new Random(100);
+		final TLongLongHashMap map = new TLongLongHashMap();
+		for (int i = 0; i < 10000; ++i)
+			map.put(rng.nextInt(100000), 100000 + rng.nextInt(100));
+
+		final FragmentSegmentLookup lookup = FragmentSegmentLookup.of(map);
+		Assert.assertEquals(map.size(), lookup.size());
+		for (long id = 0; id < 100000; ++id)
+			Assert.assertEquals(map.containsKey(id) ? map.get(id) : id, lookup.getSegment(id));
+	}
+
+	@Test
+	public void testWithChanges()
+	{
+		final Random rng = new Random(100);
+		final TLongLongHashMap map = new TLongLongHashMap();
+		for (int i = 0; i < 10000; ++i)
+			map.put(rng.nextInt(100000), 100000 + rng.nextInt(100));
+
+		FragmentSegmentLookup lookup = FragmentSegmentLookup.of(map);
+		// enough changes to exceed the overlay and rebuild the table
+		for (int round = 0; round < 50; ++round)
+		{
+			final TLongHashSet changed = new TLongHashSet();
+			for (int i = 0; i < 100; ++i)
+			{
+				final long fragment = rng.nextInt(100000);
+				if (rng.nextBoolean())
+					map.put(fragment, 100000 + rng.nextInt(100));
+				else
+					map.remove(fragment);
+				changed.add(fragment);
+			}
+			lookup = lookup.with(map, changed);
+			Assert.assertEquals(map.size(), lookup.size());
+		}
+		Assert.assertSame(lookup, lookup.with(map, new TLongHashSet()));
+
+		for (long id = 0; id < 100000; ++id)
+			Assert.assertEquals(map.containsKey(id) ? map.get(id) : id, lookup.getSegment(id));
+
+		final TLongLongHashMap visited = new TLongLongHashMap();
+		lookup.forEach((fragment, segment) -> {
+			Assert.assertFalse(visited.containsKey(fragment));
+			visited.put(fragment, segment);
+			return true;
+		});
+		Assert.assertEquals(map, visited);
+	}
+
+}
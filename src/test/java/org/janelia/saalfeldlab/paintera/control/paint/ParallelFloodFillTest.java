@@ -0,0 +1,106 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.fill.FloodFill;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelFloodFillTest
+{
+
+	private static final long[] DIMENSIONS = {31, 29, 23};
+
+	private static final int[] BLOCK_SIZE = {8, 7, 5};
+
+	@Test
+	public void testSameAsSequentialFloodFill() throws Exception
+	{
+		// two labels so that the fill spans many blocks and has irregular boundaries
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final Random rng = new Random(100);
+		for (final UnsignedLongType t : labels)
+			t.set(rng.nextDouble() < 0.7 ? 1 : 2);
+
+		final Point seed = new Point(15, 14, 11);
+		final RandomAccess<UnsignedLongType> seedAccess = labels.randomAccess();
+		seedAccess.setPosition(seed);
+		seedAccess.get().set(1);
+
+		final ArrayImg<UnsignedLongType, LongArray> expected = ArrayImgs.unsignedLongs(DIMENSIONS);
+		FloodFill.fill(
+				Views.extendValue(labels, new UnsignedLongType(0)),
+				Views.extendValue(expected, new UnsignedLongType(1)),
+				seed,
+				new UnsignedLongType(1),
+				new DiamondShape(1),
+				(t, u) -> t.getIntegerLong() == 1 && u.getIntegerLong() == 0);
+
+		final ArrayImg<UnsignedLongType, LongArray> actual = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final CellGrid grid = new CellGrid(DIMENSIONS, BLOCK_SIZE);
+		final ExecutorService executors = Executors.newFixedThreadPool(4);
+		final ParallelFloodFill<UnsignedLongType> floodFill = new ParallelFloodFill<>(
+				labels,
+				actual,
+				grid,
+				t -> t.getIntegerLong() == 1,
+				index -> true,
+				executors);
+		floodFill.fill(seed);
+		executors.shutdown();
+
+		long numFilled = 0;
+		final Cursor<UnsignedLongType> expectedCursor = expected.cursor();
+		final Cursor<UnsignedLongType> actualCursor = actual.cursor();
+		while (expectedCursor.hasNext())
+		{
+			final long e = expectedCursor.next().getIntegerLong();
+			Assert.assertEquals(e, actualCursor.next().getIntegerLong());
+			numFilled += e;
+		}
+		Assert.assertTrue(numFilled > 1);
+		Assert.assertTrue(floodFill.numProcessedBlocks() > 1);
+		Assert.assertTrue(Intervals.contains(floodFill.filledInterval(), seed));
+	}
+
+	@Test
+	public void testCandidateBlocks() throws Exception
+	{
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(DIMENSIONS);
+		labels.forEach(t -> t.set(1));
+		final CellGrid grid = new CellGrid(DIMENSIONS, BLOCK_SIZE);
+
+		// only block containing the seed
+		final ArrayImg<UnsignedLongType, LongArray> mask = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final ExecutorService executors = Executors.newFixedThreadPool(2);
+		final ParallelFloodFill<UnsignedLongType> floodFill = new ParallelFloodFill<>(
+				labels,
+				mask,
+				grid,
+				t -> t.getIntegerLong() == 1,
+				index -> index == 0,
+				executors);
+		floodFill.fill(new Point(1, 1, 1));
+		executors.shutdown();
+
+		long numFilled = 0;
+		for (final UnsignedLongType t : mask)
+			numFilled += t.getIntegerLong();
+		Assert.assertEquals(BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2], numFilled);
+		Assert.assertArrayEquals(new long[] {0}, floodFill.filledBlocks());
+	}
+
+}
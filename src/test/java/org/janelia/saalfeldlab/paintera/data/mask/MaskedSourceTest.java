@@ -0,0 +1,81 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MaskedSourceTest
+{
+
+	@Test
+	public void testMajority()
+	{
+		Assert.assertEquals(3, MaskedSource.majority(new long[] {3}));
+		Assert.assertEquals(2, MaskedSource.majority(new long[] {1, 2, 3, 2, 4, 2, 1, 5}));
+		// tie: smallest
+		Assert.assertEquals(1, MaskedSource.majority(new long[] {4, 1, 4, 1, 7, 8, 9, 10}));
+		// tie: regular labels win over invalid and transparent
+		Assert.assertEquals(5, MaskedSource.majority(new long[] {Label.INVALID, 5, Label.INVALID, 5}));
+		Assert.assertEquals(0, MaskedSource.majority(new long[] {Label.TRANSPARENT, 0, Label.INVALID, 0, Label.TRANSPARENT, Label.INVALID}));
+		// no tie: invalid wins
+		Assert.assertEquals(Label.INVALID, MaskedSource.majority(new long[] {Label.INVALID, 5, Label.INVALID, 3}));
+	}
+
+	@Test
+	public void testDownsampleInvalid()
+	{
+		// small window (sorted) and large window (hash map) prefer regular labels on ties
+		final long[] data = new long[16 * 16 * 16];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = i % 2 == 0 ? Label.INVALID : 3;
+
+		final ArrayImg<UnsignedLongType, LongArray> source = ArrayImgs.unsignedLongs(data, 16, 16, 16);
+		final ArrayImg<UnsignedLongType, LongArray> small = ArrayImgs.unsignedLongs(8, 8, 8);
+		MaskedSource.downsample(source, small, new int[] {2, 2, 2});
+		for (final UnsignedLongType t : small)
+			Assert.assertEquals(3, t.getIntegerLong());
+		final ArrayImg<UnsignedLongType, LongArray> large = ArrayImgs.unsignedLongs(1, 1, 1);
+		MaskedSource.downsample(source, large, new int[] {16, 16, 16});
+		Assert.assertEquals(3, large.update(null).getCurrentStorageArray()[0]);
+	}
+
+	@Test
+	public void testDownsample()
+	{
+		// small window (sorted) and large window (hash map) must agree
+		final long[] data = new long[16 * 16 * 16];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (i * 7919L) % 5;
+		final ArrayImg<UnsignedLongType, LongArray> source = ArrayImgs.unsignedLongs(data, 16, 16, 16);
+
+		final ArrayImg<UnsignedLongType, LongArray> small = ArrayImgs.unsignedLongs(8, 8, 8);
+		MaskedSource.downsample(source, small, new int[] {2, 2, 2});
+		final ArrayImg<UnsignedLongType, LongArray> large = ArrayImgs.unsignedLongs(1, 1, 1);
+		MaskedSource.downsample(source, large, new int[] {16, 16, 16});
+
+		final long[] smallData = small.update(null).getCurrentStorageArray();
+		for (int z = 0, i = 0; z < 8; ++z)
+			for (int y = 0; y < 8; ++y)
+				for (int x = 0; x < 8; ++x, ++i)
+				{
+					final long[] window = new long[8];
+					for (int k = 0; k < 8; ++k)
+						window[k] = data[(2 * x + (k & 1)) + 16 * (2 * y + (k >> 1 & 1)) + 256 * (2 * z + (k >> 2 & 1))];
+					Assert.assertEquals(MaskedSource.majority(window), smallData[i]);
+				}
+
+		final long[] counts = new long[5];
+		for (final long d : data)
+			++counts[(int) d];
+		long expected = 0;
+		for (int l = 1; l < counts.length; ++l)
+			if (counts[l] > counts[(int) expected])
+				expected = l;
+		Assert.assertEquals(expected, large.update(null).getCurrentStorageArray()[0]);
+	}
+
+}
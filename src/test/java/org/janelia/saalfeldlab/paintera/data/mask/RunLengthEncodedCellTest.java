@@ -0,0 +1,66 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RunLengthEncodedCellTest
+{
+
+	@Test
+	public void testSparse() throws IOException
+	{
+		final long[] data = new long[1000];
+		Arrays.fill(data, 3);
+		Arrays.fill(data, 100, 200, 5);
+		data[999] = 7;
+
+		final RunLengthEncodedCell encoded = RunLengthEncodedCell.encode(data);
+		Assert.assertEquals(data.length, encoded.numElements());
+		Assert.assertEquals(4 * 12, encoded.sizeInBytes());
+		assertRoundTrip(data, encoded);
+	}
+
+	@Test
+	public void testDense() throws IOException
+	{
+		final long[] data = new Random(1).longs(100).toArray();
+		final RunLengthEncodedCell encoded = RunLengthEncodedCell.encode(data);
+		Assert.assertEquals(data.length, encoded.numElements());
+		Assert.assertEquals(8 * data.length, encoded.sizeInBytes());
+		assertRoundTrip(data, encoded);
+	}
+
+	@Test
+	public void testIsConstant()
+	{
+		Assert.assertTrue(RunLengthEncodedCell.isConstant(new long[] {2, 2, 2}, 2));
+		Assert.assertFalse(RunLengthEncodedCell.isConstant(new long[] {2, 2, 1}, 2));
+		Assert.assertTrue(RunLengthEncodedCell.isConstant(new long[0], 2));
+	}
+
+	private static void assertRoundTrip(final long[] data, final RunLengthEncodedCell encoded) throws IOException
+	{
+		final long[] decoded = new long[data.length];
+		encoded.decode(decoded);
+		Assert.assertArrayEquals(data, decoded);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream out = new DataOutputStream(bytes))
+		{
+			encoded.write(out);
+		}
+		final RunLengthEncodedCell read = RunLengthEncodedCell.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		final long[] decodedFromRead = new long[data.length];
+		read.decode(decodedFromRead);
+		Assert.assertArrayEquals(data, decodedFromRead);
+	}
+
+}
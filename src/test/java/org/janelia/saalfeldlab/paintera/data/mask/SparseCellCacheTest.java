@@ -0,0 +1,276 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.basictypeaccess.volatiles.array.DirtyVolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.paintera.cache.MemoryBudget;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SparseCellCacheTest
+{
+
+	private static final long DEFAULT_VALUE = 0;
+
+	private static final int CELL_SIZE = 4;
+
+	private static final int NUM_CELL_ELEMENTS = CELL_SIZE * CELL_SIZE;
+
+	// 16 cells
+	private static final CellGrid GRID = new CellGrid(new long[] {16, 16}, new int[] {CELL_SIZE, CELL_SIZE});
+
+	// cells with only distinct values are encoded with one run per voxel
+	private static final long DISTINCT_CELL_SIZE = RunLengthEncodedCell.encode(distinctValues(1)).sizeInBytes();
+
+	// fits a single cell with distinct values, including the bookkeeping overhead of the budget
+	private static final long SINGLE_CELL_BUDGET = DISTINCT_CELL_SIZE + 100;
+
+	private static final CacheLoader<Long, Cell<DirtyVolatileLongArray>> LOADER = SparseCellCacheTest::load;
+
+	private static final CacheLoader<Long, Cell<DirtyVolatileLongArray>> FAILING_LOADER = key -> {
+		throw new IllegalStateException("Cell " + key + " should not be loaded again");
+	};
+
+	@Test
+	public void testCompaction() throws ExecutionException, InterruptedException
+	{
+		final MemoryBudget    budget = new MemoryBudget("test", 100 * DISTINCT_CELL_SIZE);
+		final SparseCellCache cache  = new SparseCellCache(GRID, DEFAULT_VALUE, budget, failingSpillDirectory(), 0);
+
+		write(cache, 0, distinctValues(1));
+		// loaded but not modified
+		cache.get(1L, LOADER);
+		// modified but constant default value
+		write(cache, 2, new long[NUM_CELL_ELEMENTS]);
+
+		compactUntil(cache, () -> budget.getNumEntries() == 1 && cache.getNumStoredCells() == 1);
+		Assert.assertNull(cache.getIfPresent(1L));
+		Assert.assertNull(cache.getIfPresent(2L));
+		Assert.assertArrayEquals(distinctValues(1), read(cache, 0, FAILING_LOADER));
+		Assert.assertEquals(0, cache.getNumSpills());
+
+		cache.invalidate(0L);
+		Assert.assertEquals(0, cache.getNumStoredCells());
+		Assert.assertEquals(0, budget.getNumEntries());
+		Assert.assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testSpillAndReload() throws ExecutionException, InterruptedException, IOException
+	{
+		final Path            spillDirectory = Files.createTempDirectory("sparse-cell-cache-test").resolve("spill");
+		final int             numCells       = 6;
+		final MemoryBudget    budget         = new MemoryBudget("test", SINGLE_CELL_BUDGET);
+		final SparseCellCache cache          = new SparseCellCache(GRID, DEFAULT_VALUE, budget, () -> spillDirectory, 0);
+
+		for (long key = 0; key < numCells; ++key)
+			write(cache, key, distinctValues(key + 1));
+
+		compactUntil(cache, () -> cache.getNumSpills() + budget.getNumEntries() == numCells);
+		Assert.assertEquals(1, budget.getNumEntries());
+		Assert.assertEquals(numCells - 1, cache.getNumSpills());
+		Assert.assertTrue(Files.isDirectory(spillDirectory));
+
+		for (long key = 0; key < numCells; ++key)
+			Assert.assertArrayEquals(distinctValues(key + 1), read(cache, key, FAILING_LOADER));
+		Assert.assertEquals(numCells - 1, cache.getNumSpillReads());
+
+		cache.shutdown();
+		Assert.assertEquals(0, cache.getNumStoredCells());
+		Assert.assertEquals(0, budget.getNumEntries());
+		Assert.assertFalse(Files.exists(spillDirectory));
+	}
+
+	@Test
+	public void testEvictionWhileWriting() throws ExecutionException, InterruptedException, IOException
+	{
+		final Path            spillDirectory = Files.createTempDirectory("sparse-cell-cache-test").resolve("spill");
+		final MemoryBudget    budget         = new MemoryBudget("test", SINGLE_CELL_BUDGET);
+		final SparseCellCache cache          = new SparseCellCache(GRID, DEFAULT_VALUE, budget, () -> spillDirectory, 0);
+
+		// cell 0 is referenced while other cells are compacted and spilled
+		final Cell<DirtyVolatileLongArray> cell = cache.get(0L, LOADER);
+		final long[] data = cell.getData().getCurrentStorageArray();
+		data[0] = 1;
+		cell.getData().setDirty();
+		for (long key = 1; key < 4; ++key)
+			write(cache, key, distinctValues(key + 1));
+		compactUntil(cache, () -> cache.getNumSpills() + budget.getNumEntries() == 3);
+
+		data[NUM_CELL_ELEMENTS - 1] = 2;
+		final long[] expected = data.clone();
+		Assert.assertSame(cell.getData(), cache.getIfPresent(0L).getData());
+		Assert.assertEquals(4, cache.getNumStoredCells());
+
+		// release cell 0, compaction evicts or spills another cell
+		compactUntil(cache, () -> cache.getNumSpills() + budget.getNumEntries() == 4);
+		Assert.assertArrayEquals(expected, read(cache, 0, FAILING_LOADER));
+		for (long key = 1; key < 4; ++key)
+			Assert.assertArrayEquals(distinctValues(key + 1), read(cache, key, FAILING_LOADER));
+
+		cache.shutdown();
+	}
+
+	@Test
+	public void testWriteThroughRetainedAccess() throws InterruptedException
+	{
+		final MemoryBudget                                            budget   = new MemoryBudget("test", 100 * DISTINCT_CELL_SIZE);
+		final SparseCellCache                                         cache    = new SparseCellCache(GRID, DEFAULT_VALUE, budget, failingSpillDirectory(), 2);
+		final CachedCellImg<UnsignedLongType, DirtyVolatileLongArray> img      = new CachedCellImg<>(GRID, new UnsignedLongType(), cache.withLoader(LOADER), new DirtyVolatileLongArray(1, true));
+		final long                                                    numCells = Intervals.numElements(GRID.getGridDimensions());
+
+		// like a type of an image, the random access references only the data of cell 0, not the cell itself
+		final RandomAccess<UnsignedLongType> retained = img.randomAccess();
+		retained.setPosition(new long[] {0, 0});
+		retained.get().set(1);
+
+		final RandomAccess<UnsignedLongType> other = img.randomAccess();
+		final long[] cellMin = new long[GRID.numDimensions()];
+		for (long key = 1; key < numCells; ++key)
+		{
+			GRID.getCellGridPositionFlat(key, cellMin);
+			for (int d = 0; d < cellMin.length; ++d)
+				cellMin[d] *= CELL_SIZE;
+			other.setPosition(cellMin);
+			other.get().set(key + 1);
+		}
+		compactUntil(cache, () -> budget.getNumEntries() >= numCells - 4);
+
+		retained.get().set(2);
+		retained.fwd(0);
+		retained.get().set(3);
+
+		final RandomAccess<UnsignedLongType> fresh = img.randomAccess();
+		fresh.setPosition(new long[] {0, 0});
+		Assert.assertEquals(2, fresh.get().getIntegerLong());
+		fresh.fwd(0);
+		Assert.assertEquals(3, fresh.get().getIntegerLong());
+		for (long key = 1; key < numCells; ++key)
+		{
+			GRID.getCellGridPositionFlat(key, cellMin);
+			for (int d = 0; d < cellMin.length; ++d)
+				cellMin[d] *= CELL_SIZE;
+			fresh.setPosition(cellMin);
+			Assert.assertEquals(key + 1, fresh.get().getIntegerLong());
+		}
+	}
+
+	@Test
+	public void testConcurrentWrites() throws ExecutionException, InterruptedException, IOException
+	{
+		final Path            spillDirectory = Files.createTempDirectory("sparse-cell-cache-test").resolve("spill");
+		final MemoryBudget    budget         = new MemoryBudget("test", 3 * SINGLE_CELL_BUDGET);
+		final SparseCellCache cache          = new SparseCellCache(GRID, DEFAULT_VALUE, budget, () -> spillDirectory, 0);
+		final int             numThreads     = 4;
+		final int             numIterations  = 50;
+		final long            numCells       = Intervals.numElements(GRID.getGridDimensions());
+
+		final ExecutorService es = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < numThreads; ++thread)
+			{
+				final long firstKey = thread;
+				futures.add(es.submit(() -> {
+					for (int iteration = 0; iteration < numIterations; ++iteration)
+					{
+						for (long key = firstKey; key < numCells; key += numThreads)
+						{
+							final Cell<DirtyVolatileLongArray> cell = cache.get(key, LOADER);
+							final long[] data = cell.getData().getCurrentStorageArray();
+							for (int i = 0; i < data.length; ++i)
+								data[i] += i + 1;
+							cell.getData().setDirty();
+						}
+						if (iteration % 10 == 0)
+							System.gc();
+					}
+					return null;
+				}));
+			}
+			for (final Future<?> future : futures)
+				future.get();
+		} finally
+		{
+			es.shutdown();
+		}
+
+		compactUntil(cache, () -> budget.getNumEntries() + cache.getNumSpills() >= numCells);
+		Assert.assertTrue(budget.getUsedBytes() <= budget.getMaxBytes());
+		Assert.assertTrue(budget.getNumEntries() <= cache.getNumStoredCells());
+		for (long key = 0; key < numCells; ++key)
+			Assert.assertArrayEquals(distinctValues(numIterations), read(cache, key, FAILING_LOADER));
+
+		cache.shutdown();
+		Assert.assertEquals(0, budget.getNumEntries());
+		Assert.assertEquals(0, budget.getUsedBytes());
+	}
+
+	private static void compactUntil(final SparseCellCache cache, final BooleanSupplier condition) throws InterruptedException
+	{
+		for (int attempt = 0; attempt < 100 && !condition.getAsBoolean(); ++attempt)
+		{
+			System.gc();
+			Thread.sleep(10);
+			cache.compact();
+		}
+		Assert.assertTrue(condition.getAsBoolean());
+	}
+
+	private static void write(final SparseCellCache cache, final long key, final long[] values) throws ExecutionException
+	{
+		final Cell<DirtyVolatileLongArray> cell = cache.get(key, LOADER);
+		System.arraycopy(values, 0, cell.getData().getCurrentStorageArray(), 0, values.length);
+		cell.getData().setDirty();
+	}
+
+	private static long[] read(
+			final SparseCellCache cache,
+			final long key,
+			final CacheLoader<Long, Cell<DirtyVolatileLongArray>> loader) throws ExecutionException
+	{
+		return cache.get(key, loader).getData().getCurrentStorageArray().clone();
+	}
+
+	private static long[] distinctValues(final long factor)
+	{
+		final long[] values = new long[NUM_CELL_ELEMENTS];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = factor * (i + 1);
+		return values;
+	}
+
+	private static Cell<DirtyVolatileLongArray> load(final long key)
+	{
+		final long[] cellMin  = new long[GRID.numDimensions()];
+		final int[]  cellDims = new int[GRID.numDimensions()];
+		GRID.getCellDimensions(key, cellMin, cellDims);
+		return new Cell<>(cellDims, cellMin, new DirtyVolatileLongArray(new long[NUM_CELL_ELEMENTS], true));
+	}
+
+	private static Supplier<Path> failingSpillDirectory()
+	{
+		return () -> {
+			throw new IllegalStateException("Nothing should be spilled");
+		};
+	}
+
+}
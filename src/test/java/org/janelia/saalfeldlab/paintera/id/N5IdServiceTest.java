@@ -0,0 +1,103 @@
+package org.janelia.saalfeldlab.paintera.id;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+public class N5IdServiceTest
+{
+
+	private static final String DATASET = "labels";
+
+	@Test
+	public void testLease() throws IOException
+	{
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		container.createGroup(DATASET);
+
+		final N5IdService service = new N5IdService(container, DATASET, 10, 5);
+		Assert.assertEquals(11, service.next());
+		Assert.assertEquals(15, maxId(container));
+		Assert.assertArrayEquals(LongStream.rangeClosed(12, 14).toArray(), service.next(3));
+		Assert.assertEquals(15, maxId(container));
+		Assert.assertArrayEquals(LongStream.rangeClosed(15, 22).toArray(), service.next(8));
+		Assert.assertEquals(22, maxId(container));
+		Assert.assertEquals(23, service.next());
+		Assert.assertEquals(27, maxId(container));
+
+		// simulate crash: new service must not hand out any leased id
+		final N5IdService afterCrash = new N5IdService(container, DATASET, maxId(container), 5);
+		Assert.assertEquals(28, afterCrash.next());
+	}
+
+	@Test
+	public void testReleaseOnShutdown() throws IOException
+	{
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		container.createGroup(DATASET);
+
+		final N5IdService service = new N5IdService(container, DATASET, 10, 5);
+		Assert.assertEquals(11, service.next());
+		Assert.assertEquals(15, maxId(container));
+		service.onShutdown();
+		Assert.assertEquals(11, maxId(container));
+
+		final N5IdService afterShutdown = new N5IdService(container, DATASET, maxId(container), 5);
+		Assert.assertEquals(12, afterShutdown.next());
+	}
+
+	@Test
+	public void testConcurrentShutdown() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		container.createGroup(DATASET);
+
+		final N5IdService service = new N5IdService(container, DATASET, 0, 5);
+		final int numThreads = 4;
+		final int numIds = 500;
+		final ExecutorService es = Executors.newFixedThreadPool(numThreads + 1);
+		try
+		{
+			final List<Future<Long>> maxIds = new ArrayList<>();
+			for (int thread = 0; thread < numThreads; ++thread)
+			{
+				maxIds.add(es.submit(() -> {
+					long maxId = 0;
+					for (int i = 0; i < numIds; ++i)
+						maxId = Math.max(maxId, service.next());
+					return maxId;
+				}));
+			}
+			final Future<?> shutdowns = es.submit(() -> {
+				for (int i = 0; i < numIds; ++i)
+					service.onShutdown();
+			});
+			shutdowns.get();
+			long maxId = 0;
+			for (final Future<Long> threadMaxId : maxIds)
+				maxId = Math.max(maxId, threadMaxId.get());
+			Assert.assertEquals(numThreads * numIds, maxId);
+			// every id that was handed out is covered by the persisted max id
+			Assert.assertTrue(maxId(container) >= maxId);
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	private static long maxId(final N5FSWriter container) throws IOException
+	{
+		return container.getAttribute(DATASET, "maxId", Long.class);
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockIndexTest
+{
+
+	@Test
+	public void testQueries()
+	{
+		final Random rng = new Random(100);
+		final List<RealInterval> blocks = new ArrayList<>();
+		for (int i = 0; i < 200; ++i)
+			blocks.add(randomBlock(rng));
+		final BlockIndex index = new BlockIndex(blocks);
+
+		for (int q = 0; q < 100; ++q)
+		{
+			final RealInterval query = randomBlock(rng);
+			final TIntArrayList expected = new TIntArrayList();
+			for (int i = 0; i < blocks.size(); ++i)
+				if (LevelOfDetail.overlap(query, blocks.get(i)))
+					expected.add(i);
+			final TIntArrayList overlapping = new TIntArrayList();
+			index.forEachOverlapping(query, overlapping::add);
+			overlapping.sort();
+			Assert.assertEquals(expected, overlapping);
+
+			final double[] position = {rng.nextDouble() * 100, rng.nextDouble() * 100, rng.nextDouble() * 100};
+			int first = -1;
+			for (int i = 0; i < blocks.size() && first < 0; ++i)
+				if (LevelOfDetail.contains(blocks.get(i), position))
+					first = i;
+			Assert.assertEquals(first, index.firstContaining(position));
+		}
+
+		final BlockIndex empty = new BlockIndex(new ArrayList<>());
+		empty.forEachOverlapping(blocks.get(0), i -> Assert.fail("Empty index should not contain block " + i));
+		Assert.assertEquals(-1, empty.firstContaining(new double[] {0, 0, 0}));
+	}
+
+	private static RealInterval randomBlock(final Random rng)
+	{
+		final double[] min = new double[3];
+		final double[] max = new double[3];
+		for (int d = 0; d < 3; ++d)
+		{
+			min[d] = rng.nextDouble() * 100;
+			max[d] = min[d] + 1 + rng.nextDouble() * 20;
+		}
+		return new FinalRealInterval(min, max);
+	}
+
+}
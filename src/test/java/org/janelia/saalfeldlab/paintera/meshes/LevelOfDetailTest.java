@@ -0,0 +1,68 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LevelOfDetailTest
+{
+
+	@Test
+	public void testSelectBlocks()
+	{
+		// two levels: 8x1x1 blocks of size 4 at level 0, 4x1x1 blocks of size 4 at level 1 (downsampled by 2 in x)
+		final Interval[][] blocks = {blocks(8), blocks(4)};
+		final AffineTransform3D[] sourceToWorld = {new AffineTransform3D(), new AffineTransform3D()};
+		sourceToWorld[1].set(
+				2.0, 0.0, 0.0, 0.5,
+				0.0, 1.0, 0.0, 0.0,
+				0.0, 0.0, 1.0, 0.0);
+
+		// camera close to x = 0
+		final AffineTransform3D worldToCamera = new AffineTransform3D();
+		worldToCamera.translate(0, -1.5, 4);
+		final LevelOfDetail levelOfDetail = new LevelOfDetail(worldToCamera, 0.5);
+
+		final List<Pair<Integer, Interval>> selected = levelOfDetail.selectBlocks(level -> blocks[level], sourceToWorld, 0, 1);
+
+		// closest block is finest and first
+		Assert.assertEquals(0, (int) selected.get(0).getA());
+		Assert.assertEquals(0, selected.get(0).getB().min(0));
+		// farthest block is coarsest and last
+		Assert.assertEquals(1, (int) selected.get(selected.size() - 1).getA());
+		Assert.assertEquals(12, selected.get(selected.size() - 1).getB().min(0));
+
+		// selected blocks cover world without overlap
+		final List<RealInterval> bounds = new ArrayList<>();
+		double volume = 0.0;
+		for (final Pair<Integer, Interval> block : selected)
+		{
+			final RealInterval b = LevelOfDetail.worldBounds(block.getB(), sourceToWorld[block.getA()]);
+			for (final RealInterval other : bounds)
+				Assert.assertFalse(LevelOfDetail.overlap(b, other));
+			bounds.add(b);
+			volume += (b.realMax(0) - b.realMin(0)) * (b.realMax(1) - b.realMin(1)) * (b.realMax(2) - b.realMin(2));
+		}
+		Assert.assertEquals(32 * 4 * 4, volume, 1e-9);
+
+		// without refinement, all blocks are at the coarsest level
+		final LevelOfDetail coarse = new LevelOfDetail(worldToCamera, Double.POSITIVE_INFINITY);
+		coarse.selectBlocks(level -> blocks[level], sourceToWorld, 0, 1).forEach(p -> Assert.assertEquals(1, (int) p.getA()));
+	}
+
+	private static Interval[] blocks(final int numBlocks)
+	{
+		final Interval[] blocks = new Interval[numBlocks];
+		for (int i = 0; i < numBlocks; ++i)
+			blocks[i] = new FinalInterval(new long[] {4 * i, 0, 0}, new long[] {4 * i + 3, 3, 3});
+		return blocks;
+	}
+
+}
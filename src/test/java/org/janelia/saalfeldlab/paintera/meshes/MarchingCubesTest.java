@@ -0,0 +1,71 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MarchingCubesTest
+{
+
+	@Test
+	public void testSharedVerticesSingleVoxel()
+	{
+		final ArrayImg<BitType, LongArray> img = ArrayImgs.bits(3, 3, 3);
+		final RandomAccess<BitType> access = img.randomAccess();
+		access.setPosition(new long[] {1, 1, 1});
+		access.get().set(true);
+
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(
+				Views.extendZero(img),
+				new FinalInterval(img),
+				new AffineTransform3D(),
+				new int[] {1, 1, 1},
+				() -> false).generateMesh();
+
+		// a single voxel is an octahedron: 6 shared vertices and 8 triangles
+		Assert.assertEquals(6 * 3, mesh.getA().length);
+		Assert.assertEquals(8 * 3, mesh.getB().length);
+
+		// closed surface: every edge is shared by exactly two triangles
+		final TLongIntHashMap edgeCounts = new TLongIntHashMap();
+		final int[] indices = mesh.getB();
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			for (int k = 0; k < 3; ++k)
+			{
+				final int v1 = indices[triangle + k];
+				final int v2 = indices[triangle + (k + 1) % 3];
+				Assert.assertNotEquals(v1, v2);
+				edgeCounts.adjustOrPutValue(Math.min(v1, v2) * 6L + Math.max(v1, v2), 1, 1);
+			}
+		}
+		Assert.assertEquals(12, edgeCounts.size());
+		edgeCounts.forEachValue(count -> {
+			Assert.assertEquals(2, count);
+			return true;
+		});
+
+		// smoothing a closed surface moves vertices, but keeps the topology
+		final float[] smoothed = Smooth.smooth(mesh.getA(), indices, Smooth.DEFAULT_LAMBDA, Smooth.DEFAULT_ITERATIONS);
+		Assert.assertEquals(mesh.getA().length, smoothed.length);
+
+		final float[] normals = new float[smoothed.length];
+		AverageNormals.averagedNormals(mesh.getA(), indices, normals);
+		for (int i = 0; i < normals.length; i += 3)
+		{
+			final double norm = Math.sqrt(normals[i] * normals[i] + normals[i + 1] * normals[i + 1] + normals[i + 2] * normals[i + 2]);
+			Assert.assertTrue(norm > 0.0);
+			Assert.assertTrue(norm <= 1.0 + 1e-6);
+		}
+	}
+
+}
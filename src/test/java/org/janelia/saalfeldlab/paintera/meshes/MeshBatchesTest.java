@@ -0,0 +1,67 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Arrays;
+
+import javafx.scene.shape.TriangleMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshBatchesTest
+{
+
+	@Test
+	public void testMerge()
+	{
+		final PainteraTriangleMesh triangle = triangle(0.0f);
+		final TriangleMesh merged = MeshBatches.merge(Arrays.asList(triangle, triangle(1.0f)));
+		Assert.assertEquals(2 * 9, merged.getPoints().size());
+		Assert.assertEquals(2 * 9, merged.getNormals().size());
+		Assert.assertArrayEquals(
+				new int[] {0, 0, 0, 1, 1, 0, 2, 2, 0, 3, 3, 0, 4, 4, 0, 5, 5, 0},
+				merged.getFaces().toArray(null));
+	}
+
+	@Test
+	public void testBatchAssignment()
+	{
+		final MeshBatches<Integer> batches = new MeshBatches<>(6, () -> null, v -> {}, v -> {});
+		batches.add(0, triangle(0.0f));
+		batches.add(1, triangle(1.0f));
+		Assert.assertEquals(1, batches.numBatches());
+		batches.add(2, triangle(2.0f));
+		Assert.assertEquals(2, batches.numBatches());
+		// replacing a mesh does not create a new batch
+		batches.add(2, triangle(3.0f));
+		Assert.assertEquals(2, batches.numBatches());
+		batches.remove(0);
+		batches.remove(1);
+		Assert.assertEquals(2, batches.numBatches());
+	}
+
+	@Test
+	public void testPrepareUpdate()
+	{
+		final MeshBatches<Integer> batches = new MeshBatches<>(6, () -> null, v -> {}, v -> {});
+		Assert.assertTrue(batches.prepareUpdate().isEmpty());
+		// changes of many blocks are coalesced into a single rebuild of each batch
+		batches.add(0, triangle(0.0f));
+		batches.add(1, triangle(1.0f));
+		batches.add(2, triangle(2.0f));
+		batches.add(1, triangle(3.0f));
+		Assert.assertEquals(2, batches.prepareUpdate().size());
+		Assert.assertTrue(batches.prepareUpdate().isEmpty());
+		// empty batches are removed
+		batches.remove(2);
+		Assert.assertEquals(1, batches.prepareUpdate().size());
+		Assert.assertEquals(1, batches.numBatches());
+	}
+
+	private static PainteraTriangleMesh triangle(final float z)
+	{
+		return new PainteraTriangleMesh(
+				new float[] {0, 0, z, 1, 0, z, 0, 1, z},
+				new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+				new int[] {0, 1, 2});
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshExporterTest
+{
+
+	// two blocks with one triangle each that share the edge (1, 0, 0) -- (0, 1, 0)
+	private static final PainteraTriangleMesh[] BLOCK_MESHES = {
+			new PainteraTriangleMesh(
+					new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0},
+					new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+					new int[] {0, 1, 2}),
+			new PainteraTriangleMesh(
+					new float[] {1, 1, 0, 0, 1, 0, 1, 0, 0},
+					new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+					new int[] {2, 0, 1})
+	};
+
+	private static final Interval[] BLOCKS = {
+			new FinalInterval(new long[] {0, 0, 0}, new long[] {0, 0, 0}),
+			new FinalInterval(new long[] {1, 0, 0}, new long[] {1, 0, 0})
+	};
+
+	@Test
+	public void testObj() throws IOException
+	{
+		final File directory = Files.createTempDirectory("mesh-exporter-test").toFile();
+		final String[] paths = {new File(directory, "1").getAbsolutePath(), new File(directory, "2").getAbsolutePath()};
+		final MeshExporter<Long> exporter = new MeshExporterObj<>();
+		exporter.setNumThreads(2);
+		export(exporter, paths);
+
+		for (final String path : paths)
+		{
+			final List<String> lines = Files.readAllLines(new File(path + ".obj").toPath());
+			Assert.assertEquals(4, lines.stream().filter(l -> l.startsWith("v ")).count());
+			Assert.assertEquals(4, lines.stream().filter(l -> l.startsWith("vn ")).count());
+			final List<String> faces = lines.stream().filter(l -> l.startsWith("f ")).collect(Collectors.toList());
+			Assert.assertEquals("f 1//1 2//2 3//3", faces.get(0));
+			Assert.assertEquals("f 2//2 4//4 3//3", faces.get(1));
+		}
+	}
+
+	@Test
+	public void testBinary() throws IOException
+	{
+		final File directory = Files.createTempDirectory("mesh-exporter-test").toFile();
+		final String[] paths = {new File(directory, "1").getAbsolutePath(), new File(directory, "2").getAbsolutePath()};
+		export(new MeshExporterBinary<>(), paths);
+
+		for (final String path : paths)
+		{
+			// two triangles, three corners each, three floats per corner
+			Assert.assertEquals(2 * 3 * 3 * Float.BYTES, new File(path + ".vertices").length());
+			Assert.assertEquals(2 * 3 * 3 * Float.BYTES, new File(path + ".normals").length());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void export(final MeshExporter<Long> exporter, final String[] paths)
+	{
+		final Function<Long, Interval[]>[] blockLists = new Function[] {(Function<Long, Interval[]>) id -> BLOCKS};
+		final Function<ShapeKey<Long>, PainteraTriangleMesh>[] meshes = new Function[] {
+				(Function<ShapeKey<Long>, PainteraTriangleMesh>) key -> BLOCK_MESHES[(int) key.min()[0]]};
+		exporter.exportMesh(
+				new Function[][] {blockLists, blockLists},
+				new Function[][] {meshes, meshes},
+				new Long[] {1L, 2L},
+				0,
+				paths);
+	}
+
+}
@@ -0,0 +1,209 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Smooth and average normals of {@link MarchingCubes} output for a block of {@code blockSize}<sup>3</sup> voxels filled
+ * with random overlapping spheres (about 100k triangles for a block size of 128). Compare the previous hash set based
+ * adjacency against the {@link MeshTopology} that is built once and shared by smoothing and normal averaging, and the
+ * previous boxed vertex lookup of {@link Convert#convertToLUT(float[])} against {@link Convert#toIndexed(float[])}.
+ *
+ * Run {@link #main(String[])} to benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshTopologyBenchmark
+{
+
+	@State(Scope.Benchmark)
+	public static class Mesh
+	{
+
+		@Param({"64", "128"})
+		public int blockSize;
+
+		@Param({"3"})
+		public int iterations;
+
+		private float[] vertices;
+
+		private int[] indices;
+
+		private float[] triangles;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			final ArrayImg<BitType, LongArray> img = ArrayImgs.bits(blockSize, blockSize, blockSize);
+			final Random rng = new Random(100);
+			final int numSpheres = 20;
+			final double[][] centers = new double[numSpheres][3];
+			final double[] radii = new double[numSpheres];
+			for (int s = 0; s < numSpheres; ++s)
+			{
+				for (int d = 0; d < 3; ++d)
+					centers[s][d] = rng.nextDouble() * blockSize;
+				radii[s] = blockSize * (0.05 + 0.15 * rng.nextDouble());
+			}
+			final Cursor<BitType> cursor = img.localizingCursor();
+			while (cursor.hasNext())
+			{
+				cursor.fwd();
+				for (int s = 0; s < numSpheres && !cursor.get().get(); ++s)
+				{
+					final double dx = cursor.getDoublePosition(0) - centers[s][0];
+					final double dy = cursor.getDoublePosition(1) - centers[s][1];
+					final double dz = cursor.getDoublePosition(2) - centers[s][2];
+					cursor.get().set(dx * dx + dy * dy + dz * dz < radii[s] * radii[s]);
+				}
+			}
+
+			final Pair<float[], int[]> mesh = new MarchingCubes<>(
+					Views.extendZero(img),
+					new FinalInterval(img),
+					new AffineTransform3D(),
+					new int[] {1, 1, 1},
+					() -> false).generateMesh();
+			vertices = mesh.getA();
+			indices = mesh.getB();
+			triangles = Convert.toTriangles(vertices, indices);
+		}
+
+	}
+
+	@Benchmark
+	public void smoothAndNormalsHashSets(final Mesh mesh, final Blackhole blackhole)
+	{
+		final float[] smoothed = smoothHashSets(mesh.vertices, mesh.indices, Smooth.DEFAULT_LAMBDA, mesh.iterations);
+		final float[] normals = new float[smoothed.length];
+		AverageNormals.averagedNormals(smoothed, mesh.indices, normals);
+		blackhole.consume(normals);
+	}
+
+	@Benchmark
+	public void smoothAndNormalsTopology(final Mesh mesh, final Blackhole blackhole)
+	{
+		final MeshTopology topology = MeshTopology.fromIndices(mesh.vertices.length / 3, mesh.indices);
+		final float[] smoothed = Smooth.smooth(mesh.vertices, topology, Smooth.DEFAULT_LAMBDA, mesh.iterations);
+		final float[] normals = new float[smoothed.length];
+		AverageNormals.averagedNormals(smoothed, mesh.indices, topology, normals);
+		blackhole.consume(normals);
+	}
+
+	@Benchmark
+	public void indexBoxedLUT(final Mesh mesh, final Blackhole blackhole)
+	{
+		blackhole.consume(Convert.convertToLUT(mesh.triangles));
+	}
+
+	@Benchmark
+	public void indexPrimitive(final Mesh mesh, final Blackhole blackhole)
+	{
+		blackhole.consume(Convert.toIndexed(mesh.triangles));
+	}
+
+	/**
+	 * Previous implementation of {@link Smooth#smooth(float[], int[], double, int)}: one {@link TIntHashSet} per
+	 * vertex and a hash map for edge counts.
+	 */
+	private static float[] smoothHashSets(final float[] vertices, final int[] indices, final double lambda, final int iterations)
+	{
+		final int numVertices = vertices.length / 3;
+		final TIntHashSet[] neighbors = new TIntHashSet[numVertices];
+		for (int vertexIndex = 0; vertexIndex < numVertices; ++vertexIndex)
+			neighbors[vertexIndex] = new TIntHashSet();
+
+		final TLongIntHashMap edgeCounts = new TLongIntHashMap();
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			for (int k = 0; k < 3; ++k)
+			{
+				final int v1 = indices[triangle + k];
+				final int v2 = indices[triangle + (k + 1) % 3];
+				neighbors[v1].add(v2);
+				neighbors[v2].add(v1);
+				edgeCounts.adjustOrPutValue(v1 < v2 ? (long) v1 << 32 | v2 : (long) v2 << 32 | v1, 1, 1);
+			}
+		}
+
+		final boolean[] boundaryVertices = new boolean[numVertices];
+		edgeCounts.forEachEntry((edge, count) -> {
+			if (count < 2)
+			{
+				boundaryVertices[(int) (edge >>> 32)] = true;
+				boundaryVertices[(int) edge] = true;
+			}
+			return true;
+		});
+
+		float[] vertexCoordinates1 = vertices.clone();
+		final double[] sum = new double[3];
+		for (int iteration = 0; iteration < iterations; ++iteration)
+		{
+			final float[] vertexCoordinates2 = new float[vertexCoordinates1.length];
+			final float[] fVertexCoordinates1 = vertexCoordinates1;
+			for (int vertexIndex = 0, i = 0; vertexIndex < numVertices; ++vertexIndex, i += 3)
+			{
+				if (!boundaryVertices[vertexIndex] && !neighbors[vertexIndex].isEmpty())
+				{
+					sum[0] = sum[1] = sum[2] = 0.0;
+					neighbors[vertexIndex].forEach(other -> {
+						sum[0] += fVertexCoordinates1[3 * other];
+						sum[1] += fVertexCoordinates1[3 * other + 1];
+						sum[2] += fVertexCoordinates1[3 * other + 2];
+						return true;
+					});
+					final double c = 1.0 / neighbors[vertexIndex].size();
+					for (int d = 0; d < 3; ++d)
+						vertexCoordinates2[i + d] = (float) ((sum[d] * c - vertexCoordinates1[i + d]) * lambda + vertexCoordinates1[i + d]);
+				}
+				else
+					System.arraycopy(vertexCoordinates1, i, vertexCoordinates2, i, 3);
+			}
+			vertexCoordinates1 = vertexCoordinates2;
+		}
+		return vertexCoordinates1;
+	}
+
+	public static void main(final String[] args) throws RunnerException
+	{
+		final Options options = new OptionsBuilder()
+				.include(MeshTopologyBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
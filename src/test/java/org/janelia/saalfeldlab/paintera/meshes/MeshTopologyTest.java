@@ -0,0 +1,94 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import net.imglib2.util.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshTopologyTest
+{
+
+	// octahedron: vertices on the positive and negative axes
+	private static final float[] OCTAHEDRON_VERTICES = {
+			1, 0, 0, -1, 0, 0,
+			0, 1, 0, 0, -1, 0,
+			0, 0, 1, 0, 0, -1
+	};
+
+	private static final int[] OCTAHEDRON_INDICES = {
+			0, 2, 4, 2, 1, 4, 1, 3, 4, 3, 0, 4,
+			2, 0, 5, 1, 2, 5, 3, 1, 5, 0, 3, 5
+	};
+
+	@Test
+	public void testClosedSurface()
+	{
+		final MeshTopology topology = MeshTopology.fromIndices(6, OCTAHEDRON_INDICES);
+		Assert.assertEquals(6, topology.numVertices());
+		for (int vertex = 0; vertex < 6; ++vertex)
+		{
+			Assert.assertFalse(topology.isBoundary(vertex));
+			Assert.assertEquals(4, topology.numNeighbors(vertex));
+			Assert.assertEquals(4, topology.numTriangles(vertex));
+			// the opposite vertex is not a neighbor
+			final int opposite = vertex ^ 1;
+			for (int i = topology.neighborsStart(vertex); i < topology.neighborsStop(vertex); ++i)
+			{
+				Assert.assertNotEquals(vertex, topology.neighbor(i));
+				Assert.assertNotEquals(opposite, topology.neighbor(i));
+			}
+		}
+	}
+
+	@Test
+	public void testBoundary()
+	{
+		// square made of two triangles, and an isolated vertex 4
+		final MeshTopology topology = MeshTopology.fromIndices(5, new int[] {0, 1, 2, 0, 2, 3});
+		Assert.assertArrayEquals(new int[] {1, 2, 3}, neighbors(topology, 0));
+		Assert.assertArrayEquals(new int[] {0, 2}, neighbors(topology, 1));
+		Assert.assertArrayEquals(new int[] {0, 1, 3}, neighbors(topology, 2));
+		Assert.assertArrayEquals(new int[] {0, 2}, neighbors(topology, 3));
+		Assert.assertArrayEquals(new int[] {}, neighbors(topology, 4));
+		for (int vertex = 0; vertex < 4; ++vertex)
+			Assert.assertTrue(topology.isBoundary(vertex));
+		Assert.assertFalse(topology.isBoundary(4));
+
+		final float[] vertices = {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0, 5, 5, 5};
+		Assert.assertArrayEquals(vertices, Smooth.smooth(vertices, topology, 0.5, 3), 0.0f);
+	}
+
+	@Test
+	public void testSmoothAndNormals()
+	{
+		final float[] smoothed = Smooth.smooth(OCTAHEDRON_VERTICES, OCTAHEDRON_INDICES, 0.5, 1);
+		// every vertex moves halfway towards the center of its four neighbors, i.e. the origin
+		for (int i = 0; i < smoothed.length; ++i)
+			Assert.assertEquals(OCTAHEDRON_VERTICES[i] * 0.5f, smoothed[i], 1e-6f);
+
+		final MeshTopology topology = MeshTopology.fromIndices(6, OCTAHEDRON_INDICES);
+		final float[] normals = new float[OCTAHEDRON_VERTICES.length];
+		final float[] expected = new float[OCTAHEDRON_VERTICES.length];
+		AverageNormals.averagedNormals(OCTAHEDRON_VERTICES, OCTAHEDRON_INDICES, topology, normals);
+		AverageNormals.averagedNormals(OCTAHEDRON_VERTICES, OCTAHEDRON_INDICES, expected);
+		Assert.assertArrayEquals(expected, normals, 1e-6f);
+	}
+
+	@Test
+	public void testIndexedRoundTrip()
+	{
+		final float[] triangles = Convert.toTriangles(OCTAHEDRON_VERTICES, OCTAHEDRON_INDICES);
+		final Pair<float[], int[]> indexed = Convert.toIndexed(triangles);
+		Assert.assertEquals(OCTAHEDRON_VERTICES.length, indexed.getA().length);
+		Assert.assertEquals(OCTAHEDRON_INDICES.length, indexed.getB().length);
+		Assert.assertArrayEquals(triangles, Convert.toTriangles(indexed.getA(), indexed.getB()), 0.0f);
+	}
+
+	private static int[] neighbors(final MeshTopology topology, final int vertex)
+	{
+		final int[] neighbors = new int[topology.numNeighbors(vertex)];
+		for (int i = topology.neighborsStart(vertex), k = 0; i < topology.neighborsStop(vertex); ++i, ++k)
+			neighbors[k] = topology.neighbor(i);
+		return neighbors;
+	}
+
+}
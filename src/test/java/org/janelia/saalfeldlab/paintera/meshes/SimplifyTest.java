@@ -0,0 +1,119 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimplifyTest
+{
+
+	@Test
+	public void testClosedSurface()
+	{
+		final ArrayImg<BitType, LongArray> img = ArrayImgs.bits(20, 20, 20);
+		final Cursor<BitType> cursor = img.localizingCursor();
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			final double dx = cursor.getDoublePosition(0) - 9.5;
+			final double dy = cursor.getDoublePosition(1) - 9.5;
+			final double dz = cursor.getDoublePosition(2) - 9.5;
+			cursor.get().set(dx * dx + dy * dy + dz * dz < 36);
+		}
+
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(
+				Views.extendZero(img),
+				new FinalInterval(img),
+				new AffineTransform3D(),
+				new int[] {1, 1, 1},
+				() -> false).generateMesh();
+
+		final Pair<float[], int[]> simplified = Simplify.simplify(mesh.getA(), mesh.getB(), 2, 0.5);
+		final int numTriangles = mesh.getB().length / 3;
+		final int numSimplifiedTriangles = simplified.getB().length / 3;
+		Assert.assertTrue(numSimplifiedTriangles < numTriangles);
+		// each collapse removes two triangles
+		Assert.assertTrue(numSimplifiedTriangles >= numTriangles * 0.25 - 2);
+		Assert.assertEquals(boundaryVertices(mesh.getA(), mesh.getB()), boundaryVertices(simplified.getA(), simplified.getB()));
+
+		final Pair<float[], int[]> unchanged = Simplify.simplify(mesh.getA(), mesh.getB(), 0, 0.5);
+		Assert.assertSame(mesh.getA(), unchanged.getA());
+		Assert.assertSame(mesh.getB(), unchanged.getB());
+	}
+
+	@Test
+	public void testBoundaryVerticesFixed()
+	{
+		// half space that is cut open by the interval
+		final ArrayImg<BitType, LongArray> img = ArrayImgs.bits(20, 20, 20);
+		final Cursor<BitType> cursor = img.localizingCursor();
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			cursor.get().set(cursor.getDoublePosition(2) + 0.3 * cursor.getDoublePosition(0) < 10);
+		}
+
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(
+				Views.extendBorder(img),
+				new FinalInterval(new long[] {2, 2, 2}, new long[] {15, 15, 15}),
+				new AffineTransform3D(),
+				new int[] {1, 1, 1},
+				() -> false).generateMesh();
+
+		final Set<String> boundaryBefore = boundaryVertices(mesh.getA(), mesh.getB());
+		Assert.assertFalse(boundaryBefore.isEmpty());
+
+		final Pair<float[], int[]> simplified = Simplify.simplify(mesh.getA(), mesh.getB(), 3, 0.5);
+		Assert.assertTrue(simplified.getB().length < mesh.getB().length);
+		Assert.assertEquals(boundaryBefore, boundaryVertices(simplified.getA(), simplified.getB()));
+	}
+
+	private static TLongIntHashMap edgeCounts(final int[] indices)
+	{
+		final TLongIntHashMap edgeCounts = new TLongIntHashMap();
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			for (int k = 0; k < 3; ++k)
+			{
+				final int v1 = indices[triangle + k];
+				final int v2 = indices[triangle + (k + 1) % 3];
+				Assert.assertNotEquals(v1, v2);
+				edgeCounts.adjustOrPutValue((long) Math.min(v1, v2) << 32 | Math.max(v1, v2), 1, 1);
+			}
+		}
+		return edgeCounts;
+	}
+
+	private static Set<String> boundaryVertices(final float[] vertices, final int[] indices)
+	{
+		final Set<String> boundary = new HashSet<>();
+		edgeCounts(indices).forEachEntry((edge, count) -> {
+			if (count == 1)
+			{
+				boundary.add(vertexString(vertices, (int) (edge >>> 32)));
+				boundary.add(vertexString(vertices, (int) edge));
+			}
+			return true;
+		});
+		return boundary;
+	}
+
+	private static String vertexString(final float[] vertices, final int index)
+	{
+		return Arrays.toString(Arrays.copyOfRange(vertices, 3 * index, 3 * index + 3));
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Find blocks for a segment in a synthetic unique-labels dataset of 16x16x16 blocks, each block containing
+ * {@code numLabelsPerBlock} random labels. Reading the unique labels of a block is simulated with a delay of
+ * {@code readLatencyMicros}. Compare sequential and parallel retrieval of unique labels, and the previous boxed
+ * stream containment check against the binary search in {@link BlocksForLabelCacheLoader#containsAny}.
+ *
+ * Run {@link #main(String[])} to benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlocksForLabelCacheLoaderBenchmark
+{
+
+	private static final long[] DIMENSIONS = {1024, 1024, 1024};
+
+	private static final int[] BLOCK_SIZE = {64, 64, 64};
+
+	@State(Scope.Benchmark)
+	public static class UniqueLabels
+	{
+
+		@Param({"1", "16"})
+		public int parallelism;
+
+		@Param({"0", "200"})
+		public int readLatencyMicros;
+
+		@Param({"1000"})
+		public int numLabelsPerBlock;
+
+		private final CellGrid grid = new CellGrid(DIMENSIONS, BLOCK_SIZE);
+
+		private long[][] uniqueLabels;
+
+		private TLongHashSet segment;
+
+		private ExecutorService executors;
+
+		private BlocksForLabelCacheLoader<TLongHashSet> loader;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			final Random rng = new Random(100);
+			final int numBlocks = (int) Arrays.stream(grid.getGridDimensions()).reduce(1, (l1, l2) -> l1 * l2);
+			uniqueLabels = new long[numBlocks][];
+			for (int block = 0; block < numBlocks; ++block)
+				uniqueLabels[block] = rng.longs(numLabelsPerBlock, 1, 1000 * numLabelsPerBlock).sorted().distinct().toArray();
+
+			segment = new TLongHashSet();
+			rng.longs(100, 1, 1000 * numLabelsPerBlock).forEach(segment::add);
+
+			executors = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("benchmark-%d", true));
+			loader = new BlocksForLabelCacheLoader<>(
+					grid,
+					InterruptibleFunction.fromFunction(ids -> new Interval[] {new FinalInterval(DIMENSIONS)}),
+					interval -> CacheUtils.<Interval>collectAllOffsets(DIMENSIONS, BLOCK_SIZE, min -> new FinalInterval(
+							min,
+							new long[] {min[0] + BLOCK_SIZE[0] - 1, min[1] + BLOCK_SIZE[1] - 1, min[2] + BLOCK_SIZE[2] - 1})),
+					this::read,
+					ids -> {
+						final long[] sorted = ids.toArray();
+						Arrays.sort(sorted);
+						return sorted;
+					},
+					executors,
+					parallelism);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			executors.shutdown();
+		}
+
+		private long[] read(final long[] cellPosition)
+		{
+			if (readLatencyMicros > 0)
+				LockSupport.parkNanos(readLatencyMicros * 1000L);
+			final long[] gridDimensions = grid.getGridDimensions();
+			final int index = (int) (cellPosition[0] + gridDimensions[0] * (cellPosition[1] + gridDimensions[1] * cellPosition[2]));
+			return uniqueLabels[index];
+		}
+
+	}
+
+	@Benchmark
+	public void blocksForLabel(final UniqueLabels data, final Blackhole blackhole) throws Exception
+	{
+		blackhole.consume(data.loader.get(data.segment));
+	}
+
+	@Benchmark
+	public void containsBoxedStream(final UniqueLabels data, final Blackhole blackhole)
+	{
+		for (final long[] labels : data.uniqueLabels)
+			blackhole.consume(Arrays.stream(labels).filter(data.segment::contains).count() > 0);
+	}
+
+	@Benchmark
+	public void containsBinarySearch(final UniqueLabels data, final Blackhole blackhole)
+	{
+		final long[] sortedIds = data.segment.toArray();
+		Arrays.sort(sortedIds);
+		for (final long[] labels : data.uniqueLabels)
+			blackhole.consume(BlocksForLabelCacheLoader.containsAny(sortedIds, labels));
+	}
+
+	public static void main(final String[] args) throws RunnerException
+	{
+		final Options options = new OptionsBuilder()
+				.include(BlocksForLabelCacheLoaderBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.cache.CacheLoader;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.Simplify;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiskMeshCacheTest
+{
+
+	private static final String CONTAINER = "file:///data/container.n5/";
+
+	private static final String DATASET = "volumes/labels";
+
+	private static final long[] MARGIN = {2, 2, 2};
+
+	@Test
+	public void testRoundTripAndInvalidate() throws Exception
+	{
+		final Path directory = Files.createTempDirectory("disk-mesh-cache-");
+		directory.toFile().deleteOnExit();
+		final AtomicBoolean isDataPersisted = new AtomicBoolean(true);
+		final DiskMeshCache<Long> diskCache = new DiskMeshCache<>(() -> directory, CONTAINER, DATASET, 0L, id -> new long[] {id}, isDataPersisted::get, MARGIN);
+
+		final AtomicInteger numGenerated = new AtomicInteger();
+		final CacheLoader<ShapeKey<Long>, PainteraTriangleMesh> loader = diskCache.withLoader(key -> {
+			numGenerated.incrementAndGet();
+			return new PainteraTriangleMesh(
+					new float[] {0, 0, 0, 1, 0, 0, 0, 1, key.shapeId()},
+					new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+					new int[] {0, 1, 2});
+		});
+
+		final ShapeKey<Long> key1 = key(1L, new long[] {0, 0, 0}, new long[] {63, 63, 63});
+		final ShapeKey<Long> key2 = key(2L, new long[] {64, 0, 0}, new long[] {127, 63, 63});
+
+		final PainteraTriangleMesh generated = loader.get(key1);
+		loader.get(key2);
+		Assert.assertEquals(2, numGenerated.get());
+
+		final PainteraTriangleMesh fromDisk = loader.get(key1);
+		Assert.assertEquals(2, numGenerated.get());
+		Assert.assertArrayEquals(generated.getVertices(), fromDisk.getVertices(), 0.0f);
+		Assert.assertArrayEquals(generated.getNormals(), fromDisk.getNormals(), 0.0f);
+		Assert.assertArrayEquals(generated.getIndices(), fromDisk.getIndices());
+
+		// different mesh parameters must not hit the same file
+		loader.get(new ShapeKey<>(1L, 0, 1, Simplify.DEFAULT_REDUCTION_RATIO, 0.5, 5, key1.min(), key1.max()));
+		Assert.assertEquals(3, numGenerated.get());
+		loader.get(new ShapeKey<>(1L, 0, 1, 0.25, 0.5, 5, key1.min(), key1.max()));
+		Assert.assertEquals(4, numGenerated.get());
+
+		// only the block that intersects with the modified interval is invalidated
+		diskCache.invalidate(new Interval[][] {{new FinalInterval(new long[] {10, 10, 10}, new long[] {20, 20, 20})}});
+		loader.get(key1);
+		loader.get(key2);
+		Assert.assertEquals(5, numGenerated.get());
+
+		// bypass disk while data is not persisted
+		isDataPersisted.set(false);
+		loader.get(key2);
+		Assert.assertEquals(6, numGenerated.get());
+		isDataPersisted.set(true);
+
+		diskCache.invalidateAll();
+		Assert.assertFalse(Files.exists(directory));
+		loader.get(key2);
+		Assert.assertEquals(7, numGenerated.get());
+
+		diskCache.invalidateAll();
+	}
+
+	@Test
+	public void testInvalidateNeighborsAndNegativeCoordinates() throws Exception
+	{
+		final Path directory = Files.createTempDirectory("disk-mesh-cache-");
+		directory.toFile().deleteOnExit();
+		final DiskMeshCache<Long> diskCache = new DiskMeshCache<>(() -> directory, CONTAINER, DATASET, 0L, id -> new long[] {id}, () -> true, MARGIN);
+
+		final AtomicInteger numGenerated = new AtomicInteger();
+		final CacheLoader<ShapeKey<Long>, PainteraTriangleMesh> loader = diskCache.withLoader(key -> {
+			numGenerated.incrementAndGet();
+			return new PainteraTriangleMesh(new float[] {0, 0, 0}, new float[] {0, 0, 1}, new int[] {0, 0, 0});
+		});
+
+		final ShapeKey<Long> negative = key(1L, new long[] {-64, -64, 0}, new long[] {-1, -1, 63});
+		final ShapeKey<Long> center = key(1L, new long[] {0, 0, 0}, new long[] {63, 63, 63});
+		final ShapeKey<Long> far = key(1L, new long[] {128, 0, 0}, new long[] {191, 63, 63});
+		loader.get(negative);
+		loader.get(center);
+		loader.get(far);
+		Assert.assertEquals(3, numGenerated.get());
+		loader.get(negative);
+		Assert.assertEquals(3, numGenerated.get());
+
+		// modified voxels within the meshing margin of a block invalidate that block, too
+		diskCache.invalidate(0, new FinalInterval(new long[] {64, 10, 10}, new long[] {65, 20, 20}));
+		loader.get(far);
+		Assert.assertEquals(3, numGenerated.get());
+		loader.get(center);
+		Assert.assertEquals(4, numGenerated.get());
+
+		// blocks with negative coordinates are invalidated only if affected
+		diskCache.invalidate(0, new FinalInterval(new long[] {-40, -40, 10}, new long[] {-30, -30, 20}));
+		loader.get(center);
+		Assert.assertEquals(4, numGenerated.get());
+		loader.get(negative);
+		Assert.assertEquals(5, numGenerated.get());
+
+		diskCache.invalidateAll();
+	}
+
+	@Test
+	public void testSourceMismatch() throws Exception
+	{
+		final Path directory = Files.createTempDirectory("disk-mesh-cache-");
+		directory.toFile().deleteOnExit();
+		final AtomicInteger numGenerated = new AtomicInteger();
+		final CacheLoader<ShapeKey<Long>, PainteraTriangleMesh> generator = key -> {
+			numGenerated.incrementAndGet();
+			return new PainteraTriangleMesh(new float[] {0, 0, 0}, new float[] {0, 0, 1}, new int[] {0, 0, 0});
+		};
+		final ShapeKey<Long> key = key(1L, new long[] {0, 0, 0}, new long[] {63, 63, 63});
+
+		new DiskMeshCache<Long>(() -> directory, CONTAINER, DATASET, 0L, id -> new long[] {id}, () -> true, MARGIN).withLoader(generator).get(key);
+		new DiskMeshCache<Long>(() -> directory, CONTAINER, DATASET, 0L, id -> new long[] {id}, () -> true, MARGIN).withLoader(generator).get(key);
+		Assert.assertEquals(1, numGenerated.get());
+
+		// meshes of a different container, dataset, or data version in the same directory are ignored
+		new DiskMeshCache<Long>(() -> directory, "file:///other.n5/", DATASET, 0L, id -> new long[] {id}, () -> true, MARGIN).withLoader(generator).get(key);
+		Assert.assertEquals(2, numGenerated.get());
+		new DiskMeshCache<Long>(() -> directory, CONTAINER, "volumes/other", 0L, id -> new long[] {id}, () -> true, MARGIN).withLoader(generator).get(key);
+		Assert.assertEquals(3, numGenerated.get());
+		final DiskMeshCache<Long> newVersion = new DiskMeshCache<>(() -> directory, CONTAINER, DATASET, 1L, id -> new long[] {id}, () -> true, MARGIN);
+		newVersion.withLoader(generator).get(key);
+		Assert.assertEquals(4, numGenerated.get());
+
+		newVersion.invalidateAll();
+	}
+
+	@Test
+	public void testAttributesHash() throws Exception
+	{
+		final Path container = Files.createTempDirectory("disk-mesh-cache-n5-");
+		container.toFile().deleteOnExit();
+		final N5FSWriter writer = new N5FSWriter(container.toString());
+		writer.createDataset("data/s0", new long[] {10, 10, 10}, new int[] {5, 5, 5}, DataType.UINT64, new GzipCompression());
+		writer.setAttribute("data", N5Helpers.MULTI_SCALE_KEY, true);
+		final long hash = DiskMeshCache.attributesHash(writer, "data");
+		Assert.assertEquals(hash, DiskMeshCache.attributesHash(writer, "data"));
+
+		// max id is ignored
+		writer.setAttribute("data", N5Helpers.MAX_ID_KEY, 10L);
+		Assert.assertEquals(hash, DiskMeshCache.attributesHash(writer, "data"));
+
+		// replaced scale dataset
+		writer.createDataset("data/s0", new long[] {20, 10, 10}, new int[] {5, 5, 5}, DataType.UINT64, new GzipCompression());
+		Assert.assertNotEquals(hash, DiskMeshCache.attributesHash(writer, "data"));
+
+		writer.remove();
+	}
+
+	private static ShapeKey<Long> key(final long id, final long[] min, final long[] max)
+	{
+		return new ShapeKey<>(id, 0, 0, Simplify.DEFAULT_REDUCTION_RATIO, 0.0, 0, min, max);
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.janelia.saalfeldlab.paintera.serialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import gnu.trove.set.hash.TIntHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SourceInfoSerializerTest
+{
+
+	@Test
+	public void testDependencyOrderLoader() throws InterruptedException, ExecutionException
+	{
+		// 0 <- 2 <- 3, 1 <- 3, 4 independent
+		final TIntHashSet[] dependsOn = {
+				new TIntHashSet(),
+				new TIntHashSet(),
+				new TIntHashSet(new int[] {0}),
+				new TIntHashSet(new int[] {1, 2}),
+				new TIntHashSet()
+		};
+		final AtomicIntegerArray isLoaded = new AtomicIntegerArray(dependsOn.length);
+		final List<Integer> inOrder = new ArrayList<>();
+		final List<Integer> progress = new ArrayList<>();
+		final ExecutorService es = Executors.newFixedThreadPool(3);
+		try
+		{
+			final Integer[] loaded = new SourceInfoSerializer.DependencyOrderLoader<>(
+					dependsOn,
+					k -> {
+						dependsOn[k].forEach(d -> {
+							Assert.assertEquals(1, isLoaded.get(d));
+							return true;
+						});
+						isLoaded.set(k, 1);
+						return 10 * k;
+					},
+					es,
+					(k, v) -> {
+						Assert.assertEquals(10 * k, v.intValue());
+						inOrder.add(k);
+					},
+					(numLoaded, numStates) -> progress.add(numLoaded),
+					Integer[]::new).load();
+			Assert.assertArrayEquals(new Integer[] {0, 10, 20, 30, 40}, loaded);
+			Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), inOrder);
+			Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), progress);
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailedDependency() throws InterruptedException
+	{
+		final TIntHashSet[] dependsOn = {new TIntHashSet(), new TIntHashSet(new int[] {0})};
+		final ExecutorService es = Executors.newFixedThreadPool(2);
+		try
+		{
+			new SourceInfoSerializer.DependencyOrderLoader<Integer>(
+					dependsOn,
+					k -> {
+						Assert.assertEquals(0, k);
+						throw new IllegalStateException("failed");
+					},
+					es,
+					(k, v) -> Assert.fail(),
+					(numLoaded, numStates) -> Assert.fail(),
+					Integer[]::new).load();
+			Assert.fail("Expected ExecutionException");
+		} catch (final ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		} finally
+		{
+			es.shutdown();
+		}
+	}
+
+	@Test
+	public void testCyclicDependencies() throws Exception
+	{
+		Assert.assertEquals(0, SourceInfoSerializer.makeStates(new JsonArray(), (k, v) -> {}, new Gson()).length);
+		try
+		{
+			SourceInfoSerializer.makeStates(withDependencies(new int[] {1}, new int[] {2}, new int[] {0}), (k, v) -> {}, new Gson());
+			Assert.fail("Expected HasCyclicDependencies");
+		} catch (final HasCyclicDependencies e)
+		{
+			// expected
+		}
+	}
+
+	private static JsonArray withDependencies(final int[]... dependsOn)
+	{
+		final Gson gson = new Gson();
+		final JsonArray states = new JsonArray();
+		for (final int[] d : dependsOn)
+		{
+			final JsonObject state = new JsonObject();
+			state.add("dependsOn", gson.toJsonTree(d));
+			states.add(state);
+		}
+		return states;
+	}
+
+}
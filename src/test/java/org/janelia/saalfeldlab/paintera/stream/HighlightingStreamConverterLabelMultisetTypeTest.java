@@ -0,0 +1,118 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetEntry;
+import net.imglib2.type.label.LabelMultisetType.Entry;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HighlightingStreamConverterLabelMultisetTypeTest
+{
+
+	@Test
+	public void testHitForEqualMultisets()
+	{
+		final HighlightingStreamConverterLabelMultisetType.MultisetColorCache cache = new HighlightingStreamConverterLabelMultisetType.MultisetColorCache();
+		cache.validate(0);
+
+		final int numEntries = cache.readKey(entries(1, 3, 2, 5));
+		Assert.assertEquals(2, numEntries);
+		Assert.assertEquals(-1, cache.find(numEntries));
+		cache.put(numEntries, 0xff112233);
+
+		// equal contents in a different instance hit the cache
+		final int slot = cache.find(cache.readKey(entries(1, 3, 2, 5)));
+		Assert.assertTrue(slot >= 0);
+		Assert.assertEquals(slot, cache.find(cache.readKey(entries(1, 3, 2, 5))));
+
+		// same ids with different counts, a subset, or a superset do not
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(1, 3, 2, 4))));
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(1, 3))));
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(1, 3, 2, 5, 7, 1))));
+	}
+
+	@Test
+	public void testCollisions()
+	{
+		final HighlightingStreamConverterLabelMultisetType.MultisetColorCache cache = new HighlightingStreamConverterLabelMultisetType.MultisetColorCache();
+		cache.validate(0);
+		cache.put(cache.readKey(entries(1, 1)), 1);
+
+		// find a multiset that maps to the same slot: it replaces the first multiset instead of returning its color
+		long collidingId = -1;
+		for (long id = 2; id < 1 << 20 && collidingId < 0; ++id)
+		{
+			Assert.assertEquals(-1, cache.find(cache.readKey(entries(id, 1))));
+			cache.put(cache.readKey(entries(id, 1)), (int) id);
+			if (cache.find(cache.readKey(entries(1, 1))) < 0)
+				collidingId = id;
+		}
+		Assert.assertTrue(collidingId > 0);
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(1, 1))));
+		Assert.assertTrue(cache.find(cache.readKey(entries(collidingId, 1))) >= 0);
+
+		// the evicted multiset is cached again on the next put
+		cache.put(cache.readKey(entries(1, 1)), 1);
+		Assert.assertTrue(cache.find(cache.readKey(entries(1, 1))) >= 0);
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(collidingId, 1))));
+	}
+
+	@Test
+	public void testInvalidation()
+	{
+		final SelectedIds selectedIds = new SelectedIds();
+		final ModalGoldenAngleSaturatedHighlightingARGBStream stream = new ModalGoldenAngleSaturatedHighlightingARGBStream(
+				new SelectedSegments(selectedIds, new FragmentSegmentAssignmentOnlyLocal(FragmentSegmentAssignmentOnlyLocal.doesNotPersist("test"))),
+				new LockedSegmentsOnlyLocal(locked -> {}));
+		final HighlightingStreamConverterLabelMultisetType.MultisetColorCache cache = new HighlightingStreamConverterLabelMultisetType.MultisetColorCache();
+
+		cache.validate(stream.getColorVersion());
+		cache.put(cache.readKey(entries(1, 1)), 1);
+		cache.validate(stream.getColorVersion());
+		Assert.assertTrue(cache.find(cache.readKey(entries(1, 1))) >= 0);
+
+		stream.setAlpha(stream.getAlpha() / 2);
+		assertInvalidated(cache, stream);
+
+		stream.specifyColorExplicitly(1, 0xff00ff00);
+		assertInvalidated(cache, stream);
+
+		stream.incSeed();
+		assertInvalidated(cache, stream);
+
+		selectedIds.activate(1);
+		assertInvalidated(cache, stream);
+
+		// no change, no invalidation
+		cache.validate(stream.getColorVersion());
+		Assert.assertTrue(cache.find(cache.readKey(entries(1, 1))) >= 0);
+	}
+
+	private static void assertInvalidated(
+			final HighlightingStreamConverterLabelMultisetType.MultisetColorCache cache,
+			final AbstractHighlightingARGBStream stream)
+	{
+		cache.validate(stream.getColorVersion());
+		Assert.assertEquals(-1, cache.find(cache.readKey(entries(1, 1))));
+		cache.put(cache.readKey(entries(1, 1)), 1);
+	}
+
+	/**
+	 * @param idsAndCounts interleaved ids and counts
+	 */
+	private static Set<Entry<Label>> entries(final long... idsAndCounts)
+	{
+		final Set<Entry<Label>> entries = new LinkedHashSet<>();
+		for (int i = 0; i < idsAndCounts.length; i += 2)
+			entries.add(new LabelMultisetEntry(idsAndCounts[i], (int) idsAndCounts[i + 1]));
+		return entries;
+	}
+
+}
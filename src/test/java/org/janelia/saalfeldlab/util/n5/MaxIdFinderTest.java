@@ -0,0 +1,50 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+
+public class MaxIdFinderTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	@Test
+	public void testUniqueLabels() throws IOException {
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		final String group = "paintera";
+		writer.createGroup(group);
+		writer.setAttribute(group, N5Helpers.PAINTERA_DATA_KEY, Collections.singletonMap("type", "label"));
+		writer.setAttribute(group, "labelBlockLookup", Collections.singletonMap("type", "n5-filesystem"));
+
+		final String uniqueLabels = group + "/unique-labels/s0";
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {4, 4}, new int[] {2, 2}, DataType.UINT64, new GzipCompression());
+		writer.createDataset(uniqueLabels, attributes);
+		writer.writeBlock(uniqueLabels, attributes, new LongArrayDataBlock(new int[] {2, 2}, new long[] {0, 0}, new long[] {1, 7, 3}));
+		writer.writeBlock(uniqueLabels, attributes, new LongArrayDataBlock(new int[] {2, 2}, new long[] {1, 1}, new long[] {42, 5}));
+		// block (1, 0) and (0, 1) do not exist
+
+		MaxIdFinder.invalidate(writer, group);
+		final MaxIdFinder.Result result = MaxIdFinder.findMaxId(writer, group, null);
+		Assert.assertEquals(MaxIdFinder.Tier.UNIQUE_LABELS, result.getTier());
+		Assert.assertEquals(42, result.getMaxId());
+
+		final MaxIdFinder.Result cached = MaxIdFinder.findMaxId(writer, group, null);
+		Assert.assertEquals(MaxIdFinder.Tier.CACHE, cached.getTier());
+		Assert.assertEquals(42, cached.getMaxId());
+		Assert.assertEquals(42, MaxIdFinder.getCached(writer, group).get().getMaxId());
+
+		MaxIdFinder.invalidate(writer, group);
+		Assert.assertFalse(MaxIdFinder.getCached(writer, group).isPresent());
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentLookup;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Detach;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class N5AssignmentActionLogTest {
+
+	private static final String GROUP = "assignment-actions/test";
+
+	@Test
+	public void testActions() throws IOException {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final List<AssignmentAction> actions = makeActions(N5AssignmentActionLog.ACTIONS_PER_BLOCK + 10);
+
+		N5AssignmentActionLog.appendActions(container, GROUP, actions, 0);
+		assertEquals(actions, N5AssignmentActionLog.readActions(container, GROUP, actions.size()));
+
+		// append, existing blocks are not modified
+		final List<AssignmentAction> prefix = new ArrayList<>(actions);
+		actions.add(new Merge(1, 2, 100));
+		N5AssignmentActionLog.appendActions(container, GROUP, actions, actions.size() - 1);
+		actions.add(new Detach(3, 4));
+		actions.add(new Merge(5, 6, 101));
+		N5AssignmentActionLog.appendActions(container, GROUP, actions, actions.size() - 2);
+		assertEquals(actions, N5AssignmentActionLog.readActions(container, GROUP, actions.size()));
+		assertEquals(prefix, N5AssignmentActionLog.readActions(container, GROUP, prefix.size()));
+
+		// appending requires the logged actions to match
+		try {
+			N5AssignmentActionLog.appendActions(container, GROUP, actions, actions.size() - 1);
+			Assert.fail("Expected IOException");
+		} catch (final IOException e) {
+			// expected
+		}
+
+		try {
+			N5AssignmentActionLog.readActions(container, GROUP, actions.size() + 1);
+			Assert.fail("Expected IOException");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSupersede() throws IOException {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final List<AssignmentAction> actions = makeActions(10);
+		final String group1 = GROUP + "-1";
+		final String group2 = GROUP + "-2";
+		final String group3 = GROUP + "-3";
+
+		N5AssignmentActionLog.appendActions(container, group1, actions, 0);
+		// diverging history goes into new groups
+		actions.set(3, new Detach(7, 8));
+		N5AssignmentActionLog.appendActions(container, group2, actions, 0);
+		N5AssignmentActionLog.supersede(container, group2, group1);
+		actions.remove(9);
+		N5AssignmentActionLog.appendActions(container, group3, actions, 0);
+		N5AssignmentActionLog.supersede(container, group3, group2);
+
+		// superseded groups are still readable until removed explicitly
+		Assert.assertEquals(10, N5AssignmentActionLog.readActions(container, group1, 10).size());
+		N5AssignmentActionLog.removeSupersededGroups(container, group3);
+		Assert.assertFalse(container.exists(group1));
+		Assert.assertFalse(container.exists(group2));
+		assertEquals(actions, N5AssignmentActionLog.readActions(container, group3, actions.size()));
+	}
+
+	@Test
+	public void testCheckpoint() throws IOException {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final List<AssignmentAction> actions = makeActions(100);
+
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(FragmentSegmentAssignmentOnlyLocal.doesNotPersist("test"));
+		assignment.apply(actions.subList(0, 60));
+		final FragmentSegmentLookup checkpoint = assignment.checkpoint();
+		Assert.assertEquals(60, assignment.numCheckpointedActions());
+		assignment.apply(actions.subList(60, actions.size()));
+		Assert.assertEquals(60, assignment.numCheckpointedActions());
+
+		N5AssignmentActionLog.appendActions(container, GROUP, actions, 0);
+		N5AssignmentActionLog.writeCheckpoint(container, GROUP, checkpoint, 60, assignment.getInitialLutFingerprint(), 60);
+		Assert.assertFalse(N5AssignmentActionLog.readCheckpoint(container, GROUP, 59, assignment.getInitialLutFingerprint()).isPresent());
+		Assert.assertFalse(N5AssignmentActionLog.readCheckpoint(container, GROUP, 60, assignment.getInitialLutFingerprint() + 1).isPresent());
+		final Optional<FragmentSegmentLookup> readCheckpoint = N5AssignmentActionLog.readCheckpoint(container, GROUP, 60, assignment.getInitialLutFingerprint());
+		Assert.assertTrue(readCheckpoint.isPresent());
+		Assert.assertEquals(checkpoint.size(), readCheckpoint.get().size());
+
+		final FragmentSegmentAssignmentOnlyLocal restored = new FragmentSegmentAssignmentOnlyLocal(FragmentSegmentAssignmentOnlyLocal.doesNotPersist("test"));
+		restored.restore(N5AssignmentActionLog.readActions(container, GROUP, actions.size()), readCheckpoint.get(), 60);
+		Assert.assertEquals(actions.size(), restored.events().size());
+		Assert.assertEquals(60, restored.numCheckpointedActions());
+		for (long fragment = 0; fragment < 100; ++fragment)
+			Assert.assertEquals(assignment.getSegment(fragment), restored.getSegment(fragment));
+
+		// a later checkpoint does not replace the one that is still referenced
+		N5AssignmentActionLog.writeCheckpoint(container, GROUP, assignment.checkpoint(), 100, assignment.getInitialLutFingerprint(), 60);
+		Assert.assertTrue(N5AssignmentActionLog.readCheckpoint(container, GROUP, 60, assignment.getInitialLutFingerprint()).isPresent());
+		Assert.assertTrue(N5AssignmentActionLog.readCheckpoint(container, GROUP, 100, assignment.getInitialLutFingerprint()).isPresent());
+
+		// undo an action before the checkpoint: replay everything
+		restored.events().get(10).getValue().set(false);
+		assignment.events().get(10).getValue().set(false);
+		Assert.assertEquals(0, restored.numCheckpointedActions());
+		for (long fragment = 0; fragment < 100; ++fragment)
+			Assert.assertEquals(assignment.getSegment(fragment), restored.getSegment(fragment));
+	}
+
+	private static List<AssignmentAction> makeActions(final int numActions) {
+		final List<AssignmentAction> actions = new ArrayList<>();
+		for (int i = 0; i < numActions; ++i)
+			actions.add(i % 3 == 2
+					? new Detach(i % 50, (i + 1) % 50)
+					: new Merge(i % 50, (i * 7 + 1) % 50, 1000 + i));
+		return actions;
+	}
+
+	private static void assertEquals(final List<AssignmentAction> expected, final List<AssignmentAction> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			Assert.assertEquals(expected.get(i).getType(), actual.get(i).getType());
+			Assert.assertEquals(expected.get(i).toString(), actual.get(i).toString());
+		}
+	}
+
+}
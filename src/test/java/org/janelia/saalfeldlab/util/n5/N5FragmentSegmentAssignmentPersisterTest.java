@@ -0,0 +1,142 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Detach;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+public class N5FragmentSegmentAssignmentPersisterTest {
+
+	@Test
+	public void testIncrementalPersist() throws IOException, UnableToPersist {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final String dataset = "fragment-segment-assignment";
+		// never compact to make sure that deltas are applied on read
+		final N5FragmentSegmentAssignmentPersister persister = new N5FragmentSegmentAssignmentPersister(container, dataset, Integer.MAX_VALUE);
+
+		final TLongLongHashMap lut = new TLongLongHashMap();
+		lut.put(1, 10);
+		lut.put(2, 10);
+		persist(persister, lut);
+		Assert.assertEquals(0, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+
+		// merge
+		lut.put(3, 10);
+		persist(persister, lut);
+		Assert.assertEquals(1, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+
+		// detach
+		lut.remove(1);
+		lut.put(4, 11);
+		lut.put(5, 11);
+		persist(persister, lut);
+		Assert.assertEquals(2, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+
+		// no changes, no new delta
+		persist(persister, lut);
+		Assert.assertEquals(2, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+
+		// new persister needs to pick up state from base and deltas
+		final N5FragmentSegmentAssignmentPersister persister2 = new N5FragmentSegmentAssignmentPersister(container, dataset, Integer.MAX_VALUE);
+		lut.put(6, 11);
+		persist(persister2, lut);
+		Assert.assertEquals(3, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+	}
+
+	@Test
+	public void testCompactionIntoNewBase() throws IOException, UnableToPersist, InterruptedException {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final String dataset = "fragment-segment-assignment";
+		final N5FragmentSegmentAssignmentPersister persister = new N5FragmentSegmentAssignmentPersister(container, dataset, 1);
+
+		final TLongLongHashMap firstBase = new TLongLongHashMap();
+		firstBase.put(1, 10);
+		persist(persister, firstBase);
+
+		final TLongLongHashMap lut = new TLongLongHashMap(firstBase);
+		lut.put(2, 10);
+		persist(persister, lut);
+		lut.put(3, 10);
+		persist(persister, lut);
+
+		// compaction runs in the background
+		final String compactedBase = N5FragmentSegmentAssignmentDeltas.versionedBaseDataset(dataset, 2);
+		for (int i = 0; i < 100 && !compactedBase.equals(N5FragmentSegmentAssignmentDeltas.currentBaseDataset(container, dataset)); ++i)
+			Thread.sleep(50);
+		Assert.assertEquals(compactedBase, N5FragmentSegmentAssignmentDeltas.currentBaseDataset(container, dataset));
+		Assert.assertEquals(2, N5FragmentSegmentAssignmentDeltas.baseIncludesDeltas(container, dataset));
+		Assert.assertEquals(2, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+
+		// the base of the first commit is not modified by compaction
+		Assert.assertArrayEquals(new long[] {firstBase.size(), 2}, container.getDatasetAttributes(dataset).getDimensions());
+		Assert.assertArrayEquals(new long[] {lut.size(), 2}, container.getDatasetAttributes(compactedBase).getDimensions());
+
+		// deltas after compaction are applied on top of the compacted base
+		lut.remove(1);
+		persist(persister, lut);
+		Assert.assertEquals(3, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		assertEquals(lut, N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset));
+	}
+
+	@Test
+	public void testPersistChangesOfAssignment() throws IOException, UnableToPersist {
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final String dataset = "fragment-segment-assignment";
+		final N5FragmentSegmentAssignmentPersister persister = new N5FragmentSegmentAssignmentPersister(container, dataset, Integer.MAX_VALUE);
+		final Supplier<TLongLongMap> initialLut = () -> {
+			try {
+				return container.datasetExists(dataset)
+						? N5FragmentSegmentAssignmentInitialLut.readBaseAndDeltas(container, dataset)
+						: new TLongLongHashMap();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(initialLut, persister);
+
+		// first commit writes the base
+		assignment.apply(new Merge(1, 2, 10));
+		assignment.persist();
+		Assert.assertEquals(0, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		Assert.assertEquals(FragmentSegmentAssignmentOnlyLocal.fingerprint(initialLut.get()), assignment.getInitialLutFingerprint());
+
+		// only fragments that changed are written: 3 is added, 1 is removed, 2 is unchanged
+		assignment.apply(new Merge(3, 2, 10));
+		assignment.apply(new Detach(1, 2));
+		assignment.persist();
+		Assert.assertEquals(1, N5FragmentSegmentAssignmentDeltas.numDeltas(container, dataset));
+		final String deltas = N5FragmentSegmentAssignmentDeltas.deltasDataset(dataset);
+		Assert.assertEquals(4, container.readBlock(deltas, container.getDatasetAttributes(deltas), new long[] {0}).getNumElements());
+
+		final TLongLongHashMap expected = new TLongLongHashMap();
+		expected.put(2, 10);
+		expected.put(3, 10);
+		assertEquals(expected, initialLut.get());
+		Assert.assertEquals(FragmentSegmentAssignmentOnlyLocal.fingerprint(expected), assignment.getInitialLutFingerprint());
+	}
+
+	private static void persist(final N5FragmentSegmentAssignmentPersister persister, final TLongLongMap lut) throws UnableToPersist {
+		persister.persist(lut.keys(), lut.values());
+	}
+
+	private static void assertEquals(final TLongLongMap expected, final TLongLongMap actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (final long key : expected.keys())
+			Assert.assertEquals(expected.get(key), actual.get(key));
+	}
+
+}